@@ -0,0 +1,96 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times the speaking of the default corpus by a voice that recycles its utterances and one that does not, and counts
+ * the bytes all the threads of the JVM allocate meanwhile, the output thread that recycles them included. The bytes per
+ * utterance and the objects the arena reused are printed at the end of the trial. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ArenaBenchmark {
+	@Param({ "false", "true" })
+	public boolean recycle;
+
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private Voice voice;
+	private String text;
+	private int utterancesPerSpeak;
+	private long start;
+	private long bytes;
+	private long utterances;
+
+	@Setup(Level.Trial)
+	public void allocate() throws IOException {
+		voice = BenchmarkData.getVoice("kevin16");
+		voice.setRecycleUtterances(recycle);
+		text = BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT);
+		utterancesPerSpeak = BenchmarkData.tokenize(voice, text).size();
+	}
+
+	@Setup(Level.Invocation)
+	public void start() {
+		start = getAllocatedBytes();
+	}
+
+	@TearDown(Level.Invocation)
+	public void stop() {
+		bytes += getAllocatedBytes() - start;
+		utterances += utterancesPerSpeak;
+	}
+
+	@TearDown(Level.Trial)
+	public void deallocate() {
+		System.out.println("Allocated: " + bytes / utterances + " bytes per utterance, arena reused "
+				+ voice.getArena().getReused() + " of " + voice.getArena().getTaken() + " objects");
+		voice.deallocate();
+	}
+
+	@Benchmark
+	public boolean speak() {
+		return voice.speak(text);
+	}
+
+	/** Returns the bytes the live threads have allocated so far.
+	 * @return the number of bytes */
+	private long getAllocatedBytes() {
+		long total = 0;
+		long[] allocated = threads.getThreadAllocatedBytes(threads.getAllThreadIds());
+		for (int i = 0; i < allocated.length; i++) {
+			if (allocated[i] > 0) {
+				total += allocated[i];
+			}
+		}
+		return total;
+	}
+}
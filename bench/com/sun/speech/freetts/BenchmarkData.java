@@ -0,0 +1,140 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+import com.sun.speech.freetts.en.us.cmu_time_awb.AlanVoiceDirectory;
+import com.sun.speech.freetts.en.us.cmu_us_kal.KevinVoiceDirectory;
+import com.sun.speech.freetts.util.Utilities;
+
+/** The inputs of the benchmarks: the bundled voices and the text corpora of the unit tests. Nothing is fetched from
+ * outside the build tree, so the benchmarks run offline. The corpora are read from the directory given by the
+ * <code>bench.data</code> system property, which defaults to <code>unittests/tests/data</code>. */
+public class BenchmarkData {
+	/** The directory of the text corpora. */
+	public final static String DATA_DIR = Utilities.getProperty("bench.data", "unittests/tests/data");
+
+	/** The corpus used unless a benchmark says otherwise. */
+	public final static String DEFAULT_TEXT = "alice2";
+
+	/** Reads a text corpus.
+	 * @param name the name of the corpus in the data directory
+	 * @return the text
+	 * @throws IOException if the corpus can't be read */
+	public static String readText(String name) throws IOException {
+		StringBuffer text = new StringBuffer();
+		BufferedReader reader = new BufferedReader(new FileReader(DATA_DIR + "/" + name));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				text.append(line).append('\n');
+			}
+		} finally {
+			reader.close();
+		}
+		return text.toString();
+	}
+
+	/** Reads the words of a text corpus, in lower case and without punctuation.
+	 * @param name the name of the corpus in the data directory
+	 * @return the words
+	 * @throws IOException if the corpus can't be read */
+	public static String[] readWords(String name) throws IOException {
+		List<String> words = new ArrayList<String>();
+		String[] tokens = readText(name).toLowerCase().split("[^a-z']+");
+		for (int i = 0; i < tokens.length; i++) {
+			if (tokens[i].length() > 0) {
+				words.add(tokens[i]);
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	/** Allocates one of the bundled voices. Its audio goes nowhere.
+	 * @param name <code>kevin</code>, <code>kevin16</code> or <code>alan</code>
+	 * @return the allocated voice */
+	public static Voice getVoice(String name) {
+		List<Voice> voices = new ArrayList<Voice>();
+		voices.addAll(Arrays.asList(new KevinVoiceDirectory().getVoices()));
+		voices.addAll(Arrays.asList(new AlanVoiceDirectory().getVoices()));
+		for (Voice voice : voices) {
+			if (voice.getName().equals(name)) {
+				voice.setAudioPlayer(new NullAudioPlayer());
+				voice.allocate();
+				return voice;
+			}
+		}
+		throw new Error("No bundled voice named " + name);
+	}
+
+	/** Splits a text into utterances the way the voice does when it speaks the text.
+	 * @param voice the voice
+	 * @param text the text
+	 * @return the utterances, which no processor has seen yet */
+	public static List<Utterance> tokenize(Voice voice, String text) {
+		List<Utterance> utterances = new ArrayList<Utterance>();
+		for (Iterator i = voice.tokenize(new FreeTTSSpeakableImpl(text)); i.hasNext();) {
+			utterances.add((Utterance) i.next());
+		}
+		return utterances;
+	}
+
+	/** Runs some of the utterance processors of a voice on utterances.
+	 * @param voice the voice
+	 * @param utterances the utterances
+	 * @param first the index of the first processor to run
+	 * @param end the index after the last processor to run
+	 * @throws ProcessException if a processor fails */
+	public static void process(Voice voice, List<Utterance> utterances, int first, int end) throws ProcessException {
+		List<UtteranceProcessor> processors = voice.getUtteranceProcessors();
+		for (Utterance utterance : utterances) {
+			for (int i = first; i < end; i++) {
+				processors.get(i).processUtterance(utterance);
+			}
+		}
+	}
+
+	/** Returns utterances of the default corpus that went through all of the processors of a voice.
+	 * @param voice the voice
+	 * @return the utterances
+	 * @throws IOException if the corpus can't be read
+	 * @throws ProcessException if a processor fails */
+	public static List<Utterance> synthesize(Voice voice) throws IOException, ProcessException {
+		List<Utterance> utterances = tokenize(voice, readText(DEFAULT_TEXT));
+		process(voice, utterances, 0, voice.getUtteranceProcessors().size());
+		return utterances;
+	}
+
+	/** Returns the items of a relation of all the utterances.
+	 * @param utterances the utterances
+	 * @param relation the name of the relation
+	 * @return the items in order */
+	public static Item[] getItems(List<Utterance> utterances, String relation) {
+		List<Item> items = new ArrayList<Item>();
+		for (Utterance utterance : utterances) {
+			Relation r = utterance.getRelation(relation);
+			if (r != null) {
+				for (Item item = r.getHead(); item != null; item = item.getNext()) {
+					items.add(item);
+				}
+			}
+		}
+		return items.toArray(new Item[items.size()]);
+	}
+}
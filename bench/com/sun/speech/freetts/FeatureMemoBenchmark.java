@@ -0,0 +1,92 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times the front-end of the CMUVoice chain, TokenToWords to the ContourGenerator, per utterance of the default
+ * corpus, with and without memoized features. Each invocation takes the next fresh utterance of the corpus; the hit
+ * rate of the memo is printed at the end of the trial. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FeatureMemoBenchmark {
+	private final static int FRONT_END = 9;
+
+	@Param({ "false", "true" })
+	public boolean memoize;
+
+	private Voice voice;
+	private String text;
+	private LinkedList<Utterance> utterances = new LinkedList<Utterance>();
+	private Utterance utterance;
+	private long hits;
+	private long lookups;
+
+	@Setup(Level.Trial)
+	public void allocate() throws IOException {
+		voice = BenchmarkData.getVoice("kevin16");
+		voice.setMemoizeFeatures(memoize);
+		text = BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare() {
+		if (utterances.isEmpty()) {
+			utterances.addAll(BenchmarkData.tokenize(voice, text));
+		}
+		utterance = utterances.removeFirst();
+	}
+
+	@TearDown(Level.Invocation)
+	public void count() {
+		FeatureMemo memo = utterance.getFeatureMemo();
+		if (memo != null) {
+			hits += memo.getHits();
+			lookups += memo.getLookups();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deallocate() {
+		if (memoize) {
+			System.out.println("Feature memo: " + hits + " hits of " + lookups + " lookups");
+		}
+		voice.deallocate();
+	}
+
+	@Benchmark
+	public Utterance process() throws ProcessException {
+		for (int i = 0; i < FRONT_END; i++) {
+			voice.getUtteranceProcessors().get(i).processUtterance(utterance);
+		}
+		return utterance;
+	}
+}
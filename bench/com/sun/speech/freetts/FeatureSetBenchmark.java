@@ -0,0 +1,79 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Fills and reads a feature set the way the Durator and the ContourGenerator treat a segment and a target: a name, then
+ * float features set and read back. Run with <code>-prof gc</code> to see the allocation of each implementation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FeatureSetBenchmark {
+	private final static int NAME = FeatureSlots.getSlot("name");
+	private final static int END = FeatureSlots.getSlot("end");
+	private final static int POS = FeatureSlots.getSlot("pos");
+	private final static int F0 = FeatureSlots.getSlot("f0");
+
+	@Param({ "FeatureSetImpl", "SlotFeatureSet" })
+	public String impl;
+
+	private boolean slotted;
+
+	@Setup
+	public void setUp() {
+		slotted = impl.equals("SlotFeatureSet");
+	}
+
+	/** The string methods, as most of the code still calls them. */
+	@Benchmark
+	public void byName(Blackhole bh) {
+		SlottedFeatureSet features = newFeatureSet();
+		features.setString("name", "ax");
+		features.setFloat("end", 0.125f);
+		features.setFloat("pos", 0.0625f);
+		features.setFloat("f0", 110.0f);
+		bh.consume(features.getString("name"));
+		bh.consume(features.getFloat("end") + features.getFloat("pos") + features.getFloat("f0"));
+	}
+
+	/** The slot methods, as the converted hot callers use them. */
+	@Benchmark
+	public void bySlot(Blackhole bh) {
+		SlottedFeatureSet features = newFeatureSet();
+		features.setString(NAME, "ax");
+		features.setFloat(END, 0.125f);
+		features.setFloat(POS, 0.0625f);
+		features.setFloat(F0, 110.0f);
+		bh.consume(features.getString(NAME));
+		bh.consume(features.getFloat(END) + features.getFloat(POS) + features.getFloat(F0));
+	}
+
+	private SlottedFeatureSet newFeatureSet() {
+		return slotted ? (SlottedFeatureSet) new SlotFeatureSet() : new FeatureSetImpl();
+	}
+}
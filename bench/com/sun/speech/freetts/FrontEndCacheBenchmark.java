@@ -0,0 +1,107 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times the front-end of a voice on a repetitive corpus, a handful of prompts spoken over and over as an answering
+ * service does, with and without the front-end cache. With the cache, the relations of every prompt are made once
+ * during the setup and restored after that. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FrontEndCacheBenchmark {
+	private final static String[] PROMPTS = { "Thank you for calling.", "Your call is important to us.",
+			"Please hold, and the next available agent will be with you shortly.",
+			"Press 1 for billing, press 2 for technical support, or stay on the line.",
+			"The estimated waiting time is 3 minutes." };
+
+	private final static int REPEATS = 20;
+
+	@Param({ "kevin16" })
+	public String voiceName;
+
+	@Param({ "false", "true" })
+	public boolean cached;
+
+	private Voice voice;
+	private String text;
+	private int frontEndSize;
+	private FrontEndCache cache;
+	private List<Utterance> utterances;
+
+	@Setup(Level.Trial)
+	public void allocate() throws ProcessException {
+		voice = BenchmarkData.getVoice(voiceName);
+		frontEndSize = voice.getFrontEndSize();
+		StringBuffer corpus = new StringBuffer();
+		for (int i = 0; i < REPEATS; i++) {
+			for (int k = 0; k < PROMPTS.length; k++) {
+				corpus.append(PROMPTS[k]).append('\n');
+			}
+		}
+		text = corpus.toString();
+		if (cached) {
+			cache = new FrontEndCache(16 << 20);
+			utterances = BenchmarkData.tokenize(voice, text);
+			process();
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare() {
+		utterances = BenchmarkData.tokenize(voice, text);
+	}
+
+	@TearDown(Level.Trial)
+	public void deallocate() {
+		voice.deallocate();
+	}
+
+	@Benchmark
+	public List<Utterance> process() throws ProcessException {
+		List<UtteranceProcessor> processors = voice.getUtteranceProcessors();
+		for (Utterance utterance : utterances) {
+			String key = null;
+			if (cache != null) {
+				key = FrontEndCache.getKey(voice, utterance);
+				if (cache.restore(key, utterance)) {
+					continue;
+				}
+			}
+			for (int i = 0; i < frontEndSize; i++) {
+				processors.get(i).processUtterance(utterance);
+			}
+			if (cache != null) {
+				cache.store(key, utterance);
+			}
+		}
+		return utterances;
+	}
+}
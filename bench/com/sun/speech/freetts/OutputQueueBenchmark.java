@@ -0,0 +1,166 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the handoff rate of utterances from four producer threads to a number of consumer threads. The
+ * <code>monitor</code> queue is the synchronized list with wait and notify that OutputQueue used to be, kept here as the
+ * baseline. The batch is the number of utterances posted and pended at once by the ring buffer. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@Threads(4)
+public class OutputQueueBenchmark {
+	@Param({ "monitor", "ring" })
+	public String queueType;
+
+	@Param({ "1", "4" })
+	public int consumers;
+
+	@Param({ "1", "8" })
+	public int batch;
+
+	private Handoff handoff;
+	private Thread[] threads;
+
+	@Setup
+	public void setUp() {
+		handoff = queueType.equals("ring") ? (Handoff) new RingHandoff(batch) : new MonitorHandoff();
+		threads = new Thread[consumers];
+		for (int i = 0; i < consumers; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					Utterance[] utterances = new Utterance[batch];
+					while (handoff.pend(utterances) > 0) {
+					}
+				}
+			};
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		handoff.close();
+		for (int i = 0; i < consumers; i++) {
+			threads[i].join();
+		}
+	}
+
+	/** Posts one batch of utterances.
+	 * @param producer the utterances of the calling thread */
+	@Benchmark
+	public void post(Producer producer) {
+		handoff.post(producer.utterances);
+	}
+
+	/** The utterances posted by one producer thread. */
+	@State(Scope.Thread)
+	public static class Producer {
+		Utterance[] utterances;
+
+		@Setup
+		public void setUp(OutputQueueBenchmark benchmark) {
+			utterances = new Utterance[benchmark.batch];
+			for (int i = 0; i < utterances.length; i++) {
+				utterances[i] = new Utterance(null);
+			}
+		}
+	}
+
+	private interface Handoff {
+		void post(Utterance[] utterances);
+
+		int pend(Utterance[] utterances);
+
+		void close();
+	}
+
+	private static class RingHandoff implements Handoff {
+		private final OutputQueue queue;
+
+		RingHandoff(int batch) {
+			queue = new OutputQueue(Math.max(5, batch * 2));
+		}
+
+		public void post(Utterance[] utterances) {
+			queue.post(utterances, 0, utterances.length);
+		}
+
+		public int pend(Utterance[] utterances) {
+			return queue.pend(utterances);
+		}
+
+		public void close() {
+			queue.close();
+		}
+	}
+
+	/** The old OutputQueue, one utterance at a time. */
+	private static class MonitorHandoff implements Handoff {
+		private final LinkedList<Utterance> list = new LinkedList<Utterance>();
+		private boolean closed;
+
+		public synchronized void post(Utterance[] utterances) {
+			for (int i = 0; i < utterances.length; i++) {
+				while (list.size() >= 5) {
+					try {
+						wait();
+					} catch (InterruptedException ie) {
+					}
+				}
+				list.add(utterances[i]);
+				notifyAll();
+			}
+		}
+
+		public synchronized int pend(Utterance[] utterances) {
+			while (list.isEmpty()) {
+				if (closed) {
+					return 0;
+				}
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+					return 0;
+				}
+			}
+			utterances[0] = list.removeFirst();
+			notifyAll();
+			return 1;
+		}
+
+		public synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+	}
+}
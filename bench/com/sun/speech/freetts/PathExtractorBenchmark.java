@@ -0,0 +1,70 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Times PathExtractorImpl.findFeature on every segment of the default corpus, and the same path interpreted by
+ * Item.findFeature. The paths are ones the duration CART uses most: a plain feature, a feature processor, a feature
+ * processor of a neighbour and one reached through other relations, and the path of the duration stretch of the
+ * Durator. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PathExtractorBenchmark {
+	@Param({ "name", "ph_ctype", "p.ph_ctype", "R:SylStructure.parent.R:Syllable.p.syl_break",
+			"R:SylStructure.parent.parent.R:Token.parent.local_duration_stretch" })
+	public String path;
+
+	private Item[] segments;
+	private PathExtractor extractor;
+
+	@Setup
+	public void setUp() throws Exception {
+		Voice voice = BenchmarkData.getVoice("kevin16");
+		List<Utterance> utterances = BenchmarkData.tokenize(voice, BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT));
+		// up to and including the Durator, which leaves every feature of the path in place
+		BenchmarkData.process(voice, utterances, 0, 8);
+		segments = BenchmarkData.getItems(utterances, Relation.SEGMENT);
+		extractor = new PathExtractorImpl(path, true);
+	}
+
+	@Benchmark
+	public void findFeature(Blackhole bh) {
+		for (int i = 0; i < segments.length; i++) {
+			bh.consume(extractor.findFeature(segments[i]));
+		}
+	}
+
+	@Benchmark
+	public void interpreted(Blackhole bh) {
+		for (int i = 0; i < segments.length; i++) {
+			bh.consume(segments[i].findFeature(path));
+		}
+	}
+}
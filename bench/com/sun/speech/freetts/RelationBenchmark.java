@@ -0,0 +1,112 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times the processors of the CMUVoice chain that build and walk the most items: the Segmenter (stage 3), the Durator
+ * (stage 7) and the ContourGenerator (stage 8), on the utterances of the default corpus, and a walk over the syllable
+ * structure of the utterances the front-end built. Run with <code>-prof gc</code> to see what the relations allocate per
+ * operation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RelationBenchmark {
+	@Param({ "3", "7", "8" })
+	public int stage;
+
+	private Voice voice;
+	private String text;
+	private UtteranceProcessor processor;
+	private List<Utterance> utterances;
+
+	@Setup(Level.Trial)
+	public void allocate() throws IOException {
+		voice = BenchmarkData.getVoice("kevin16");
+		text = BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT);
+		processor = voice.getUtteranceProcessors().get(stage);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare() throws ProcessException {
+		utterances = BenchmarkData.tokenize(voice, text);
+		BenchmarkData.process(voice, utterances, 0, stage);
+	}
+
+	@TearDown(Level.Trial)
+	public void deallocate() {
+		voice.deallocate();
+	}
+
+	@Benchmark
+	public List<Utterance> process() throws ProcessException {
+		for (Utterance utterance : utterances) {
+			processor.processUtterance(utterance);
+		}
+		return utterances;
+	}
+
+	@Benchmark
+	public int traverse(FrontEnd frontEnd) {
+		int count = 0;
+		for (Utterance utterance : frontEnd.utterances) {
+			Relation words = utterance.getRelation(Relation.WORD);
+			for (Item word = words.getHead(); word != null; word = word.getNext()) {
+				Item structure = word.getItemAs(Relation.SYLLABLE_STRUCTURE);
+				if (structure == null) {
+					continue;
+				}
+				for (Item syllable = structure.getDaughter(); syllable != null; syllable = syllable.getNext()) {
+					for (Item segment = syllable.getDaughter(); segment != null; segment = segment.getNext()) {
+						Item item = segment.getItemAs(Relation.SEGMENT);
+						if (item.getPrevious() != null && segment.getParent().getParent() == structure) {
+							count++;
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/** The utterances of the default corpus after the front-end of the voice. */
+	@State(Scope.Thread)
+	public static class FrontEnd {
+		List<Utterance> utterances;
+
+		@Setup(Level.Trial)
+		public void allocate() throws IOException, ProcessException {
+			Voice voice = BenchmarkData.getVoice("kevin16");
+			utterances = BenchmarkData.tokenize(voice, BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT));
+			BenchmarkData.process(voice, utterances, 0, voice.getFrontEndSize());
+			voice.deallocate();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times each utterance processor of the CMUVoice chain on the utterances of the default corpus. The stage is the index
+ * of the processor in the chain: 0 is TokenToWords, 8 the ContourGenerator, and 9 to 11 are the unit selector, the
+ * pitchmark generator and the unit concatenator of the voice. Before every invocation fresh utterances are run through
+ * the processors before the stage, so only the stage itself is timed. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UtteranceProcessorBenchmark {
+	@Param({ "kevin16", "alan" })
+	public String voiceName;
+
+	@Param({ "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11" })
+	public int stage;
+
+	private Voice voice;
+	private String text;
+	private UtteranceProcessor processor;
+	private List<Utterance> utterances;
+
+	@Setup(Level.Trial)
+	public void allocate() throws IOException {
+		voice = BenchmarkData.getVoice(voiceName);
+		text = BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT);
+		processor = voice.getUtteranceProcessors().get(stage);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare() throws ProcessException {
+		utterances = BenchmarkData.tokenize(voice, text);
+		BenchmarkData.process(voice, utterances, 0, stage);
+	}
+
+	@TearDown(Level.Trial)
+	public void deallocate() {
+		voice.deallocate();
+	}
+
+	@Benchmark
+	public List<Utterance> process() throws ProcessException {
+		for (Utterance utterance : utterances) {
+			processor.processUtterance(utterance);
+		}
+		return utterances;
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.cart;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sun.speech.freetts.BenchmarkData;
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.Voice;
+
+/** Times CARTImpl.interpret, and CompiledCART.interpret for comparison, on the items of the default corpus that the
+ * voice applies each bundled CART to. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CARTBenchmark {
+	@Param({ "durz_cart", "phrasing_cart", "int_accent_cart", "int_tone_cart", "nums_cart" })
+	public String cartName;
+
+	private Item[] items;
+	private CARTImpl cart;
+	private CompiledCART compiledCart;
+
+	@Setup
+	public void setUp() throws Exception {
+		Voice voice = BenchmarkData.getVoice("kevin16");
+		List<Utterance> utterances = BenchmarkData.tokenize(voice, BenchmarkData.readText(BenchmarkData.DEFAULT_TEXT));
+		BenchmarkData.process(voice, utterances, 0, 8);
+		items = BenchmarkData.getItems(utterances, getRelation(cartName));
+
+		URL url = Voice.class.getResource("en/us/" + cartName + ".txt");
+		cart = new CARTImpl(url);
+		compiledCart = new CompiledCART(cart);
+	}
+
+	@Benchmark
+	public void interpret(Blackhole bh) {
+		for (int i = 0; i < items.length; i++) {
+			bh.consume(cart.interpret(items[i]));
+		}
+	}
+
+	@Benchmark
+	public void interpretCompiled(Blackhole bh) {
+		for (int i = 0; i < items.length; i++) {
+			bh.consume(compiledCart.interpret(items[i]));
+		}
+	}
+
+	/** Returns the relation whose items a CART is applied to.
+	 * @param name the name of the CART
+	 * @return the name of the relation */
+	private static String getRelation(String name) {
+		if (name.equals("durz_cart")) {
+			return Relation.SEGMENT;
+		} else if (name.equals("phrasing_cart")) {
+			return Relation.WORD;
+		} else if (name.equals("nums_cart")) {
+			return Relation.TOKEN;
+		} else {
+			return Relation.SYLLABLE;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.en.us.cmu_time_awb.AlanVoiceDirectory;
+
+/** Times loading the binary awb cluster unit database, with the units left in the mapped file and copied to the heap. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ClusterUnitDatabaseBenchmark {
+	@Param({ "true", "false" })
+	public boolean mapped;
+
+	private URL url;
+
+	@Setup
+	public void setUp() {
+		url = AlanVoiceDirectory.class.getResource("cmu_time_awb.bin");
+	}
+
+	@Benchmark
+	public ClusterUnitDatabase load() throws Exception {
+		return new ClusterUnitDatabase(url, true, mapped);
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.en.us.cmu_time_awb.AlanVoiceDirectory;
+
+/** Times the optimal coupling of random pairs of units of the awb cluster unit database that have the same phone, read
+ * from the coupling table that is generated with the binary database and found by scanning the frames of the units. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CouplingTableBenchmark {
+	private final static int PAIRS = 4096;
+
+	private ClusterUnitDatabase db;
+	private CouplingTable table;
+	private int[] u0 = new int[PAIRS];
+	private int[] u1p = new int[PAIRS];
+	private final Cost cost = new Cost();
+
+	@Setup
+	public void setUp() throws Exception {
+		db = new ClusterUnitDatabase(AlanVoiceDirectory.class.getResource("cmu_time_awb.bin"), true);
+		db.computeCouplingTable(1 << 22);
+		table = db.getCouplingTable();
+		Random random = new Random(42);
+		int units = db.getNumberOfUnits();
+		for (int i = 0; i < PAIRS;) {
+			int a = random.nextInt(units);
+			int b = random.nextInt(units);
+			if (table.find(a, b) >= 0) {
+				u0[i] = a;
+				u1p[i] = b;
+				i++;
+			}
+		}
+	}
+
+	@Benchmark
+	public int table() {
+		int total = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			int entry = table.find(u0[i], u1p[i]);
+			total += table.getU0Move(entry) + table.getU1Move(entry) + table.getDistance(entry);
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int scan() {
+		int total = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			CouplingTable.scan(db, db.getFrameDistance(), u0[i], u1p[i], cost);
+			total += cost.u0Move + cost.u1Move + cost.cost;
+		}
+		return total;
+	}
+}
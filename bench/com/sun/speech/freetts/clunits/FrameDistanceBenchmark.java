@@ -0,0 +1,89 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.en.us.cmu_time_awb.AlanVoiceDirectory;
+import com.sun.speech.freetts.relp.Sample;
+import com.sun.speech.freetts.relp.SampleSet;
+
+/** Times the join distance between random pairs of frames of the awb cluster unit database, computed from the decoded
+ * frames and, as it was before, from the MCEP and STS samples of the mapped or copied database. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FrameDistanceBenchmark {
+	private final static int PAIRS = 4096;
+
+	@Param({ "true", "false" })
+	public boolean mapped;
+
+	private ClusterUnitDatabase db;
+	private int[] a = new int[PAIRS];
+	private int[] b = new int[PAIRS];
+
+	@Setup
+	public void setUp() throws Exception {
+		db = new ClusterUnitDatabase(AlanVoiceDirectory.class.getResource("cmu_time_awb.bin"), true, mapped);
+		Random random = new Random(42);
+		int frames = db.getMcep().getNumberOfSamples();
+		for (int i = 0; i < PAIRS; i++) {
+			a[i] = random.nextInt(frames);
+			b[i] = random.nextInt(frames);
+		}
+	}
+
+	@Benchmark
+	public int decoded() {
+		FrameDistance frameDistance = db.getFrameDistance();
+		int total = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			total += frameDistance.getJoinDistance(a[i], b[i]);
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int samples() {
+		SampleSet mcep = db.getMcep();
+		SampleSet sts = db.getSts();
+		int[] joinWeights = db.getJoinWeights();
+		int order = mcep.getSampleInfo().getNumberOfChannels();
+		int total = 0;
+		for (int p = 0; p < PAIRS; p++) {
+			Sample av = mcep.getSample(a[p]);
+			Sample bv = mcep.getSample(b[p]);
+			int r = 0;
+			for (int i = 0; i < order; i++) {
+				r += Math.abs(av.getFrameData(i) - bv.getFrameData(i)) * joinWeights[i] / 65536;
+			}
+			total += r + Math.abs(sts.getFrameSize(a[p]) - sts.getFrameSize(b[p])) * db.getContinuityWeight();
+		}
+		return total;
+	}
+}
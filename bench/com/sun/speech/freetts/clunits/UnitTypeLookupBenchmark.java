@@ -0,0 +1,82 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.en.us.cmu_time_awb.AlanVoiceDirectory;
+
+/** Times the lookups the unit selector makes for the segments of an utterance: the CART of the unit type and the index
+ * of every candidate unit, with the type resolved once per segment or looked up by name for every candidate. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UnitTypeLookupBenchmark {
+	private final static int SEGMENTS = 1024;
+	private final static int CANDIDATES = 8;
+
+	private ClusterUnitDatabase db;
+	private String[] names = new String[SEGMENTS];
+	private int[] instances = new int[SEGMENTS];
+
+	@Setup
+	public void setUp() throws Exception {
+		db = new ClusterUnitDatabase(AlanVoiceDirectory.class.getResource("cmu_time_awb.bin"), true);
+		Random random = new Random(42);
+		int units = db.getNumberOfUnits();
+		for (int i = 0; i < SEGMENTS; i++) {
+			int unit = random.nextInt(units);
+			// a fresh string, as the unit namer makes for every segment
+			names[i] = new String(db.getUnit(unit).getName());
+			instances[i] = unit - db.getUnitIndex(names[i], 0);
+		}
+	}
+
+	@Benchmark
+	public int byId() {
+		int total = 0;
+		for (int i = 0; i < SEGMENTS; i++) {
+			int type = db.getUnitTypeIndex(names[i]);
+			total += db.getTree(type, names[i]).hashCode();
+			for (int k = 0; k < CANDIDATES; k++) {
+				total += db.getUnitIndex(type, instances[i]);
+			}
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int byName() {
+		int total = 0;
+		for (int i = 0; i < SEGMENTS; i++) {
+			total += db.getTree(db.getUnitTypeIndex(names[i]), names[i]).hashCode();
+			for (int k = 0; k < CANDIDATES; k++) {
+				total += db.getUnitIndex(names[i], instances[i]);
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.diphone;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.en.us.cmu_us_kal.KevinVoiceDirectory;
+
+/** Times loading the binary kal16 diphone database with each cache type. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class DiphoneUnitDatabaseBenchmark {
+	private final static String CACHE_TYPE = "com.sun.speech.freetts.diphone.UnitDatabase.cacheType";
+
+	@Param({ "preload", "demand", "hard", "soft", "lru" })
+	public String cacheType;
+
+	private URL url;
+
+	@Setup
+	public void setUp() {
+		url = KevinVoiceDirectory.class.getResource("cmu_us_kal16.bin");
+		System.setProperty(CACHE_TYPE, cacheType);
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.clearProperty(CACHE_TYPE);
+	}
+
+	@Benchmark
+	public DiphoneUnitDatabase load() throws Exception {
+		return new DiphoneUnitDatabase(url, true);
+	}
+}
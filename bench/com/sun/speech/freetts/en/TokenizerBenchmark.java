@@ -0,0 +1,80 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.en;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sun.speech.freetts.BenchmarkData;
+import com.sun.speech.freetts.Tokenizer;
+import com.sun.speech.freetts.en.us.USEnglish;
+
+/** Measures the throughput of the tokenizer of the CMU voices, set up as they set it up, on a megabyte of text made of
+ * the journey corpus repeated. The text is given as a string or through a reader. An operation tokenizes the whole
+ * megabyte, so the score is in MB/s. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TokenizerBenchmark {
+	private final static int SIZE = 1 << 20;
+
+	@Param({ "string", "reader" })
+	public String input;
+
+	private String text;
+
+	@Setup
+	public void setUp() throws IOException {
+		String corpus = BenchmarkData.readText("journey.txt");
+		StringBuffer buffer = new StringBuffer(SIZE);
+		while (buffer.length() < SIZE) {
+			buffer.append(corpus, 0, Math.min(corpus.length(), SIZE - buffer.length()));
+		}
+		text = buffer.toString();
+	}
+
+	@Benchmark
+	public void tokenize(Blackhole bh) {
+		Tokenizer tokenizer = new TokenizerImpl();
+		tokenizer.setWhitespaceSymbols(USEnglish.WHITESPACE_SYMBOLS);
+		tokenizer.setSingleCharSymbols(USEnglish.SINGLE_CHAR_SYMBOLS);
+		tokenizer.setPrepunctuationSymbols(USEnglish.PREPUNCTUATION_SYMBOLS);
+		tokenizer.setPostpunctuationSymbols(USEnglish.PUNCTUATION_SYMBOLS);
+		if (input.equals("reader")) {
+			tokenizer.setInputReader(new StringReader(text));
+		} else {
+			tokenizer.setInputText(text);
+		}
+		while (tokenizer.hasMoreTokens()) {
+			// as the voice does, an empty word breaks without asking
+			if (tokenizer.getNextToken().getWord().length() > 0) {
+				bh.consume(tokenizer.isBreak());
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sun.speech.freetts.BenchmarkData;
+import com.sun.speech.freetts.en.us.CMULexicon;
+
+/** Times the lookup of every word of the alice corpus in the binary cmulex, and the letter to sound rules of cmulex on
+ * the same words, both as read by LetterToSoundImpl and compiled. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LexiconBenchmark {
+	private String[] words;
+	private LexiconImpl lexicon;
+	private LetterToSoundImpl letterToSound;
+	private CompiledLetterToSound compiledLetterToSound;
+
+	@Setup
+	public void setUp() throws Exception {
+		words = BenchmarkData.readWords("alice.txt");
+		lexicon = CMULexicon.getInstance(true);
+		URL lts = CMULexicon.class.getResource("cmulex_lts.bin");
+		letterToSound = new LetterToSoundImpl(lts, true);
+		compiledLetterToSound = new CompiledLetterToSound(letterToSound);
+	}
+
+	@Benchmark
+	public void getPhones(Blackhole bh) {
+		for (int i = 0; i < words.length; i++) {
+			bh.consume(lexicon.getPhones(words[i], null));
+		}
+	}
+
+	@Benchmark
+	public void letterToSound(Blackhole bh) {
+		for (int i = 0; i < words.length; i++) {
+			bh.consume(letterToSound.getPhones(words[i], null));
+		}
+	}
+
+	@Benchmark
+	public void compiledLetterToSound(Blackhole bh) {
+		for (int i = 0; i < words.length; i++) {
+			bh.consume(compiledLetterToSound.getPhones(words[i], null));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.relp;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.BenchmarkData;
+import com.sun.speech.freetts.ProcessException;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.UtteranceProcessor;
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+
+/** Times the first audio of a sentence: from its text to the first buffer of samples written to the audio player,
+ * with the units concatenated before the LPC result is played or as it is played. The sentences are the first words of
+ * the default corpus, so their length is all that changes. The sample mode reports the percentiles of the latency,
+ * p0.50 and p0.99 among them. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FirstAudioBenchmark {
+	@Param({ "kevin16" })
+	public String voiceName;
+
+	@Param({ "4", "16", "64" })
+	public int words;
+
+	@Param({ "false", "true" })
+	public boolean streamLPC;
+
+	private Voice voice;
+	private String sentence;
+	private int processors;
+	private final FirstWritePlayer player = new FirstWritePlayer();
+
+	@Setup
+	public void allocate() throws IOException {
+		voice = BenchmarkData.getVoice(voiceName);
+		List<UtteranceProcessor> list = voice.getUtteranceProcessors();
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) instanceof UnitConcatenator) {
+				list.set(i, new UnitConcatenator(streamLPC));
+			}
+		}
+		processors = list.size();
+
+		String[] corpus = BenchmarkData.readWords(BenchmarkData.DEFAULT_TEXT);
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < words; i++) {
+			text.append(corpus[i]).append(i == words - 1 ? "." : " ");
+		}
+		sentence = text.toString();
+	}
+
+	@TearDown
+	public void deallocate() {
+		voice.deallocate();
+	}
+
+	@Benchmark
+	public boolean firstAudio() throws ProcessException, IOException {
+		List<Utterance> utterances = BenchmarkData.tokenize(voice, sentence);
+		Utterance utterance = utterances.get(0);
+		BenchmarkData.process(voice, utterances.subList(0, 1), 0, processors);
+		player.utterance = utterance;
+		LPCResult lpcResult = (LPCResult) utterance.getObject("target_lpcres");
+		return lpcResult.playWave(player, utterance);
+	}
+
+	/** Stops the utterance at its first samples. */
+	private static class FirstWritePlayer extends NullAudioPlayer {
+		Utterance utterance;
+
+		public boolean write(byte[] audioData, int offset, int size) {
+			utterance.getSpeakable().completed();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.relp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.speech.freetts.BenchmarkData;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.Voice;
+
+/** Times the LPC resynthesis of the default corpus from the LPC results that the voice builds for it. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LPCResultBenchmark {
+	@Param({ "kevin16", "alan" })
+	public String voiceName;
+
+	private LPCResult[] results;
+	private short[] samples;
+
+	@Setup
+	public void setUp() throws Exception {
+		Voice voice = BenchmarkData.getVoice(voiceName);
+		List<LPCResult> lpcResults = new ArrayList<LPCResult>();
+		int maxSamples = 0;
+		for (Utterance utterance : BenchmarkData.synthesize(voice)) {
+			LPCResult lpcResult = (LPCResult) utterance.getObject("target_lpcres");
+			if (lpcResult != null) {
+				lpcResults.add(lpcResult);
+				maxSamples = Math.max(maxSamples, lpcResult.getNumberOfSamples());
+			}
+		}
+		voice.deallocate();
+		results = lpcResults.toArray(new LPCResult[lpcResults.size()]);
+		samples = new short[maxSamples];
+	}
+
+	@Benchmark
+	public int synthesize() {
+		int total = 0;
+		for (int i = 0; i < results.length; i++) {
+			total += results[i].synthesize(samples, 0);
+		}
+		return total;
+	}
+}
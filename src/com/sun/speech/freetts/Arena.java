@@ -0,0 +1,82 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Keeps the objects that the utterances of a voice are done with, so that the next utterances take them instead of
+ * allocating new ones. Objects are given back reset, with no reference to the utterance they served, and are taken by
+ * their class. The arena works on whole per-utterance objects, such as an utterance or the scratch of a Viterbi search,
+ * not on the many small objects they hold, which they recycle themselves.
+ * <p>
+ * At most a fixed number of objects of each class are kept; the ones given beyond that are left to the garbage
+ * collector. An arena may be used by several threads. */
+public class Arena {
+	private final int capacity;
+	private final Map<Class<?>, List<Object>> free = new HashMap<Class<?>, List<Object>>();
+	private long taken;
+	private long reused;
+
+	/** Creates an arena.
+	 * @param capacity the number of objects of each class that are kept */
+	public Arena(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/** Takes an object of the given class.
+	 * @param type the class of the object
+	 * @return an object given back earlier, or null if there is none and a new one must be made */
+	public synchronized <T> T take(Class<T> type) {
+		taken++;
+		List<Object> objects = free.get(type);
+		if (objects == null || objects.isEmpty()) {
+			return null;
+		}
+		reused++;
+		return type.cast(objects.remove(objects.size() - 1));
+	}
+
+	/** Gives back an object that was reset, for a later {@link #take}.
+	 * @param object the object */
+	public synchronized void give(Object object) {
+		List<Object> objects = free.get(object.getClass());
+		if (objects == null) {
+			objects = new ArrayList<Object>(capacity);
+			free.put(object.getClass(), objects);
+		}
+		if (objects.size() < capacity) {
+			objects.add(object);
+		}
+	}
+
+	/** Returns the number of objects of the given class the arena keeps now.
+	 * @param type the class of the objects
+	 * @return the number of objects */
+	public synchronized int getFree(Class<?> type) {
+		List<Object> objects = free.get(type);
+		return objects == null ? 0 : objects.size();
+	}
+
+	/** Returns the number of objects that were asked for.
+	 * @return the number of calls to take */
+	public synchronized long getTaken() {
+		return taken;
+	}
+
+	/** Returns the number of objects that were given back and taken again.
+	 * @return the number of objects reused */
+	public synchronized long getReused() {
+		return reused;
+	}
+}
@@ -0,0 +1,570 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFormat;
+
+import com.sun.speech.freetts.audio.AudioPlayer;
+import com.sun.speech.freetts.util.Utilities;
+
+/** Keeps the audio of utterances that have been spoken, so that an utterance that is spoken again with the same voice
+ * and settings is played without being synthesized. Prompts that are repeated over and over, as in telephone systems,
+ * then cost no more than copying their audio to the player.
+ * <p>
+ * The audio is found by a key made of the name of the voice, its rate, pitch, pitch range, pitch shift, duration
+ * stretch and volume, and the text of the utterance with its surrounding white space removed and runs of blanks
+ * folded into one. The cache has two levels: the audio most recently used is kept in memory, up to a number of bytes,
+ * and the audio evicted from memory can be kept as raw PCM files in a directory, also up to a number of bytes. The
+ * directory may be shared between runs; it is read when the cache is created.
+ * <p>
+ * {@link Voice#speak(FreeTTSSpeakable)} looks each utterance up before processing it. On a hit, the processors are
+ * skipped and the audio output plays the cached audio; on a miss, the audio output records the audio while it writes
+ * it, and adds it to the cache once the whole utterance has been written. The default cache, used by every voice, is
+ * set up by these system properties:
+ *
+ * <pre>
+ *   -Dcom.sun.speech.freetts.audioCache.memorySize=16777216
+ *   -Dcom.sun.speech.freetts.audioCache.directory=/var/cache/freetts
+ *   -Dcom.sun.speech.freetts.audioCache.diskSize=268435456
+ * </pre>
+ *
+ * There is no default cache unless the memory size or the directory is set. */
+public class AudioCache {
+	/** Logger instance. */
+	private static final Logger LOGGER = Logger.getLogger(AudioCache.class.getName());
+
+	/** The system property for the number of bytes of audio kept in memory by the default cache. */
+	public final static String PROP_MEMORY_SIZE = "com.sun.speech.freetts.audioCache.memorySize";
+
+	/** The system property for the directory where the default cache keeps audio. */
+	public final static String PROP_DIRECTORY = "com.sun.speech.freetts.audioCache.directory";
+
+	/** The system property for the number of bytes of audio kept in the directory by the default cache. */
+	public final static String PROP_DISK_SIZE = "com.sun.speech.freetts.audioCache.diskSize";
+
+	/** The name of the utterance object holding the key of an utterance whose audio should be cached. */
+	public final static String UTT_KEY = "audio_cache_key";
+
+	/** The name of the utterance object holding the cached audio of an utterance. */
+	public final static String UTT_AUDIO = "audio_cache_audio";
+
+	// the audio written to the directory is 16 bit signed big-endian mono, as written by the relp AudioOutput
+	private final static String SUFFIX = ".pcm";
+	private final static int WRITE_SIZE = 8192;
+
+	private static AudioCache defaultCache;
+	private static boolean defaultCreated = false;
+
+	private final long memorySize;
+	private final File directory;
+	private final long diskSize;
+	private final LinkedHashMap<String, Audio> memory = new LinkedHashMap<String, Audio>(16, 0.75f, true);
+	private final LinkedHashMap<String, File> disk = new LinkedHashMap<String, File>(16, 0.75f, true);
+	private long memoryUsed = 0;
+	private long diskUsed = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Creates an audio cache.
+	 * @param memorySize the number of bytes of audio kept in memory
+	 * @param directory the directory where audio evicted from memory is kept, or null to keep audio only in memory
+	 * @param diskSize the number of bytes of audio kept in the directory
+	 * @throws IOException if the directory can't be created */
+	public AudioCache(long memorySize, File directory, long diskSize) throws IOException {
+		this.memorySize = memorySize;
+		this.directory = directory;
+		this.diskSize = diskSize;
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Can't create audio cache directory " + directory);
+			}
+			readDirectory();
+		}
+	}
+
+	/** Returns the cache set up by the system properties, creating it the first time.
+	 * @return the default cache, or null if the properties don't ask for one */
+	public static synchronized AudioCache getDefault() {
+		if (!defaultCreated) {
+			defaultCreated = true;
+			long memorySize = Utilities.getLong(PROP_MEMORY_SIZE, 0).longValue();
+			String directory = Utilities.getProperty(PROP_DIRECTORY, null);
+			if (memorySize > 0 || directory != null) {
+				try {
+					defaultCache = new AudioCache(memorySize, directory == null ? null : new File(directory),
+							Utilities.getLong(PROP_DISK_SIZE, 256L << 20).longValue());
+				} catch (IOException ioe) {
+					LOGGER.warning("Can't create the audio cache: " + ioe.getMessage());
+				}
+			}
+		}
+		return defaultCache;
+	}
+
+	/** Returns the key of an utterance spoken by a voice.
+	 * @param voice the voice
+	 * @param utterance the utterance
+	 * @return the key */
+	public static String getKey(Voice voice, Utterance utterance) {
+		StringBuilder key = new StringBuilder();
+		key.append(voice.getName()).append('\n');
+		key.append(voice.getRate()).append(' ').append(voice.getPitch()).append(' ');
+		key.append(voice.getPitchRange()).append(' ').append(voice.getPitchShift()).append(' ');
+		key.append(voice.getDurationStretch()).append(' ').append(voice.getVolume()).append('\n');
+		normalize(utterance.getString("input_text"), key);
+		return key.toString();
+	}
+
+	/** Appends text with its surrounding white space removed and each run of blanks folded into one space. Line breaks
+	 * are kept, as the tokenizer reads them as phrase breaks.
+	 * @param text the text
+	 * @param out where the normalized text is appended */
+	static void normalize(String text, StringBuilder out) {
+		int start = 0;
+		int end = text.length();
+		while (start < end && Character.isWhitespace(text.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		boolean blank = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == ' ' || c == '\t') {
+				blank = true;
+			} else {
+				if (blank) {
+					out.append(' ');
+					blank = false;
+				}
+				out.append(c);
+			}
+		}
+	}
+
+	/** Finds the audio of an utterance, in memory or else in the directory.
+	 * @param key the key of the utterance
+	 * @return the audio, or null if it is not cached */
+	public Audio get(String key) {
+		Audio audio;
+		File file;
+		synchronized (this) {
+			audio = memory.get(key);
+			file = audio == null ? disk.get(getDigest(key)) : null;
+		}
+		if (audio == null && file != null) {
+			audio = readFile(file);
+			if (audio != null) {
+				putMemory(key, audio);
+				diskHits.incrementAndGet();
+			}
+		}
+		if (audio != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return audio;
+	}
+
+	/** Adds the audio of an utterance to the cache.
+	 * @param key the key of the utterance
+	 * @param format the format of the audio
+	 * @param data the audio */
+	public void put(String key, AudioFormat format, byte[] data) {
+		putMemory(key, new Audio(format, data));
+	}
+
+	/** Returns a player that writes to the given player and adds the audio of the utterance to the cache when it ends.
+	 * @param key the key of the utterance
+	 * @param player the player
+	 * @return the recording player */
+	public AudioPlayer record(String key, AudioPlayer player) {
+		return new RecordingPlayer(key, player);
+	}
+
+	/** Returns the number of lookups that found audio, in memory or in the directory.
+	 * @return the number of hits */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Returns the number of lookups that found audio in the directory only.
+	 * @return the number of directory hits */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/** Returns the number of lookups that found no audio.
+	 * @return the number of misses */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Returns the number of bytes of audio kept in memory.
+	 * @return the number of bytes */
+	public synchronized long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	/** Returns the number of bytes of audio kept in the directory.
+	 * @return the number of bytes */
+	public synchronized long getDiskUsed() {
+		return diskUsed;
+	}
+
+	/** Removes all audio from memory and from the directory. */
+	public void clear() {
+		File[] files;
+		synchronized (this) {
+			memory.clear();
+			memoryUsed = 0;
+			files = disk.values().toArray(new File[disk.size()]);
+			disk.clear();
+			diskUsed = 0;
+		}
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+	}
+
+	/** Adds audio to memory, moving the least recently used audio to the directory to stay within the memory size.
+	 * @param key the key of the utterance
+	 * @param audio the audio */
+	private void putMemory(String key, Audio audio) {
+		Map<String, Audio> evicted = new LinkedHashMap<String, Audio>();
+		synchronized (this) {
+			if (audio.data.length <= memorySize) {
+				Audio old = memory.put(key, audio);
+				if (old != null) {
+					memoryUsed -= old.data.length;
+				}
+				memoryUsed += audio.data.length;
+			} else {
+				evicted.put(key, audio);
+			}
+			for (Iterator<Map.Entry<String, Audio>> i = memory.entrySet().iterator(); memoryUsed > memorySize
+					&& i.hasNext();) {
+				Map.Entry<String, Audio> eldest = i.next();
+				i.remove();
+				memoryUsed -= eldest.getValue().data.length;
+				evicted.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+		if (directory != null) {
+			for (Map.Entry<String, Audio> entry : evicted.entrySet()) {
+				writeFile(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/** Writes audio to the directory, unless it is there already, removing the least recently used files to stay within
+	 * the disk size.
+	 * @param key the key of the utterance
+	 * @param audio the audio */
+	private void writeFile(String key, Audio audio) {
+		String digest = getDigest(key);
+		synchronized (this) {
+			if (disk.containsKey(digest) || audio.data.length > diskSize || !isDiskFormat(audio.format)) {
+				return;
+			}
+		}
+
+		File file = new File(directory, digest + '-' + Math.round(audio.format.getSampleRate()) + SUFFIX);
+		File temp = new File(directory, file.getName() + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(audio.data);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				throw new IOException("Can't rename " + temp);
+			}
+		} catch (IOException ioe) {
+			temp.delete();
+			LOGGER.warning("Can't write cached audio: " + ioe.getMessage());
+			return;
+		}
+
+		File[] removed;
+		synchronized (this) {
+			File old = disk.put(digest, file);
+			if (old == null) {
+				diskUsed += file.length();
+			}
+			removed = trimDisk();
+		}
+		for (int i = 0; i < removed.length; i++) {
+			removed[i].delete();
+		}
+	}
+
+	/** Removes the least recently used files from the index until the directory is within the disk size.
+	 * @return the files removed, which are still to be deleted */
+	private File[] trimDisk() {
+		LinkedHashMap<String, File> removed = new LinkedHashMap<String, File>();
+		for (Iterator<Map.Entry<String, File>> i = disk.entrySet().iterator(); diskUsed > diskSize && i.hasNext();) {
+			Map.Entry<String, File> eldest = i.next();
+			i.remove();
+			diskUsed -= eldest.getValue().length();
+			removed.put(eldest.getKey(), eldest.getValue());
+		}
+		return removed.values().toArray(new File[removed.size()]);
+	}
+
+	/** Reads the cached audio in a file.
+	 * @param file the file
+	 * @return the audio, or null if the file can't be read */
+	private Audio readFile(File file) {
+		String name = file.getName();
+		try {
+			int sampleRate = Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length()));
+			byte[] data = new byte[(int) file.length()];
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				in.readFully(data);
+			} finally {
+				in.close();
+			}
+			// the file is touched so that it is kept longer when the directory is read again
+			file.setLastModified(System.currentTimeMillis());
+			return new Audio(new AudioFormat(sampleRate, 16, 1, true, true), data);
+		} catch (IOException ioe) {
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Can't read cached audio " + file + ": " + ioe.getMessage());
+			}
+			return null;
+		} catch (NumberFormatException nfe) {
+			LOGGER.warning("Not cached audio: " + file);
+			return null;
+		}
+	}
+
+	/** Reads the files of the directory into the index, oldest first, and removes the oldest ones that don't fit. */
+	private void readDirectory() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long ta = a.lastModified();
+				long tb = b.lastModified();
+				return ta < tb ? -1 : (ta == tb ? 0 : 1);
+			}
+		});
+		File[] removed;
+		synchronized (this) {
+			for (int i = 0; i < files.length; i++) {
+				String name = files[i].getName();
+				if (name.endsWith(SUFFIX) && name.indexOf('-') > 0) {
+					disk.put(name.substring(0, name.indexOf('-')), files[i]);
+					diskUsed += files[i].length();
+				}
+			}
+			removed = trimDisk();
+		}
+		for (int i = 0; i < removed.length; i++) {
+			removed[i].delete();
+		}
+	}
+
+	/** Returns the digest of a key. The file holding the audio of the key is named after the digest and the sample rate
+	 * of the audio, which is the only part of the format that changes between voices.
+	 * @param key the key
+	 * @return the digest, in hexadecimal */
+	private static String getDigest(String key) {
+		StringBuilder name = new StringBuilder();
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+			for (int i = 0; i < digest.length; i++) {
+				name.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+				name.append(Character.forDigit(digest[i] & 0xf, 16));
+			}
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new Error(nsae);
+		} catch (UnsupportedEncodingException uee) {
+			throw new Error(uee);
+		}
+		return name.toString();
+	}
+
+	/** Determines if audio in the given format can be written to the directory.
+	 * @param format the format
+	 * @return true if the format is 16 bit signed big-endian mono */
+	private static boolean isDiskFormat(AudioFormat format) {
+		return format != null && format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED
+				&& format.getSampleSizeInBits() == 16 && format.getChannels() == 1 && format.isBigEndian();
+	}
+
+	/** The cached audio of one utterance. */
+	public static class Audio {
+		private final AudioFormat format;
+		private final byte[] data;
+
+		/** Creates cached audio.
+		 * @param format the format of the audio
+		 * @param data the audio */
+		Audio(AudioFormat format, byte[] data) {
+			this.format = format;
+			this.data = data;
+		}
+
+		/** Returns the format of the audio.
+		 * @return the format */
+		public AudioFormat getFormat() {
+			return format;
+		}
+
+		/** Returns the number of bytes of audio.
+		 * @return the number of bytes */
+		public int getSize() {
+			return data.length;
+		}
+
+		/** Plays the audio on a player, as one utterance.
+		 * @param player the player
+		 * @param speakable the speakable the utterance belongs to; playing stops if it is completed
+		 * @return true if all the audio was played
+		 * @throws IOException if the player fails */
+		public boolean play(AudioPlayer player, FreeTTSSpeakable speakable) throws IOException {
+			boolean ok = true;
+			player.begin(data.length);
+			for (int offset = 0; (ok &= !speakable.isCompleted()) && offset < data.length; offset += WRITE_SIZE) {
+				ok = player.write(data, offset, Math.min(WRITE_SIZE, data.length - offset));
+			}
+			if (ok &= !speakable.isCompleted()) {
+				ok = player.end();
+			}
+			return ok;
+		}
+	}
+
+	/** Passes audio on to a player and keeps a copy, which is added to the cache when the utterance ends. */
+	private class RecordingPlayer implements AudioPlayer {
+		private final String key;
+		private final AudioPlayer player;
+		private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+		private boolean complete = true;
+
+		RecordingPlayer(String key, AudioPlayer player) {
+			this.key = key;
+			this.player = player;
+		}
+
+		public void setAudioFormat(AudioFormat format) {
+			player.setAudioFormat(format);
+		}
+
+		public AudioFormat getAudioFormat() {
+			return player.getAudioFormat();
+		}
+
+		public void pause() {
+			player.pause();
+		}
+
+		public void resume() {
+			player.resume();
+		}
+
+		public void reset() {
+			player.reset();
+		}
+
+		public boolean drain() {
+			return player.drain();
+		}
+
+		public void begin(int size) throws IOException {
+			recorded.reset();
+			complete = true;
+			player.begin(size);
+		}
+
+		public boolean end() throws IOException {
+			boolean ok = player.end();
+			if (ok && complete) {
+				put(key, player.getAudioFormat(), recorded.toByteArray());
+			}
+			return ok;
+		}
+
+		public void cancel() {
+			complete = false;
+			player.cancel();
+		}
+
+		public void close() throws IOException {
+			player.close();
+		}
+
+		public float getVolume() {
+			return player.getVolume();
+		}
+
+		public void setVolume(float volume) {
+			player.setVolume(volume);
+		}
+
+		public long getTime() {
+			return player.getTime();
+		}
+
+		public void resetTime() {
+			player.resetTime();
+		}
+
+		public void startFirstSampleTimer() {
+			player.startFirstSampleTimer();
+		}
+
+		public boolean write(byte[] audioData) throws IOException {
+			return write(audioData, 0, audioData.length);
+		}
+
+		public boolean write(byte[] audioData, int offset, int size) throws IOException {
+			boolean ok = player.write(audioData, offset, size);
+			if (ok) {
+				recorded.write(audioData, offset, size);
+			} else {
+				complete = false;
+			}
+			return ok;
+		}
+
+		public void showMetrics() {
+			player.showMetrics();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+/** The features that feature processors gave for the items of an utterance, kept until the utterance is next modified.
+ * The accent, tone and duration CARTs and the contour generator ask for the same features of the same syllables and
+ * segments, through paths such as "p.accented" and "accented" that lead to the same item; with a memo each is derived
+ * once between two modifications.
+ * <p>
+ * A feature is kept with the modification count of the utterance it was found at, and is only used while the count is
+ * the same, so a modification drops every feature at once without touching the table. The table is open addressed and
+ * keyed by the item and the slot of the feature; entries of an older count are free. */
+class FeatureMemo {
+	private final Utterance utterance;
+
+	private Item[] items = new Item[256];
+	private int[] slots = new int[256];
+	private int[] stamps = new int[256];
+	private Object[] values = new Object[256];
+	// the entries of the current modification count
+	private int size;
+	private int stamp;
+
+	private long hits;
+	private long lookups;
+
+	/** Creates the memo of an utterance.
+	 * @param utterance the utterance */
+	FeatureMemo(Utterance utterance) {
+		this.utterance = utterance;
+		stamp = utterance.getModificationCount();
+	}
+
+	/** Returns the feature a feature processor gave for an item, if the utterance was not modified since.
+	 * @param item the item
+	 * @param slot the slot of the feature
+	 * @return the feature, or null if it must be processed again */
+	Object get(Item item, int slot) {
+		lookups++;
+		if (!isCurrent()) {
+			return null;
+		}
+		int mask = items.length - 1;
+		for (int i = hash(item, slot) & mask;; i = (i + 1) & mask) {
+			if (stamps[i] != stamp || items[i] == null) {
+				return null;
+			}
+			if (items[i] == item && slots[i] == slot) {
+				hits++;
+				return values[i];
+			}
+		}
+	}
+
+	/** Keeps the feature a feature processor gave for an item.
+	 * @param item the item
+	 * @param slot the slot of the feature
+	 * @param value the feature
+	 * @param modifications the modification count of the utterance before the feature was processed; if the utterance
+	 * was modified while processing it, it is not kept */
+	void put(Item item, int slot, Object value, int modifications) {
+		if (modifications != utterance.getModificationCount() || !isCurrent()) {
+			return;
+		}
+		if (size * 2 >= items.length) {
+			grow();
+		}
+		insert(item, slot, value);
+	}
+
+	/** Resets the counts of this memo, for an utterance that is recycled. */
+	void reset() {
+		hits = 0;
+		lookups = 0;
+	}
+
+	/** Returns the number of features that were found in the memo.
+	 * @return the number of hits */
+	long getHits() {
+		return hits;
+	}
+
+	/** Returns the number of features that were looked up in the memo.
+	 * @return the number of lookups */
+	long getLookups() {
+		return lookups;
+	}
+
+	/** Drops the entries of an older modification count.
+	 * @return true if the memo holds the entries of the current count */
+	private boolean isCurrent() {
+		int modifications = utterance.getModificationCount();
+		if (modifications != stamp) {
+			stamp = modifications;
+			size = 0;
+			return false;
+		}
+		return true;
+	}
+
+	/** Inserts an entry in a free place of the table. */
+	private void insert(Item item, int slot, Object value) {
+		int mask = items.length - 1;
+		int i = hash(item, slot) & mask;
+		while (stamps[i] == stamp && items[i] != null) {
+			i = (i + 1) & mask;
+		}
+		items[i] = item;
+		slots[i] = slot;
+		stamps[i] = stamp;
+		values[i] = value;
+		size++;
+	}
+
+	/** Doubles the table, keeping the entries of the current count. */
+	private void grow() {
+		Item[] oldItems = items;
+		int[] oldSlots = slots;
+		int[] oldStamps = stamps;
+		Object[] oldValues = values;
+		int capacity = oldItems.length * 2;
+		items = new Item[capacity];
+		slots = new int[capacity];
+		stamps = new int[capacity];
+		values = new Object[capacity];
+		size = 0;
+		for (int i = 0; i < oldItems.length; i++) {
+			if (oldStamps[i] == stamp && oldItems[i] != null) {
+				insert(oldItems[i], oldSlots[i], oldValues[i]);
+			}
+		}
+	}
+
+	private static int hash(Item item, int slot) {
+		int h = System.identityHashCode(item) * 31 + slot;
+		return h ^ (h >>> 16);
+	}
+}
@@ -22,7 +22,7 @@ import java.util.Map;
 import com.sun.speech.freetts.util.Utilities;
 
 /** Implementation of the FeatureSet interface. */
-public class FeatureSetImpl implements FeatureSet {
+public class FeatureSetImpl implements SlottedFeatureSet {
 	private final Map featureMap;
 	static DecimalFormat formatter;
 
@@ -31,6 +31,11 @@ public class FeatureSetImpl implements FeatureSet {
 		featureMap = new LinkedHashMap();
 	}
 
+	/** Removes all the features of this set, keeping the room they took for the features set next. */
+	public void clear() {
+		featureMap.clear();
+	}
+
 	/** Determines if the given feature is present.
 	 * @param name the name of the feature of interest
 	 * @return true if the named feature is present */
@@ -103,6 +108,78 @@ public class FeatureSetImpl implements FeatureSet {
 		featureMap.put(name, value);
 	}
 
+	/** Determines if the feature in the given slot is present.
+	 * @param slot the slot of the feature of interest
+	 * @return true if the feature is present */
+	public boolean isPresent(int slot) {
+		return isPresent(FeatureSlots.getName(slot));
+	}
+
+	/** Removes the feature in the given slot from this set of features.
+	 * @param slot the slot of the feature of interest */
+	public void remove(int slot) {
+		remove(FeatureSlots.getName(slot));
+	}
+
+	/** Convenience method that returns the feature in the given slot as a string.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found
+	 * @throws ClassCastException if the associated value is not a String */
+	public String getString(int slot) {
+		return getString(FeatureSlots.getName(slot));
+	}
+
+	/** Convenience method that returns the feature in the given slot as a int.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not an int. */
+	public int getInt(int slot) {
+		return getInt(FeatureSlots.getName(slot));
+	}
+
+	/** Convenience method that returns the feature in the given slot as a float.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not a float */
+	public float getFloat(int slot) {
+		return getFloat(FeatureSlots.getName(slot));
+	}
+
+	/** Returns the feature in the given slot as an object.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found */
+	public Object getObject(int slot) {
+		return getObject(FeatureSlots.getName(slot));
+	}
+
+	/** Convenience method that sets the feature in the given slot as a int.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setInt(int slot, int value) {
+		setInt(FeatureSlots.getName(slot), value);
+	}
+
+	/** Convenience method that sets the feature in the given slot as a float.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setFloat(int slot, float value) {
+		setFloat(FeatureSlots.getName(slot), value);
+	}
+
+	/** Convenience method that sets the feature in the given slot as a String.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setString(int slot, String value) {
+		setString(FeatureSlots.getName(slot), value);
+	}
+
+	/** Sets the feature in the given slot.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setObject(int slot, Object value) {
+		setObject(FeatureSlots.getName(slot), value);
+	}
+
 	/** Dumps the FeatureSet in textual form. The feature name is not included in the dump.
 	 * @param output where to send the formatted output
 	 * @param pad the padding
@@ -0,0 +1,85 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The registry of feature names. Every feature name is given a small integer, its slot, the first time it is asked
+ * for, and keeps it for the life of the JVM. Code that reads or writes a feature often looks its slot up once and then
+ * uses the slot methods of {@link SlottedFeatureSet}, which need not hash the name.
+ * <p>
+ * Slots are never reclaimed, so they are meant for the fixed vocabulary of feature names used by the code and the
+ * voice data, not for names built from input text. */
+public class FeatureSlots {
+	private final static ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] names = new String[64];
+	private static int count;
+
+	private FeatureSlots() {
+	}
+
+	/** Returns the slot of a feature name, giving the name a new slot if it has none yet.
+	 * @param name the feature name
+	 * @return the slot */
+	public static int getSlot(String name) {
+		Integer slot = slots.get(name);
+		if (slot != null) {
+			return slot.intValue();
+		}
+		return addSlot(name);
+	}
+
+	/** Returns the slot of a feature name, without giving the name a slot if it has none. A name without a slot is not
+	 * the name of any feature that was set.
+	 * @param name the feature name
+	 * @return the slot, or -1 if the name has none */
+	public static int findSlot(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? -1 : slot.intValue();
+	}
+
+	/** Returns the feature name of a slot.
+	 * @param slot the slot
+	 * @return the feature name
+	 * @throws ArrayIndexOutOfBoundsException if the slot was never given out */
+	public static String getName(int slot) {
+		String name = names[slot];
+		if (name == null) {
+			throw new ArrayIndexOutOfBoundsException(slot);
+		}
+		return name;
+	}
+
+	/** Returns the number of slots given out so far.
+	 * @return the number of slots */
+	public static synchronized int size() {
+		return count;
+	}
+
+	/** Gives a name a new slot, unless another thread just did.
+	 * @param name the feature name
+	 * @return the slot */
+	private static synchronized int addSlot(String name) {
+		Integer slot = slots.get(name);
+		if (slot != null) {
+			return slot.intValue();
+		}
+		if (count == names.length) {
+			String[] newNames = new String[count * 2];
+			System.arraycopy(names, 0, newNames, 0, count);
+			names = newNames;
+		}
+		// the name is stored before the slot is published through the map
+		names[count] = name;
+		slots.put(name, Integer.valueOf(count));
+		return count++;
+	}
+}
@@ -0,0 +1,395 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/** Keeps the relations built by the front-end processors of a voice, so that a sentence that is spoken again skips
+ * tokenizing to words, tagging, phrasing, segmenting, durations and F0, and goes straight to unit selection. This
+ * complements the {@link AudioCache} when the text is stable but the audio differs, for example because the volume
+ * changes between requests.
+ * <p>
+ * The relations are found by a key made of the name of the voice, its rate, pitch, pitch range, pitch shift and
+ * duration stretch, which are all the front-end reads of the voice settings, and the text of the tokens of the
+ * utterance. They are kept in a compact binary form: the items of the relations, in the order of the relations and of
+ * the items, with the features of the contents that items share written where the contents first appears. Feature
+ * names and string values are written once per entry and referred to by number after that. Only String, Integer and
+ * Float features are kept; an utterance with any other feature value is not cached.
+ * <p>
+ * A voice uses the cache for the processors it declares as its front-end, see {@link Voice#getFrontEndSize}. The
+ * default cache, used by every voice, keeps the number of bytes given by the system property
+ * <code>com.sun.speech.freetts.frontEndCache.size</code>; there is none unless the property is set. */
+public class FrontEndCache {
+	/** The system property for the number of bytes kept by the default cache. */
+	public final static String PROP_SIZE = "com.sun.speech.freetts.frontEndCache.size";
+
+	/** The name of the utterance feature holding the key of an utterance whose relations should be cached. */
+	public final static String UTT_KEY = "front_end_cache_key";
+
+	/** The name of the utterance feature that is set when the relations of an utterance came from the cache. */
+	public final static String UTT_RESTORED = "front_end_restored";
+
+	// the relations made by the front-end, in the order they are made
+	private final static String[] RELATIONS = { Relation.TOKEN, Relation.WORD, Relation.PHRASE, Relation.SYLLABLE,
+			Relation.SYLLABLE_STRUCTURE, Relation.SEGMENT, Relation.TARGET };
+
+	// the token features that depend on where the utterance is in the text
+	private final static String[] POSITION_FEATURES = { "file_pos", "line_number" };
+
+	private final static byte NULL = 0;
+	private final static byte STRING = 1;
+	private final static byte INT = 2;
+	private final static byte FLOAT = 3;
+
+	private static FrontEndCache defaultCache;
+	private static boolean defaultCreated = false;
+
+	private final long size;
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	private long used = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Creates a front-end cache.
+	 * @param size the number of bytes of encoded relations kept */
+	public FrontEndCache(long size) {
+		this.size = size;
+	}
+
+	/** Returns the cache set up by the system properties, creating it the first time.
+	 * @return the default cache, or null if the properties don't ask for one */
+	public static synchronized FrontEndCache getDefault() {
+		if (!defaultCreated) {
+			defaultCreated = true;
+			long size = Utilities.getLong(PROP_SIZE, 0).longValue();
+			if (size > 0) {
+				defaultCache = new FrontEndCache(size);
+			}
+		}
+		return defaultCache;
+	}
+
+	/** Returns the key of an utterance processed by a voice.
+	 * @param voice the voice
+	 * @param utterance the utterance, as it was made from its tokens
+	 * @return the key */
+	public static String getKey(Voice voice, Utterance utterance) {
+		StringBuilder key = new StringBuilder();
+		key.append(voice.getName()).append('\n');
+		key.append(voice.getRate()).append(' ').append(voice.getPitch()).append(' ');
+		key.append(voice.getPitchRange()).append(' ').append(voice.getPitchShift()).append(' ');
+		key.append(voice.getDurationStretch()).append('\n');
+		key.append(utterance.getString("input_text"));
+		return key.toString();
+	}
+
+	/** Replaces the relations of an utterance with the ones cached for its key. The token position features of the
+	 * utterance are kept.
+	 * @param key the key of the utterance
+	 * @param utterance the utterance, as it was made from its tokens
+	 * @return true if the relations were found */
+	public boolean restore(String key, Utterance utterance) {
+		byte[] data;
+		synchronized (this) {
+			data = entries.get(key);
+		}
+		if (data == null) {
+			misses.incrementAndGet();
+			return false;
+		}
+		hits.incrementAndGet();
+
+		List<FeatureSet> positions = new ArrayList<FeatureSet>();
+		Relation tokens = utterance.getRelation(Relation.TOKEN);
+		for (Item token = tokens == null ? null : tokens.getHead(); token != null; token = token.getNext()) {
+			positions.add(token.getFeatures());
+		}
+		decode(data, utterance);
+		tokens = utterance.getRelation(Relation.TOKEN);
+		Iterator<FeatureSet> p = positions.iterator();
+		for (Item token = tokens == null ? null : tokens.getHead(); token != null && p.hasNext(); token = token
+				.getNext()) {
+			FeatureSet position = p.next();
+			for (int i = 0; i < POSITION_FEATURES.length; i++) {
+				token.getFeatures().setObject(POSITION_FEATURES[i], position.getObject(POSITION_FEATURES[i]));
+			}
+		}
+		return true;
+	}
+
+	/** Adds the relations of an utterance that went through the front-end to the cache.
+	 * @param key the key the utterance had before the front-end
+	 * @param utterance the utterance
+	 * @return true if the relations were added; false if they can't be cached or don't fit */
+	public boolean store(String key, Utterance utterance) {
+		byte[] data = encode(utterance);
+		if (data == null || data.length > size) {
+			return false;
+		}
+		synchronized (this) {
+			byte[] old = entries.put(key, data);
+			if (old != null) {
+				used -= old.length;
+			}
+			used += data.length;
+			for (Iterator<byte[]> i = entries.values().iterator(); used > size && i.hasNext();) {
+				used -= i.next().length;
+				i.remove();
+			}
+		}
+		return true;
+	}
+
+	/** Returns the number of lookups that found relations.
+	 * @return the number of hits */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Returns the number of lookups that found no relations.
+	 * @return the number of misses */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Returns the number of bytes of encoded relations kept.
+	 * @return the number of bytes */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/** Removes all entries. */
+	public synchronized void clear() {
+		entries.clear();
+		used = 0;
+	}
+
+	/** Encodes the front-end relations of an utterance.
+	 * @param utterance the utterance
+	 * @return the encoded relations, or null if a feature has a value that can't be encoded */
+	static byte[] encode(Utterance utterance) {
+		Encoder encoder = new Encoder();
+		int count = 0;
+		for (int i = 0; i < RELATIONS.length; i++) {
+			if (utterance.hasRelation(RELATIONS[i])) {
+				count++;
+			}
+		}
+		encoder.writeInt(count);
+		for (int i = 0; i < RELATIONS.length; i++) {
+			Relation relation = utterance.getRelation(RELATIONS[i]);
+			if (relation != null) {
+				encoder.writeString(RELATIONS[i]);
+				if (!encoder.writeItems(relation.getHead())) {
+					return null;
+				}
+			}
+		}
+		return encoder.toByteArray();
+	}
+
+	/** Replaces the relations of an utterance with encoded ones.
+	 * @param data the encoded relations
+	 * @param utterance the utterance */
+	static void decode(byte[] data, Utterance utterance) {
+		Decoder decoder = new Decoder(data);
+		for (int count = decoder.readInt(); count > 0; count--) {
+			Relation relation = utterance.createRelation(decoder.readString());
+			decoder.readItems(relation, null);
+		}
+	}
+
+	/** Writes relations into a growing array of bytes. */
+	private static class Encoder extends ByteArrayOutputStream {
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+		private final IdentityHashMap<ItemContents, Integer> contents = new IdentityHashMap<ItemContents, Integer>();
+
+		Encoder() {
+			super(1024);
+		}
+
+		/** Writes a list of items and their daughters.
+		 * @param head the first item of the list
+		 * @return false if a feature can't be encoded */
+		boolean writeItems(Item head) {
+			int count = 0;
+			for (Item item = head; item != null; item = item.getNext()) {
+				count++;
+			}
+			writeInt(count);
+			for (Item item = head; item != null; item = item.getNext()) {
+				ItemContents shared = item.getSharedContents();
+				Integer index = contents.get(shared);
+				if (index != null) {
+					writeInt(index.intValue());
+				} else {
+					writeInt(contents.size());
+					contents.put(shared, Integer.valueOf(contents.size()));
+					if (!writeFeatures((SlotFeatureSet) shared.getFeatures())) {
+						return false;
+					}
+				}
+				if (!writeItems(item.getDaughter())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/** Writes the features of an item.
+		 * @param features the features
+		 * @return false if a feature can't be encoded */
+		private boolean writeFeatures(SlotFeatureSet features) {
+			int count = features.size();
+			writeInt(count);
+			for (int i = 0; i < count; i++) {
+				int slot = features.getSlotAt(i);
+				writeString(FeatureSlots.getName(slot));
+				Object value = features.getObject(slot);
+				if (value == null) {
+					write(NULL);
+				} else if (value instanceof String) {
+					write(STRING);
+					writeString((String) value);
+				} else if (value instanceof Integer) {
+					write(INT);
+					int v = ((Integer) value).intValue();
+					writeInt((v << 1) ^ (v >> 31));
+				} else if (value instanceof Float) {
+					write(FLOAT);
+					int bits = Float.floatToRawIntBits(((Float) value).floatValue());
+					write(bits >>> 24);
+					write(bits >>> 16);
+					write(bits >>> 8);
+					write(bits);
+				} else {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/** Writes a string, or its number if it was written before.
+		 * @param s the string */
+		void writeString(String s) {
+			Integer index = strings.get(s);
+			if (index != null) {
+				writeInt(index.intValue() + 1);
+				return;
+			}
+			strings.put(s, Integer.valueOf(strings.size()));
+			writeInt(0);
+			writeInt(s.length());
+			for (int i = 0; i < s.length(); i++) {
+				writeInt(s.charAt(i));
+			}
+		}
+
+		/** Writes a non-negative int in as few bytes as it needs, seven bits at a time.
+		 * @param value the value */
+		void writeInt(int value) {
+			while ((value & ~0x7f) != 0) {
+				write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+	}
+
+	/** Reads relations written by an Encoder. */
+	private static class Decoder {
+		private final byte[] data;
+		private int pos = 0;
+		private final List<String> strings = new ArrayList<String>();
+		private final List<Item> contents = new ArrayList<Item>();
+
+		Decoder(byte[] data) {
+			this.data = data;
+		}
+
+		/** Reads a list of items and their daughters.
+		 * @param relation the relation of the items
+		 * @param parent the item whose daughters they are, or null for the top of the relation */
+		void readItems(Relation relation, Item parent) {
+			for (int count = readInt(); count > 0; count--) {
+				int index = readInt();
+				Item original = index < contents.size() ? contents.get(index) : null;
+				Item item = parent == null ? relation.appendItem(original) : parent.addDaughter(original);
+				if (original == null) {
+					contents.add(item);
+					readFeatures(item.getSlottedFeatures());
+				}
+				readItems(relation, item);
+			}
+		}
+
+		/** Reads the features of an item.
+		 * @param features where the features are set */
+		private void readFeatures(SlottedFeatureSet features) {
+			for (int count = readInt(); count > 0; count--) {
+				int slot = FeatureSlots.getSlot(readString());
+				byte type = data[pos++];
+				if (type == NULL) {
+					features.setObject(slot, null);
+				} else if (type == STRING) {
+					features.setString(slot, readString());
+				} else if (type == INT) {
+					int v = readInt();
+					features.setInt(slot, (v >>> 1) ^ -(v & 1));
+				} else {
+					int bits = ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8)
+							| (data[pos + 3] & 0xff);
+					pos += 4;
+					features.setFloat(slot, Float.intBitsToFloat(bits));
+				}
+			}
+		}
+
+		/** Reads a string.
+		 * @return the string */
+		String readString() {
+			int index = readInt();
+			if (index > 0) {
+				return strings.get(index - 1);
+			}
+			char[] chars = new char[readInt()];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) readInt();
+			}
+			String s = new String(chars);
+			strings.add(s);
+			return s;
+		}
+
+		/** Reads an int written by Encoder.writeInt.
+		 * @return the value */
+		int readInt() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = data[pos++];
+				value |= (b & 0x7f) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+}
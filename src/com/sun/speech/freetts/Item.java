@@ -16,15 +16,16 @@ import java.util.StringTokenizer;
 /** Represents a node in a Relation. Items can have shared contents but each item has its own set of Daughters. The
  * shared contents of an item (represented by ItemContents) includes the feature set for the item and the set of all
  * relations that this item is contained in. An item can be contained in a number of relations and as daughters to other
- * items. This class is used to keep track of all of these relationships. There may be many instances of item that
- * reference the same shared ItemContents. */
+ * items. This class is used to keep track of all of these relationships. There may be many items that share the same
+ * contents.
+ * <p>
+ * An item is a view of an index of its relation, which keeps the links between the items in arrays; the relation makes
+ * one view per item and always returns the same one. */
 public class Item implements Dumpable {
-	private Relation ownerRelation;
-	private ItemContents contents;
-	private Item parent;
-	private Item daughter;
-	private Item next;
-	private Item prev;
+	private final static int NAME = FeatureSlots.getSlot("name");
+
+	private final Relation ownerRelation;
+	private final int index;
 
 	/** Creates an item. The item is coupled to a particular Relation. If shared contents is null a new sharedContents is
 	 * created.
@@ -32,24 +33,30 @@ public class Item implements Dumpable {
 	 * @param sharedContents the contents that is shared with others. If null, a new sharedContents is created. */
 	public Item(Relation relation, ItemContents sharedContents) {
 		ownerRelation = relation;
-		if (sharedContents != null) {
-			contents = sharedContents;
-		} else {
-			contents = new ItemContents();
-		}
-		parent = null;
-		daughter = null;
-		next = null;
-		prev = null;
+		index = relation.newItem(sharedContents == null ? -1 : relation.getTable().indexOf(sharedContents));
+		relation.setView(this);
+	}
+
+	/** Creates the view of an item of a relation.
+	 * @param relation the relation that owns this item
+	 * @param index the index of the item in the relation */
+	Item(Relation relation, int index) {
+		ownerRelation = relation;
+		this.index = index;
+	}
 
-		getSharedContents().addItemRelation(relation.getName(), this);
+	/** Returns the index of this item in its relation.
+	 * @return the index */
+	int getIndex() {
+		return index;
 	}
 
 	/** Finds the item in the given relation that has the same shared contents.
 	 * @param relationName the relation of interest
 	 * @return the item as found in the given relation or null if not found */
 	public Item getItemAs(String relationName) {
-		return getSharedContents().getItemRelation(relationName);
+		Relation relation = ownerRelation.getUtterance().getRelation(relationName);
+		return relation == null ? null : relation.getItemOfContents(ownerRelation.getContents(index));
 	}
 
 	/** Retrieves the owning Relation.
@@ -61,67 +68,42 @@ public class Item implements Dumpable {
 	/** Retrieves the shared contents for this item.
 	 * @return the shared item contents */
 	public ItemContents getSharedContents() {
-		return contents;
+		return ownerRelation.getTable().getContents(ownerRelation.getContents(index));
 	}
 
 	/** Determines if this item has daughters.
 	 * @return true if this item has daughters */
 	public boolean hasDaughters() {
-		return daughter != null;
+		return ownerRelation.getDaughter(index) != -1;
 	}
 
 	/** Retrieves the first daughter of this item.
 	 * @return the first daughter or null if none */
 	public Item getDaughter() {
-		return daughter;
+		return ownerRelation.getItem(ownerRelation.getDaughter(index));
 	}
 
 	/** Retrieves the Nth daughter of this item.
 	 * @param which the index of the daughter to return
 	 * @return the Nth daughter or null if none at the given index */
 	public Item getNthDaughter(int which) {
-		Item d = daughter;
-		int count = 0;
-		while (count++ != which && d != null) {
-			d = d.next;
+		int d = ownerRelation.getDaughter(index);
+		for (int count = 0; count != which && d != -1; count++) {
+			d = ownerRelation.getNext(d);
 		}
-		return d;
+		return ownerRelation.getItem(d);
 	}
 
 	/** Retrieves the last daughter of this item.
 	 * @return the last daughter or null if none at the given index */
 	public Item getLastDaughter() {
-		Item d = daughter;
-		if (d == null) {
-			return null;
-		}
-		while (d.next != null) {
-			d = d.next;
-		}
-		return d;
+		return ownerRelation.getItem(ownerRelation.getLastDaughter(index));
 	}
 
 	/** Adds the given item as a daughter to this item.
 	 * @param item the new daughter */
 	public Item addDaughter(Item item) {
-		Item newItem;
-		ItemContents contents;
-
-		Item p = getLastDaughter();
-
-		if (p != null) {
-			newItem = p.appendItem(item);
-		} else {
-			if (item == null) {
-				contents = new ItemContents();
-			} else {
-				contents = item.getSharedContents();
-			}
-			newItem = new Item(getOwnerRelation(), contents);
-			newItem.parent = this;
-			daughter = newItem;
-		}
-		return newItem;
+		return ownerRelation.addDaughter(index, ownerRelation.getContentsIndex(item));
 	}
 
 	/** Creates a new Item, adds it as a daughter to this item and returns the new item.
@@ -133,19 +115,9 @@ public class Item implements Dumpable {
 	/** Returns the parent of this item.
 	 * @return the parent of this item */
 	public Item getParent() {
-		Item n;
-		for (n = this; n.prev != null; n = n.prev) {
-			if (n == null) {
-				return null;
-			}
-		}
-		return n.parent;
+		return ownerRelation.getItem(ownerRelation.getParent(index));
 	}
 
-	/** Sets the parent of this item.
-	 * @param parent the parent of this item */
-	/* private void setParent(Item parent) { this.parent = parent; } */
-
 	/** Returns the utterance associated with this item.
 	 * @return the utterance that contains this item */
 	public Utterance getUtterance() {
@@ -155,7 +127,13 @@ public class Item implements Dumpable {
 	/** Returns the feature set of this item.
 	 * @return the feature set of this item */
 	public FeatureSet getFeatures() {
-		return getSharedContents().getFeatures();
+		return getSlottedFeatures();
+	}
+
+	/** Returns the feature set of this item, whose features can also be found by slot.
+	 * @return the feature set of this item */
+	public SlottedFeatureSet getSlottedFeatures() {
+		return ownerRelation.getTable().getFeatures(ownerRelation.getContents(index));
 	}
 
 	/** Dumps out this item to the given output stream.
@@ -168,7 +146,7 @@ public class Item implements Dumpable {
 			Item daughter = getDaughter();
 			while (daughter != null) {
 				daughter.dump(out, pad + 8, "d");
-				daughter = daughter.next;
+				daughter = daughter.getNext();
 			}
 		}
 	}
@@ -278,7 +256,7 @@ public class Item implements Dumpable {
 				pitem = pitem.getLastDaughter();
 			} else if (token.equals("R")) {
 				String relationName = tok.nextToken();
-				pitem = pitem.getSharedContents().getItemRelation(relationName);
+				pitem = pitem.getItemAs(relationName);
 			} else {
 				System.out.println("findItem: bad feature " + token + " in " + path);
 			}
@@ -289,85 +267,34 @@ public class Item implements Dumpable {
 	/** Gets the next item in this list.
 	 * @return the next item or null */
 	public Item getNext() {
-		return next;
+		return ownerRelation.getItem(ownerRelation.getNext(index));
 	}
 
 	/** Gets the previous item in this list.
 	 * @return the previous item or null */
 	public Item getPrevious() {
-		return prev;
+		return ownerRelation.getItem(ownerRelation.getPrevious(index));
 	}
 
 	/** Appends an item in this list after this item.
 	 * @param originalItem new item has shared contents with this item (or * null)
 	 * @return the newly appended item */
 	public Item appendItem(Item originalItem) {
-		ItemContents contents;
-		Item newItem;
-
-		if (originalItem == null) {
-			contents = null;
-		} else {
-			contents = originalItem.getSharedContents();
-		}
-
-		newItem = new Item(getOwnerRelation(), contents);
-		newItem.next = this.next;
-		if (this.next != null) {
-			this.next.prev = newItem;
-		}
-
-		attach(newItem);
-
-		if (this.ownerRelation.getTail() == this) {
-			this.ownerRelation.setTail(newItem);
-		}
-		return newItem;
-	}
-
-	/** Attaches/appends an item to this one.
-	 * @param item the item to append */
-	void attach(Item item) {
-		this.next = item;
-		item.prev = this;
+		return ownerRelation.append(index, ownerRelation.getContentsIndex(originalItem));
 	}
 
 	/** Prepends an item in this list before this item.
 	 * @param originalItem new item has shared contents with this item (or * null)
 	 * @return the newly appended item */
 	public Item prependItem(Item originalItem) {
-		ItemContents contents;
-		Item newItem;
-
-		if (originalItem == null) {
-			contents = null;
-		} else {
-			contents = originalItem.getSharedContents();
-		}
-
-		newItem = new Item(getOwnerRelation(), contents);
-		newItem.prev = this.prev;
-		if (this.prev != null) {
-			this.prev.next = newItem;
-		}
-		newItem.next = this;
-		this.prev = newItem;
-		if (this.parent != null) {
-			this.parent.daughter = newItem;
-			newItem.parent = this.parent;
-			this.parent = null;
-		}
-		if (this.ownerRelation.getHead() == this) {
-			this.ownerRelation.setHead(newItem);
-		}
-		return newItem;
+		return ownerRelation.prepend(index, ownerRelation.getContentsIndex(originalItem));
 	}
 
 	// Inherited from object
 	public String toString() {
 		// if we have a feature called 'name' use that
 		// otherwise fall back on the default.
-		String name = getFeatures().getString("name");
+		String name = getSlottedFeatures().getString(NAME);
 		if (name == null) {
 			name = "";
 		}
@@ -381,7 +308,9 @@ public class Item implements Dumpable {
 		if (otherItem == null) {
 			return false;
 		} else {
-			return getSharedContents().equals(otherItem.getSharedContents());
+			Relation other = otherItem.ownerRelation;
+			return other.getTable() == ownerRelation.getTable()
+					&& other.getContents(otherItem.index) == ownerRelation.getContents(index);
 		}
 	}
 }
@@ -12,38 +12,82 @@ package com.sun.speech.freetts;
 
 import java.io.PrintWriter;
 
-/** Contains the information that is shared between multiple items. */
+import com.sun.speech.freetts.util.Utilities;
+
+/** Contains the information that is shared between multiple items. The contents of the items of an utterance are kept
+ * by index in the item table of the utterance, and an ItemContents is a view of one of them. Contents made with the
+ * public constructor keep their own features until an item first uses them. */
 public class ItemContents {
-	private FeatureSetImpl features;
-	private FeatureSetImpl relations;
+	private ItemTable table;
+	private int index;
+	private SlotFeatureSet features;
 
 	/** Class Constructor. */
 	public ItemContents() {
-		features = new FeatureSetImpl();
-		relations = new FeatureSetImpl();
+		features = new SlotFeatureSet();
+	}
+
+	/** Creates a view of the contents of an item table.
+	 * @param table the item table
+	 * @param index the index of the contents in the table */
+	ItemContents(ItemTable table, int index) {
+		setTable(table, index);
+	}
+
+	/** Returns the item table of these contents.
+	 * @return the table, or null if no item uses these contents yet */
+	ItemTable getTable() {
+		return table;
+	}
+
+	/** Returns the index of these contents in their item table.
+	 * @return the index */
+	int getIndex() {
+		return index;
+	}
+
+	/** Makes these contents a view of the contents of an item table.
+	 * @param table the item table
+	 * @param index the index of the contents in the table */
+	void setTable(ItemTable table, int index) {
+		this.table = table;
+		this.index = index;
+		features = null;
 	}
 
 	/** Adds the given item to the set of relations. Whenever an item is added to a relation, it should add the name and
 	 * the Item reference to this set of name/item mappings. This allows an item to find out the set of all relations that
 	 * it is contained in.
-	 * @param relationName the name of the relation
+	 * @param relationName the name of the relation, which is the relation of the item
 	 * @param item the item reference in the relation */
 	public void addItemRelation(String relationName, Item item) {
-		// System.out.println("AddItemRelation: " + relationName
-		// + " item: " + item);
-		relations.setObject(relationName, item);
+		Relation relation = item.getOwnerRelation();
+		relation.setItemOfContents(relation.getTable().indexOf(this), item);
 	}
 
 	/** Removes the relation/item mapping from this ItemContents.
 	 * @param relationName the name of the relation/item to remove */
 	public void removeItemRelation(String relationName) {
-		relations.remove(relationName);
+		if (table != null) {
+			Relation relation = table.getUtterance().getRelation(relationName);
+			if (relation != null) {
+				relation.setItemOfContents(index, null);
+			}
+		}
 	}
 
 	// for debugging
 	public void showRelations() {
 		PrintWriter pw = new PrintWriter(System.out);
-		relations.dump(pw, 0, "Contents relations", true);
+		Utilities.dump(pw, 0, "Contents relations");
+		if (table != null) {
+			for (Relation relation : table.getRelations()) {
+				Item item = relation.getItemOfContents(index);
+				if (item != null) {
+					Utilities.dump(pw, 4, relation.getName() + "=" + item);
+				}
+			}
+		}
 		pw.flush();
 	}
 
@@ -51,12 +95,22 @@ public class ItemContents {
 	 * @param relationName the name of the relation of interest
 	 * @return the item associated with this ItemContents in the named relation, or null if it does not exist */
 	public Item getItemRelation(String relationName) {
-		return (Item) relations.getObject(relationName);
+		if (table == null) {
+			return null;
+		}
+		Relation relation = table.getUtterance().getRelation(relationName);
+		return relation == null ? null : relation.getItemOfContents(index);
 	}
 
 	/** Returns the feature set for this item contents.
 	 * @return the FeatureSet for this contents */
 	public FeatureSet getFeatures() {
-		return features;
+		return getSlottedFeatures();
+	}
+
+	/** Returns the feature set for this item contents, whose features can also be found by slot.
+	 * @return the feature set for this contents */
+	public SlottedFeatureSet getSlottedFeatures() {
+		return table == null ? features : table.getFeatures(index);
 	}
 }
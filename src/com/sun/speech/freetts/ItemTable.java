@@ -0,0 +1,189 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The contents the items of an utterance share, by index: the feature set of every contents, and the relations of the
+ * utterance, which know the item of each contents. An {@link ItemContents} is only made for a contents when it is asked
+ * for, and is then kept so that the same one is always returned.
+ * <p>
+ * When its utterance is recycled, the table keeps its relations and the feature sets it made, and reuses them for the
+ * relations and contents of the next utterance. */
+class ItemTable {
+	private final Utterance utterance;
+	private final List<Relation> relations = new ArrayList<Relation>();
+	private SlotFeatureSet[] features = new SlotFeatureSet[64];
+	private ItemContents[] contents;
+	// the contents whose features were made elsewhere, if any, which are not reused
+	private boolean[] adopted;
+	// the index given to each contents of another table, so that all the items using it share the index
+	private final Map<ItemContents, Integer> foreign = new IdentityHashMap<ItemContents, Integer>();
+	private int size;
+
+	/** Creates the table of an utterance.
+	 * @param utterance the utterance */
+	ItemTable(Utterance utterance) {
+		this.utterance = utterance;
+	}
+
+	/** Returns the utterance of this table.
+	 * @return the utterance */
+	Utterance getUtterance() {
+		return utterance;
+	}
+
+	/** Adds a relation of the utterance.
+	 * @param relation the relation */
+	void addRelation(Relation relation) {
+		relations.add(relation);
+	}
+
+	/** Returns a relation the utterance had before it was recycled, to be reused.
+	 * @param name the name of the relation
+	 * @return the relation, reset, or null if there is none of that name */
+	Relation getSpareRelation(String name) {
+		for (Relation relation : relations) {
+			if (relation.isSpare() && relation.getName().equals(name)) {
+				relation.setSpare(false);
+				return relation;
+			}
+		}
+		return null;
+	}
+
+	/** Returns the relations of the utterance, in the order they were created.
+	 * @return the relations */
+	List<Relation> getRelations() {
+		return relations;
+	}
+
+	/** Adds a contents.
+	 * @param featureSet the features of the contents, or null for none yet
+	 * @return the index of the contents */
+	int add(SlotFeatureSet featureSet) {
+		if (size == features.length) {
+			SlotFeatureSet[] newFeatures = new SlotFeatureSet[size * 2];
+			System.arraycopy(features, 0, newFeatures, 0, size);
+			features = newFeatures;
+		}
+		if (featureSet == null) {
+			// a set left by the utterance before a reset is made here, as the adopted ones are dropped
+			featureSet = features[size];
+			if (featureSet == null) {
+				featureSet = new SlotFeatureSet();
+			} else {
+				featureSet.clear();
+			}
+		}
+		featureSet.setOwner(utterance);
+		features[size] = featureSet;
+		return size++;
+	}
+
+	/** Returns the index of a contents in this table, adding it if it is not in the table yet.
+	 * @param itemContents the contents
+	 * @return the index of the contents */
+	int indexOf(ItemContents itemContents) {
+		if (itemContents.getTable() == this) {
+			return itemContents.getIndex();
+		}
+		Integer foreignIndex = foreign.get(itemContents);
+		if (foreignIndex != null) {
+			return foreignIndex.intValue();
+		}
+		// the features of contents made on their own, or of another utterance, are shared
+		int index = add((SlotFeatureSet) itemContents.getFeatures());
+		if (adopted == null || adopted.length < features.length) {
+			boolean[] newAdopted = new boolean[features.length];
+			if (adopted != null) {
+				System.arraycopy(adopted, 0, newAdopted, 0, adopted.length);
+			}
+			adopted = newAdopted;
+		}
+		adopted[index] = true;
+		if (itemContents.getTable() == null) {
+			itemContents.setTable(this, index);
+			setContents(index, itemContents);
+		} else {
+			foreign.put(itemContents, Integer.valueOf(index));
+		}
+		return index;
+	}
+
+	/** Empties this table for the next utterance. Its relations are reset and become spare. */
+	void reset() {
+		for (Relation relation : relations) {
+			relation.reset();
+		}
+		if (adopted != null) {
+			// contents added after the last adopted one are not in the array
+			for (int i = 0; i < size && i < adopted.length; i++) {
+				if (adopted[i]) {
+					features[i] = null;
+				}
+			}
+			adopted = null;
+		}
+		foreign.clear();
+		contents = null;
+		size = 0;
+	}
+
+	/** Returns the number of contents in this table.
+	 * @return the number of contents */
+	int size() {
+		return size;
+	}
+
+	/** Returns the features of a contents.
+	 * @param index the index of the contents
+	 * @return the features */
+	SlotFeatureSet getFeatures(int index) {
+		return features[index];
+	}
+
+	/** Returns a contents.
+	 * @param index the index of the contents
+	 * @return the contents */
+	ItemContents getContents(int index) {
+		ensureContents(index);
+		ItemContents itemContents = contents[index];
+		if (itemContents == null) {
+			itemContents = new ItemContents(this, index);
+			contents[index] = itemContents;
+		}
+		return itemContents;
+	}
+
+	/** Keeps the contents at an index.
+	 * @param index the index of the contents
+	 * @param itemContents the contents */
+	private void setContents(int index, ItemContents itemContents) {
+		ensureContents(index);
+		contents[index] = itemContents;
+	}
+
+	/** Makes room for the contents at an index.
+	 * @param index the index of the contents */
+	private void ensureContents(int index) {
+		if (contents == null || contents.length <= index) {
+			ItemContents[] newContents = new ItemContents[features.length];
+			if (contents != null) {
+				System.arraycopy(contents, 0, newContents, 0, contents.length);
+			}
+			contents = newContents;
+		}
+	}
+}
@@ -1,33 +1,61 @@
 /**
  * Portions Copyright 2004 Sun Microsystems, Inc.
- * Portions Copyright 1999-2004 Language Technologies Institute, 
+ * Portions Copyright 1999-2004 Language Technologies Institute,
  * Carnegie Mellon University.
  * All Rights Reserved.  Use is subject to license terms.
- * 
+ *
  * See the file "license.terms" for information on usage and
- * redistribution of this file, and for a DISCLAIMER OF ALL 
+ * redistribution of this file, and for a DISCLAIMER OF ALL
  * WARRANTIES.
  */
 package com.sun.speech.freetts;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.speech.freetts.util.Utilities;
 
 /** Manages a process queue for utterances. Utterances that are queued to a processor can be written via the post method.
- * A processing thread can wait for an utterance to arrive via the pend method. */
+ * A processing thread can wait for an utterance to arrive via the pend method.
+ * <p>
+ * The queue is a bounded ring buffer without locks. Every cell carries a sequence number that tells producers and
+ * consumers whether the cell is free or holds an utterance, so posting and pending only race on two counters. Several
+ * utterances can be posted or pended with one claim of the counters. Threads that find the queue full or empty park
+ * until they are woken by the other side. Any number of threads may post and pend at once, although the usual setup is
+ * one voice posting to one output thread. */
 public class OutputQueue {
-	private List<Utterance> list = new LinkedList<Utterance>();
-	private int size;
-	private final static int DEFAULT_SIZE = 5;
+	/** The system property that sets the size of queues created with the default size. */
+	public final static String PROP_SIZE = "com.sun.speech.freetts.outputQueue.size";
+
+	private final static int DEFAULT_SIZE = Utilities.getInteger(PROP_SIZE, 5).intValue();
+
+	private final int size;
+	private final AtomicReferenceArray<Utterance> cells;
+	// a cell at position p is free when its sequence is p, and full when it is p + 1
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<Thread>();
+	private final ConcurrentLinkedQueue<Thread> waitingConsumers = new ConcurrentLinkedQueue<Thread>();
 	private volatile boolean closed = false;
+	private final AtomicInteger removeCount = new AtomicInteger();
 
 	/** Creates an OutputQueue with the given size.
 	 * @param size the size of the queue */
 	public OutputQueue(int size) {
-		this.size = size;
+		this.size = Math.max(1, size);
+		cells = new AtomicReferenceArray<Utterance>(this.size);
+		sequences = new AtomicLongArray(this.size);
+		for (int i = 0; i < this.size; i++) {
+			sequences.set(i, i);
+		}
 	}
 
-	/** Creates a queue with the default size. */
+	/** Creates a queue with the default size, which is 5 unless set by the <code>PROP_SIZE</code> property. */
 	public OutputQueue() {
 		this(DEFAULT_SIZE);
 	}
@@ -35,27 +63,39 @@ public class OutputQueue {
 	/** Posts the given utterance to the queue. This call will block if the queue is full.
 	 * @param utterance the utterance to post
 	 * @throws IllegalStateException if the queue is closed */
-	public synchronized void post(Utterance utterance) {
+	public void post(Utterance utterance) {
+		post(new Utterance[] { utterance }, 0, 1);
+	}
+
+	/** Posts the given utterances to the queue, in order. As many utterances as fit are posted at once; this call blocks
+	 * while the queue is full. Utterances posted by other threads at the same time may be interleaved with these.
+	 * @param utterances the utterances to post
+	 * @param offset the index of the first utterance to post
+	 * @param length the number of utterances to post
+	 * @throws IllegalStateException if the queue is closed */
+	public void post(Utterance[] utterances, int offset, int length) {
 		if (closed) {
 			throw new IllegalStateException("output queue closed");
 		}
 
-		while (list.size() >= size) {
-			try {
-				wait();
-			} catch (InterruptedException ie) {
+		int end = offset + length;
+		while (offset < end) {
+			int count = offer(utterances, offset, end - offset);
+			if (count > 0) {
+				offset += count;
+				wake(waitingConsumers);
+			} else {
+				// like the wait in the old synchronized queue, an interrupt does not stop a post
+				Thread.interrupted();
+				await(waitingProducers, true);
 			}
 		}
-
-		list.add(utterance);
-		notify();
 	}
 
-	/** Closes the queue. */
-	public synchronized void close() {
+	/** Closes the queue. Utterances already posted can still be pended; after them pend returns null. */
+	public void close() {
 		closed = true;
-		list.add(null);
-		notify();
+		wake(waitingConsumers);
 	}
 
 	/** Determines if the queue is closed.
@@ -66,22 +106,154 @@ public class OutputQueue {
 
 	/** Blocks until there is an utterance in the queue.
 	 * @return the next utterance. On a close or interrupt, a null is returned. */
-	public synchronized Utterance pend() {
-		Utterance utterance = null;
-		while (list.size() == 0) {
-			try {
-				wait();
-			} catch (InterruptedException ie) {
-				return null;
+	public Utterance pend() {
+		Utterance[] batch = new Utterance[1];
+		return pend(batch) == 0 ? null : batch[0];
+	}
+
+	/** Blocks until there is an utterance in the queue, and then takes as many utterances as are ready, up to the length
+	 * of the batch.
+	 * @param batch receives the utterances in order, starting at index 0
+	 * @return the number of utterances taken. On a close or interrupt, 0 is returned.
+	 * @throws IllegalArgumentException if the batch is empty */
+	public int pend(Utterance[] batch) {
+		if (batch.length == 0) {
+			throw new IllegalArgumentException("empty batch");
+		}
+		int count;
+		while ((count = poll(batch, batch.length)) == 0) {
+			if (closed) {
+				// an utterance may have been posted just before the close
+				count = poll(batch, batch.length);
+				break;
 			}
+			if (Thread.interrupted()) {
+				return 0;
+			}
+			await(waitingConsumers, false);
+		}
+		if (count > 0) {
+			wake(waitingProducers);
 		}
-		utterance = list.remove(0);
-		notify();
-		return utterance;
+		return count;
 	}
 
 	/** Removes all items from this OutputQueue. */
-	public synchronized void removeAll() {
-		list.clear();
+	public void removeAll() {
+		Utterance[] batch = new Utterance[size];
+		while (poll(batch, size) > 0) {
+		}
+		removeCount.incrementAndGet();
+		wake(waitingProducers);
+	}
+
+	/** Returns the number of times removeAll has been called on this queue. Producers that hold utterances which have
+	 * not been posted yet, and consumers that hold utterances which have not been output yet, use this to notice that
+	 * pending output has been discarded.
+	 * @return the number of removeAll calls */
+	int getRemoveCount() {
+		return removeCount.get();
+	}
+
+	/** Puts as many of the given utterances into free cells as there are free cells in a row at the tail.
+	 * @param utterances the utterances
+	 * @param offset the index of the first utterance
+	 * @param length the number of utterances
+	 * @return the number of utterances put, 0 if the queue is full */
+	private int offer(Utterance[] utterances, int offset, int length) {
+		while (true) {
+			long pos = tail.get();
+			int count = countReady(pos, length, 0);
+			if (count == 0) {
+				if (sequences.get(index(pos)) < pos) {
+					return 0;
+				}
+			} else if (tail.compareAndSet(pos, pos + count)) {
+				for (int i = 0; i < count; i++) {
+					int index = index(pos + i);
+					cells.set(index, utterances[offset + i]);
+					sequences.set(index, pos + i + 1);
+				}
+				return count;
+			}
+		}
+	}
+
+	/** Takes as many utterances as are ready in a row at the head.
+	 * @param batch receives the utterances
+	 * @param length the maximum number of utterances
+	 * @return the number of utterances taken, 0 if the queue is empty */
+	private int poll(Utterance[] batch, int length) {
+		while (true) {
+			long pos = head.get();
+			int count = countReady(pos, length, 1);
+			if (count == 0) {
+				if (sequences.get(index(pos)) < pos + 1) {
+					return 0;
+				}
+			} else if (head.compareAndSet(pos, pos + count)) {
+				for (int i = 0; i < count; i++) {
+					int index = index(pos + i);
+					batch[i] = cells.get(index);
+					cells.set(index, null);
+					sequences.set(index, pos + i + size);
+				}
+				return count;
+			}
+		}
+	}
+
+	/** Counts the cells in a row, starting at a position, whose sequence shows them ready for a producer or a consumer.
+	 * @param pos the position of the first cell
+	 * @param length the maximum number of cells
+	 * @param lag 0 to count free cells, 1 to count full cells
+	 * @return the number of ready cells */
+	private int countReady(long pos, int length, int lag) {
+		int count = 0;
+		int max = Math.min(length, size);
+		while (count < max && sequences.get(index(pos + count)) == pos + count + lag) {
+			count++;
+		}
+		return count;
+	}
+
+	private int index(long pos) {
+		return (int) (pos % size);
+	}
+
+	/** Parks the calling thread until it is woken, unless the queue changed while it was getting ready to park.
+	 * @param waiters the threads waiting on the same side as the caller
+	 * @param producer true if the caller waits for a free cell, false if it waits for an utterance */
+	private void await(ConcurrentLinkedQueue<Thread> waiters, boolean producer) {
+		Thread thread = Thread.currentThread();
+		waiters.add(thread);
+		try {
+			// checked after the thread is in the waiters, so a wake in between is not lost
+			if (producer ? isFull() : (isEmpty() && !closed)) {
+				LockSupport.park(this);
+			}
+		} finally {
+			waiters.remove(thread);
+		}
+	}
+
+	/** Unparks the threads waiting on one side of the queue.
+	 * @param waiters the threads to wake */
+	private void wake(ConcurrentLinkedQueue<Thread> waiters) {
+		if (!waiters.isEmpty()) {
+			for (Thread thread : waiters) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	private boolean isFull() {
+		long pos = tail.get();
+		return sequences.get(index(pos)) < pos;
+	}
+
+	private boolean isEmpty() {
+		long pos = head.get();
+		return sequences.get(index(pos)) < pos + 1;
 	}
 }
@@ -10,6 +10,7 @@
  */
 package com.sun.speech.freetts;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,7 +30,17 @@ import com.sun.speech.freetts.util.Utilities;
  * </pre>
  * 
  * com.sun.speech.freetts.interpretCartPaths Instances of this class will optionally pre-compile the paths.
- * Pre-compiling paths reduces the processing time and objects needed to extract a feature or an item based upon a path. */
+ * Pre-compiling paths reduces the processing time and objects needed to extract a feature or an item based upon a path.
+ * <p>
+ * A compiled path is an array of int opcodes that is run by a single switch. The feature processor of the feature is
+ * looked up once per voice rather than on every call; path extractors are shared by the voices that share CARTs, so
+ * the processor is remembered for the last few voices, and looked up again when a voice adds feature processors. The
+ * voices and their processors are only weakly referenced, so that the paths of shared CARTs do not keep them alive.
+ * <p>
+ * When the voice memoizes features, what a feature processor gives for an item is kept in the memo of its utterance,
+ * and found there again, by this path or any other that leads to the same item and feature, until the utterance is
+ * modified.
+ * @see Voice#setMemoizeFeatures */
 public class PathExtractorImpl implements PathExtractor {
 	/** Logger instance. */
 	private static final Logger LOGGER = Logger.getLogger(PathExtractorImpl.class.getName());
@@ -44,10 +55,38 @@ public class PathExtractorImpl implements PathExtractor {
 			.equals("true");
 	private final static boolean LAZY_COMPILE = Utilities.getProperty(LAZY_COMPILE_PROPERTY, "true").equals("true");
 
+	// the opcodes of a compiled path; a relation is followed by the index of its name
+	private final static int OP_NEXT = 0;
+	private final static int OP_PREV = 1;
+	private final static int OP_NEXT_NEXT = 2;
+	private final static int OP_PREV_PREV = 3;
+	private final static int OP_PARENT = 4;
+	private final static int OP_DAUGHTER = 5;
+	private final static int OP_LAST_DAUGHTER = 6;
+	private final static int OP_RELATION = 7;
+
+	private final static Map<String, Integer> OPS = new HashMap<String, Integer>();
+	static {
+		OPS.put("n", Integer.valueOf(OP_NEXT));
+		OPS.put("p", Integer.valueOf(OP_PREV));
+		OPS.put("nn", Integer.valueOf(OP_NEXT_NEXT));
+		OPS.put("pp", Integer.valueOf(OP_PREV_PREV));
+		OPS.put("parent", Integer.valueOf(OP_PARENT));
+		OPS.put("daughter", Integer.valueOf(OP_DAUGHTER));
+		OPS.put("daughter1", Integer.valueOf(OP_DAUGHTER));
+		OPS.put("daughtern", Integer.valueOf(OP_LAST_DAUGHTER));
+		OPS.put("R", Integer.valueOf(OP_RELATION));
+	}
+
+	// the number of voices whose feature processor is remembered, a power of two
+	private final static int BINDINGS = 4;
+
 	private String pathAndFeature;
 	private String path;
 	private String feature;
-	private Object[] compiledPath;
+	private int featureSlot;
+	private CompiledPath compiledPath;
+	private final Binding[] bindings = new Binding[BINDINGS];
 	private boolean wantFeature = false;
 
 	/** Creates a path for the given feature. */
@@ -69,6 +108,7 @@ public class PathExtractorImpl implements PathExtractor {
 				feature = pathAndFeature.substring(lastDot + 1);
 				path = pathAndFeature.substring(0, lastDot);
 			}
+			featureSlot = FeatureSlots.getSlot(feature);
 			this.wantFeature = wantFeature;
 		} else {
 			this.path = pathAndFeature;
@@ -88,39 +128,47 @@ public class PathExtractorImpl implements PathExtractor {
 			return item.findItem(path);
 		}
 
-		if (compiledPath == null) {
-			compiledPath = compile(path);
+		CompiledPath compiled = compiledPath;
+		if (compiled == null) {
+			compiled = compile(path);
+			compiledPath = compiled;
 		}
 
+		final int[] ops = compiled.ops;
 		Item pitem = item;
 
-		for (int i = 0; pitem != null && i < compiledPath.length;) {
-			OpEnum op = (OpEnum) compiledPath[i++];
-			if (op == OpEnum.NEXT) {
+		for (int i = 0; pitem != null && i < ops.length; i++) {
+			switch (ops[i]) {
+			case OP_NEXT:
 				pitem = pitem.getNext();
-			} else if (op == OpEnum.PREV) {
+				break;
+			case OP_PREV:
 				pitem = pitem.getPrevious();
-			} else if (op == OpEnum.NEXT_NEXT) {
+				break;
+			case OP_NEXT_NEXT:
 				pitem = pitem.getNext();
 				if (pitem != null) {
 					pitem = pitem.getNext();
 				}
-			} else if (op == OpEnum.PREV_PREV) {
+				break;
+			case OP_PREV_PREV:
 				pitem = pitem.getPrevious();
 				if (pitem != null) {
 					pitem = pitem.getPrevious();
 				}
-			} else if (op == OpEnum.PARENT) {
+				break;
+			case OP_PARENT:
 				pitem = pitem.getParent();
-			} else if (op == OpEnum.DAUGHTER) {
+				break;
+			case OP_DAUGHTER:
 				pitem = pitem.getDaughter();
-			} else if (op == OpEnum.LAST_DAUGHTER) {
+				break;
+			case OP_LAST_DAUGHTER:
 				pitem = pitem.getLastDaughter();
-			} else if (op == OpEnum.RELATION) {
-				String relationName = (String) compiledPath[i++];
-				pitem = pitem.getSharedContents().getItemRelation(relationName);
-			} else {
-				System.out.println("findItem: bad feature " + op + " in " + path);
+				break;
+			default:
+				pitem = pitem.getItemAs(compiled.relations[ops[++i]]);
+				break;
 			}
 		}
 		return pitem;
@@ -142,17 +190,23 @@ public class PathExtractorImpl implements PathExtractor {
 				LOGGER.finer("findFeature: Item [" + pitem + "], feature '" + feature + "'");
 			}
 
-			FeatureProcessor fp = pitem.getOwnerRelation().getUtterance().getVoice().getFeatureProcessor(feature);
+			Utterance utterance = pitem.getOwnerRelation().getUtterance();
+			FeatureProcessor fp = getFeatureProcessor(utterance.getVoice());
 
 			if (fp != null) {
 				if (LOGGER.isLoggable(Level.FINER)) {
 					LOGGER.finer("findFeature: There is a feature processor for '" + feature + "'");
 				}
-				try {
-					results = fp.process(pitem);
-				} catch (ProcessException pe) {
-					LOGGER.severe("trouble while processing " + fp);
-					throw new Error(pe);
+				FeatureMemo memo = utterance.getFeatureMemo();
+				if (memo == null) {
+					results = process(fp, pitem);
+				} else {
+					results = memo.get(pitem, featureSlot);
+					if (results == null) {
+						int modifications = utterance.getModificationCount();
+						results = process(fp, pitem);
+						memo.put(pitem, featureSlot, results, modifications);
+					}
 				}
 			} else {
 				results = pitem.getFeatures().getObject(feature);
@@ -166,32 +220,66 @@ public class PathExtractorImpl implements PathExtractor {
 		return results;
 	}
 
+	/** Runs the feature processor of the feature of this path.
+	 * @param fp the feature processor
+	 * @param item the item at the end of the path
+	 * @return the feature */
+	private Object process(FeatureProcessor fp, Item item) {
+		try {
+			return fp.process(item);
+		} catch (ProcessException pe) {
+			LOGGER.severe("trouble while processing " + fp);
+			throw new Error(pe);
+		}
+	}
+
+	/** Returns the feature processor of the feature of this path in a voice. The processor is looked up when the voice
+	 * first uses this path, and again when the voice has added feature processors since.
+	 * @param voice the voice
+	 * @return the feature processor, or null if the voice has none for the feature */
+	private FeatureProcessor getFeatureProcessor(Voice voice) {
+		int version = voice.getFeatureProcessorsVersion();
+		int slot = System.identityHashCode(voice) & (BINDINGS - 1);
+		Binding binding = bindings[slot];
+		if (binding != null && binding.get() == voice && binding.version == version) {
+			// the voice keeps its processor while the version is the same
+			return binding.getProcessor();
+		}
+		FeatureProcessor processor = voice.getFeatureProcessor(feature);
+		bindings[slot] = new Binding(voice, version, processor);
+		return processor;
+	}
+
 	/** Compiles the given path into the compiled form
 	 * @param path the path to compile
-	 * @return the compiled form which is in the form of an array path traversal enums and associated strings */
-	private Object[] compile(String path) {
-		List list = new ArrayList();
-
+	 * @return the compiled form which is in the form of an array of opcodes and the names of the relations */
+	private CompiledPath compile(String path) {
 		if (path == null) {
-			return list.toArray();
+			return new CompiledPath(new int[0], new String[0]);
 		}
 
 		StringTokenizer tok = new StringTokenizer(path, ":.");
+		int[] ops = new int[tok.countTokens()];
+		List<String> relations = new ArrayList<String>();
+		int length = 0;
 
 		while (tok.hasMoreTokens()) {
 			String token = tok.nextToken();
-			OpEnum op = OpEnum.getInstance(token);
+			Integer op = OPS.get(token);
 			if (op == null) {
 				throw new Error("Bad path compiled " + path);
 			}
 
-			list.add(op);
+			ops[length++] = op.intValue();
 
-			if (op == OpEnum.RELATION) {
-				list.add(tok.nextToken());
+			if (op.intValue() == OP_RELATION) {
+				ops[length++] = relations.size();
+				relations.add(tok.nextToken());
 			}
 		}
-		return list.toArray();
+		int[] trimmed = new int[length];
+		System.arraycopy(ops, 0, trimmed, 0, length);
+		return new CompiledPath(trimmed, relations.toArray(new String[relations.size()]));
 	}
 
 	// inherited for Object
@@ -203,38 +291,35 @@ public class PathExtractorImpl implements PathExtractor {
 	// TODO: add these to the interface should we support binary
 	// files
 	/* public void writeBinary(); public void readBinary(); */
-}
 
-/** An enumerated type associated with path operations. */
-class OpEnum {
-	static private Map map = new HashMap();
-
-	public final static OpEnum NEXT = new OpEnum("n");
-	public final static OpEnum PREV = new OpEnum("p");
-	public final static OpEnum NEXT_NEXT = new OpEnum("nn");
-	public final static OpEnum PREV_PREV = new OpEnum("pp");
-	public final static OpEnum PARENT = new OpEnum("parent");
-	public final static OpEnum DAUGHTER = new OpEnum("daughter");
-	public final static OpEnum LAST_DAUGHTER = new OpEnum("daughtern");
-	public final static OpEnum RELATION = new OpEnum("R");
-
-	private String name;
-
-	/** Creates a new OpEnum.. There is a limited set of OpEnums
-	 * @param name the path name for this Enum */
-	private OpEnum(String name) {
-		this.name = name;
-		map.put(name, this);
-	}
+	/** The opcodes of a compiled path and the names of the relations it goes through. It is immutable, so it can be
+	 * shared by threads without locking. */
+	private static class CompiledPath {
+		final int[] ops;
+		final String[] relations;
 
-	/** gets an OpEnum thats associated with the given name.
-	 * @param name the name of the OpEnum of interest */
-	public static OpEnum getInstance(String name) {
-		return (OpEnum) map.get(name);
+		CompiledPath(int[] ops, String[] relations) {
+			this.ops = ops;
+			this.relations = relations;
+		}
 	}
 
-	// inherited from Object
-	public String toString() {
-		return name;
+	/** The feature processor of the feature in a voice, as it was when it was looked up. The voice and the processor
+	 * are weakly referenced. It is immutable, so it can be shared by threads without locking. */
+	private static class Binding extends WeakReference<Voice> {
+		final int version;
+		private final WeakReference<FeatureProcessor> processor;
+
+		Binding(Voice voice, int version, FeatureProcessor processor) {
+			super(voice);
+			this.version = version;
+			this.processor = processor == null ? null : new WeakReference<FeatureProcessor>(processor);
+		}
+
+		/** Returns the feature processor.
+		 * @return the processor, or null if the voice has none for the feature */
+		FeatureProcessor getProcessor() {
+			return processor == null ? null : processor.get();
+		}
 	}
 }
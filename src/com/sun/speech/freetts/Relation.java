@@ -11,16 +11,39 @@
 package com.sun.speech.freetts;
 
 import java.io.PrintWriter;
+import java.util.Arrays;
 
 import com.sun.speech.freetts.util.Utilities;
 
 /** Represents an ordered set of {@link Item}s and their associated children. A relation has a name and a list of items,
- * and is added to an {@link Utterance} via an {@link UtteranceProcessor}. */
+ * and is added to an {@link Utterance} via an {@link UtteranceProcessor}.
+ * <p>
+ * The items of a relation are kept by index in int arrays: the contents, parent, first and last daughter, next and
+ * previous item of each. An Item is a view of an index, made when the item is and kept so that the same one is always
+ * returned. The contents are those of the item table of the utterance, and the relation knows its item of every
+ * contents, so that a path can go from an item to the item with the same contents in another relation. Every item
+ * knows its parent, not only the first daughter. */
 public class Relation implements Dumpable {
+	private final static int NONE = -1;
+
 	private String name;
 	private Utterance owner;
-	private Item head;
-	private Item tail;
+	private ItemTable table;
+	private int head = NONE;
+	private int tail = NONE;
+
+	private int size;
+	private int[] contents = new int[16];
+	private int[] parents = new int[16];
+	private int[] daughters = new int[16];
+	private int[] lastDaughters = new int[16];
+	private int[] nexts = new int[16];
+	private int[] prevs = new int[16];
+	private Item[] items = new Item[16];
+	// the item of every contents, plus one, or 0 if the contents has none in this relation
+	private int[] itemOfContents = new int[0];
+	// true if the utterance was recycled and does not use this relation
+	private boolean spare;
 
 	/** Name of the relation that contains tokens from the original input text. This is the first thing to be added to the
 	 * utterance.
@@ -64,12 +87,12 @@ public class Relation implements Dumpable {
 
 	/** Creates a relation.
 	 * @param name the name of the Relation
-	 * @param owner the utterance that contains this relation */
-	Relation(String name, Utterance owner) {
+	 * @param owner the utterance that contains this relation
+	 * @param table the item table of the utterance */
+	Relation(String name, Utterance owner, ItemTable table) {
 		this.name = name;
 		this.owner = owner;
-		head = null;
-		tail = null;
+		this.table = table;
 	}
 
 	/** Retrieves the name of this Relation.
@@ -81,25 +104,13 @@ public class Relation implements Dumpable {
 	/** Gets the head of the item list.
 	 * @return the head item */
 	public Item getHead() {
-		return head;
-	}
-
-	/** Sets the head of the item list.
-	 * @param item the new head item */
-	void setHead(Item item) {
-		head = item;
+		return getItem(head);
 	}
 
 	/** Gets the tail of the item list.
 	 * @return the tail item */
 	public Item getTail() {
-		return tail;
-	}
-
-	/** Sets the tail of the item list.
-	 * @param item the new tail item */
-	void setTail(Item item) {
-		tail = item;
+		return getItem(tail);
 	}
 
 	/** Adds a new item to this relation. The item added does not share its contents with any other item.
@@ -112,24 +123,15 @@ public class Relation implements Dumpable {
 	 * @param originalItem the ItemContents that will be shared by the new item
 	 * @return the newly added item */
 	public Item appendItem(Item originalItem) {
-		ItemContents contents;
-		Item newItem;
-
-		if (originalItem == null) {
-			contents = null;
-		} else {
-			contents = originalItem.getSharedContents();
-		}
-		newItem = new Item(this, contents);
-		if (head == null) {
-			head = newItem;
+		int item = newItem(getContentsIndex(originalItem));
+		if (head == NONE) {
+			head = item;
 		}
-
-		if (tail != null) {
-			tail.attach(newItem);
+		if (tail != NONE) {
+			link(tail, item);
 		}
-		tail = newItem;
-		return newItem;
+		tail = item;
+		return createView(item);
 	}
 
 	/** Returns the utterance that contains this relation.
@@ -138,16 +140,255 @@ public class Relation implements Dumpable {
 		return owner;
 	}
 
+	/** Returns the item table of the utterance that contains this relation.
+	 * @return the item table */
+	ItemTable getTable() {
+		return table;
+	}
+
 	/** Dumps this relation to the print writer.
 	 * @param pw the output stream
 	 * @param pad the padding
 	 * @param title the title for the dump */
 	public void dump(PrintWriter pw, int pad, String title) {
 		Utilities.dump(pw, pad, "========= Relation: " + title + " =========");
-		Item item = head;
+		Item item = getHead();
 		while (item != null) {
 			item.dump(pw, pad + 4, title);
 			item = item.getNext();
 		}
 	}
+
+	/** Empties this relation, which its utterance no longer uses. The arrays and the views of the items are kept for the
+	 * relation of the same name of the next utterance. */
+	void reset() {
+		head = NONE;
+		tail = NONE;
+		size = 0;
+		Arrays.fill(itemOfContents, 0);
+		spare = true;
+	}
+
+	/** Determines if this relation was reset and is not used by its utterance.
+	 * @return true if the relation is spare */
+	boolean isSpare() {
+		return spare;
+	}
+
+	/** Sets if this relation is spare.
+	 * @param spare true if the utterance does not use the relation */
+	void setSpare(boolean spare) {
+		this.spare = spare;
+	}
+
+	/** Returns the view of an item.
+	 * @param item the index of the item, or NONE
+	 * @return the item, or null for NONE */
+	Item getItem(int item) {
+		return item == NONE ? null : items[item];
+	}
+
+	/** Returns the contents of an item.
+	 * @param item the index of the item
+	 * @return the index of the contents in the item table */
+	int getContents(int item) {
+		return contents[item];
+	}
+
+	/** Returns the parent of an item.
+	 * @param item the index of the item
+	 * @return the index of the parent, or NONE */
+	int getParent(int item) {
+		return parents[item];
+	}
+
+	/** Returns the first daughter of an item.
+	 * @param item the index of the item
+	 * @return the index of the daughter, or NONE */
+	int getDaughter(int item) {
+		return daughters[item];
+	}
+
+	/** Returns the last daughter of an item.
+	 * @param item the index of the item
+	 * @return the index of the daughter, or NONE */
+	int getLastDaughter(int item) {
+		return lastDaughters[item];
+	}
+
+	/** Returns the item after an item.
+	 * @param item the index of the item
+	 * @return the index of the next item, or NONE */
+	int getNext(int item) {
+		return nexts[item];
+	}
+
+	/** Returns the item before an item.
+	 * @param item the index of the item
+	 * @return the index of the previous item, or NONE */
+	int getPrevious(int item) {
+		return prevs[item];
+	}
+
+	/** Returns the item of this relation that has a contents.
+	 * @param contentsIndex the index of the contents in the item table
+	 * @return the item, or null if the contents has none in this relation */
+	Item getItemOfContents(int contentsIndex) {
+		return contentsIndex < itemOfContents.length ? getItem(itemOfContents[contentsIndex] - 1) : null;
+	}
+
+	/** Makes an item the item of this relation that has a contents.
+	 * @param contentsIndex the index of the contents in the item table
+	 * @param item the item, or null to have none */
+	void setItemOfContents(int contentsIndex, Item item) {
+		setItemOfContents(contentsIndex, item == null ? NONE : item.getIndex());
+	}
+
+	/** Adds an item that is in no list yet. It becomes the item of its contents in this relation.
+	 * @param contentsIndex the index of the contents in the item table, or NONE for new contents
+	 * @return the index of the item */
+	int newItem(int contentsIndex) {
+		if (contentsIndex == NONE) {
+			contentsIndex = table.add(null);
+		}
+		if (size == items.length) {
+			int capacity = size * 2;
+			contents = grow(contents, capacity);
+			parents = grow(parents, capacity);
+			daughters = grow(daughters, capacity);
+			lastDaughters = grow(lastDaughters, capacity);
+			nexts = grow(nexts, capacity);
+			prevs = grow(prevs, capacity);
+			Item[] newItems = new Item[capacity];
+			System.arraycopy(items, 0, newItems, 0, size);
+			items = newItems;
+		}
+		int item = size++;
+		contents[item] = contentsIndex;
+		parents[item] = NONE;
+		daughters[item] = NONE;
+		lastDaughters[item] = NONE;
+		nexts[item] = NONE;
+		prevs[item] = NONE;
+		setItemOfContents(contentsIndex, item);
+		owner.modified();
+		return item;
+	}
+
+	/** Makes the view of a new item, or takes the one of the item that had its index before the relation was reset.
+	 * @param item the index of the item
+	 * @return the item */
+	private Item createView(int item) {
+		Item view = items[item];
+		if (view == null) {
+			view = new Item(this, item);
+			items[item] = view;
+		}
+		return view;
+	}
+
+	/** Keeps the view of an item that was made with the public constructor of Item.
+	 * @param view the item */
+	void setView(Item view) {
+		items[view.getIndex()] = view;
+	}
+
+	/** Returns the index of the contents of an item in the item table of this relation.
+	 * @param item the item, or null
+	 * @return the index of the contents, or NONE for null */
+	int getContentsIndex(Item item) {
+		if (item == null) {
+			return NONE;
+		}
+		if (item.getOwnerRelation().table == table) {
+			return item.getOwnerRelation().contents[item.getIndex()];
+		}
+		return table.indexOf(item.getSharedContents());
+	}
+
+	/** Appends a new item after an item.
+	 * @param item the index of the item
+	 * @param contentsIndex the index of the contents of the new item, or NONE for new contents
+	 * @return the new item */
+	Item append(int item, int contentsIndex) {
+		int newItem = newItem(contentsIndex);
+		int next = nexts[item];
+		if (next != NONE) {
+			prevs[next] = newItem;
+			nexts[newItem] = next;
+		}
+		link(item, newItem);
+		int parent = parents[item];
+		parents[newItem] = parent;
+		if (parent != NONE && lastDaughters[parent] == item) {
+			lastDaughters[parent] = newItem;
+		}
+		if (tail == item) {
+			tail = newItem;
+		}
+		return createView(newItem);
+	}
+
+	/** Prepends a new item before an item.
+	 * @param item the index of the item
+	 * @param contentsIndex the index of the contents of the new item, or NONE for new contents
+	 * @return the new item */
+	Item prepend(int item, int contentsIndex) {
+		int newItem = newItem(contentsIndex);
+		int prev = prevs[item];
+		if (prev != NONE) {
+			link(prev, newItem);
+		}
+		link(newItem, item);
+		int parent = parents[item];
+		parents[newItem] = parent;
+		if (parent != NONE && daughters[parent] == item) {
+			daughters[parent] = newItem;
+		}
+		if (head == item) {
+			head = newItem;
+		}
+		return createView(newItem);
+	}
+
+	/** Adds a new last daughter to an item.
+	 * @param item the index of the item
+	 * @param contentsIndex the index of the contents of the new item, or NONE for new contents
+	 * @return the new daughter */
+	Item addDaughter(int item, int contentsIndex) {
+		int last = lastDaughters[item];
+		if (last != NONE) {
+			return append(last, contentsIndex);
+		}
+		int daughter = newItem(contentsIndex);
+		parents[daughter] = item;
+		daughters[item] = daughter;
+		lastDaughters[item] = daughter;
+		return createView(daughter);
+	}
+
+	/** Links two items as next and previous.
+	 * @param item the index of the first item
+	 * @param next the index of the item after it */
+	private void link(int item, int next) {
+		nexts[item] = next;
+		prevs[next] = item;
+	}
+
+	/** Makes an item the item of this relation that has a contents.
+	 * @param contentsIndex the index of the contents in the item table
+	 * @param item the index of the item, or NONE to have none */
+	private void setItemOfContents(int contentsIndex, int item) {
+		if (contentsIndex >= itemOfContents.length) {
+			int capacity = Math.max(contentsIndex + 1, table.size());
+			itemOfContents = grow(itemOfContents, Math.max(capacity, itemOfContents.length * 2));
+		}
+		itemOfContents[contentsIndex] = item + 1;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] newArray = new int[capacity];
+		System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+		return newArray;
+	}
 }
@@ -0,0 +1,364 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/** A FeatureSet that keeps its features in small arrays indexed by position, found by their {@link FeatureSlots slot}.
+ * Int and float values are kept unboxed, so setting them allocates nothing and reading them with getInt and getFloat
+ * neither hashes the name nor unboxes. When an int or float is read as an object, the box is kept until the value
+ * changes.
+ * <p>
+ * The features are kept in the order they were first set, like FeatureSetImpl, so both dump the same way. Feature sets
+ * hold a handful of features, so a feature is found by a linear search of the slots. Names that are only looked up are
+ * not given a slot; a name without one is absent from every set. */
+public class SlotFeatureSet implements SlottedFeatureSet {
+	private final static byte OBJECT = 0;
+	private final static byte INT = 1;
+	private final static byte FLOAT = 2;
+	private final static int NAME = FeatureSlots.getSlot("name");
+
+	private static DecimalFormat formatter;
+
+	private int size;
+	private int[] slots;
+	private byte[] types;
+	// int values, and float values as their bits
+	private int[] values;
+	// object values, and the boxes of int and float values that were read as objects
+	private Object[] objects;
+	// the utterance told of every change, if any
+	private Utterance owner;
+
+	/** Creates a new empty feature set */
+	public SlotFeatureSet() {
+		this(4);
+	}
+
+	/** Creates a new empty feature set with room for the given number of features.
+	 * @param capacity the number of features */
+	public SlotFeatureSet(int capacity) {
+		capacity = Math.max(1, capacity);
+		slots = new int[capacity];
+		types = new byte[capacity];
+		values = new int[capacity];
+		objects = new Object[capacity];
+	}
+
+	/** Sets the utterance that is told of every change to this set.
+	 * @param owner the utterance, or null */
+	void setOwner(Utterance owner) {
+		this.owner = owner;
+	}
+
+	/** Determines if the given feature is present.
+	 * @param name the name of the feature of interest
+	 * @return true if the named feature is present */
+	public boolean isPresent(String name) {
+		return isPresent(FeatureSlots.findSlot(name));
+	}
+
+	/** Determines if the feature in the given slot is present.
+	 * @param slot the slot of the feature of interest
+	 * @return true if the feature is present */
+	public boolean isPresent(int slot) {
+		return indexOf(slot) >= 0;
+	}
+
+	/** Removes the named feature from this set of features.
+	 * @param name the name of the feature of interest */
+	public void remove(String name) {
+		remove(FeatureSlots.findSlot(name));
+	}
+
+	/** Removes all the features of this set, keeping the room they took, and the utterance that is told of changes. */
+	void clear() {
+		if (size > 0 && owner != null) {
+			owner.modified();
+		}
+		for (int i = 0; i < size; i++) {
+			objects[i] = null;
+		}
+		size = 0;
+	}
+
+	/** Removes the feature in the given slot from this set of features.
+	 * @param slot the slot of the feature of interest */
+	public void remove(int slot) {
+		int i = indexOf(slot);
+		if (i >= 0) {
+			if (owner != null) {
+				owner.modified();
+			}
+			int moved = size - i - 1;
+			System.arraycopy(slots, i + 1, slots, i, moved);
+			System.arraycopy(types, i + 1, types, i, moved);
+			System.arraycopy(values, i + 1, values, i, moved);
+			System.arraycopy(objects, i + 1, objects, i, moved);
+			objects[--size] = null;
+		}
+	}
+
+	/** Convenience method that returns the named feature as a string.
+	 * @param name the name of the feature
+	 * @return the value associated with the name or null if the value is not found
+	 * @throws ClassCastException if the associated value is not a String */
+	public String getString(String name) {
+		return (String) getObject(FeatureSlots.findSlot(name));
+	}
+
+	/** Convenience method that returns the feature in the given slot as a string.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found
+	 * @throws ClassCastException if the associated value is not a String */
+	public String getString(int slot) {
+		return (String) getObject(slot);
+	}
+
+	/** Convenience method that returns the named feature as a int.
+	 * @param name the name of the feature
+	 * @return the value associated with the name
+	 * @throws ClassCastException if the associated value is not an int.
+	 * @throws NullPointerException if the value is not found */
+	public int getInt(String name) {
+		return getInt(FeatureSlots.findSlot(name));
+	}
+
+	/** Convenience method that returns the feature in the given slot as a int.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not an int.
+	 * @throws NullPointerException if the value is not found */
+	public int getInt(int slot) {
+		int i = indexOf(slot);
+		if (i >= 0 && types[i] == INT) {
+			return values[i];
+		}
+		return ((Integer) getObject(slot)).intValue();
+	}
+
+	/** Convenience method that returns the named feature as a float.
+	 * @param name the name of the feature
+	 * @return the value associated with the name
+	 * @throws ClassCastException if the associated value is not a float
+	 * @throws NullPointerException if the value is not found */
+	public float getFloat(String name) {
+		return getFloat(FeatureSlots.findSlot(name));
+	}
+
+	/** Convenience method that returns the feature in the given slot as a float.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not a float
+	 * @throws NullPointerException if the value is not found */
+	public float getFloat(int slot) {
+		int i = indexOf(slot);
+		if (i >= 0 && types[i] == FLOAT) {
+			return Float.intBitsToFloat(values[i]);
+		}
+		return ((Float) getObject(slot)).floatValue();
+	}
+
+	/** Returns the named feature as an object.
+	 * @param name the name of the feature
+	 * @return the value associated with the name or null if the value is not found */
+	public Object getObject(String name) {
+		return getObject(FeatureSlots.findSlot(name));
+	}
+
+	/** Returns the feature in the given slot as an object. Ints and floats are returned boxed.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found */
+	public Object getObject(int slot) {
+		int i = indexOf(slot);
+		if (i < 0) {
+			return null;
+		}
+		Object value = objects[i];
+		if (value == null && types[i] != OBJECT) {
+			if (types[i] == INT) {
+				value = Integer.valueOf(values[i]);
+			} else {
+				value = Float.valueOf(Float.intBitsToFloat(values[i]));
+			}
+			objects[i] = value;
+		}
+		return value;
+	}
+
+	/** Convenience method that sets the named feature as a int.
+	 * @param name the name of the feature
+	 * @param value the value of the feature */
+	public void setInt(String name, int value) {
+		setInt(FeatureSlots.getSlot(name), value);
+	}
+
+	/** Convenience method that sets the feature in the given slot as a int.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setInt(int slot, int value) {
+		int i = getIndex(slot);
+		types[i] = INT;
+		values[i] = value;
+		objects[i] = null;
+	}
+
+	/** Convenience method that sets the named feature as a float.
+	 * @param name the name of the feature
+	 * @param value the value of the feature */
+	public void setFloat(String name, float value) {
+		setFloat(FeatureSlots.getSlot(name), value);
+	}
+
+	/** Convenience method that sets the feature in the given slot as a float.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setFloat(int slot, float value) {
+		int i = getIndex(slot);
+		types[i] = FLOAT;
+		values[i] = Float.floatToRawIntBits(value);
+		objects[i] = null;
+	}
+
+	/** Convenience method that sets the named feature as a String.
+	 * @param name the name of the feature
+	 * @param value the value of the feature */
+	public void setString(String name, String value) {
+		setObject(FeatureSlots.getSlot(name), value);
+	}
+
+	/** Convenience method that sets the feature in the given slot as a String.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setString(int slot, String value) {
+		setObject(slot, value);
+	}
+
+	/** Sets the named feature.
+	 * @param name the name of the feature
+	 * @param value the value of the feature */
+	public void setObject(String name, Object value) {
+		setObject(FeatureSlots.getSlot(name), value);
+	}
+
+	/** Sets the feature in the given slot. Integers and Floats are kept unboxed.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setObject(int slot, Object value) {
+		int i = getIndex(slot);
+		if (value instanceof Integer) {
+			types[i] = INT;
+			values[i] = ((Integer) value).intValue();
+		} else if (value instanceof Float) {
+			types[i] = FLOAT;
+			values[i] = Float.floatToRawIntBits(((Float) value).floatValue());
+		} else {
+			types[i] = OBJECT;
+		}
+		objects[i] = value;
+	}
+
+	/** Returns the number of features in this set.
+	 * @return the number of features */
+	int size() {
+		return size;
+	}
+
+	/** Returns the slot of the feature at a position, in the order the features were first set.
+	 * @param index the position of the feature
+	 * @return the slot of the feature */
+	int getSlotAt(int index) {
+		return slots[index];
+	}
+
+	/** Dumps the FeatureSet in textual form. The feature name is not included in the dump.
+	 * @param output where to send the formatted output
+	 * @param pad the padding
+	 * @param title the title */
+	public void dump(PrintWriter output, int pad, String title) {
+		dump(output, pad, title, false);
+	}
+
+	/** Dumps the FeatureSet in textual form, in the same form as FeatureSetImpl.
+	 * @param output where to send the formatted output
+	 * @param pad the padding
+	 * @param title the title
+	 * @param showName if <code>true</code>, include the feature name */
+	public void dump(PrintWriter output, int pad, String title, boolean showName) {
+		if (formatter == null) {
+			formatter = new DecimalFormat("########0.000000");
+		}
+
+		Utilities.dump(output, pad, title);
+		// in reverse, to match flite
+		for (int i = size - 1; i >= 0; i--) {
+			if (!showName && slots[i] == NAME) {
+				continue;
+			}
+			String key = FeatureSlots.getName(slots[i]);
+			Object value = getObject(slots[i]);
+			if (value instanceof Dumpable) {
+				Dumpable d = (Dumpable) value;
+				d.dump(output, pad + 4, key);
+			} else if (value instanceof Float) {
+				Float fval = (Float) value;
+				Utilities.dump(output, pad + 4, key + "=" + formatter.format(fval.floatValue()));
+			} else {
+				Utilities.dump(output, pad + 4, key + "=" + value);
+			}
+		}
+	}
+
+	/** Returns the position of a feature.
+	 * @param slot the slot of the feature
+	 * @return the position, or -1 if the feature is not present */
+	private int indexOf(int slot) {
+		for (int i = 0; i < size; i++) {
+			if (slots[i] == slot) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Returns the position of a feature that is about to be set, adding the feature at the end if it is not present.
+	 * @param slot the slot of the feature
+	 * @return the position */
+	private int getIndex(int slot) {
+		if (owner != null) {
+			owner.modified();
+		}
+		int i = indexOf(slot);
+		if (i >= 0) {
+			return i;
+		}
+		if (size == slots.length) {
+			int capacity = size * 2;
+			int[] newSlots = new int[capacity];
+			byte[] newTypes = new byte[capacity];
+			int[] newValues = new int[capacity];
+			Object[] newObjects = new Object[capacity];
+			System.arraycopy(slots, 0, newSlots, 0, size);
+			System.arraycopy(types, 0, newTypes, 0, size);
+			System.arraycopy(values, 0, newValues, 0, size);
+			System.arraycopy(objects, 0, newObjects, 0, size);
+			slots = newSlots;
+			types = newTypes;
+			values = newValues;
+			objects = newObjects;
+		}
+		slots[size] = slot;
+		return size++;
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute, 
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ * 
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL 
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+/** A FeatureSet whose features can also be found by the slot of their name, as given by {@link FeatureSlots#getSlot}.
+ * Each method that takes a feature name has a twin here that takes the slot. Code that uses a feature often can look
+ * its slot up once and use the slot methods, which need not hash the name. */
+public interface SlottedFeatureSet extends FeatureSet {
+
+	/** Determines if the feature in the given slot is present.
+	 * @param slot the slot of the feature of interest
+	 * @return true if the feature is present */
+	boolean isPresent(int slot);
+
+	/** Removes the feature in the given slot from this set of features.
+	 * @param slot the slot of the feature of interest */
+	void remove(int slot);
+
+	/** Convenience method that returns the feature in the given slot as a string.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found
+	 * @throws ClassCastException if the associated value is not a String */
+	String getString(int slot);
+
+	/** Convenience method that returns the feature in the given slot as an int.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not an int */
+	int getInt(int slot);
+
+	/** Convenience method that returns the feature in the given slot as a float.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not a float. */
+	float getFloat(int slot);
+
+	/** Returns the feature in the given slot as an object.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found */
+	Object getObject(int slot);
+
+	/** Convenience method that sets the feature in the given slot as an int.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	void setInt(int slot, int value);
+
+	/** Convenience method that sets the feature in the given slot as a float
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	void setFloat(int slot, float value);
+
+	/** Convenience method that sets the feature in the given slot as a String.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	void setString(int slot, String value);
+
+	/** Sets the feature in the given slot.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	void setObject(int slot, Object value);
+}
@@ -22,14 +22,17 @@ import com.sun.speech.freetts.util.SegmentRelationUtils;
  * applications can set/get features directly from the utterance. If a feature query is not found in the utterance
  * feature set, the query is forwarded to the FeatureSet of the voice associated with the utterance. */
 @SuppressWarnings("serial")
-public class Utterance implements FeatureSet, Serializable {
+public class Utterance implements SlottedFeatureSet, Serializable {
 
 	private Voice voice;
-	private FeatureSet features;
-	private FeatureSet relations;
+	private FeatureSetImpl features;
+	private FeatureSetImpl relations;
+	private ItemTable items;
 	private boolean first; // first in a connected series
 	private boolean last; // last in a connected series
 	private FreeTTSSpeakable speakable;
+	private transient int modifications;
+	private transient FeatureMemo featureMemo;
 
 	/** Creates a new, empty utterance.
 	 * @param voice the voice associated with the utterance */
@@ -37,6 +40,9 @@ public class Utterance implements FeatureSet, Serializable {
 		this.voice = voice;
 		features = new FeatureSetImpl();
 		relations = new FeatureSetImpl();
+		if (voice != null && voice.isMemoizeFeatures()) {
+			featureMemo = new FeatureMemo(this);
+		}
 	}
 
 	/** Creates an utterance with the given set of tokenized text.
@@ -63,8 +69,16 @@ public class Utterance implements FeatureSet, Serializable {
 	 * @param name the name of the new relation
 	 * @return the newly created relation */
 	public Relation createRelation(String name) {
-		Relation relation = new Relation(name, this);
+		if (items == null) {
+			items = new ItemTable(this);
+		}
+		Relation relation = items.getSpareRelation(name);
+		if (relation == null) {
+			relation = new Relation(name, this, items);
+			items.addRelation(relation);
+		}
 		relations.setObject(name, relation);
+		modified();
 		return relation;
 	}
 
@@ -81,6 +95,47 @@ public class Utterance implements FeatureSet, Serializable {
 		return relations.isPresent(name);
 	}
 
+	/** Notes that a relation, an item or a feature of this utterance was changed. */
+	void modified() {
+		modifications++;
+	}
+
+	/** Returns the number of changes to the relations, items and features of this utterance so far. Features found by
+	 * following paths from the items stay valid while the count is the same.
+	 * @return the modification count */
+	int getModificationCount() {
+		return modifications;
+	}
+
+	/** Returns the memo of the features path extractors found on the items of this utterance.
+	 * @return the memo, or null if the voice does not memoize features */
+	FeatureMemo getFeatureMemo() {
+		return featureMemo;
+	}
+
+	/** Resets this utterance to a new, empty utterance of the same voice, so that it can be recycled. Its relations, items
+	 * and feature sets are kept to be reused by the relations created next, and must no longer be used.
+	 * @see Voice#setRecycleUtterances */
+	void reset() {
+		features.clear();
+		relations.clear();
+		if (items != null) {
+			items.reset();
+		}
+		first = false;
+		last = false;
+		speakable = null;
+		// the count goes on, so that nothing kept for the count of the old utterance is taken as current
+		modified();
+		if (voice == null || !voice.isMemoizeFeatures()) {
+			featureMemo = null;
+		} else if (featureMemo == null) {
+			featureMemo = new FeatureMemo(this);
+		} else {
+			featureMemo.reset();
+		}
+	}
+
 	/** Retrieves the Voice associated with this Utterance.
 	 * @return the voice associated with this utterance. */
 	public Voice getVoice() {
@@ -145,6 +200,7 @@ public class Utterance implements FeatureSet, Serializable {
 	 * @param name the name of the feature of interest */
 	public void remove(String name) {
 		features.remove(name);
+		modified();
 	}
 
 	/** Convenience method that returns the named feature as a string. If the named feature is not present in the
@@ -203,6 +259,7 @@ public class Utterance implements FeatureSet, Serializable {
 	 * @param value the value of the feature */
 	public void setInt(String name, int value) {
 		features.setInt(name, value);
+		modified();
 	}
 
 	/** Convenience method that sets the named feature as a float.
@@ -210,6 +267,7 @@ public class Utterance implements FeatureSet, Serializable {
 	 * @param value the value of the feature */
 	public void setFloat(String name, float value) {
 		features.setFloat(name, value);
+		modified();
 	}
 
 	/** Convenience method that sets the named feature as a String.
@@ -217,6 +275,7 @@ public class Utterance implements FeatureSet, Serializable {
 	 * @param value the value of the feature */
 	public void setString(String name, String value) {
 		features.setString(name, value);
+		modified();
 	}
 
 	/** Sets the named feature.
@@ -224,6 +283,109 @@ public class Utterance implements FeatureSet, Serializable {
 	 * @param value the value of the feature */
 	public void setObject(String name, Object value) {
 		features.setObject(name, value);
+		modified();
+	}
+
+	/** Determines if the feature in the given slot is present. If the feature is not present in the utterance, the feature
+	 * set of the voice is checked.
+	 * @param slot the slot of the feature of interest
+	 * @return true if the feature is present */
+	public boolean isPresent(int slot) {
+		if (!features.isPresent(slot)) {
+			return getVoice().getSlottedFeatures().isPresent(slot);
+		} else {
+			return true;
+		}
+	}
+
+	/** Removes the feature in the given slot from this set of features.
+	 * @param slot the slot of the feature of interest */
+	public void remove(int slot) {
+		features.remove(slot);
+		modified();
+	}
+
+	/** Convenience method that returns the feature in the given slot as a string. If the feature is not present in the
+	 * utterance, then this attempts to retrieve it from the voice.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found
+	 * @throws ClassCastException if the associated value is not a String */
+	public String getString(int slot) {
+		if (!features.isPresent(slot)) {
+			return getVoice().getSlottedFeatures().getString(slot);
+		} else {
+			return features.getString(slot);
+		}
+	}
+
+	/** Convenience method that returns the feature in the given slot as a int. If the feature is not present in the
+	 * utterance, then this attempts to retrieve it from the voice.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not an int */
+	public int getInt(int slot) {
+		if (!features.isPresent(slot)) {
+			return getVoice().getSlottedFeatures().getInt(slot);
+		} else {
+			return features.getInt(slot);
+		}
+	}
+
+	/** Convenience method that returns the feature in the given slot as a float. If the feature is not present in the
+	 * utterance, then this attempts to retrieve it from the voice.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature
+	 * @throws ClassCastException if the associated value is not a float */
+	public float getFloat(int slot) {
+		if (!features.isPresent(slot)) {
+			return getVoice().getSlottedFeatures().getFloat(slot);
+		} else {
+			return features.getFloat(slot);
+		}
+	}
+
+	/** Returns the feature in the given slot as an object. If the feature is not present in the utterance, then this
+	 * attempts to retrieve it from the voice.
+	 * @param slot the slot of the feature
+	 * @return the value of the feature or null if the value is not found */
+	public Object getObject(int slot) {
+		if (!features.isPresent(slot)) {
+			return getVoice().getSlottedFeatures().getObject(slot);
+		} else {
+			return features.getObject(slot);
+		}
+	}
+
+	/** Convenience method that sets the feature in the given slot as an int.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setInt(int slot, int value) {
+		features.setInt(slot, value);
+		modified();
+	}
+
+	/** Convenience method that sets the feature in the given slot as a float.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setFloat(int slot, float value) {
+		features.setFloat(slot, value);
+		modified();
+	}
+
+	/** Convenience method that sets the feature in the given slot as a String.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setString(int slot, String value) {
+		features.setString(slot, value);
+		modified();
+	}
+
+	/** Sets the feature in the given slot.
+	 * @param slot the slot of the feature
+	 * @param value the value of the feature */
+	public void setObject(int slot, Object value) {
+		features.setObject(slot, value);
+		modified();
 	}
 
 	/** Returns the Item in the given Relation associated with the given time.
@@ -312,7 +474,7 @@ public class Utterance implements FeatureSet, Serializable {
 	/** Sets the token list for this utterance. Note that this could be optimized by turning the token list directly into
 	 * the token relation.
 	 * @param tokenList the tokenList */
-	private void setTokenList(List<Token> tokenList) {
+	void setTokenList(List<Token> tokenList) {
 		setInputText(tokenList);
 
 		Relation relation = createRelation(Relation.TOKEN);
@@ -21,9 +21,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +44,7 @@ import com.sun.speech.freetts.audio.AudioPlayer;
 import com.sun.speech.freetts.lexicon.Lexicon;
 import com.sun.speech.freetts.relp.LPCResult;
 import com.sun.speech.freetts.util.BulkTimer;
+import com.sun.speech.freetts.util.Timer;
 import com.sun.speech.freetts.util.Utilities;
 
 /** Performs text-to-speech using a series of <code>UtteranceProcessors</code>. It is the main conduit to the FreeTTS
@@ -72,14 +82,23 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	/** Logger instance. */
 	private static final Logger LOGGER = Logger.getLogger(Voice.class.getName());
 
+	/** The most utterances the output thread takes from its queue at once. */
+	private static final int OUTPUT_BATCH_SIZE = 8;
+
 	/** Constant that describes the name of the unit database used by this voice. */
 	public final static String DATABASE_NAME = "databaseName";
 
 	private List<UtteranceProcessor> utteranceProcessors;
 	private Map featureProcessors;
+	private volatile int featureProcessorsVersion;
 	private FeatureSetImpl features;
 	private boolean metrics = false;
 	private boolean detailedMetrics = false;
+	private boolean memoizeFeatures = false;
+	private final AtomicLong featureMemoHits = new AtomicLong();
+	private boolean recycleUtterances = false;
+	private Arena arena;
+	private final AtomicLong featureMemoLookups = new AtomicLong();
 	private boolean dumpUtterance = false;
 	private boolean dumpRelations = false;
 	private String runTitle = "unnamed run";
@@ -91,8 +110,16 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	private String waveDumpFile = null;
 	private BulkTimer runTimer = new BulkTimer();
 	private BulkTimer threadTimer = new BulkTimer();
+	private BulkTimer pipelineTimer = new BulkTimer();
+	private final Timer firstAudioTimer = runTimer.getTimer("FirstAudio");
+	private final AtomicBoolean firstAudioPending = new AtomicBoolean();
+	private long speakStartTime;
+	private volatile long firstAudioTime = -1;
 	private boolean externalOutputQueue = false;
 	private boolean externalAudioPlayer = false;
+	private AudioCache audioCache = AudioCache.getDefault();
+	private FrontEndCache frontEndCache = FrontEndCache.getDefault();
+	private int frontEndSize = 0;
 
 	private float nominalRate = 150; // nominal speaking rate for this voice
 	private float pitch = 100; // pitch baseline (hertz)
@@ -101,6 +128,11 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	private float volume = 0.8f; // the volume (range 0 to 1)
 	private float durationStretch = 1f; // the duration stretch
 
+	private int pipelineSplit = 0; // number of front-end processors, 0 disables pipelining
+	private int pipelineDepth = 2; // number of utterances the front-end may run ahead
+	private int pipelineThreads = 1; // size of the front-end worker pool
+	private ExecutorService pipelineExecutor = null;
+
 	private boolean loaded = false;
 
 	private String name = "default_name";
@@ -127,6 +159,34 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	/** The default class to use for the DEFAULT_AUDIO_PLAYER. */
 	public final static String DEFAULT_AUDIO_PLAYER_DEFAULT = "com.sun.speech.freetts.audio.JavaStreamingAudioPlayer";
 
+	/** Property for the number of front-end utterance processors that run on the pipeline worker pool. The remaining
+	 * (back-end) processors run on the calling thread. The default, 0, disables pipelining. For the CMU voices a value of
+	 * 9 places TokenToWords through ContourGenerator in the front-end.
+	 * @see #setPipelineSplit */
+	public final static String PROP_PIPELINE_SPLIT = PROP_PREFIX + "pipelineSplit";
+
+	/** Property for the maximum number of utterances the front-end may run ahead of the back-end. Values below 1 are
+	 * taken as 1. */
+	public final static String PROP_PIPELINE_DEPTH = PROP_PREFIX + "pipelineDepth";
+
+	/** Property for the number of front-end worker threads. Values larger than 1 should only be used if the front-end
+	 * processors (and the lexicon) of the voice can be shared across threads. */
+	public final static String PROP_PIPELINE_THREADS = PROP_PREFIX + "pipelineThreads";
+
+	/** Property that makes the utterances of the voice memoize what feature processors give for their items, until the
+	 * utterance is next modified. The default is false.
+	 * @see #setMemoizeFeatures */
+	public final static String PROP_MEMOIZE_FEATURES = PROP_PREFIX + "memoizeFeatures";
+
+	/** Property that makes the voice recycle its utterances, and their LPC results, once they are output. The default is
+	 * false.
+	 * @see #setRecycleUtterances */
+	public final static String PROP_RECYCLE_UTTERANCES = PROP_PREFIX + "recycleUtterances";
+
+	/** Property for the number of objects of each class the arena of the voice keeps for reuse. The default is 16.
+	 * @see #getArena */
+	public final static String PROP_ARENA_CAPACITY = PROP_PREFIX + "arenaCapacity";
+
 	/** Creates a new Voice. Utterances are sent to an output queue to be rendered as audio. Utterances are placed on the
 	 * queue by an output thread. This queue is usually created via a call to 'createOutputThread,' which creates a thread
 	 * that waits on the queue and sends the output to the audio player associated with this voice. If the queue is null,
@@ -137,15 +197,23 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		utteranceProcessors = Collections.synchronizedList(new ArrayList());
 		features = new FeatureSetImpl();
 		featureProcessors = new HashMap();
+		int arenaCapacity = 16;
 
 		try {
 			nominalRate = Float.parseFloat(Utilities.getProperty(PROP_PREFIX + "speakingRate", "150"));
 			pitch = Float.parseFloat(Utilities.getProperty(PROP_PREFIX + "pitch", "100"));
 			range = Float.parseFloat(Utilities.getProperty(PROP_PREFIX + "range", "10"));
 			volume = Float.parseFloat(Utilities.getProperty(PROP_PREFIX + "volume", "1.0"));
+			pipelineSplit = Utilities.getInteger(PROP_PIPELINE_SPLIT, 0).intValue();
+			pipelineDepth = Math.max(1, Utilities.getInteger(PROP_PIPELINE_DEPTH, 2).intValue());
+			pipelineThreads = Utilities.getInteger(PROP_PIPELINE_THREADS, 1).intValue();
+			memoizeFeatures = Utilities.getBoolean(PROP_MEMOIZE_FEATURES);
+			recycleUtterances = Utilities.getBoolean(PROP_RECYCLE_UTTERANCES);
+			arenaCapacity = Utilities.getInteger(PROP_ARENA_CAPACITY, arenaCapacity).intValue();
 		} catch (SecurityException se) {
 			// can't get properties, just use defaults
 		}
+		arena = new Arena(arenaCapacity);
 		outputQueue = null;
 		audioPlayer = null;
 		defaultAudioPlayer = null;
@@ -206,16 +274,25 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		boolean posted = false;
 
 		getAudioPlayer().startFirstSampleTimer();
+		speakStartTime = System.nanoTime();
+		firstAudioTime = -1;
+		firstAudioTimer.start();
+		firstAudioPending.set(true);
 
-		for (Iterator i = tokenize(speakable); !speakable.isCompleted() && i.hasNext();) {
-			try {
-				Utterance utterance = (Utterance) i.next();
-				if (utterance != null) {
-					processUtterance(utterance);
-					posted = true;
+		if (isPipelined()) {
+			posted = speakPipelined(speakable);
+		} else {
+			for (Iterator i = tokenize(speakable); !speakable.isCompleted() && i.hasNext();) {
+				try {
+					Utterance utterance = (Utterance) i.next();
+					if (utterance != null) {
+						lookupAudio(utterance);
+						processUtterance(utterance);
+						posted = true;
+					}
+				} catch (ProcessException pe) {
+					ok = false;
 				}
-			} catch (ProcessException pe) {
-				ok = false;
 			}
 		}
 		if (ok && posted) {
@@ -223,6 +300,7 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 			ok = speakable.waitCompleted();
 			runTimer.stop("WaitAudio");
 		}
+		firstAudioPending.set(false);
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.fine("speak(FreeTTSSpeakable) completed");
 		}
@@ -291,6 +369,16 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	 * @param u the Utterance to process
 	 * @throws ProcessException if an exception occurred while performing operations on the Utterance */
 	public void processUtterance(Utterance u) throws ProcessException {
+		processUtterance(u, 0);
+	}
+
+	/** Processes the given Utterance by passing it to the UtteranceProcessors managed by this Voice, starting with the
+	 * processor at the given index. The processors before that index are expected to have been run already, typically by
+	 * the pipeline front-end.
+	 * @param u the Utterance to process
+	 * @param first the index of the first processor to run
+	 * @throws ProcessException if an exception occurred while performing operations on the Utterance */
+	private void processUtterance(Utterance u, int first) throws ProcessException {
 		UtteranceProcessor[] processors;
 
 		if (utteranceProcessors == null) {
@@ -301,17 +389,31 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		}
 
 		runTimer.start("processing");
-		processors = new UtteranceProcessor[utteranceProcessors.size()];
-		processors = (UtteranceProcessor[]) utteranceProcessors.toArray(processors);
+		processors = getProcessorArray();
+		if (u.getObject(AudioCache.UTT_AUDIO) != null) {
+			// the audio output plays the cached audio
+			first = processors.length;
+		} else if (u.getObject(FrontEndCache.UTT_RESTORED) != null) {
+			first = Math.max(first, frontEndSize);
+		} else {
+			first = restoreFrontEnd(u, first);
+		}
 
+		// read now, as the utterance may be recycled once it is output
+		String inputText = u.getString("input_text");
 		if (LOGGER.isLoggable(Level.FINE)) {
-			LOGGER.fine("Processing Utterance: " + u.getString("input_text"));
+			LOGGER.fine("Processing Utterance: " + inputText);
 		}
+		boolean finished = false;
 		try {
-			for (int i = 0; i < processors.length && !u.getSpeakable().isCompleted(); i++) {
+			for (int i = first; i < processors.length && !u.getSpeakable().isCompleted(); i++) {
 				runProcessor(processors[i], u, runTimer);
+				storeFrontEnd(u, i);
 			}
 			if (!u.getSpeakable().isCompleted()) {
+				// once it is output, the utterance may be recycled
+				finishProcessing(u);
+				finished = true;
 				if (outputQueue == null) {
 					if (LOGGER.isLoggable(Level.FINE)) {
 						LOGGER.fine("To AudioOutput");
@@ -332,9 +434,22 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		}
 
 		if (LOGGER.isLoggable(Level.FINE)) {
-			LOGGER.fine("Done Processing Utterance: " + u.getString("input_text"));
+			LOGGER.fine("Done Processing Utterance: " + inputText);
 		}
 		runTimer.stop("processing");
+		if (!finished) {
+			finishProcessing(u);
+		}
+	}
+
+	/** Counts the features the given utterance found in its memo, and dumps it if asked to.
+	 * @param u the utterance the processors are done with */
+	private void finishProcessing(Utterance u) {
+		FeatureMemo memo = u.getFeatureMemo();
+		if (memo != null) {
+			featureMemoHits.addAndGet(memo.getHits());
+			featureMemoLookups.addAndGet(memo.getLookups());
+		}
 
 		if (dumpUtterance) {
 			u.dump("Utterance");
@@ -346,10 +461,197 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		dumpASCII(u);
 	}
 
+	/** Returns a snapshot of the utterance processors of this voice.
+	 * @return the utterance processors in the order they are run */
+	private UtteranceProcessor[] getProcessorArray() {
+		UtteranceProcessor[] processors = new UtteranceProcessor[utteranceProcessors.size()];
+		return (UtteranceProcessor[]) utteranceProcessors.toArray(processors);
+	}
+
+	/** Determines if utterances are processed by the pipeline. Pipelining is used when the split point leaves at least
+	 * one processor on each side.
+	 * @return <code>true</code> if speak runs the front-end on the pipeline worker pool */
+	private boolean isPipelined() {
+		return pipelineSplit > 0 && utteranceProcessors != null && pipelineSplit < utteranceProcessors.size();
+	}
+
+	/** Speaks the given speakable with the front-end processors of utterance N+1 running on the pipeline worker pool
+	 * while the back-end processors of utterance N run on the calling thread. Utterances are handed to the back-end in
+	 * the order they were tokenized. If the speakable is cancelled, or the output queue is emptied via
+	 * <code>OutputQueue.removeAll</code>, any utterances still in the front-end are dropped.
+	 * @param speakable the item to speak
+	 * @return <code>true</code> if at least one utterance was handed to the back-end */
+	private boolean speakPipelined(FreeTTSSpeakable speakable) {
+		boolean posted = false;
+		ExecutorService executor = getPipelineExecutor();
+		LinkedList<Future<Utterance>> pending = new LinkedList<Future<Utterance>>();
+		int removeCount = outputQueue == null ? 0 : outputQueue.getRemoveCount();
+		Iterator i = tokenize(speakable);
+
+		try {
+			while (!speakable.isCompleted()) {
+				while (pending.size() < pipelineDepth && i.hasNext()) {
+					Utterance utterance = (Utterance) i.next();
+					if (utterance != null) {
+						lookupAudio(utterance);
+						pending.add(executor.submit(new FrontEnd(utterance)));
+					}
+				}
+				if (pending.isEmpty()) {
+					break;
+				}
+
+				Utterance utterance = pending.removeFirst().get();
+				if (outputQueue != null && outputQueue.getRemoveCount() != removeCount) {
+					if (LOGGER.isLoggable(Level.FINE)) {
+						LOGGER.fine("Output queue emptied, dropping pipelined utterances");
+					}
+					speakable.cancelled();
+					break;
+				}
+				if (utterance != null) {
+					processUtterance(utterance, pipelineSplit);
+					posted = true;
+				}
+			}
+		} catch (InterruptedException ie) {
+			speakable.cancelled();
+		} catch (ExecutionException ee) {
+			System.err.println("Trouble while processing utterance " + ee.getCause());
+			ee.getCause().printStackTrace();
+			speakable.cancelled();
+		} catch (ProcessException pe) {
+			System.err.println("Processing Utterance: " + pe);
+		} finally {
+			for (Future<Utterance> future : pending) {
+				future.cancel(false);
+			}
+		}
+		return posted;
+	}
+
+	/** Returns the executor running the pipeline front-end, creating it if necessary.
+	 * @return the pipeline executor */
+	private synchronized ExecutorService getPipelineExecutor() {
+		if (pipelineExecutor == null) {
+			pipelineExecutor = Executors.newFixedThreadPool(Math.max(1, pipelineThreads), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "FreeTTS pipeline " + getName());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pipelineExecutor;
+	}
+
+	/** Runs the front-end processors for one utterance on the pipeline worker pool. */
+	private class FrontEnd implements Callable<Utterance> {
+		private final Utterance utterance;
+
+		/** Creates the front-end task.
+		 * @param utterance the utterance to process */
+		FrontEnd(Utterance utterance) {
+			this.utterance = utterance;
+		}
+
+		/** Runs the front-end processors.
+		 * @return the utterance, or null if it should not be handed to the back-end */
+		public Utterance call() {
+			UtteranceProcessor[] processors = getProcessorArray();
+			int last = Math.min(pipelineSplit, processors.length);
+			if (utterance.getObject(AudioCache.UTT_AUDIO) != null) {
+				return utterance;
+			}
+			try {
+				for (int i = restoreFrontEnd(utterance, 0); i < last && !utterance.getSpeakable().isCompleted(); i++) {
+					synchronized (pipelineTimer) {
+						pipelineTimer.start(".." + processors[i].toString());
+					}
+					processors[i].processUtterance(utterance);
+					synchronized (pipelineTimer) {
+						pipelineTimer.stop(".." + processors[i].toString());
+					}
+					storeFrontEnd(utterance, i);
+				}
+			} catch (ProcessException pe) {
+				System.err.println("Processing Utterance: " + pe);
+				return null;
+			}
+			return utterance;
+		}
+	}
+
+	/** Looks up the audio of the given utterance in the audio cache. If it is found, it is kept in the utterance for the
+	 * audio output to play and the processors are skipped. Otherwise, the key of the utterance is kept so that the audio
+	 * output adds the audio to the cache.
+	 * @param utterance the utterance to look up */
+	private void lookupAudio(Utterance utterance) {
+		if (audioCache != null) {
+			String key = AudioCache.getKey(this, utterance);
+			AudioCache.Audio audio = audioCache.get(key);
+			if (audio != null) {
+				utterance.setObject(AudioCache.UTT_AUDIO, audio);
+			} else {
+				utterance.setObject(AudioCache.UTT_KEY, key);
+			}
+		}
+	}
+
+	/** Looks up the relations the front-end processors make for the given utterance in the front-end cache. If they are
+	 * found, they replace the relations of the utterance and the front-end processors are skipped. Otherwise, the key of
+	 * the utterance is kept so that the relations are added to the cache once the front-end is done.
+	 * @param utterance the utterance to look up
+	 * @param first the index of the first processor to run
+	 * @return the index of the first processor to run once the relations are restored */
+	private int restoreFrontEnd(Utterance utterance, int first) {
+		if (frontEndCache == null || first != 0 || frontEndSize == 0) {
+			return first;
+		}
+		String key = FrontEndCache.getKey(this, utterance);
+		if (frontEndCache.restore(key, utterance)) {
+			utterance.setObject(FrontEndCache.UTT_RESTORED, Boolean.TRUE);
+			return frontEndSize;
+		}
+		utterance.setObject(FrontEndCache.UTT_KEY, key);
+		return first;
+	}
+
+	/** Adds the relations of the given utterance to the front-end cache if the given processor is the last one of the
+	 * front-end and the utterance was looked up.
+	 * @param utterance the utterance
+	 * @param index the index of the processor that was just run */
+	private void storeFrontEnd(Utterance utterance, int index) {
+		if (index == frontEndSize - 1 && frontEndCache != null) {
+			String key = (String) utterance.getObject(FrontEndCache.UTT_KEY);
+			if (key != null) {
+				frontEndCache.store(key, utterance);
+			}
+		}
+	}
+
+	/** Records that audio was written to the audio player of this voice. The first call after <code>speak</code> starts
+	 * stops the "FirstAudio" timer of the run metrics and sets the time to first audio; the calls after that are ignored.
+	 * Audio output processors call this when they write audio.
+	 * @see #getFirstAudioTime */
+	public void firstAudioWritten() {
+		if (firstAudioPending.compareAndSet(true, false)) {
+			firstAudioTime = System.nanoTime() - speakStartTime;
+			firstAudioTimer.stop(runTimer.isVerbose());
+		}
+	}
+
+	/** Gets the time from the start of the last call to <code>speak</code> to its first audio, which includes the
+	 * processing of the first utterance and the synthesis of its first samples.
+	 * @return the time in nanoseconds, or -1 if no audio was written yet */
+	public long getFirstAudioTime() {
+		return firstAudioTime;
+	}
+
 	/** Dumps the wave for the given utterance.
 	 * @param utterance the utterance of interest */
 	private void dumpASCII(Utterance utterance) {
-		if (waveDumpFile != null) {
+		if (waveDumpFile != null && utterance.getObject("target_lpcres") != null) {
 			LPCResult lpcResult = (LPCResult) utterance.getObject("target_lpcres");
 			try {
 				if (waveDumpFile.equals("-")) {
@@ -371,17 +673,23 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		final OutputQueue queue = new OutputQueue();
 		Thread t = new Thread() {
 			public void run() {
-				Utterance utterance = null;
-				do {
-					utterance = queue.pend();
-					if (utterance != null) {
-						Voice voice = utterance.getVoice();
-						if (LOGGER.isLoggable(Level.FINE)) {
-							LOGGER.fine("OUT: " + utterance.getString("input_text"));
+				Utterance[] batch = new Utterance[OUTPUT_BATCH_SIZE];
+				int count;
+				while ((count = queue.pend(batch)) > 0) {
+					// utterances taken before a removeAll are dropped like the ones still in the queue
+					int removeCount = queue.getRemoveCount();
+					for (int i = 0; i < count; i++) {
+						Utterance utterance = batch[i];
+						batch[i] = null;
+						if (queue.getRemoveCount() == removeCount) {
+							Voice voice = utterance.getVoice();
+							if (LOGGER.isLoggable(Level.FINE)) {
+								LOGGER.fine("OUT: " + utterance.getString("input_text"));
+							}
+							voice.outputUtterance(utterance, voice.threadTimer);
 						}
-						voice.outputUtterance(utterance, voice.threadTimer);
 					}
-				} while (utterance != null);
+				}
 			}
 		};
 		t.setDaemon(true);
@@ -444,9 +752,36 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 				LOGGER.fine("STRANGE: speakable already completed: " + speakable.getText());
 			}
 		}
+		if (recycleUtterances) {
+			recycle(utterance);
+		}
 		return ok;
 	}
 
+	/** Gives an utterance that was output, and its LPC result, back to the arena of this voice.
+	 * @param utterance the utterance */
+	private void recycle(Utterance utterance) {
+		Object lpcResult = utterance.getObject("target_lpcres");
+		if (lpcResult instanceof LPCResult) {
+			((LPCResult) lpcResult).reset();
+			arena.give(lpcResult);
+		}
+		utterance.reset();
+		arena.give(utterance);
+	}
+
+	/** Creates an utterance of this voice, or takes one from the arena.
+	 * @param tokenList the tokens of the utterance
+	 * @return the utterance */
+	private Utterance createUtterance(List<Token> tokenList) {
+		Utterance utterance = arena.take(Utterance.class);
+		if (utterance == null) {
+			return new Utterance(this, tokenList);
+		}
+		utterance.setTokenList(tokenList);
+		return utterance;
+	}
+
 	/** Runs the given utterance processor.
 	 * @param processor the processor to run. If the processor is null, it is ignored
 	 * @param utterance the utterance to process
@@ -480,6 +815,12 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		return features;
 	}
 
+	/** Returns the feature set associated with this voice, whose features can also be found by slot.
+	 * @return the feature set. */
+	public SlottedFeatureSet getSlottedFeatures() {
+		return features;
+	}
+
 	/** Starts a batch of utterances. Utterances are sometimes batched in groups for timing purposes.
 	 * @see #endBatch */
 	public void startBatch() {
@@ -495,7 +836,16 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		if (metrics) {
 			runTimer.show(getRunTitle() + " run");
 			threadTimer.show(getRunTitle() + " thread");
+			if (isPipelined()) {
+				pipelineTimer.show(getRunTitle() + " pipeline");
+			}
 			getAudioPlayer().showMetrics();
+			if (memoizeFeatures) {
+				long lookups = featureMemoLookups.get();
+				LOGGER.info("Feature Memo  : " + featureMemoHits.get() + " hits of " + lookups + " lookups ("
+						+ (lookups == 0 ? 0 : featureMemoHits.get() * 100 / lookups) + "%)");
+			}
+			LOGGER.info("Arena         : " + arena.getReused() + " of " + arena.getTaken() + " objects reused");
 			long totalMemory = Runtime.getRuntime().totalMemory();
 			LOGGER.info("Memory Use    : " + (totalMemory - Runtime.getRuntime().freeMemory()) / 1024 + "k  of "
 					+ totalMemory / 1024 + "k");
@@ -528,7 +878,7 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 
 	/** tokenizes the given the queue item.
 	 * @return an iterator that will yield a series of utterances */
-	private Iterator tokenize(FreeTTSSpeakable speakable) {
+	Iterator tokenize(FreeTTSSpeakable speakable) {
 		return new FreeTTSSpeakableTokenizer(speakable).iterator();
 	}
 
@@ -671,6 +1021,14 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 	 * @param fp the processor */
 	public void addFeatureProcessor(String name, FeatureProcessor fp) {
 		featureProcessors.put(name, fp);
+		featureProcessorsVersion++;
+	}
+
+	/** Returns the number of feature processors that were added so far, so that a path that looked one up can tell
+	 * whether it has changed.
+	 * @return the version of the feature processors */
+	int getFeatureProcessorsVersion() {
+		return featureProcessorsVersion;
 	}
 
 	/** Gets the state of the metrics mode.
@@ -688,6 +1046,53 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		}
 	}
 
+	/** Gets the state of the memoizeFeatures mode.
+	 * @return true if utterances memoize the features found by paths */
+	public boolean isMemoizeFeatures() {
+		return memoizeFeatures;
+	}
+
+	/** Sets the memoizeFeatures mode. The accent, tone and duration CARTs and the contour generator find many of the same
+	 * features on the same items; with the mode on, each utterance keeps what feature processors give for its items
+	 * until it is next modified, which assumes that the processors only depend on the utterance. The mode applies to
+	 * the utterances created after it is set.
+	 * @param memoizeFeatures true if utterances should memoize features */
+	public void setMemoizeFeatures(boolean memoizeFeatures) {
+		this.memoizeFeatures = memoizeFeatures;
+	}
+
+	/** Gets the state of the recycleUtterances mode.
+	 * @return true if utterances are recycled once they are output */
+	public boolean isRecycleUtterances() {
+		return recycleUtterances;
+	}
+
+	/** Sets the recycleUtterances mode. With the mode on, once an utterance is output, it and its LPC result are reset
+	 * and given to the arena of the voice, and the next utterances reuse their relations, items, features and buffers.
+	 * An utterance, or anything taken from it, must then not be used after the audio output processor is done with it.
+	 * @param recycleUtterances true if utterances should be recycled */
+	public void setRecycleUtterances(boolean recycleUtterances) {
+		this.recycleUtterances = recycleUtterances;
+	}
+
+	/** Returns the arena where the utterances of this voice, and the processors that run on them, keep objects to reuse.
+	 * @return the arena */
+	public Arena getArena() {
+		return arena;
+	}
+
+	/** Returns the number of features that utterances of this voice found in their memo.
+	 * @return the number of hits since the voice was created */
+	public long getFeatureMemoHits() {
+		return featureMemoHits.get();
+	}
+
+	/** Returns the number of features that utterances of this voice looked up in their memo.
+	 * @return the number of lookups since the voice was created */
+	public long getFeatureMemoLookups() {
+		return featureMemoLookups.get();
+	}
+
 	/** Gets the state of the detailedMetrics mode.
 	 * @return true if detailedMetrics mode is on */
 	public boolean isDetailedMetrics() {
@@ -771,6 +1176,26 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		if (!externalOutputQueue) {
 			outputQueue.close();
 		}
+
+		synchronized (this) {
+			if (pipelineExecutor != null) {
+				pipelineExecutor.shutdownNow();
+				pipelineExecutor = null;
+			}
+		}
+	}
+
+	/** Sets the number of front-end processors run on the pipeline worker pool. A value of 0 disables pipelining.
+	 * @param split the number of front-end processors
+	 * @see #PROP_PIPELINE_SPLIT */
+	public void setPipelineSplit(int split) {
+		this.pipelineSplit = split;
+	}
+
+	/** Gets the number of front-end processors run on the pipeline worker pool.
+	 * @return the number of front-end processors, 0 if pipelining is disabled */
+	public int getPipelineSplit() {
+		return pipelineSplit;
 	}
 
 	/** Sets the baseline pitch.
@@ -847,6 +1272,47 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 		return volume;
 	}
 
+	/** Sets the cache for the audio of the utterances spoken by this voice. By default, voices use
+	 * {@link AudioCache#getDefault}.
+	 * @param cache the cache, or null to synthesize every utterance */
+	public void setAudioCache(AudioCache cache) {
+		this.audioCache = cache;
+	}
+
+	/** Gets the cache for the audio of the utterances spoken by this voice.
+	 * @return the cache, or null if there is none */
+	public AudioCache getAudioCache() {
+		return audioCache;
+	}
+
+	/** Sets the cache for the relations made by the front-end processors of this voice. By default, voices use
+	 * {@link FrontEndCache#getDefault}. The cache is only used if the voice declares its front-end with
+	 * {@link #setFrontEndSize}.
+	 * @param cache the cache, or null to run the front-end for every utterance */
+	public void setFrontEndCache(FrontEndCache cache) {
+		this.frontEndCache = cache;
+	}
+
+	/** Gets the cache for the relations made by the front-end processors of this voice.
+	 * @return the cache, or null if there is none */
+	public FrontEndCache getFrontEndCache() {
+		return frontEndCache;
+	}
+
+	/** Sets the number of utterance processors, from the first one, that make up the front-end of this voice: the
+	 * processors that only read the text of the utterance and the rate, pitch and duration settings of the voice, and
+	 * only build relations of items with String, Integer and Float features.
+	 * @param size the number of front-end processors, or 0 if the voice has no such front-end */
+	protected void setFrontEndSize(int size) {
+		this.frontEndSize = size;
+	}
+
+	/** Gets the number of utterance processors that make up the front-end of this voice.
+	 * @return the number of front-end processors, or 0 if the voice declares none */
+	public int getFrontEndSize() {
+		return frontEndSize;
+	}
+
 	/** Gets the lexicon for this voice.
 	 * @return the lexicon (or null if there is no lexicon) */
 	public Lexicon getLexicon() {
@@ -1086,7 +1552,7 @@ public abstract class Voice implements UtteranceProcessor, Dumpable {
 						}
 						tokenList.add(token);
 					}
-					utterance = new Utterance(Voice.this, tokenList);
+					utterance = createUtterance(tokenList);
 					utterance.setSpeakable(speakable);
 					utterance.setFirst(first);
 					first = false;
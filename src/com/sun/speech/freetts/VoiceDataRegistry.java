@@ -0,0 +1,108 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/** Shares the immutable data of voices, such as lexicons, CARTs, phone sets and unit databases, between all the voices
+ * that use it. Each piece of data is loaded once per kind and URL, the first time a voice asks for it; other voices,
+ * including ones allocated at the same time on other threads, wait for that load and get the same object. Only data
+ * that no processor changes after loading may be shared.
+ * <p>
+ * The data stays loaded after the voices that use it are deallocated, so that a voice allocated again starts quickly.
+ * Setting the <code>com.sun.speech.freetts.voiceData.share</code> system property to <code>false</code> makes every
+ * voice load its own copy. */
+public class VoiceDataRegistry {
+	/** The system property that turns sharing off. */
+	public final static String PROP_SHARE = "com.sun.speech.freetts.voiceData.share";
+
+	private final static boolean share = Utilities.getProperty(PROP_SHARE, "true").equals("true");
+
+	private final static ConcurrentHashMap<String, FutureTask<Object>> data = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+	/** Loads one piece of voice data. */
+	public interface Loader {
+		/** Loads the data.
+		 * @param url the location of the data
+		 * @return the data
+		 * @throws IOException if the data can't be loaded */
+		Object load(URL url) throws IOException;
+	}
+
+	private VoiceDataRegistry() {
+	}
+
+	/** Returns the data of the given kind at the given URL, loading it if no voice has done so yet. If the load fails,
+	 * the next call tries again.
+	 * @param kind the kind of data, which tells apart different objects loaded from the same URL
+	 * @param url the location of the data
+	 * @param loader loads the data if it isn't loaded yet
+	 * @return the data
+	 * @throws IOException if the data can't be loaded */
+	public static Object get(String kind, final URL url, final Loader loader) throws IOException {
+		if (!share || url == null) {
+			return loader.load(url);
+		}
+
+		// URL.equals may resolve host names, so the key uses the external form
+		String key = kind + ' ' + url.toExternalForm();
+		FutureTask<Object> task = data.get(key);
+		if (task == null) {
+			FutureTask<Object> newTask = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() throws IOException {
+					return loader.load(url);
+				}
+			});
+			task = data.putIfAbsent(key, newTask);
+			if (task == null) {
+				task = newTask;
+				task.run();
+			}
+		}
+
+		try {
+			return task.get();
+		} catch (ExecutionException ee) {
+			data.remove(key, task);
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new Error(cause);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + url);
+		}
+	}
+
+	/** Returns the number of pieces of data loaded.
+	 * @return the number of pieces */
+	public static int size() {
+		return data.size();
+	}
+
+	/** Forgets all the loaded data. Voices that are allocated keep using their data; voices allocated later load it
+	 * again. */
+	public static void clear() {
+		data.clear();
+	}
+}
@@ -0,0 +1,449 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.cart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.PathExtractor;
+import com.sun.speech.freetts.PathExtractorImpl;
+import com.sun.speech.freetts.util.BulkTimer;
+import com.sun.speech.freetts.util.Utilities;
+
+/** A CART that keeps its nodes in parallel arrays instead of node objects. It interprets exactly like
+ * {@link CARTImpl}, but the operator of each node is a byte instead of a String, the thresholds of the &lt; and &gt;
+ * comparisons are parsed once when the CART is built instead of on every visit, the values compared with = are
+ * interned strings, and nodes that use the same feature share a single PathExtractor.
+ * <p>
+ * As in CARTImpl the node to go to when a comparison matches is always the next node, so only the node to go to upon no
+ * match is stored.
+ * <p>
+ * A CompiledCART has its own binary format that stores the typed node data; it does not store the text lines the nodes
+ * were created from. A CompiledCART can be created from a CARTImpl, so both text CARTs and CARTs in the binary format
+ * of CARTImpl can be converted; see {@link #main(String[])}. */
+public class CompiledCART implements CART {
+	/** Logger instance. */
+	private static final Logger LOGGER = Logger.getLogger(CompiledCART.class.getName());
+
+	private final static int MAGIC = 0xCA27C0DE;
+	private final static int VERSION = 1;
+
+	final static byte LEAF = 0;
+	final static byte LESS_THAN = 1;
+	final static byte EQUALS = 2;
+	final static byte GREATER_THAN = 3;
+	final static byte MATCHES = 4;
+
+	// the type tags of the values in the binary format
+	private final static byte TYPE_STRING = 0;
+	private final static byte TYPE_FLOAT = 1;
+	private final static byte TYPE_INTEGER = 2;
+	private final static byte TYPE_LIST = 3;
+
+	private final PathExtractor[] features;
+	private final byte[] operators;
+	private final int[] featureIndices;
+	private final float[] thresholds;
+	private final Object[] values;
+	private final int[] qfalse;
+
+	/** Creates a CART by reading the text CART at the given URL.
+	 * @param url the location of the CART data
+	 * @throws IOException if errors occur while reading the data */
+	public CompiledCART(URL url) throws IOException {
+		this(new CARTImpl(url));
+	}
+
+	/** Creates a CART that interprets like the given one.
+	 * @param cart the CART to compile */
+	public CompiledCART(CARTImpl cart) {
+		int numNodes = cart.cart.length;
+		List<String> featureNames = new ArrayList<String>();
+		Map<String, Integer> featureMap = new HashMap<String, Integer>();
+
+		operators = new byte[numNodes];
+		featureIndices = new int[numNodes];
+		thresholds = new float[numNodes];
+		values = new Object[numNodes];
+		qfalse = new int[numNodes];
+
+		for (int i = 0; i < numNodes; i++) {
+			CARTImpl.Node node = cart.cart[i];
+			if (node instanceof CARTImpl.LeafNode) {
+				operators[i] = LEAF;
+				values[i] = node.getValue();
+				continue;
+			}
+
+			CARTImpl.DecisionNode decision = (CARTImpl.DecisionNode) node;
+			if (decision.qtrue != i + 1) {
+				throw new Error("Can't compile CART node " + i + ": matches must go to the next node");
+			}
+			String feature = decision.getFeature();
+			Integer index = featureMap.get(feature);
+			if (index == null) {
+				index = Integer.valueOf(featureNames.size());
+				featureMap.put(feature, index);
+				featureNames.add(feature);
+			}
+			featureIndices[i] = index.intValue();
+			qfalse[i] = decision.qfalse;
+
+			if (decision instanceof CARTImpl.MatchingNode) {
+				setDecision(i, MATCHES, node.getValue());
+			} else {
+				String comparisonType = ((CARTImpl.ComparisonNode) decision).comparisonType;
+				if (comparisonType.equals(CARTImpl.ComparisonNode.LESS_THAN)) {
+					setDecision(i, LESS_THAN, node.getValue());
+				} else if (comparisonType.equals(CARTImpl.ComparisonNode.GREATER_THAN)) {
+					setDecision(i, GREATER_THAN, node.getValue());
+				} else {
+					setDecision(i, EQUALS, node.getValue());
+				}
+			}
+		}
+
+		features = new PathExtractor[featureNames.size()];
+		for (int i = 0; i < features.length; i++) {
+			features[i] = new PathExtractorImpl(featureNames.get(i), true);
+		}
+	}
+
+	/** Creates a CART from the arrays read from a binary CART.
+	 * @param featureNames the features used by the decision nodes
+	 * @param numNodes the number of nodes */
+	private CompiledCART(String[] featureNames, int numNodes) {
+		features = new PathExtractor[featureNames.length];
+		for (int i = 0; i < features.length; i++) {
+			features[i] = new PathExtractorImpl(featureNames[i], true);
+		}
+		operators = new byte[numNodes];
+		featureIndices = new int[numNodes];
+		thresholds = new float[numNodes];
+		values = new Object[numNodes];
+		qfalse = new int[numNodes];
+	}
+
+	/** Sets the operator and the value of a decision node. The value is kept in the form that is cheapest to compare:
+	 * a float threshold for &lt; and &gt;, an interned string for = and a compiled pattern for MATCHES.
+	 * @param node the index of the node
+	 * @param operator the operator of the node
+	 * @param value the value of the node as created by CARTImpl */
+	private void setDecision(int node, byte operator, Object value) {
+		operators[node] = operator;
+		if (operator == LESS_THAN || operator == GREATER_THAN) {
+			if (value instanceof Float) {
+				thresholds[node] = ((Float) value).floatValue();
+			} else {
+				try {
+					thresholds[node] = Float.parseFloat(value.toString());
+				} catch (NumberFormatException nfe) {
+					// CARTImpl only fails when the node is visited
+					thresholds[node] = Float.NaN;
+				}
+			}
+			values[node] = value;
+		} else if (operator == EQUALS) {
+			values[node] = value.toString().intern();
+		} else {
+			values[node] = Pattern.compile(value.toString());
+		}
+	}
+
+	/** Passes the given item through this CART and returns the interpretation.
+	 * @param item the item to analyze
+	 * @return the interpretation */
+	public Object interpret(Item item) {
+		int nodeIndex = 0;
+		byte operator;
+
+		while ((operator = operators[nodeIndex]) != LEAF) {
+			Object val = features[featureIndices[nodeIndex]].findFeature(item);
+			boolean yes;
+
+			if (operator == EQUALS) {
+				String sval = val.toString();
+				yes = sval == values[nodeIndex] || sval.equals(values[nodeIndex]);
+			} else if (operator == MATCHES) {
+				yes = ((Pattern) values[nodeIndex]).matcher((String) val).matches();
+			} else {
+				float cart_fval = thresholds[nodeIndex];
+				if (cart_fval != cart_fval) {
+					cart_fval = Float.parseFloat(values[nodeIndex].toString());
+				}
+				float fval;
+				if (val instanceof Float) {
+					fval = ((Float) val).floatValue();
+				} else {
+					fval = Float.parseFloat(val.toString());
+				}
+				yes = operator == LESS_THAN ? fval < cart_fval : fval > cart_fval;
+			}
+			nodeIndex = yes ? nodeIndex + 1 : qfalse[nodeIndex];
+		}
+		if (LOGGER.isLoggable(Level.FINER)) {
+			LOGGER.finer("LEAF " + values[nodeIndex]);
+		}
+		return values[nodeIndex];
+	}
+
+	/** Returns the values of the leaves of this CART, the values that {@link #interpret(Item)} can return.
+	 * @return the leaf values in node order */
+	public List<Object> getLeafValues() {
+		List<Object> leaves = new ArrayList<Object>();
+		for (int i = 0; i < operators.length; i++) {
+			if (operators[i] == LEAF) {
+				leaves.add(values[i]);
+			}
+		}
+		return leaves;
+	}
+
+	/** Dumps this CART to the output stream.
+	 * @param os the output stream
+	 * @throws IOException if an error occurs during output */
+	public void dumpBinary(DataOutputStream os) throws IOException {
+		os.writeInt(MAGIC);
+		os.writeInt(VERSION);
+		os.writeInt(features.length);
+		for (int i = 0; i < features.length; i++) {
+			Utilities.outString(os, features[i].toString());
+		}
+		os.writeInt(operators.length);
+		for (int i = 0; i < operators.length; i++) {
+			os.writeByte(operators[i]);
+			if (operators[i] == LEAF) {
+				dumpValue(os, values[i]);
+			} else {
+				os.writeInt(featureIndices[i]);
+				os.writeInt(qfalse[i]);
+				if (operators[i] == MATCHES) {
+					Utilities.outString(os, ((Pattern) values[i]).pattern());
+				} else {
+					dumpValue(os, values[i]);
+				}
+			}
+		}
+	}
+
+	/** Dumps a typed value.
+	 * @param os the output stream
+	 * @param value the value
+	 * @throws IOException if an error occurs during output */
+	private static void dumpValue(DataOutputStream os, Object value) throws IOException {
+		if (value instanceof String) {
+			os.writeByte(TYPE_STRING);
+			Utilities.outString(os, (String) value);
+		} else if (value instanceof Float) {
+			os.writeByte(TYPE_FLOAT);
+			os.writeFloat(((Float) value).floatValue());
+		} else if (value instanceof Integer) {
+			os.writeByte(TYPE_INTEGER);
+			os.writeInt(((Integer) value).intValue());
+		} else if (value instanceof int[]) {
+			int[] list = (int[]) value;
+			os.writeByte(TYPE_LIST);
+			os.writeInt(list.length);
+			for (int i = 0; i < list.length; i++) {
+				os.writeInt(list[i]);
+			}
+		} else {
+			throw new Error("Can't dump CART value " + value);
+		}
+	}
+
+	/** Loads a CART from the input byte buffer.
+	 * @param bb the byte buffer
+	 * @return the CART
+	 * @throws IOException if an error occurs during input */
+	public static CART loadBinary(ByteBuffer bb) throws IOException {
+		if (bb.getInt() != MAGIC) {
+			throw new Error("Bad magic in CART");
+		}
+		if (bb.getInt() != VERSION) {
+			throw new Error("Bad VERSION in CART");
+		}
+		String[] featureNames = new String[bb.getInt()];
+		for (int i = 0; i < featureNames.length; i++) {
+			featureNames[i] = Utilities.getString(bb);
+		}
+		CompiledCART cart = new CompiledCART(featureNames, bb.getInt());
+		for (int i = 0; i < cart.operators.length; i++) {
+			byte operator = bb.get();
+			if (operator == LEAF) {
+				cart.values[i] = loadValue(bb);
+			} else {
+				cart.featureIndices[i] = bb.getInt();
+				cart.qfalse[i] = bb.getInt();
+				cart.setDecision(i, operator, operator == MATCHES ? Utilities.getString(bb) : loadValue(bb));
+			}
+		}
+		return cart;
+	}
+
+	/** Loads a CART from the input stream.
+	 * @param is the input stream
+	 * @return the CART
+	 * @throws IOException if an error occurs during input */
+	public static CART loadBinary(DataInputStream is) throws IOException {
+		if (is.readInt() != MAGIC) {
+			throw new Error("Bad magic in CART");
+		}
+		if (is.readInt() != VERSION) {
+			throw new Error("Bad VERSION in CART");
+		}
+		String[] featureNames = new String[is.readInt()];
+		for (int i = 0; i < featureNames.length; i++) {
+			featureNames[i] = Utilities.getString(is);
+		}
+		CompiledCART cart = new CompiledCART(featureNames, is.readInt());
+		for (int i = 0; i < cart.operators.length; i++) {
+			byte operator = is.readByte();
+			if (operator == LEAF) {
+				cart.values[i] = loadValue(is);
+			} else {
+				cart.featureIndices[i] = is.readInt();
+				cart.qfalse[i] = is.readInt();
+				cart.setDecision(i, operator, operator == MATCHES ? Utilities.getString(is) : loadValue(is));
+			}
+		}
+		return cart;
+	}
+
+	/** Loads a typed value from the byte buffer.
+	 * @param bb the byte buffer
+	 * @return the value
+	 * @throws IOException if an error occurs during input */
+	private static Object loadValue(ByteBuffer bb) throws IOException {
+		byte type = bb.get();
+		if (type == TYPE_STRING) {
+			return Utilities.getString(bb);
+		} else if (type == TYPE_FLOAT) {
+			return Float.valueOf(bb.getFloat());
+		} else if (type == TYPE_INTEGER) {
+			return Integer.valueOf(bb.getInt());
+		} else if (type == TYPE_LIST) {
+			int[] list = new int[bb.getInt()];
+			for (int i = 0; i < list.length; i++) {
+				list[i] = bb.getInt();
+			}
+			return list;
+		} else {
+			throw new Error("Unknown CART value type: " + type);
+		}
+	}
+
+	/** Loads a typed value from the input stream.
+	 * @param is the input stream
+	 * @return the value
+	 * @throws IOException if an error occurs during input */
+	private static Object loadValue(DataInputStream is) throws IOException {
+		byte type = is.readByte();
+		if (type == TYPE_STRING) {
+			return Utilities.getString(is);
+		} else if (type == TYPE_FLOAT) {
+			return Float.valueOf(is.readFloat());
+		} else if (type == TYPE_INTEGER) {
+			return Integer.valueOf(is.readInt());
+		} else if (type == TYPE_LIST) {
+			int[] list = new int[is.readInt()];
+			for (int i = 0; i < list.length; i++) {
+				list[i] = is.readInt();
+			}
+			return list;
+		} else {
+			throw new Error("Unknown CART value type: " + type);
+		}
+	}
+
+	/** Converts CARTs to the binary format of CompiledCART.
+	 * <p>
+	 * <b> Usage </b>
+	 * <p>
+	 * <code> java com.sun.speech.freetts.cart.CompiledCART
+	 *  [options]</code>
+	 * <p>
+	 * <b> Options </b>
+	 * <p>
+	 * <ul>
+	 * <li> <code> -text path </code> reads a CART in text form
+	 * <li> <code> -binary path </code> reads a CART in the binary form written by CARTImpl
+	 * <li> <code> -dest path </code> writes the CART that was read last in the binary form of CompiledCART
+	 * <li> <code> -showtimes </code> shows timings for the loading and dumping operations
+	 * </ul> */
+	public static void main(String[] args) {
+		boolean showTimes = false;
+		CART cart = null;
+
+		try {
+			if (args.length > 0) {
+				BulkTimer timer = new BulkTimer();
+				timer.start();
+				for (int i = 0; i < args.length; i++) {
+					if (args[i].equals("-text")) {
+						timer.start("load_text");
+						cart = new CompiledCART(new URL("file:" + args[++i]));
+						timer.stop("load_text");
+					} else if (args[i].equals("-binary")) {
+						timer.start("load_binary");
+						InputStream is = new FileInputStream(args[++i]);
+						DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+						cart = new CompiledCART((CARTImpl) CARTImpl.loadBinary(dis));
+						dis.close();
+						timer.stop("load_binary");
+					} else if (args[i].equals("-dest")) {
+						if (cart == null) {
+							System.out.println("No CART to write to " + args[++i]);
+							continue;
+						}
+						timer.start("dump_binary");
+						DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[++i])));
+						cart.dumpBinary(os);
+						os.close();
+						timer.stop("dump_binary");
+					} else if (args[i].equals("-showtimes")) {
+						showTimes = true;
+					} else {
+						System.out.println("Unknown option " + args[i]);
+					}
+				}
+				timer.stop();
+				if (showTimes) {
+					timer.show("CompiledCART");
+				}
+			} else {
+				System.out.println("Options: ");
+				System.out.println("    -text path");
+				System.out.println("    -binary path");
+				System.out.println("    -dest path");
+				System.out.println("    -showtimes");
+			}
+		} catch (IOException ioe) {
+			System.err.println(ioe);
+		}
+	}
+}
@@ -10,6 +10,7 @@
  */
 package com.sun.speech.freetts.cart;
 
+import com.sun.speech.freetts.FeatureSlots;
 import com.sun.speech.freetts.Item;
 import com.sun.speech.freetts.PathExtractor;
 import com.sun.speech.freetts.PathExtractorImpl;
@@ -35,6 +36,8 @@ public class Durator implements UtteranceProcessor {
 
 	private static final PathExtractor DURATION_STRETCH_PATH = new PathExtractorImpl(
 			"R:SylStructure.parent.parent.R:Token.parent.local_duration_stretch", true);
+	private static final int NAME = FeatureSlots.getSlot("name");
+	private static final int END = FeatureSlots.getSlot("end");
 
 	/** Creates a new duration UtteranceProcessor with the given CART and phone durations.
 	 * @param cart contains zscore duration data
@@ -63,7 +66,7 @@ public class Durator implements UtteranceProcessor {
 		//
 		for (Item segment = utterance.getRelation(Relation.SEGMENT).getHead(); segment != null; segment = segment.getNext()) {
 			zdur = ((Float) cart.interpret(segment)).floatValue();
-			durStat = durations.getPhoneDuration(segment.getFeatures().getString("name"));
+			durStat = durations.getPhoneDuration(segment.getSlottedFeatures().getString(NAME));
 
 			Object tval = DURATION_STRETCH_PATH.findFeature(segment);
 			localDurationStretch = Float.parseFloat(tval.toString());
@@ -76,7 +79,7 @@ public class Durator implements UtteranceProcessor {
 
 			dur = localDurationStretch * ((zdur * durStat.getStandardDeviation()) + durStat.getMean());
 			end += dur;
-			segment.getFeatures().setFloat("end", end);
+			segment.getSlottedFeatures().setFloat(END, end);
 		}
 	}
 
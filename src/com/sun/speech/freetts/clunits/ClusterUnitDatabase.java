@@ -22,10 +22,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,8 @@ import java.util.StringTokenizer;
 
 import com.sun.speech.freetts.cart.CART;
 import com.sun.speech.freetts.cart.CARTImpl;
+import com.sun.speech.freetts.cart.CompiledCART;
+import com.sun.speech.freetts.relp.MappedSampleSet;
 import com.sun.speech.freetts.relp.SampleInfo;
 import com.sun.speech.freetts.relp.SampleSet;
 import com.sun.speech.freetts.util.BulkTimer;
@@ -42,12 +46,33 @@ import com.sun.speech.freetts.util.Utilities;
 /** Provides support for the cluster unit database. The use of the cluster unit database is confined to this clunits
  * package. This class provides a main program that can be used to convert from a text version of the database to a
  * binary version of the database. The ClusterUnitDataBase can be loaded from a text or a binary source. The binary form
- * of the database loads much faster and therefore is generally used in a deployed system. */
+ * of the database loads much faster and therefore is generally used in a deployed system.
+ * <p>
+ * When a binary database is read from a file it is memory mapped. Unless the system property
+ * 
+ * <pre>
+ * com.sun.speech.freetts.clunits.UnitDatabase.mapped
+ * </pre>
+ * 
+ * is set to false, the unit table and the frame and residual data stay in the mapped buffer and are read through
+ * flyweight views instead of being copied onto the heap. */
 public class ClusterUnitDatabase {
 
 	final static int CLUNIT_NONE = 65535;
 
-	private DatabaseClusterUnit[] units;
+	public final static String PROP_MAPPED = "com.sun.speech.freetts.clunits.UnitDatabase.mapped";
+
+	// the unit table holds UNIT_FIELDS ints per unit
+	private final static int UNIT_FIELDS = 6;
+	private final static int UNIT_TYPE = 0;
+	private final static int UNIT_PHONE = 1;
+	private final static int UNIT_START = 2;
+	private final static int UNIT_END = 3;
+	private final static int UNIT_PREV = 4;
+	private final static int UNIT_NEXT = 5;
+
+	private IntBuffer units;
+	private boolean mapped;
 	private UnitType[] unitTypes;
 	private SampleSet sts;
 	private SampleSet mcep;
@@ -60,22 +85,44 @@ public class ClusterUnitDatabase {
 	private int joinMethod;
 	private int[] joinWeights;
 	private int joinWeightShift;
+	private FrameDistance frameDistance;
+	private CouplingTable couplingTable;
 
-	private Map cartMap = new HashMap();
+	// the CART of every unit type, indexed by the type id
+	private CART[] carts;
 	private CART defaultCart = null;
+	private Map<String, Integer> unitTypeIds;
+
+	private transient Map cartMap;
 
 	private transient List unitList;
 	private transient int lineCount;
 	private transient List unitTypesList;
 
 	private final static int MAGIC = 0xf0cacc1a;
-	private final static int VERSION = 0x1000;
+	private final static int VERSION = 0x1003;
+	// the version that stores the CARTs by unit type id, without a coupling table
+	private final static int VERSION_CART_IDS = 0x1002;
+	// the version that stores the compiled CARTs by the name of their unit type
+	private final static int VERSION_CART_NAMES = 0x1001;
+	// the version that stores the CARTs as CARTImpl creation lines
+	private final static int VERSION_CART_LINES = 0x1000;
 
 	/** Creates the UnitDatabase from the given input stream.
 	 * @param is the input stream to read the database from
 	 * @param isBinary the input stream is a binary stream
 	 * @throws IOException if there is trouble opening the DB */
 	ClusterUnitDatabase(URL url, boolean isBinary) throws IOException {
+		this(url, isBinary, Utilities.getProperty(PROP_MAPPED, "true").equals("true"));
+	}
+
+	/** Creates the UnitDatabase from the given input stream.
+	 * @param is the input stream to read the database from
+	 * @param isBinary the input stream is a binary stream
+	 * @param mapped if <code>true</code> a binary database read from a file is left in the mapped buffer
+	 * @throws IOException if there is trouble opening the DB */
+	ClusterUnitDatabase(URL url, boolean isBinary, boolean mapped) throws IOException {
+		this.mapped = mapped;
 		BulkTimer.LOAD.start("ClusterUnitDatabase");
 		InputStream is = Utilities.getInputStream(url);
 		if (isBinary) {
@@ -84,6 +131,11 @@ public class ClusterUnitDatabase {
 			loadText(is);
 		}
 		is.close();
+		unitTypeIds = new HashMap<String, Integer>();
+		for (int i = 0; i < unitTypes.length; i++) {
+			unitTypeIds.put(unitTypes[i].getName(), Integer.valueOf(i));
+		}
+		frameDistance = new FrameDistance(mcep, sts, joinWeights, continuityWeight);
 		// Attempt to load debug info from a .debug resource.
 		// This will silently fail if no debug info is available.
 		String urlString = url.toExternalForm();
@@ -101,58 +153,44 @@ public class ClusterUnitDatabase {
 	 * @param unitEntry the entry of interest
 	 * @return the begininning sample index */
 	int getStart(int unitEntry) {
-		return units[unitEntry].start;
+		return units.get(unitEntry * UNIT_FIELDS + UNIT_START);
 	}
 
 	/** Retrieves the ending sample index for the given entry.
 	 * @param unitEntry the entry of interest
 	 * @return the ending sample index */
 	int getEnd(int unitEntry) {
-		return units[unitEntry].end;
+		return units.get(unitEntry * UNIT_FIELDS + UNIT_END);
 	}
 
 	/** Retrieves the phone for the given entry
 	 * @param unitEntry the entry of interest
 	 * @return the phone for the entry */
 	int getPhone(int unitEntry) {
-		return units[unitEntry].phone;
+		return units.get(unitEntry * UNIT_FIELDS + UNIT_PHONE);
 	}
 
 	/** Returns the cart of the given unit type.
-	 * @param unitType the type of cart
+	 * @param unitType the id of the unit type, as returned by {@link #getUnitTypeIndex(String)}
+	 * @param name the name of the unit type, for the message if it has no cart
 	 * @return the cart */
-	CART getTree(String unitType) {
-		CART cart = (CART) cartMap.get(unitType);
+	CART getTree(int unitType, String name) {
+		CART cart = unitType >= 0 ? carts[unitType] : null;
 
 		if (cart == null) {
-			System.err.println("ClusterUnitDatabase: can't find tree for " + unitType);
+			System.err.println("ClusterUnitDatabase: can't find tree for " + name);
 			return defaultCart; // "graceful" failrue
 		}
 		return cart;
 	}
 
-	/** Retrieves the type index for the name given a name.
+	/** Retrieves the id of a unit type given its name. The ids of the types of a database run from 0 to the number of
+	 * types, so that a segment can look up its CART and its units without comparing names once its type is known.
 	 * @param name the name
-	 * @return the index for the name */
-	// [[[TODO: perhaps replace this with java.util.Arrays.binarySearch]]]
+	 * @return the id of the unit type, or -1 if the database has no such type */
 	int getUnitTypeIndex(String name) {
-		int start, end, mid, c;
-
-		start = 0;
-		end = unitTypes.length;
-
-		while (start < end) {
-			mid = (start + end) / 2;
-			c = unitTypes[mid].getName().compareTo(name);
-			if (c == 0) {
-				return mid;
-			} else if (c > 0) {
-				end = mid;
-			} else {
-				start = mid + 1;
-			}
-		}
-		return -1;
+		Integer id = unitTypeIds.get(name);
+		return id == null ? -1 : id.intValue();
 	}
 
 	/** Retrieves the unit index given a unit type and val.
@@ -165,11 +203,23 @@ public class ClusterUnitDatabase {
 			error("getUnitIndex: can't find unit type " + unitType);
 			i = 0;
 		}
-		if (instance >= unitTypes[i].getCount()) {
-			error("getUnitIndex: can't find instance " + instance + " of " + unitType);
+		return getUnitIndex(i, instance);
+	}
+
+	/** Retrieves the unit index given the id of a unit type and val.
+	 * @param unitType the id of the type of the unit
+	 * @param instance the value associated with the unit
+	 * @return the index. */
+	int getUnitIndex(int unitType, int instance) {
+		if (unitType < 0 || unitType >= unitTypes.length) {
+			error("getUnitIndex: can't find unit type " + unitType);
+			unitType = 0;
+		}
+		if (instance >= unitTypes[unitType].getCount()) {
+			error("getUnitIndex: can't find instance " + instance + " of " + unitTypes[unitType].getName());
 			instance = 0;
 		}
-		return unitTypes[i].getStart() + instance;
+		return unitTypes[unitType].getStart() + instance;
 	}
 
 	/** Retrieves the index for the name given a name.
@@ -195,14 +245,14 @@ public class ClusterUnitDatabase {
 	/** Gets the next unit.
 	 * @return the next unit */
 	int getNextUnit(int which) {
-		return units[which].next;
+		return units.get(which * UNIT_FIELDS + UNIT_NEXT);
 	}
 
 	/** Gets the previous units.
 	 * @param which which unit is of interest
 	 * @return the previous unit */
 	int getPrevUnit(int which) {
-		return units[which].prev;
+		return units.get(which * UNIT_FIELDS + UNIT_PREV);
 	}
 
 	/** Determines if the unit types are equal.
@@ -210,13 +260,26 @@ public class ClusterUnitDatabase {
 	 * @param unitB the index of unit B
 	 * @return <code>true</code> if the types of units a and b are equal; otherwise return <code>false</code> */
 	boolean isUnitTypeEqual(int unitA, int unitB) {
-		return units[unitA].type == units[unitB].type;
+		return getUnitType(unitA) == getUnitType(unitB);
 		// String nameA = units[unitA].getName();
 		// String nameB = units[unitB].getName();
 		// int lastUnderscore = nameA.lastIndexOf('_');
 		// return nameA.regionMatches(0, nameB, 0, lastUnderscore + 1);
 	}
 
+	/** Retrieves the type of the given unit.
+	 * @param which the index of the unit
+	 * @return the index of the type of the unit */
+	int getUnitType(int which) {
+		return units.get(which * UNIT_FIELDS + UNIT_TYPE);
+	}
+
+	/** Returns the number of units in the database.
+	 * @return the number of units */
+	int getNumberOfUnits() {
+		return units.capacity() / UNIT_FIELDS;
+	}
+
 	/** Retrieves the optimal coupling setting.
 	 * @return the optimal coupling setting */
 	int getOptimalCoupling() {
@@ -235,6 +298,54 @@ public class ClusterUnitDatabase {
 		return joinWeights;
 	}
 
+	/** Retrieves the distance between the frames of this database.
+	 * @return the frame distance */
+	FrameDistance getFrameDistance() {
+		return frameDistance;
+	}
+
+	/** Retrieves the optimal coupling of the pairs of units, computed when the binary database was generated.
+	 * @return the coupling table, or null if the database has none */
+	CouplingTable getCouplingTable() {
+		return couplingTable;
+	}
+
+	/** Computes the optimal coupling of the pairs of units that the CARTs of this database can select, so that it is
+	 * dumped with the binary database.
+	 * @param maxPairs the maximum number of pairs in the table
+	 * @return the number of pairs in the table */
+	int computeCouplingTable(int maxPairs) {
+		boolean[] selectable = new boolean[getNumberOfUnits()];
+		for (int type = 0; type < carts.length; type++) {
+			if (!(carts[type] instanceof CompiledCART)) {
+				continue;
+			}
+			for (Iterator i = ((CompiledCART) carts[type]).getLeafValues().iterator(); i.hasNext();) {
+				Object value = i.next();
+				if (!(value instanceof int[])) {
+					continue;
+				}
+				int[] instances = (int[]) value;
+				for (int k = 0; k < instances.length; k++) {
+					if (instances[k] < unitTypes[type].getCount()) {
+						selectable[unitTypes[type].getStart() + instances[k]] = true;
+					}
+				}
+			}
+		}
+		if (extendSelections > 0) {
+			// the units following the candidates of a segment may be candidates of the next one
+			boolean[] selected = selectable.clone();
+			for (int u = 0; u < selected.length; u++) {
+				if (selected[u] && getNextUnit(u) != CLUNIT_NONE) {
+					selectable[getNextUnit(u)] = true;
+				}
+			}
+		}
+		couplingTable = CouplingTable.compute(this, selectable, maxPairs);
+		return couplingTable.getNumberOfPairs();
+	}
+
 	/** Looks up the unit with the given name.
 	 * @param unitName the name of the unit to look for
 	 * @return the unit or the defaultUnit if not found. */
@@ -246,7 +357,7 @@ public class ClusterUnitDatabase {
 	 * @param index the index of the unit to look for
 	 * @return the unit */
 	DatabaseClusterUnit getUnit(int which) {
-		return units[which];
+		return new DatabaseClusterUnit(which);
 	}
 
 	/** Looks up the origin info for the unit with the given index.
@@ -318,6 +429,7 @@ public class ClusterUnitDatabase {
 
 		unitList = new ArrayList();
 		unitTypesList = new ArrayList();
+		cartMap = new HashMap();
 
 		if (is == null) {
 			throw new Error("Can't load cluster db file.");
@@ -335,13 +447,17 @@ public class ClusterUnitDatabase {
 			}
 			reader.close();
 
-			units = new DatabaseClusterUnit[unitList.size()];
-			units = (DatabaseClusterUnit[]) unitList.toArray(units);
+			int[] unitTable = new int[unitList.size() * UNIT_FIELDS];
+			for (int i = 0; i < unitList.size(); i++) {
+				System.arraycopy((int[]) unitList.get(i), 0, unitTable, i * UNIT_FIELDS, UNIT_FIELDS);
+			}
+			units = IntBuffer.wrap(unitTable);
 			unitList = null;
 
 			unitTypes = new UnitType[unitTypesList.size()];
 			unitTypes = (UnitType[]) unitTypesList.toArray(unitTypes);
 			unitTypesList = null;
+			indexCarts();
 
 		} catch (IOException e) {
 			throw new Error(e.getMessage() + " at line " + lineCount);
@@ -382,18 +498,16 @@ public class ClusterUnitDatabase {
 					mcep = new SampleSet(tokenizer, reader);
 				}
 			} else if (tag.equals("UNITS")) {
-				int type = Integer.parseInt(tokenizer.nextToken());
-				int phone = Integer.parseInt(tokenizer.nextToken());
-				int start = Integer.parseInt(tokenizer.nextToken());
-				int end = Integer.parseInt(tokenizer.nextToken());
-				int prev = Integer.parseInt(tokenizer.nextToken());
-				int next = Integer.parseInt(tokenizer.nextToken());
-				DatabaseClusterUnit unit = new DatabaseClusterUnit(type, phone, start, end, prev, next);
+				// type, phone, start, end, prev, next
+				int[] unit = new int[UNIT_FIELDS];
+				for (int i = 0; i < UNIT_FIELDS; i++) {
+					unit[i] = Integer.parseInt(tokenizer.nextToken());
+				}
 				unitList.add(unit);
 			} else if (tag.equals("CART")) {
 				String name = tokenizer.nextToken();
 				int nodes = Integer.parseInt(tokenizer.nextToken());
-				CART cart = new CARTImpl(reader, nodes);
+				CART cart = new CompiledCART(new CARTImpl(reader, nodes));
 				cartMap.put(name, cart);
 
 				if (defaultCart == null) {
@@ -427,7 +541,9 @@ public class ClusterUnitDatabase {
 			FileChannel fc = fis.getChannel();
 
 			MappedByteBuffer bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, (int) fc.size());
-			bb.load();
+			if (!mapped) {
+				bb.load();
+			}
 			loadBinary(bb);
 			is.close();
 		} else {
@@ -435,7 +551,8 @@ public class ClusterUnitDatabase {
 		}
 	}
 
-	/** Loads the database from the given byte buffer.
+	/** Loads the database from the given byte buffer. If the database is mapped the unit table and the sample sets are
+	 * views of the buffer, otherwise they are copied.
 	 * @param bb the byte buffer to load the db from
 	 * @throws IOException if there is trouble opening the DB */
 	private void loadBinary(ByteBuffer bb) throws IOException {
@@ -443,7 +560,8 @@ public class ClusterUnitDatabase {
 		if (bb.getInt() != MAGIC) {
 			throw new Error("Bad magic in db");
 		}
-		if (bb.getInt() != VERSION) {
+		int version = bb.getInt();
+		if (version < VERSION_CART_LINES || version > VERSION) {
 			throw new Error("Bad VERSION in db");
 		}
 
@@ -460,9 +578,16 @@ public class ClusterUnitDatabase {
 		}
 
 		int unitsLength = bb.getInt();
-		units = new DatabaseClusterUnit[unitsLength];
-		for (int i = 0; i < units.length; i++) {
-			units[i] = new DatabaseClusterUnit(bb);
+		if (mapped) {
+			ByteBuffer unitTable = bb.slice();
+			unitTable.limit(unitsLength * UNIT_FIELDS * 4);
+			units = unitTable.asIntBuffer();
+			bb.position(bb.position() + unitsLength * UNIT_FIELDS * 4);
+		} else {
+			int[] unitTable = new int[unitsLength * UNIT_FIELDS];
+			bb.asIntBuffer().get(unitTable);
+			units = IntBuffer.wrap(unitTable);
+			bb.position(bb.position() + unitTable.length * 4);
 		}
 
 		int unitTypesLength = bb.getInt();
@@ -470,20 +595,50 @@ public class ClusterUnitDatabase {
 		for (int i = 0; i < unitTypes.length; i++) {
 			unitTypes[i] = new UnitType(bb);
 		}
-		sts = new SampleSet(bb);
-		mcep = new SampleSet(bb);
+		if (mapped) {
+			sts = new MappedSampleSet(bb);
+			mcep = new MappedSampleSet(bb);
+		} else {
+			sts = new SampleSet(bb);
+			mcep = new SampleSet(bb);
+		}
 
 		int numCarts = bb.getInt();
+		if (version >= VERSION_CART_IDS) {
+			// the CARTs are followed by the id of the CART of every unit type, the default CART being the first
+			CART[] cartTable = new CART[numCarts];
+			for (int i = 0; i < numCarts; i++) {
+				cartTable[i] = CompiledCART.loadBinary(bb);
+			}
+			carts = new CART[unitTypes.length];
+			for (int i = 0; i < carts.length; i++) {
+				int id = bb.getInt();
+				carts[i] = id < 0 ? null : cartTable[id];
+			}
+			if (numCarts > 0) {
+				defaultCart = cartTable[0];
+			}
+			if (version == VERSION) {
+				couplingTable = CouplingTable.loadBinary(bb, mapped);
+			}
+			return;
+		}
 		cartMap = new HashMap();
 		for (int i = 0; i < numCarts; i++) {
 			String name = Utilities.getString(bb);
-			CART cart = CARTImpl.loadBinary(bb);
+			CART cart;
+			if (version == VERSION_CART_LINES) {
+				cart = new CompiledCART((CARTImpl) CARTImpl.loadBinary(bb));
+			} else {
+				cart = CompiledCART.loadBinary(bb);
+			}
 			cartMap.put(name, cart);
 
 			if (defaultCart == null) {
 				defaultCart = cart;
 			}
 		}
+		indexCarts();
 	}
 
 	/** Loads the database from the given input stream.
@@ -494,7 +649,8 @@ public class ClusterUnitDatabase {
 		if (is.readInt() != MAGIC) {
 			throw new Error("Bad magic in db");
 		}
-		if (is.readInt() != VERSION) {
+		int version = is.readInt();
+		if (version < VERSION_CART_LINES || version > VERSION) {
 			throw new Error("Bad VERSION in db");
 		}
 
@@ -511,10 +667,11 @@ public class ClusterUnitDatabase {
 		}
 
 		int unitsLength = is.readInt();
-		units = new DatabaseClusterUnit[unitsLength];
-		for (int i = 0; i < units.length; i++) {
-			units[i] = new DatabaseClusterUnit(is);
+		int[] unitTable = new int[unitsLength * UNIT_FIELDS];
+		for (int i = 0; i < unitTable.length; i++) {
+			unitTable[i] = is.readInt();
 		}
+		units = IntBuffer.wrap(unitTable);
 
 		int unitTypesLength = is.readInt();
 		unitTypes = new UnitType[unitTypesLength];
@@ -525,16 +682,50 @@ public class ClusterUnitDatabase {
 		mcep = new SampleSet(is);
 
 		int numCarts = is.readInt();
+		if (version >= VERSION_CART_IDS) {
+			// the CARTs are followed by the id of the CART of every unit type, the default CART being the first
+			CART[] cartTable = new CART[numCarts];
+			for (int i = 0; i < numCarts; i++) {
+				cartTable[i] = CompiledCART.loadBinary(is);
+			}
+			carts = new CART[unitTypes.length];
+			for (int i = 0; i < carts.length; i++) {
+				int id = is.readInt();
+				carts[i] = id < 0 ? null : cartTable[id];
+			}
+			if (numCarts > 0) {
+				defaultCart = cartTable[0];
+			}
+			if (version == VERSION) {
+				couplingTable = CouplingTable.loadBinary(is);
+			}
+			return;
+		}
 		cartMap = new HashMap();
 		for (int i = 0; i < numCarts; i++) {
 			String name = Utilities.getString(is);
-			CART cart = CARTImpl.loadBinary(is);
+			CART cart;
+			if (version == VERSION_CART_LINES) {
+				cart = new CompiledCART((CARTImpl) CARTImpl.loadBinary(is));
+			} else {
+				cart = CompiledCART.loadBinary(is);
+			}
 			cartMap.put(name, cart);
 
 			if (defaultCart == null) {
 				defaultCart = cart;
 			}
 		}
+		indexCarts();
+	}
+
+	/** Moves the CARTs read by the name of their unit type into the array indexed by the type id. */
+	private void indexCarts() {
+		carts = new CART[unitTypes.length];
+		for (int i = 0; i < unitTypes.length; i++) {
+			carts[i] = (CART) cartMap.get(unitTypes[i].getName());
+		}
+		cartMap = null;
 	}
 
 	/** Load debug info about the origin of units from the given input stream. The file format is identical to that of the
@@ -543,7 +734,7 @@ public class ClusterUnitDatabase {
 	 * @param is the input stream from which to read the debug info.
 	 * @throws IOException if a read problem occurs. */
 	private void loadUnitOrigins(InputStream is) throws IOException {
-		unitOrigins = new UnitOriginInfo[units.length];
+		unitOrigins = new UnitOriginInfo[getNumberOfUnits()];
 		BufferedReader in = new BufferedReader(new InputStreamReader(is));
 
 		String currentLine = null;
@@ -586,9 +777,9 @@ public class ClusterUnitDatabase {
 				os.writeInt(joinWeights[i]);
 			}
 
-			os.writeInt(units.length);
-			for (int i = 0; i < units.length; i++) {
-				units[i].dumpBinary(os);
+			os.writeInt(getNumberOfUnits());
+			for (int i = 0; i < getNumberOfUnits(); i++) {
+				getUnit(i).dumpBinary(os);
 			}
 
 			os.writeInt(unitTypes.length);
@@ -598,19 +789,29 @@ public class ClusterUnitDatabase {
 			sts.dumpBinary(os);
 			mcep.dumpBinary(os);
 
-			os.writeInt(cartMap.size());
-			for (Iterator i = cartMap.keySet().iterator(); i.hasNext();) {
-				String name = (String) i.next();
-				CART cart = (CART) cartMap.get(name);
-
-				Utilities.outString(os, name);
-				cart.dumpBinary(os);
+			// every distinct CART once, the default one first, then the id table
+			List cartList = new ArrayList();
+			Map cartIds = new IdentityHashMap();
+			if (defaultCart != null) {
+				cartIds.put(defaultCart, Integer.valueOf(cartList.size()));
+				cartList.add(defaultCart);
 			}
+			for (int i = 0; i < carts.length; i++) {
+				if (carts[i] != null && !cartIds.containsKey(carts[i])) {
+					cartIds.put(carts[i], Integer.valueOf(cartList.size()));
+					cartList.add(carts[i]);
+				}
+			}
+			os.writeInt(cartList.size());
+			for (Iterator i = cartList.iterator(); i.hasNext();) {
+				((CART) i.next()).dumpBinary(os);
+			}
+			for (int i = 0; i < carts.length; i++) {
+				os.writeInt(carts[i] == null ? -1 : ((Integer) cartIds.get(carts[i])).intValue());
+			}
+			CouplingTable.dumpBinary(os, couplingTable);
 			os.close();
 
-			// note that we are not currently saving the state
-			// of the default cart
-
 		} catch (FileNotFoundException fe) {
 			throw new Error("Can't dump binary database " + fe.getMessage());
 		} catch (IOException ioe) {
@@ -639,15 +840,21 @@ public class ClusterUnitDatabase {
 	 * <li> <code> -src path </code> provides a directory path to the source text for the database
 	 * <li> <code> -dest path </code> provides a directory for where to place the resulting binaries
 	 * <li> <code> -generate_binary [filename]</code> reads in the text version of the database and generates the binary
-	 * version of the database.
+	 * version of the database. If the database uses OPTIMAL_COUPLING 1, the binary version holds the optimal coupling of
+	 * the pairs of units its CARTs can select.
+	 * <li> <code> -coupling_pairs n</code> limits the coupling table of the binary databases generated after it to n
+	 * pairs, 4194304 by default; 0 generates no table.
 	 * <li> <code> -compare </code> Loads the text and binary versions of the database and compares them to see if they are
 	 * equivalent.
+	 * <li> <code> -benchmark_load [filename]</code> loads the binary version of the database copied onto the heap and
+	 * left in the mapped file, and reports the load times and the heap used by each.
 	 * <li> <code> -showTimes </code> shows timings for any loading, comparing or dumping operation
 	 * </ul> */
 	public static void main(String[] args) {
 		boolean showTimes = false;
 		String srcPath = ".";
 		String destPath = ".";
+		int couplingPairs = 1 << 22;
 
 		try {
 			if (args.length > 0) {
@@ -658,6 +865,8 @@ public class ClusterUnitDatabase {
 						srcPath = args[++i];
 					} else if (args[i].equals("-dest")) {
 						destPath = args[++i];
+					} else if (args[i].equals("-coupling_pairs")) {
+						couplingPairs = Integer.parseInt(args[++i]);
 					} else if (args[i].equals("-generate_binary")) {
 						String name = "clunits.txt";
 						if (i + 1 < args.length) {
@@ -679,6 +888,13 @@ public class ClusterUnitDatabase {
 						ClusterUnitDatabase udb = new ClusterUnitDatabase(new URL("file:" + srcPath + "/" + name), false);
 						timer.stop("load_text");
 
+						if (udb.getOptimalCoupling() == 1 && couplingPairs > 0) {
+							timer.start("coupling_table");
+							int pairs = udb.computeCouplingTable(couplingPairs);
+							timer.stop("coupling_table");
+							System.out.println("Coupling table: " + pairs + " pairs");
+						}
+
 						System.out.println("Dumping " + binaryName);
 						timer.start("dump_binary");
 						udb.dumpBinary(destPath + "/" + binaryName);
@@ -701,6 +917,29 @@ public class ClusterUnitDatabase {
 							System.out.println("other compare different");
 						}
 						timer.stop("compare");
+					} else if (args[i].equals("-benchmark_load")) {
+						String name = "clunits.bin";
+						if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+							name = args[++i];
+						}
+						URL url = new URL("file:" + srcPath + "/" + name);
+
+						long base = usedMemory();
+						timer.start("load_binary_copied");
+						ClusterUnitDatabase copied = new ClusterUnitDatabase(url, true, false);
+						timer.stop("load_binary_copied");
+						long copiedHeap = usedMemory() - base;
+						copied = null;
+
+						base = usedMemory();
+						timer.start("load_binary_mapped");
+						ClusterUnitDatabase mapped = new ClusterUnitDatabase(url, true, true);
+						timer.stop("load_binary_mapped");
+						long mappedHeap = usedMemory() - base;
+
+						System.out.println("Heap used by " + name + ": copied " + (copiedHeap / 1024) + "k, mapped "
+								+ (mappedHeap / 1024) + "k (" + mapped.getNumberOfUnits() + " units)");
+						showTimes = true;
 					} else if (args[i].equals("-showtimes")) {
 						showTimes = true;
 					} else {
@@ -717,6 +956,8 @@ public class ClusterUnitDatabase {
 				System.out.println("    -dest path");
 				System.out.println("    -compare");
 				System.out.println("    -generate_binary");
+				System.out.println("    -coupling_pairs n");
+				System.out.println("    -benchmark_load");
 				System.out.println("    -showTimes");
 			}
 		} catch (IOException ioe) {
@@ -724,72 +965,64 @@ public class ClusterUnitDatabase {
 		}
 	}
 
-	/** Represents a unit for the cluster database. */
+	/** Returns the heap in use after a garbage collection.
+	 * @return the number of bytes in use */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** Represents a unit for the cluster database. This is a view of the entry of the unit in the unit table. */
 	class DatabaseClusterUnit {
 
-		int type;
-		int phone;
-		int start;
-		int end;
-		int prev;
-		int next;
-
-		/** Constructs a unit.
-		 * @param type the name of the unit
-		 * @param phone the name of the unit
-		 * @param start the starting frame
-		 * @param end the ending frame
-		 * @param prev the previous index
-		 * @param next the next index */
-		DatabaseClusterUnit(int type, int phone, int start, int end, int prev, int next) {
-			this.type = type;
-			this.phone = phone;
-			this.start = start;
-			this.end = end;
-			this.prev = prev;
-			this.next = next;
-		}
-
-		/** Creates a unit by reading it from the given byte buffer.
-		 * @param bb source of the DatabaseClusterUnit data
-		 * @throws IOException if an IO error occurs */
-		DatabaseClusterUnit(ByteBuffer bb) throws IOException {
-			this.type = bb.getInt();
-			this.phone = bb.getInt();
-			this.start = bb.getInt();
-			this.end = bb.getInt();
-			this.prev = bb.getInt();
-			this.next = bb.getInt();
-		}
-
-		/** Creates a unit by reading it from the given input stream.
-		 * @param is source of the DatabaseClusterUnit data
-		 * @throws IOException if an IO error occurs */
-		DatabaseClusterUnit(DataInputStream is) throws IOException {
-			this.type = is.readInt();
-			this.phone = is.readInt();
-			this.start = is.readInt();
-			this.end = is.readInt();
-			this.prev = is.readInt();
-			this.next = is.readInt();
+		final int index;
+
+		/** Constructs a view of a unit.
+		 * @param index the index of the unit */
+		DatabaseClusterUnit(int index) {
+			this.index = index;
+		}
+
+		/** Returns the type of the unit.
+		 * @return the type index */
+		int getType() {
+			return getUnitType(index);
+		}
+
+		/** Returns the phone of the unit.
+		 * @return the phone */
+		int getPhone() {
+			return ClusterUnitDatabase.this.getPhone(index);
+		}
+
+		/** Returns the starting frame of the unit.
+		 * @return the starting frame */
+		int getStart() {
+			return ClusterUnitDatabase.this.getStart(index);
+		}
+
+		/** Returns the ending frame of the unit.
+		 * @return the ending frame */
+		int getEnd() {
+			return ClusterUnitDatabase.this.getEnd(index);
 		}
 
 		/** Returns the name of the unit.
 		 * @return the name */
 		String getName() {
-			return unitTypes[type].getName();
+			return unitTypes[getType()].getName();
 		}
 
 		/** Dumps this unit to the given output stream.
 		 * @param os the output stream
 		 * @throws IOException if an error occurs. */
 		void dumpBinary(DataOutputStream os) throws IOException {
-			os.writeInt(type);
-			os.writeInt(phone);
-			os.writeInt(start);
-			os.writeInt(end);
-			os.writeInt(prev);
-			os.writeInt(next);
+			for (int i = 0; i < UNIT_FIELDS; i++) {
+				os.writeInt(units.get(index * UNIT_FIELDS + i));
+			}
 		}
 	}
 
@@ -38,7 +38,10 @@ public class ClusterUnitPitchmarkGenerator implements UtteranceProcessor {
 		int unitEnd;
 
 		SampleSet sts = (SampleSet) utterance.getObject("sts_list");
-		lpcResult = new LPCResult();
+		lpcResult = utterance.getVoice().getArena().take(LPCResult.class);
+		if (lpcResult == null) {
+			lpcResult = new LPCResult();
+		}
 
 		for (Item unit = utterance.getRelation(Relation.UNIT).getHead(); unit != null; unit = unit.getNext()) {
 			unitEntry = unit.getFeatures().getInt("unit_entry");
@@ -10,11 +10,19 @@
  */
 package com.sun.speech.freetts.clunits;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.sun.speech.freetts.Arena;
 import com.sun.speech.freetts.FeatureSet;
 import com.sun.speech.freetts.FeatureSetImpl;
 import com.sun.speech.freetts.Item;
@@ -25,11 +33,15 @@ import com.sun.speech.freetts.Relation;
 import com.sun.speech.freetts.Utterance;
 import com.sun.speech.freetts.UtteranceProcessor;
 import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceDataRegistry;
+import com.sun.speech.freetts.VoiceManager;
+import com.sun.speech.freetts.audio.NullAudioPlayer;
 import com.sun.speech.freetts.cart.CART;
 import com.sun.speech.freetts.clunits.ClusterUnitDatabase.UnitOriginInfo;
 import com.sun.speech.freetts.relp.Sample;
 import com.sun.speech.freetts.relp.SampleInfo;
 import com.sun.speech.freetts.relp.SampleSet;
+import com.sun.speech.freetts.util.Utilities;
 
 import de.dfki.lt.freetts.ClusterUnitNamer;
 
@@ -39,8 +51,62 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 	private static final Logger LOGGER = Logger.getLogger(ClusterUnitSelector.class.getName());
 
 	private final static PathExtractor DNAME = new PathExtractorImpl("R:SylStructure.parent.parent.name", true);
+
+	/** Property that trades selection quality for speed. <code>best</code> (the default) runs the exact Viterbi search
+	 * over all candidates, <code>balanced</code> and <code>fast</code> run a beam search over a limited number of
+	 * candidates. The beam width and candidate limit properties override the values of the setting. */
+	public final static String PROP_QUALITY = Voice.PROP_PREFIX + "unitSelection.quality";
+
+	/** Property for the number of paths kept at each point of the Viterbi search. 0 runs the exact search. */
+	public final static String PROP_BEAM_WIDTH = Voice.PROP_PREFIX + "unitSelection.beamWidth";
+
+	/** Property for the maximum number of units of the best CART cluster that are candidates for a segment. The units
+	 * added by EXTEND_SELECTIONS are not counted. 0 uses the whole cluster. */
+	public final static String PROP_CANDIDATE_LIMIT = Voice.PROP_PREFIX + "unitSelection.candidateLimit";
+
+	/** Property for the number of join costs cached across utterances. 0 disables the cache. */
+	public final static String PROP_JOIN_CACHE_SIZE = Voice.PROP_PREFIX + "unitSelection.joinCacheSize";
+
+	/** Property for the weight of each MCEP coefficient in the join cost, as integers separated by spaces or commas, 65536
+	 * being 1. Missing weights are 0. The default is the JOIN_WEIGHTS of the database. */
+	public final static String PROP_JOIN_WEIGHTS = Voice.PROP_PREFIX + "unitSelection.joinWeights";
+
+	/** Property for the weight of F0, the first MCEP coefficient of a festvox database, in the join cost. It replaces the
+	 * first of the join weights. */
+	public final static String PROP_F0_WEIGHT = Voice.PROP_PREFIX + "unitSelection.f0Weight";
+
+	/** Property for the continuity weight that multiplies the join cost of a path, 5 by default. */
+	public final static String PROP_CONTINUITY_WEIGHT = Voice.PROP_PREFIX + "unitSelection.continuityWeight";
+
+	/** Property for the optimal coupling mode: 1 searches the best coupling frames, 2 uses the distance of the adjacent
+	 * frames and 0 ignores the joins. The default is the OPTIMAL_COUPLING of the database. */
+	public final static String PROP_OPTIMAL_COUPLING = Voice.PROP_PREFIX + "unitSelection.optimalCoupling";
+
+	/** The suffix of the optional weights file next to a unit database. It is a properties file that holds the join cost
+	 * settings of the voice under the last part of their property names, <code>joinWeights</code>,
+	 * <code>f0Weight</code>, <code>continuityWeight</code> and <code>optimalCoupling</code>. The properties override the
+	 * file. */
+	public final static String WEIGHTS_SUFFIX = ".weights";
+
+	private final static String[] QUALITIES = { "best", "balanced", "fast" };
+	private final static int[] QUALITY_BEAM_WIDTHS = { 0, 32, 8 };
+	private final static int[] QUALITY_CANDIDATE_LIMITS = { 0, 48, 16 };
+
+	/** Loads unit databases, which are shared by the voices that use them. */
+	private final static VoiceDataRegistry.Loader DATABASE_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new ClusterUnitDatabase(url, url.getPath().endsWith(".bin"));
+		}
+	};
+
 	private ClusterUnitDatabase clunitDB;
 	private ClusterUnitNamer unitNamer;
+	private int beamWidth;
+	private int candidateLimit;
+	private JoinCostCache joinCache;
+	private JoinCostWeights weights;
+	private final AtomicLong viterbiTime = new AtomicLong();
+	private final AtomicLong audioSamples = new AtomicLong();
 
 	/** Constructs a ClusterUnitSelector.
 	 * @param url the URL for the unit database. If the URL path ends with a '.bin' it is assumed that the DB is a binary
@@ -61,10 +127,204 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		if (url == null) {
 			throw new IOException("Can't load cluster unit database");
 		}
-		boolean binary = url.getPath().endsWith(".bin");
-		clunitDB = new ClusterUnitDatabase(url, binary);
+		clunitDB = (ClusterUnitDatabase) VoiceDataRegistry.get("ClusterUnitDatabase", url, DATABASE_LOADER);
 		this.unitNamer = unitNamer;
 
+		String quality = Utilities.getProperty(PROP_QUALITY, QUALITIES[0]);
+		int setting = Arrays.asList(QUALITIES).indexOf(quality);
+		if (setting == -1) {
+			LOGGER.warning("Unknown unit selection quality " + quality + ", using " + QUALITIES[0]);
+			setting = 0;
+		}
+		setBeamWidth(Utilities.getInteger(PROP_BEAM_WIDTH, QUALITY_BEAM_WIDTHS[setting]).intValue());
+		setCandidateLimit(Utilities.getInteger(PROP_CANDIDATE_LIMIT, QUALITY_CANDIDATE_LIMITS[setting]).intValue());
+		setJoinCacheSize(Utilities.getInteger(PROP_JOIN_CACHE_SIZE, 1 << 16).intValue());
+		weights = loadWeights(url);
+	}
+
+	/** Loads the join cost settings from the weights file next to the database and the properties.
+	 * @param url the URL of the unit database
+	 * @return the settings
+	 * @throws IOException if a setting is not a number */
+	private JoinCostWeights loadWeights(URL url) throws IOException {
+		Properties file = new Properties();
+		String urlString = url.toExternalForm();
+		try {
+			InputStream is = Utilities.getInputStream(new URL(urlString.substring(0, urlString.lastIndexOf("."))
+					+ WEIGHTS_SUFFIX));
+			try {
+				file.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException ioe) {
+			// most voices have no weights file
+		}
+
+		try {
+			int[] joinWeights = clunitDB.getJoinWeights();
+			String value = getSetting(file, PROP_JOIN_WEIGHTS);
+			if (value != null) {
+				StringTokenizer tokenizer = new StringTokenizer(value, " ,");
+				joinWeights = new int[tokenizer.countTokens()];
+				for (int i = 0; i < joinWeights.length; i++) {
+					joinWeights[i] = Integer.parseInt(tokenizer.nextToken());
+				}
+			}
+			value = getSetting(file, PROP_F0_WEIGHT);
+			if (value != null) {
+				joinWeights = joinWeights.clone();
+				joinWeights[0] = Integer.parseInt(value.trim());
+			}
+			value = getSetting(file, PROP_CONTINUITY_WEIGHT);
+			int continuityWeight = value == null ? JoinCostWeights.DEFAULT_CONTINUITY_WEIGHT : Integer.parseInt(value
+					.trim());
+			value = getSetting(file, PROP_OPTIMAL_COUPLING);
+			int optimalCoupling = value == null ? clunitDB.getOptimalCoupling() : Integer.parseInt(value.trim());
+			return new JoinCostWeights(clunitDB, joinWeights, continuityWeight, optimalCoupling);
+		} catch (NumberFormatException nfe) {
+			throw new IOException("Bad unit selection weight for " + url + ": " + nfe.getMessage());
+		}
+	}
+
+	/** Gets a join cost setting from the properties or the weights file.
+	 * @param file the weights file
+	 * @param property the property name of the setting
+	 * @return the setting, or null if it is not set */
+	private static String getSetting(Properties file, String property) {
+		String name = property.substring(property.lastIndexOf('.') + 1);
+		return Utilities.getProperty(property, file.getProperty(name));
+	}
+
+	/** Sets the number of paths kept at each point of the Viterbi search.
+	 * @param beamWidth the beam width, or 0 for the exact search
+	 * @see #PROP_BEAM_WIDTH */
+	public void setBeamWidth(int beamWidth) {
+		this.beamWidth = Math.max(0, beamWidth);
+	}
+
+	/** Gets the number of paths kept at each point of the Viterbi search.
+	 * @return the beam width, or 0 for the exact search */
+	public int getBeamWidth() {
+		return beamWidth;
+	}
+
+	/** Sets the maximum number of cluster units that are candidates for a segment.
+	 * @param candidateLimit the limit, or 0 for no limit
+	 * @see #PROP_CANDIDATE_LIMIT */
+	public void setCandidateLimit(int candidateLimit) {
+		this.candidateLimit = Math.max(0, candidateLimit);
+	}
+
+	/** Gets the maximum number of cluster units that are candidates for a segment.
+	 * @return the limit, or 0 for no limit */
+	public int getCandidateLimit() {
+		return candidateLimit;
+	}
+
+	/** Replaces the join cost cache with an empty one of the given size.
+	 * @param size the number of join costs to cache, or 0 to disable the cache
+	 * @see #PROP_JOIN_CACHE_SIZE */
+	public void setJoinCacheSize(int size) {
+		joinCache = size > 0 ? new JoinCostCache(size) : null;
+	}
+
+	/** Sets the weight of each MCEP coefficient in the join cost.
+	 * @param joinWeights the weights, 65536 being 1; missing weights are 0
+	 * @see #PROP_JOIN_WEIGHTS */
+	public void setJoinWeights(int[] joinWeights) {
+		setWeights(new JoinCostWeights(clunitDB, joinWeights, weights.getContinuityWeight(), weights
+				.getOptimalCoupling()));
+	}
+
+	/** Gets the weight of each MCEP coefficient in the join cost.
+	 * @return a copy of the weights, 65536 being 1 */
+	public int[] getJoinWeights() {
+		return weights.getJoinWeights();
+	}
+
+	/** Sets the weight of F0, the first MCEP coefficient of a festvox database, in the join cost.
+	 * @param f0Weight the weight, 65536 being 1
+	 * @see #PROP_F0_WEIGHT */
+	public void setF0Weight(int f0Weight) {
+		int[] joinWeights = weights.getJoinWeights();
+		joinWeights[0] = f0Weight;
+		setJoinWeights(joinWeights);
+	}
+
+	/** Sets the continuity weight that multiplies the join cost of a path.
+	 * @param continuityWeight the continuity weight
+	 * @see #PROP_CONTINUITY_WEIGHT */
+	public void setContinuityWeight(int continuityWeight) {
+		setWeights(new JoinCostWeights(clunitDB, weights.getJoinWeights(), continuityWeight, weights
+				.getOptimalCoupling()));
+	}
+
+	/** Gets the continuity weight that multiplies the join cost of a path.
+	 * @return the continuity weight */
+	public int getContinuityWeight() {
+		return weights.getContinuityWeight();
+	}
+
+	/** Sets the optimal coupling mode.
+	 * @param optimalCoupling 1 to search the best coupling frames, 2 to use the distance of the adjacent frames, or 0 to
+	 * ignore the joins
+	 * @see #PROP_OPTIMAL_COUPLING */
+	public void setOptimalCoupling(int optimalCoupling) {
+		setWeights(new JoinCostWeights(clunitDB, weights.getJoinWeights(), weights.getContinuityWeight(),
+				optimalCoupling));
+	}
+
+	/** Gets the optimal coupling mode.
+	 * @return 1 to search the best coupling frames, 2 to use the distance of the adjacent frames, or 0 to ignore the
+	 * joins */
+	public int getOptimalCoupling() {
+		return weights.getOptimalCoupling();
+	}
+
+	/** Replaces the join cost settings. The cached join costs were computed with the old ones, so the cache is emptied.
+	 * @param weights the new settings */
+	private void setWeights(JoinCostWeights weights) {
+		this.weights = weights;
+		if (joinCache != null) {
+			setJoinCacheSize(joinCache.getSize());
+		}
+	}
+
+	/** Returns the number of join costs that were found in the cache.
+	 * @return the number of cache hits */
+	public long getJoinCacheHits() {
+		return joinCache == null ? 0 : joinCache.getHits();
+	}
+
+	/** Returns the number of join costs that had to be computed although the cache is enabled.
+	 * @return the number of cache misses */
+	public long getJoinCacheMisses() {
+		return joinCache == null ? 0 : joinCache.getMisses();
+	}
+
+	/** Returns the total time spent in the Viterbi search.
+	 * @return the time in nanoseconds */
+	public long getViterbiTime() {
+		return viterbiTime.get();
+	}
+
+	/** Returns the amount of audio the selected units were chosen for.
+	 * @return the duration in seconds */
+	public float getAudioTime() {
+		return audioSamples.get() / (float) clunitDB.getSampleInfo().getSampleRate();
+	}
+
+	/** Shows the unit selection metrics: the Viterbi time per second of output audio and the join cost cache hit rate. */
+	public void showMetrics() {
+		long hits = getJoinCacheHits();
+		long lookups = hits + getJoinCacheMisses();
+		float audio = getAudioTime();
+		System.out.println("ClusterUnitSelector  beam " + beamWidth + " candidates " + candidateLimit);
+		System.out.println("  Viterbi time  : " + (viterbiTime.get() / 1000000L) + " ms for " + audio + " s of audio, "
+				+ (audio > 0 ? viterbiTime.get() / 1000000f / audio : 0f) + " ms/s");
+		System.out.println("  Join cache    : " + hits + " hits in " + lookups + " lookups, "
+				+ (lookups > 0 ? 100f * hits / lookups : 0f) + "% hit rate");
 	}
 
 	/** Get the sample info for the underlying database.
@@ -91,14 +351,23 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		utterance.setObject(SampleInfo.UTT_NAME, clunitDB.getSampleInfo());
 		utterance.setObject("sts_list", clunitDB.getSts());
 
-		vd = new Viterbi(segs, clunitDB);
+		// the points, candidates and paths of the search are recycled through the arena of the voice
+		Arena arena = utterance.getVoice() == null ? null : utterance.getVoice().getArena();
+		ViterbiScratch scratch = arena == null ? null : arena.take(ViterbiScratch.class);
+		if (scratch == null) {
+			scratch = new ViterbiScratch();
+		}
+		vd = new Viterbi(segs, clunitDB, weights, beamWidth, candidateLimit, joinCache, scratch);
 
 		for (Item s = segs.getHead(); s != null; s = s.getNext()) {
 			setUnitName(s);
+			// the name is looked up once, the search and the units use the id of the type
+			s.getFeatures().setInt("clunit_type", clunitDB.getUnitTypeIndex(s.getFeatures().getString("clunit_name")));
 		}
 
 		// Carry out the CART lookup for the target costs, and the viterbi
 		// search for finding the best path (join costs) through the candidates.
+		long start = System.nanoTime();
 		vd.decode();
 
 		// Now associate the candidate units in the best path
@@ -107,6 +376,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			LOGGER.severe("clunits: can't find path");
 			throw new Error();
 		}
+		viterbiTime.addAndGet(System.nanoTime() - start);
 
 		// If optimal coupling was used, the join points must now be copied
 		// from the path elements to the actual items in the segment relation.
@@ -128,6 +398,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			int unitStart;
 			int unitEnd;
 			String clunitName = s.getFeatures().getString("clunit_name");
+			int clunitType = s.getFeatures().getInt("clunit_type");
 
 			if (s.getFeatures().isPresent("unit_this_move")) {
 				unitStart = s.getFeatures().getInt("unit_this_move");
@@ -147,7 +418,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			if (true) {
 				unitFeatureSet.setInt("unit_start", clunit.getStart());
 				unitFeatureSet.setInt("unit_end", clunit.getEnd());
-				unitFeatureSet.setInt("instance", unitEntry - clunitDB.getUnitIndex(clunitName, 0));
+				unitFeatureSet.setInt("instance", unitEntry - clunitDB.getUnitIndex(clunitType, 0));
 			} // add the rest of these things for debugging.
 
 			if (LOGGER.isLoggable(Level.FINE)) {
@@ -156,6 +427,9 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			}
 			unitFeatureSet.setInt("target_end", (int) (s.getFeatures().getFloat("end") * clunitDB.getSampleInfo()
 					.getSampleRate()));
+			if (s.getNext() == null) {
+				audioSamples.addAndGet(unitFeatureSet.getInt("target_end"));
+			}
 
 			// Associate debug info about unit origin if available:
 			UnitOriginInfo unitOrigin = clunitDB.getUnitOriginInfo(unitEntry);
@@ -166,6 +440,10 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			}
 
 		}
+		scratch.reset();
+		if (arena != null) {
+			arena.give(scratch);
+		}
 	}
 
 	/** Sets the cluster unit name given the segment.
@@ -214,6 +492,71 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		return "ClusterUnitSelector";
 	}
 
+	/** Benchmarks the unit selection. Speaks a text file with a cluster unit voice, discarding the audio, and shows the
+	 * accumulated Viterbi time per second of output audio and join cost cache hit rate after every pass. The beam width,
+	 * candidate limit and cache size are set with the usual properties.
+	 * <p>
+	 * Usage: <code>ClusterUnitSelector -voice name -file path [-passes n]</code>
+	 * @param args the command line arguments */
+	public static void main(String[] args) {
+		String voiceName = null;
+		String path = null;
+		int passes = 3;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-voice") && i + 1 < args.length) {
+				voiceName = args[++i];
+			} else if (args[i].equals("-file") && i + 1 < args.length) {
+				path = args[++i];
+			} else if (args[i].equals("-passes") && i + 1 < args.length) {
+				passes = Integer.parseInt(args[++i]);
+			} else {
+				System.out.println("Unknown option " + args[i]);
+			}
+		}
+		if (voiceName == null || path == null) {
+			System.out.println("Usage: ClusterUnitSelector -voice name -file path [-passes n]");
+			return;
+		}
+
+		try {
+			StringBuffer text = new StringBuffer();
+			BufferedReader reader = new BufferedReader(new FileReader(path));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				text.append(line).append('\n');
+			}
+			reader.close();
+
+			Voice voice = VoiceManager.getInstance().getVoice(voiceName);
+			if (voice == null) {
+				System.out.println("Can't find voice " + voiceName);
+				return;
+			}
+			voice.setAudioPlayer(new NullAudioPlayer());
+			voice.allocate();
+			ClusterUnitSelector selector = null;
+			Object[] processors = voice.getUtteranceProcessors().toArray();
+			for (int i = 0; i < processors.length; i++) {
+				if (processors[i] instanceof ClusterUnitSelector) {
+					selector = (ClusterUnitSelector) processors[i];
+				}
+			}
+			if (selector == null) {
+				System.out.println(voiceName + " does not use a ClusterUnitSelector");
+				return;
+			}
+			for (int pass = 1; pass <= passes; pass++) {
+				voice.speak(text.toString());
+				System.out.println("Pass " + pass);
+				selector.showMetrics();
+			}
+			voice.deallocate();
+		} catch (IOException ioe) {
+			System.err.println(ioe);
+		}
+	}
+
 	/** Provides support for the Viterbi Algorithm. Implementation Notes
 	 * <p>
 	 * For each candidate for the current unit, calculate the cost between it and the first candidate in the next unit.
@@ -225,26 +568,58 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 	 * <p>
 	 * Toss out all candidates in the current unit that are not included in a path.
 	 * <p>
-	 * Move to the next unit and repeat the process. */
+	 * Move to the next unit and repeat the process.
+	 * <p>
+	 * With a beam width, only the best paths of each point are extended (a general beam search). */
 	static class Viterbi {
+		private final static Cost NO_JOIN_COST = new Cost();
+
 		private int numStates = -1;
 		private boolean bigIsGood = false;
 		private ViterbiPoint timeline = null;
 		private ViterbiPoint lastPoint = null;
 		private FeatureSet f = null;
 		private ClusterUnitDatabase clunitDB;
+		private JoinCostWeights weights;
+		private int beamWidth;
+		private int candidateLimit;
+		private JoinCostCache joinCache;
+		private ViterbiScratch scratch;
+		private int cacheHits;
+		private int cacheMisses;
 
 		/** Creates a Viterbi class to process the given utterance. A queue of ViterbiPoints corresponding to the Items in
 		 * the Relation segs is built up. */
 		public Viterbi(Relation segs, ClusterUnitDatabase db) {
+			this(segs, db, new JoinCostWeights(db), 0, 0, null, new ViterbiScratch());
+		}
+
+		/** Creates a Viterbi class to process the given utterance.
+		 * @param segs the segments to find units for
+		 * @param db the unit database
+		 * @param weights the settings of the join cost
+		 * @param beamWidth the number of paths kept at each point, or 0 for the exact search
+		 * @param candidateLimit the maximum number of cluster units per segment, or 0 for no limit
+		 * @param joinCache the cache of join costs computed with these settings, or null
+		 * @param scratch where the points, candidates and paths of the search are made */
+		public Viterbi(Relation segs, ClusterUnitDatabase db, JoinCostWeights weights, int beamWidth, int candidateLimit,
+				JoinCostCache joinCache, ViterbiScratch scratch) {
 			ViterbiPoint last = null;
 			clunitDB = db;
+			this.scratch = scratch;
+			this.weights = weights;
 			f = new FeatureSetImpl();
+			this.beamWidth = beamWidth;
+			this.candidateLimit = candidateLimit;
+			this.joinCache = joinCache;
+			if (beamWidth > 0) {
+				numStates = 0;
+			}
 			for (Item s = segs.getHead(); true; s = s.getNext()) {
-				ViterbiPoint n = new ViterbiPoint(s);
+				ViterbiPoint n = scratch.newPoint(s);
 				// The number of ViterbiPaths associated with each ViterbiPoint
-				// is determined using the variable numStates.
-				// TODO: Where can numStates be set?
+				// is determined using the variable numStates: -1 for the exact
+				// search, 0 for the beam search.
 				if (numStates > 0) {
 					n.initPathArray(numStates);
 				}
@@ -266,7 +641,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			}
 
 			if (numStates == 0) { // its a general beam search
-				timeline.paths = new ViterbiPath();
+				timeline.paths = scratch.newPath();
 			}
 
 			if (numStates == -1) { // dynamic number of states (# cands)
@@ -298,9 +673,11 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		 * among the paths associated with the last Point, and to associate the resulting Candidates with the segment items
 		 * they will realise. */
 		void decode() {
+			ViterbiCandidate previous = null;
 			for (ViterbiPoint p = timeline; p.next != null; p = p.next) {
 				// The candidates for the current item:
-				p.cands = getCandidate(p.item);
+				p.cands = getCandidate(p.item, previous);
+				previous = p.cands;
 				if (LOGGER.isLoggable(Level.FINE)) {
 					LOGGER.fine("decode " + p.cands);
 				}
@@ -334,8 +711,74 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 						}
 					}
 				} else {
-					System.err.println("Viterbi.decode: general beam search not implemented");
+					// General beam search: extend the paths that survived pruning at p.
+					// Paths leading to the same candidate are recombined as above, and
+					// only the best beamWidth of the resulting paths are kept.
+					p.next.initDynamicPathArray(p.cands);
+					for (ViterbiPath path = p.paths; path != null; path = path.next) {
+						for (ViterbiCandidate c = p.cands; c != null; c = c.next) {
+							addPaths(p.next, getPath(path, c));
+						}
+					}
+					prunePaths(p.next);
+				}
+			}
+			if (joinCache != null) {
+				joinCache.count(cacheHits, cacheMisses);
+				cacheHits = 0;
+				cacheMisses = 0;
+			}
+		}
+
+		/** Keeps the best beamWidth paths of the given point, and links them (in state order) into the paths of the
+		 * point. Of paths with equal scores, those with the lower states are kept.
+		 * @param point the point to prune */
+		private void prunePaths(ViterbiPoint point) {
+			int[] scores = new int[point.numStates];
+			int count = 0;
+			for (int i = 0; i < point.numStates; i++) {
+				if (point.statePaths[i] != null) {
+					scores[count++] = point.statePaths[i].score;
+				}
+			}
+
+			boolean prune = count > beamWidth;
+			int cut = 0;
+			int ties = 0;
+			if (prune) {
+				// the score of the worst path that is kept, and how many paths with that score fit in the beam
+				Arrays.sort(scores, 0, count);
+				cut = bigIsGood ? scores[count - beamWidth] : scores[beamWidth - 1];
+				ties = beamWidth;
+				for (int i = 0; i < count; i++) {
+					if (isBetterThan(scores[i], cut)) {
+						ties--;
+					}
+				}
+			}
+
+			ViterbiPath last = null;
+			point.paths = null;
+			point.numPaths = 0;
+			for (int i = 0; i < point.numStates; i++) {
+				ViterbiPath path = point.statePaths[i];
+				if (path == null) {
+					continue;
+				}
+				if (prune && !isBetterThan(path.score, cut)) {
+					if (path.score != cut || ties == 0) {
+						point.statePaths[i] = null;
+						continue;
+					}
+					ties--;
+				}
+				if (last == null) {
+					point.paths = path;
+				} else {
+					last.next = path;
 				}
+				last = path;
+				point.numPaths++;
 			}
 		}
 
@@ -421,25 +864,33 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		/** Finds the best (queue of) candidate(s) for a given (segment) item. This traverses a CART tree for target cluster
 		 * selection as described in the paper introducing the clunits algorithm. This corresponds to the "target costs"
 		 * described for general unit selection.
+		 * @param item the segment item
+		 * @param previous the candidates for the preceding segment, or null
 		 * @return the first candidate in the queue of candidate units for this item. */
-		private ViterbiCandidate getCandidate(Item item) {
+		private ViterbiCandidate getCandidate(Item item, ViterbiCandidate previous) {
 			// TODO: This should better be called getCandidates() (plural form),
 			// because what it does is find all the candidates for the item
 			// and return the head of the queue.
-			String unitType = item.getFeatures().getString("clunit_name");
-			CART cart = clunitDB.getTree(unitType);
+			int unitType = item.getFeatures().getInt("clunit_type");
+			CART cart = clunitDB.getTree(unitType, item.getFeatures().getString("clunit_name"));
 			// Here, the unit candidates are selected.
 			int[] clist = (int[]) cart.interpret(item);
 			// Now, clist is an array of instance numbers for the units of type
 			// unitType that belong to the best cluster according to the CART.
+			// The clusters list their units best first, so a candidate limit
+			// keeps the head of the list.
+			int numCands = clist.length;
+			if (candidateLimit > 0 && candidateLimit < numCands) {
+				numCands = candidateLimit;
+			}
 
 			ViterbiCandidate p;
 			ViterbiCandidate all;
 			ViterbiCandidate gt;
 
 			all = null;
-			for (int i = 0; i < clist.length; i++) {
-				p = new ViterbiCandidate();
+			for (int i = 0; i < numCands; i++) {
+				p = scratch.newCandidate();
 				p.next = all; // link them reversely: the first in clist will be at the end of the queue
 				p.item = item; // The item is the same for all these candidates in the queue.
 				p.score = 0;
@@ -462,7 +913,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			// In a sense, this means trading target costs against join costs.
 			if (clunitDB.getExtendSelections() > 0 && item.getPrevious() != null) {
 				// Get the candidates for the preceding (segment) item
-				ViterbiCandidate lc = (ViterbiCandidate) (item.getPrevious().getFeatures().getObject("clunit_cands"));
+				ViterbiCandidate lc = previous;
 				if (LOGGER.isLoggable(Level.FINE)) {
 					LOGGER.fine("      lc " + lc);
 				}
@@ -494,7 +945,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 					if ((gt == null) && clunitDB.isUnitTypeEqual(nu, all.ival)) {
 						// nu is of the right unit type and is not yet one of the candidates.
 						// add it to the queue of candidates for the current item:
-						p = new ViterbiCandidate();
+						p = scratch.newCandidate();
 						p.next = all;
 						p.item = item;
 						p.score = 0;
@@ -504,7 +955,6 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 					}
 				}
 			}
-			item.getFeatures().setObject("clunit_cands", all);
 			return all;
 		}
 
@@ -519,7 +969,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		 * score calculated. */
 		private ViterbiPath getPath(ViterbiPath path, ViterbiCandidate candidate) {
 			int cost;
-			ViterbiPath newPath = new ViterbiPath();
+			ViterbiPath newPath = scratch.newPath();
 
 			newPath.candidate = candidate;
 			newPath.from = path;
@@ -534,26 +984,17 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			if (path == null || path.candidate == null) {
 				cost = 0;
 			} else {
-				int u0 = path.candidate.ival;
-				int u1 = candidate.ival;
-				if (clunitDB.getOptimalCoupling() == 1) {
-					Cost oCost = getOptimalCouple(u0, u1);
-					if (oCost.u0Move != -1) {
-						newPath.setFeature("unit_prev_move", new Integer(oCost.u0Move));
-					}
-					if (oCost.u1Move != -1) {
-						newPath.setFeature("unit_this_move", new Integer(oCost.u1Move));
-					}
-					cost = oCost.cost;
-				} else if (clunitDB.getOptimalCoupling() == 2) {
-					cost = getOptimalCoupleFrame(u0, u1);
-				} else {
-					cost = 0;
+				Cost oCost = getJoinCost(path.candidate.ival, candidate.ival);
+				if (oCost.u0Move != -1) {
+					newPath.setFeature("unit_prev_move", new Integer(oCost.u0Move));
+				}
+				if (oCost.u1Move != -1) {
+					newPath.setFeature("unit_this_move", new Integer(oCost.u1Move));
 				}
+				cost = oCost.cost;
 			}
 
-			// cost *= clunitDB.getContinuityWeight();
-			cost *= 5; // magic number ("continuity weight") from flite
+			cost *= weights.getContinuityWeight(); // 5 in flite
 			// TODO: remove the state attribute from ViterbiPath, as it is simply path.candidate.pos!
 			newPath.state = candidate.pos;
 			if (path == null) {
@@ -565,6 +1006,38 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			return newPath;
 		}
 
+		/** Returns the cost of joining two units, using the join cost cache if there is one. With OPTIMAL_COUPLING 1 the
+		 * cost includes the best coupling frames, with OPTIMAL_COUPLING 2 it is the distance of the adjacent frames, and
+		 * otherwise it is 0.
+		 * @param u0 the unit on the left of the join
+		 * @param u1 the unit on the right of the join
+		 * @return the cost, which must not be modified */
+		Cost getJoinCost(int u0, int u1) {
+			int coupling = weights.getOptimalCoupling();
+			if (coupling != 1 && coupling != 2) {
+				return NO_JOIN_COST;
+			}
+			Cost cost = null;
+			if (joinCache != null) {
+				cost = joinCache.get(u0, u1);
+				if (cost != null) {
+					cacheHits++;
+					return cost;
+				}
+				cacheMisses++;
+			}
+			if (coupling == 1) {
+				cost = getOptimalCouple(u0, u1);
+			} else {
+				cost = new Cost();
+				cost.cost = getOptimalCoupleFrame(u0, u1);
+			}
+			if (joinCache != null) {
+				joinCache.put(u0, u1, cost);
+			}
+			return cost;
+		}
+
 		/** Find the best path. This requires decode() to have been run.
 		 * @return the best path. */
 		private ViterbiPath findBestPath() {
@@ -598,6 +1071,14 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 						bestPath = t.statePaths[i];
 					}
 				}
+			} else {
+				// the paths that survived the beam
+				for (ViterbiPath p = t.paths; p != null; p = p.next) {
+					if (isBetterThan(p.score, best)) {
+						best = p.score;
+						bestPath = p;
+					}
+				}
 			}
 			return bestPath;
 		}
@@ -607,12 +1088,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		 * @param u1 second unit to try
 		 * @return the cost for this coupling, including the best coupling frame */
 		Cost getOptimalCouple(int u0, int u1) {
-			int a, b;
 			int u1_p;
-			int i, fcount;
-			int u0_st, u1_p_st, u0_end, u1_p_end;
-			int best_u0, best_u1_p;
-			int dist, best_val;
 			Cost cost = new Cost();
 
 			u1_p = clunitDB.getPrevUnit(u1);
@@ -630,56 +1106,20 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 				return cost;
 			}
 
-			// If u1 has a valid previous unit, try to find the optimal
-			// couple point between u0 and that previous unit, u1_p.
-
-			// Find out which of u1_p and u0 is shorter.
-			// In both units, we plan to start from one third of the unit length,
-			// and to compare frame coupling frame by frame until the end of the
-			// shorter unit is reached.
-			u0_end = clunitDB.getEnd(u0) - clunitDB.getStart(u0);
-			u1_p_end = clunitDB.getEnd(u1_p) - clunitDB.getStart(u1_p);
-			u0_st = u0_end / 3;
-			u1_p_st = u1_p_end / 3;
-
-			if ((u0_end - u0_st) < (u1_p_end - u1_p_st)) {
-				fcount = u0_end - u0_st;
-				// We could now shift the starting point for coupling in the longer unit
-				// so that the distance from the end is the same in both units:
-				/* u1_p_st = u1_p_end - fcount; */
+			// If u1 has a valid previous unit, find the optimal couple point between u0 and that previous unit, u1_p,
+			// in the table generated with the database, or else by scanning the frames of the two units.
+			CouplingTable table = weights.getCouplingTable();
+			int entry = table == null ? -1 : table.find(u0, u1_p);
+			if (entry >= 0) {
+				// u0Move is the new end for u0
+				// u1Move is the new start for u1
+				cost.u0Move = clunitDB.getStart(u0) + table.getU0Move(entry);
+				cost.u1Move = clunitDB.getStart(u1_p) + table.getU1Move(entry);
+				cost.cost = table.getDistance(entry);
 			} else {
-				fcount = u1_p_end - u1_p_st;
-				// We could now shift the starting point for coupling in the longer unit
-				// so that the distance from the end is the same in both units:
-				/* u0_st = u0_end - fcount; */
-			}
-
-			// Now go through the two units, and search for the frame pair where
-			// the acoustic distance is smallest.
-			best_u0 = u0_end;
-			best_u1_p = u1_p_end;
-			best_val = Integer.MAX_VALUE;
-
-			for (i = 0; i < fcount; ++i) {
-				a = clunitDB.getStart(u0) + u0_st + i;
-				b = clunitDB.getStart(u1_p) + u1_p_st + i;
-				dist = getFrameDistance(a, b, clunitDB.getJoinWeights(), clunitDB.getMcep().getSampleInfo()
-						.getNumberOfChannels())
-						+ Math.abs(clunitDB.getSts().getFrameSize(a) - clunitDB.getSts().getFrameSize(b))
-						* clunitDB.getContinuityWeight();
-
-				if (dist < best_val) {
-					best_val = dist;
-					best_u0 = u0_st + i;
-					best_u1_p = u1_p_st + i;
-				}
+				CouplingTable.scan(clunitDB, weights.getFrameDistance(), u0, u1_p, cost);
 			}
-
-			// u0Move is the new end for u0
-			// u1Move is the new start for u1
-			cost.u0Move = clunitDB.getStart(u0) + best_u0;
-			cost.u1Move = clunitDB.getStart(u1_p) + best_u1_p;
-			cost.cost = 30000 + best_val;
+			cost.cost += 30000;
 			return cost;
 		}
 
@@ -701,31 +1141,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			}
 			b = clunitDB.getStart(u1);
 
-			return getFrameDistance(a, b, clunitDB.getJoinWeights(), clunitDB.getMcep().getSampleInfo().getNumberOfChannels())
-					+ Math.abs(clunitDB.getSts().getFrameSize(a) - clunitDB.getSts().getFrameSize(b))
-					* clunitDB.getContinuityWeight();
-		}
-
-		/** Get the 'distance' between the frames a and b.
-		 * @param a first frame
-		 * @param b second frame
-		 * @param joinWeights the weights used in comparison
-		 * @param order number of compares
-		 * @return the distance between the frames */
-		public int getFrameDistance(int a, int b, int[] joinWeights, int order) {
-
-			if (LOGGER.isLoggable(Level.FINE)) {
-				LOGGER.fine(" gfd  a " + a + " b " + b + " or " + order);
-			}
-			int r, i;
-			short[] bv = clunitDB.getMcep().getSample(b).getFrameData();
-			short[] av = clunitDB.getMcep().getSample(a).getFrameData();
-
-			for (r = 0, i = 0; i < order; i++) {
-				int diff = av[i] - bv[i];
-				r += Math.abs(diff) * joinWeights[i] / 65536;
-			}
-			return r;
+			return weights.getFrameDistance().getJoinDistance(a, b);
 		}
 
 	}
@@ -748,6 +1164,17 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 			this.item = item;
 		}
 
+		/** Empties this point for the next search that takes it from the scratch; its path array is kept.
+		 * @param item the item of the point, or null */
+		void clear(Item item) {
+			this.item = item;
+			numStates = 0;
+			numPaths = 0;
+			cands = null;
+			paths = null;
+			next = null;
+		}
+
 		/** Initialize the path array to the given size.
 		 * @param size the size of the path array */
 		public void initPathArray(int size) {
@@ -755,7 +1182,11 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 				LOGGER.fine("init_path_array: " + size);
 			}
 			numStates = size;
-			statePaths = new ViterbiPath[size];
+			if (statePaths == null || statePaths.length < size) {
+				statePaths = new ViterbiPath[size];
+			} else {
+				Arrays.fill(statePaths, 0, size, null);
+			}
 		}
 
 		/** Initializes the dynamic path array. The path array will have as many ViterbiPath members as there are candidates
@@ -788,6 +1219,16 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		Item item = null;
 		ViterbiCandidate next = null;
 
+		/** Empties this candidate for the next search that takes it from the scratch. */
+		void clear() {
+			score = 0;
+			value = null;
+			ival = 0;
+			pos = 0;
+			item = null;
+			next = null;
+		}
+
 		/** Sets the object for this candidate.
 		 * @param obj the object */
 		void set(Object obj) {
@@ -809,15 +1250,113 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		}
 	}
 
+	/** Makes the points, candidates and paths of a Viterbi search. A search makes tens of thousands of them, which all
+	 * live until the units are selected; the scratch hands them out in order and, once reset, hands out the same ones
+	 * again, so that a scratch kept in the arena of the voice serves one utterance after the other. */
+	static class ViterbiScratch {
+		private ViterbiPoint[] points = new ViterbiPoint[64];
+		private ViterbiCandidate[] candidates = new ViterbiCandidate[256];
+		private ViterbiPath[] paths = new ViterbiPath[1024];
+		private int numPoints;
+		private int numCandidates;
+		private int numPaths;
+
+		/** Makes a point.
+		 * @param item the item of the point, or null for the last one
+		 * @return the point */
+		ViterbiPoint newPoint(Item item) {
+			if (numPoints == points.length) {
+				points = (ViterbiPoint[]) grow(points, new ViterbiPoint[numPoints * 2]);
+			}
+			ViterbiPoint point = points[numPoints];
+			if (point == null) {
+				point = new ViterbiPoint(item);
+				points[numPoints] = point;
+			} else {
+				point.clear(item);
+			}
+			numPoints++;
+			return point;
+		}
+
+		/** Makes a candidate.
+		 * @return the candidate, with all of its fields at their defaults */
+		ViterbiCandidate newCandidate() {
+			if (numCandidates == candidates.length) {
+				candidates = (ViterbiCandidate[]) grow(candidates, new ViterbiCandidate[numCandidates * 2]);
+			}
+			ViterbiCandidate candidate = candidates[numCandidates];
+			if (candidate == null) {
+				candidate = new ViterbiCandidate();
+				candidates[numCandidates] = candidate;
+			} else {
+				candidate.clear();
+			}
+			numCandidates++;
+			return candidate;
+		}
+
+		/** Makes a path.
+		 * @return the path, with all of its fields at their defaults */
+		ViterbiPath newPath() {
+			if (numPaths == paths.length) {
+				paths = (ViterbiPath[]) grow(paths, new ViterbiPath[numPaths * 2]);
+			}
+			ViterbiPath path = paths[numPaths];
+			if (path == null) {
+				path = new ViterbiPath();
+				paths[numPaths] = path;
+			} else {
+				path.clear();
+			}
+			numPaths++;
+			return path;
+		}
+
+		/** Takes back all that was made since the last reset. The items of the utterance are let go, so that the scratch
+		 * does not keep the utterance. */
+		void reset() {
+			for (int i = 0; i < numPoints; i++) {
+				points[i].clear(null);
+			}
+			for (int i = 0; i < numCandidates; i++) {
+				candidates[i].clear();
+			}
+			numPoints = 0;
+			numCandidates = 0;
+			numPaths = 0;
+		}
+
+		private static Object[] grow(Object[] array, Object[] newArray) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+			return newArray;
+		}
+	}
+
 	/** Describes a Viterbi path. */
 	static class ViterbiPath {
 		int score = 0;
 		int state = 0;
 		ViterbiCandidate candidate = null;
-		private FeatureSet f = null;
+		private FeatureSetImpl f = null;
+		// the feature set is kept when the path is recycled, and only used if a feature was set since
+		private boolean hasFeatures = false;
 		ViterbiPath from = null;
 		ViterbiPath next = null;
 
+		/** Empties this path for the next search that takes it from the scratch. */
+		void clear() {
+			score = 0;
+			state = 0;
+			candidate = null;
+			from = null;
+			next = null;
+			if (hasFeatures) {
+				f.clear();
+				hasFeatures = false;
+			}
+		}
+
 		/** Sets a feature with the given name to the given value.
 		 * @param name the name of the feature
 		 * @param value the new value for the feature */
@@ -826,6 +1365,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 				f = new FeatureSetImpl();
 			}
 			f.setObject(name, value);
+			hasFeatures = true;
 		}
 
 		/** Retrieves a feature.
@@ -833,7 +1373,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		 * @return the feature */
 		Object getFeature(String name) {
 			Object value = null;
-			if (f != null) {
+			if (hasFeatures) {
 				value = f.getObject(name);
 			}
 			return value;
@@ -843,7 +1383,7 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 		 * @param name the feature to look for
 		 * @return <code>true</code> if the feature is present; otherwise <code>false</code>. */
 		boolean isPresent(String name) {
-			if (f == null) {
+			if (!hasFeatures) {
 				return false;
 			} else {
 				return getFeature(name) != null;
@@ -858,13 +1398,6 @@ public class ClusterUnitSelector implements UtteranceProcessor {
 	}
 }
 
-/** Information returned from getOptimalCoupling. */
-class Cost {
-	int cost = 0;
-	int u0Move = -1;
-	int u1Move = -1;
-}
-
 /** A Cluster Unit. */
 class ClusterUnit implements com.sun.speech.freetts.Unit {
 
@@ -0,0 +1,293 @@
+/**
+ * Portions Copyright 2001-2003 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/** The optimal coupling of pairs of units, computed when the binary database is generated. With OPTIMAL_COUPLING 1 the
+ * cost of joining a unit u0 to a unit u1 whose previous unit u1_p has the phone of u0 is found by scanning the frames of
+ * u0 and u1_p for the pair of frames that are closest. The scan only depends on u0 and u1_p, so the table keeps, for
+ * every unit u0, the units u1_p it may be coupled with, sorted, and the best frames and distance of each pair.
+ * <p>
+ * The pairs are those of the units the CARTs of the database can select, and of the units that follow them, which the
+ * EXTEND_SELECTIONS setting adds. Any other pair, and all pairs when the join weights are not those of the database, are
+ * scanned as before. The table is a view of the mapped database when the database is mapped. */
+class CouplingTable {
+	/** Logger instance. */
+	private static final Logger LOGGER = Logger.getLogger(CouplingTable.class.getName());
+
+	// the entry table holds ENTRY_FIELDS ints per pair
+	private final static int ENTRY_FIELDS = 3;
+	private final static int ENTRY_PARTNER = 0;
+	private final static int ENTRY_MOVES = 1;
+	private final static int ENTRY_DISTANCE = 2;
+
+	// the first entry of every unit, and the end of the last
+	private final IntBuffer rows;
+	private final IntBuffer entries;
+
+	/** Creates a table.
+	 * @param rows the index of the first entry of every unit, followed by the number of entries
+	 * @param entries the entries */
+	private CouplingTable(IntBuffer rows, IntBuffer entries) {
+		this.rows = rows;
+		this.entries = entries;
+	}
+
+	/** Finds a pair of units in the table.
+	 * @param u0 the unit on the left of the join
+	 * @param u1p the unit before the unit on the right of the join
+	 * @return the entry of the pair, or -1 if the pair is not in the table */
+	int find(int u0, int u1p) {
+		int start = rows.get(u0);
+		int end = rows.get(u0 + 1);
+		while (start < end) {
+			int mid = (start + end) >>> 1;
+			int partner = entries.get(mid * ENTRY_FIELDS + ENTRY_PARTNER);
+			if (partner == u1p) {
+				return mid;
+			} else if (partner > u1p) {
+				end = mid;
+			} else {
+				start = mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	/** Returns the coupling frame of the unit on the left of the join of a pair.
+	 * @param entry the entry of the pair
+	 * @return the frame, relative to the start of the unit */
+	int getU0Move(int entry) {
+		return entries.get(entry * ENTRY_FIELDS + ENTRY_MOVES) >>> 16;
+	}
+
+	/** Returns the coupling frame of the unit before the unit on the right of the join of a pair.
+	 * @param entry the entry of the pair
+	 * @return the frame, relative to the start of the unit */
+	int getU1Move(int entry) {
+		return entries.get(entry * ENTRY_FIELDS + ENTRY_MOVES) & 0xffff;
+	}
+
+	/** Returns the distance between the coupling frames of a pair.
+	 * @param entry the entry of the pair
+	 * @return the join distance */
+	int getDistance(int entry) {
+		return entries.get(entry * ENTRY_FIELDS + ENTRY_DISTANCE);
+	}
+
+	/** Returns the number of pairs in the table.
+	 * @return the number of pairs */
+	int getNumberOfPairs() {
+		return entries.capacity() / ENTRY_FIELDS;
+	}
+
+	/** Scans two units for the pair of frames where the join distance is smallest. Both units are scanned from one third
+	 * of their length, frame by frame, until the end of the shorter one.
+	 * @param db the unit database
+	 * @param frameDistance the distance between frames
+	 * @param u0 the unit on the left of the join
+	 * @param u1p the unit before the unit on the right of the join
+	 * @param cost receives the new end of u0 and the new start of the unit on the right, as frames of the database, and
+	 * the distance of the frames */
+	static void scan(ClusterUnitDatabase db, FrameDistance frameDistance, int u0, int u1p, Cost cost) {
+		int u0_end = db.getEnd(u0) - db.getStart(u0);
+		int u1_p_end = db.getEnd(u1p) - db.getStart(u1p);
+		int u0_st = u0_end / 3;
+		int u1_p_st = u1_p_end / 3;
+		int fcount = Math.min(u0_end - u0_st, u1_p_end - u1_p_st);
+
+		int best_u0 = u0_end;
+		int best_u1_p = u1_p_end;
+		int best_val = Integer.MAX_VALUE;
+
+		for (int i = 0; i < fcount; ++i) {
+			int dist = frameDistance.getJoinDistance(db.getStart(u0) + u0_st + i, db.getStart(u1p) + u1_p_st + i);
+			if (dist < best_val) {
+				best_val = dist;
+				best_u0 = u0_st + i;
+				best_u1_p = u1_p_st + i;
+			}
+		}
+		cost.u0Move = db.getStart(u0) + best_u0;
+		cost.u1Move = db.getStart(u1p) + best_u1_p;
+		cost.cost = best_val;
+	}
+
+	/** Computes the table of a database. The pairs of a phone are all in the table or not at all; the phones with the
+	 * fewest pairs come first until the table is full.
+	 * @param db the unit database
+	 * @param selectable the units the CARTs of the database can select and the units that follow them
+	 * @param maxPairs the maximum number of pairs in the table
+	 * @return the table */
+	static CouplingTable compute(ClusterUnitDatabase db, boolean[] selectable, int maxPairs) {
+		int units = db.getNumberOfUnits();
+		// the units on the left and the units before the units on the right, by phone
+		List<List<Integer>> left = new ArrayList<List<Integer>>();
+		List<List<Integer>> right = new ArrayList<List<Integer>>();
+		boolean[] previous = new boolean[units];
+		for (int u = 0; u < units; u++) {
+			int p = db.getPrevUnit(u);
+			if (selectable[u] && p != ClusterUnitDatabase.CLUNIT_NONE) {
+				previous[p] = true;
+			}
+		}
+		for (int u = 0; u < units; u++) {
+			int phone = db.getPhone(u);
+			while (left.size() <= phone) {
+				left.add(new ArrayList<Integer>());
+				right.add(new ArrayList<Integer>());
+			}
+			if (selectable[u]) {
+				left.get(phone).add(Integer.valueOf(u));
+			}
+			if (previous[u]) {
+				right.get(phone).add(Integer.valueOf(u));
+			}
+		}
+
+		final long[] pairs = new long[left.size()];
+		Integer[] phones = new Integer[left.size()];
+		long plausible = 0;
+		for (int phone = 0; phone < phones.length; phone++) {
+			phones[phone] = Integer.valueOf(phone);
+			pairs[phone] = (long) left.get(phone).size() * right.get(phone).size();
+			plausible += pairs[phone];
+		}
+		Arrays.sort(phones, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long d = pairs[a.intValue()] - pairs[b.intValue()];
+				return d < 0 ? -1 : d > 0 ? 1 : 0;
+			}
+		});
+		boolean[] included = new boolean[phones.length];
+		long total = 0;
+		for (int i = 0; i < phones.length; i++) {
+			int phone = phones[i].intValue();
+			if (total + pairs[phone] > maxPairs) {
+				break;
+			}
+			total += pairs[phone];
+			included[phone] = true;
+		}
+		if (total < plausible) {
+			LOGGER.warning("Coupling table holds " + total + " of " + plausible + " pairs");
+		}
+
+		int[] rowTable = new int[units + 1];
+		IntBuffer entryTable = IntBuffer.allocate((int) total * ENTRY_FIELDS);
+		Cost cost = new Cost();
+		for (int u0 = 0; u0 < units; u0++) {
+			rowTable[u0] = entryTable.position() / ENTRY_FIELDS;
+			int phone = db.getPhone(u0);
+			if (!selectable[u0] || !included[phone]) {
+				continue;
+			}
+			List<Integer> partners = right.get(phone);
+			for (int i = 0; i < partners.size(); i++) {
+				int u1p = partners.get(i).intValue();
+				if (u1p == u0) {
+					// u0 precedes u1, which costs nothing
+					continue;
+				}
+				scan(db, db.getFrameDistance(), u0, u1p, cost);
+				int u0Move = cost.u0Move - db.getStart(u0);
+				int u1Move = cost.u1Move - db.getStart(u1p);
+				if (u0Move > 0xffff || u1Move > 0xffff) {
+					continue;
+				}
+				entryTable.put(u1p);
+				entryTable.put(u0Move << 16 | u1Move);
+				entryTable.put(cost.cost);
+			}
+		}
+		rowTable[units] = entryTable.position() / ENTRY_FIELDS;
+		int[] entryArray = new int[entryTable.position()];
+		entryTable.flip();
+		entryTable.get(entryArray);
+		return new CouplingTable(IntBuffer.wrap(rowTable), IntBuffer.wrap(entryArray));
+	}
+
+	/** Loads a table from a byte buffer.
+	 * @param bb the byte buffer
+	 * @param mapped if <code>true</code> the table is a view of the buffer, otherwise it is copied
+	 * @return the table, or null if the database has none */
+	static CouplingTable loadBinary(ByteBuffer bb, boolean mapped) {
+		IntBuffer rows = loadInts(bb, bb.getInt(), mapped);
+		IntBuffer entries = loadInts(bb, bb.getInt() * ENTRY_FIELDS, mapped);
+		return rows.capacity() == 0 ? null : new CouplingTable(rows, entries);
+	}
+
+	/** Loads ints from a byte buffer.
+	 * @param bb the byte buffer
+	 * @param length the number of ints
+	 * @param mapped if <code>true</code> the ints are a view of the buffer, otherwise they are copied
+	 * @return the ints */
+	private static IntBuffer loadInts(ByteBuffer bb, int length, boolean mapped) {
+		IntBuffer ints;
+		if (mapped) {
+			ByteBuffer view = bb.slice();
+			view.limit(length * 4);
+			ints = view.asIntBuffer();
+		} else {
+			int[] table = new int[length];
+			bb.asIntBuffer().get(table);
+			ints = IntBuffer.wrap(table);
+		}
+		bb.position(bb.position() + length * 4);
+		return ints;
+	}
+
+	/** Loads a table from an input stream.
+	 * @param is the input stream
+	 * @return the table, or null if the database has none
+	 * @throws IOException if an error occurs while reading */
+	static CouplingTable loadBinary(DataInputStream is) throws IOException {
+		int[] rowTable = new int[is.readInt()];
+		for (int i = 0; i < rowTable.length; i++) {
+			rowTable[i] = is.readInt();
+		}
+		int[] entryTable = new int[is.readInt() * ENTRY_FIELDS];
+		for (int i = 0; i < entryTable.length; i++) {
+			entryTable[i] = is.readInt();
+		}
+		return rowTable.length == 0 ? null : new CouplingTable(IntBuffer.wrap(rowTable), IntBuffer.wrap(entryTable));
+	}
+
+	/** Dumps a table to an output stream.
+	 * @param os the output stream
+	 * @param table the table, or null to dump an empty one
+	 * @throws IOException if an error occurs while writing */
+	static void dumpBinary(DataOutputStream os, CouplingTable table) throws IOException {
+		if (table == null) {
+			os.writeInt(0);
+			os.writeInt(0);
+			return;
+		}
+		os.writeInt(table.rows.capacity());
+		for (int i = 0; i < table.rows.capacity(); i++) {
+			os.writeInt(table.rows.get(i));
+		}
+		os.writeInt(table.getNumberOfPairs());
+		for (int i = 0; i < table.entries.capacity(); i++) {
+			os.writeInt(table.entries.get(i));
+		}
+	}
+}
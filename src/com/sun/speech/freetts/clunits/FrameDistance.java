@@ -0,0 +1,102 @@
+/**
+ * Portions Copyright 2001-2003 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import com.sun.speech.freetts.relp.SampleSet;
+
+/** Computes the acoustic distance between two frames of a cluster unit database, the cost of joining two units at those
+ * frames. The MCEP coefficients of all the frames are decoded once into a single array, frame after frame, and the
+ * sizes of the STS frames into another, so that a distance is a loop over two runs of one array rather than calls on two
+ * <code>Sample</code> objects, which may read a mapped file.
+ * <p>
+ * The distance is the sum over the coefficients of the absolute difference times the join weight of the coefficient,
+ * divided by 65536 term by term, plus the difference in frame size times the continuity weight. It is computed in ints
+ * exactly as it always was, so the same units are selected. */
+class FrameDistance {
+	private final int order;
+	private final short[] coefficients;
+	private final int[] frameSizes;
+	private final int[] weights;
+	private final int continuityWeight;
+
+	/** Decodes the frames of a database.
+	 * @param mcep the MCEP coefficients of the frames
+	 * @param sts the samples of the frames
+	 * @param joinWeights the weight of each coefficient, 65536 being 1
+	 * @param continuityWeight the weight of the difference in frame size */
+	FrameDistance(SampleSet mcep, SampleSet sts, int[] joinWeights, int continuityWeight) {
+		order = mcep.getSampleInfo().getNumberOfChannels();
+		int frames = mcep.getNumberOfSamples();
+		coefficients = new short[frames * order];
+		for (int i = 0; i < frames; i++) {
+			short[] frame = mcep.getSample(i).getFrameData();
+			System.arraycopy(frame, 0, coefficients, i * order, order);
+		}
+		frameSizes = new int[sts.getNumberOfSamples()];
+		for (int i = 0; i < frameSizes.length; i++) {
+			frameSizes[i] = sts.getFrameSize(i);
+		}
+		weights = new int[order];
+		System.arraycopy(joinWeights, 0, weights, 0, order);
+		this.continuityWeight = continuityWeight;
+	}
+
+	/** Shares the decoded frames of another frame distance, with other join weights.
+	 * @param frames the frame distance whose frames are shared
+	 * @param joinWeights the weight of each coefficient, 65536 being 1; missing weights are 0 */
+	FrameDistance(FrameDistance frames, int[] joinWeights) {
+		order = frames.order;
+		coefficients = frames.coefficients;
+		frameSizes = frames.frameSizes;
+		weights = new int[order];
+		System.arraycopy(joinWeights, 0, weights, 0, Math.min(order, joinWeights.length));
+		continuityWeight = frames.continuityWeight;
+	}
+
+	/** Returns the weighted distance between the MCEP coefficients of two frames.
+	 * @param a the first frame
+	 * @param b the second frame
+	 * @return the distance */
+	int getFrameDistance(int a, int b) {
+		final short[] c = coefficients;
+		final int[] w = weights;
+		int pa = a * order;
+		int pb = b * order;
+		int r0 = 0, r1 = 0, r2 = 0, r3 = 0;
+		int i = 0;
+		// four independent sums let the loop run without waiting on the previous term
+		for (int end = order - 3; i < end; i += 4) {
+			r0 += Math.abs(c[pa + i] - c[pb + i]) * w[i] / 65536;
+			r1 += Math.abs(c[pa + i + 1] - c[pb + i + 1]) * w[i + 1] / 65536;
+			r2 += Math.abs(c[pa + i + 2] - c[pb + i + 2]) * w[i + 2] / 65536;
+			r3 += Math.abs(c[pa + i + 3] - c[pb + i + 3]) * w[i + 3] / 65536;
+		}
+		for (; i < order; i++) {
+			r0 += Math.abs(c[pa + i] - c[pb + i]) * w[i] / 65536;
+		}
+		return r0 + r1 + r2 + r3;
+	}
+
+	/** Returns the cost of joining two units at two frames: the distance between the frames and the weighted difference in
+	 * their sizes.
+	 * @param a the frame at the end of the first unit
+	 * @param b the frame at the start of the second unit
+	 * @return the cost */
+	int getJoinDistance(int a, int b) {
+		return getFrameDistance(a, b) + Math.abs(frameSizes[a] - frameSizes[b]) * continuityWeight;
+	}
+
+	/** Returns the number of coefficients of a frame.
+	 * @return the number of coefficients */
+	int getOrder() {
+		return order;
+	}
+}
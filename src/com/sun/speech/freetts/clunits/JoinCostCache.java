@@ -0,0 +1,104 @@
+/**
+ * Portions Copyright 2001-2003 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A bounded cache of the join costs between pairs of units. The cache is direct mapped: every pair of units has exactly
+ * one slot, and a new pair simply replaces the pair that was in its slot. The entries are immutable, so one cache can be
+ * shared by all threads using a unit selector without locking. The costs returned by the cache are shared and must not be
+ * modified. */
+class JoinCostCache {
+	private final Entry[] slots;
+	private final int mask;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Creates a cache.
+	 * @param size the maximum number of join costs to keep, rounded up to a power of two */
+	JoinCostCache(int size) {
+		int capacity = 1;
+		while (capacity < size && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		slots = new Entry[capacity];
+		mask = capacity - 1;
+	}
+
+	/** Looks up the join cost for a pair of units.
+	 * @param u0 the unit on the left of the join
+	 * @param u1 the unit on the right of the join
+	 * @return the cost, or null if the pair is not in the cache */
+	Cost get(int u0, int u1) {
+		Entry entry = slots[slot(u0, u1)];
+		if (entry != null && entry.u0 == u0 && entry.u1 == u1) {
+			return entry.cost;
+		}
+		return null;
+	}
+
+	/** Puts the join cost for a pair of units into the cache.
+	 * @param u0 the unit on the left of the join
+	 * @param u1 the unit on the right of the join
+	 * @param cost the cost, which must not be modified afterwards */
+	void put(int u0, int u1, Cost cost) {
+		slots[slot(u0, u1)] = new Entry(u0, u1, cost);
+	}
+
+	/** Adds to the lookup counts. Callers count locally and add their counts once per utterance.
+	 * @param hitCount the number of lookups that found a cost
+	 * @param missCount the number of lookups that did not */
+	void count(int hitCount, int missCount) {
+		hits.addAndGet(hitCount);
+		misses.addAndGet(missCount);
+	}
+
+	/** Returns the number of lookups that found a cost.
+	 * @return the number of hits */
+	long getHits() {
+		return hits.get();
+	}
+
+	/** Returns the number of lookups that did not find a cost.
+	 * @return the number of misses */
+	long getMisses() {
+		return misses.get();
+	}
+
+	/** Returns the size of the cache.
+	 * @return the number of slots */
+	int getSize() {
+		return slots.length;
+	}
+
+	/** Returns the slot of a pair of units.
+	 * @param u0 the unit on the left of the join
+	 * @param u1 the unit on the right of the join
+	 * @return the slot */
+	private int slot(int u0, int u1) {
+		int h = u0 * 0x9E3779B1 + u1;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	/** An immutable cache entry. */
+	private final static class Entry {
+		final int u0;
+		final int u1;
+		final Cost cost;
+
+		Entry(int u0, int u1, Cost cost) {
+			this.u0 = u0;
+			this.u1 = u1;
+			this.cost = cost;
+		}
+	}
+}
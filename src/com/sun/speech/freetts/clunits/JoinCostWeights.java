@@ -0,0 +1,88 @@
+/**
+ * Portions Copyright 2001-2003 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.clunits;
+
+import java.util.Arrays;
+
+/** The settings of the join cost of the Viterbi search of a cluster unit selector: the weight of each MCEP coefficient
+ * in the distance between two frames, the continuity weight that multiplies the join cost of a path, and the optimal
+ * coupling mode. The defaults are those of the database, and a continuity weight of 5 as in flite. The settings are
+ * immutable, so that a search keeps the ones it started with. */
+class JoinCostWeights {
+	/** The continuity weight of flite. */
+	final static int DEFAULT_CONTINUITY_WEIGHT = 5;
+
+	private final int[] joinWeights;
+	private final int continuityWeight;
+	private final int optimalCoupling;
+	private final FrameDistance frameDistance;
+	private final CouplingTable couplingTable;
+
+	/** Creates the default settings of a database.
+	 * @param db the unit database */
+	JoinCostWeights(ClusterUnitDatabase db) {
+		joinWeights = db.getJoinWeights().clone();
+		continuityWeight = DEFAULT_CONTINUITY_WEIGHT;
+		optimalCoupling = db.getOptimalCoupling();
+		frameDistance = db.getFrameDistance();
+		couplingTable = db.getCouplingTable();
+	}
+
+	/** Creates settings for a database.
+	 * @param db the unit database
+	 * @param joinWeights the weight of each MCEP coefficient, 65536 being 1
+	 * @param continuityWeight the multiplier of the join cost
+	 * @param optimalCoupling 1 to search the best coupling frames, 2 to use the distance of the adjacent frames, or 0
+	 * for no join cost */
+	JoinCostWeights(ClusterUnitDatabase db, int[] joinWeights, int continuityWeight, int optimalCoupling) {
+		this.joinWeights = joinWeights.clone();
+		this.continuityWeight = continuityWeight;
+		this.optimalCoupling = optimalCoupling;
+		if (Arrays.equals(joinWeights, db.getJoinWeights())) {
+			frameDistance = db.getFrameDistance();
+			couplingTable = db.getCouplingTable();
+		} else {
+			// the coupling table was computed with the weights of the database
+			frameDistance = new FrameDistance(db.getFrameDistance(), joinWeights);
+			couplingTable = null;
+		}
+	}
+
+	/** Returns the weight of each MCEP coefficient.
+	 * @return a copy of the weights, 65536 being 1 */
+	int[] getJoinWeights() {
+		return joinWeights.clone();
+	}
+
+	/** Returns the multiplier of the join cost of a path.
+	 * @return the continuity weight */
+	int getContinuityWeight() {
+		return continuityWeight;
+	}
+
+	/** Returns the optimal coupling mode.
+	 * @return 1 to search the best coupling frames, 2 to use the distance of the adjacent frames, or 0 for no join cost */
+	int getOptimalCoupling() {
+		return optimalCoupling;
+	}
+
+	/** Returns the distance between frames with these join weights.
+	 * @return the frame distance */
+	FrameDistance getFrameDistance() {
+		return frameDistance;
+	}
+
+	/** Returns the optimal coupling of the pairs of units computed with these join weights.
+	 * @return the coupling table, or null if there is none */
+	CouplingTable getCouplingTable() {
+		return couplingTable;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Portions Copyright 2003 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.diphone;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A thread-safe cache of the diphones that were loaded on demand. The cache is split into segments that are locked
+ * independently, so threads reading different diphones rarely wait for each other. Each segment evicts its least recently
+ * used diphone when it is full; a cache without a maximum size never evicts. A soft cache keeps its diphones through soft
+ * references, so the garbage collector can reclaim them when memory runs low. */
+class DiphoneCache {
+	private final static int SEGMENTS = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final boolean soft;
+
+	/** Creates a cache.
+	 * @param maxSize the maximum number of diphones in the cache, or 0 for no maximum
+	 * @param soft if <code>true</code> diphones are only softly referenced */
+	DiphoneCache(int maxSize, boolean soft) {
+		this.soft = soft;
+		int segmentSize = maxSize > 0 ? Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS) : 0;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/** Gets a diphone from the cache.
+	 * @param name the name of the diphone
+	 * @return the diphone or <code>null</code> if it is not in the cache */
+	Diphone get(String name) {
+		Segment segment = segmentFor(name);
+		synchronized (segment) {
+			Object value = segment.get(name);
+			if (value instanceof SoftReference) {
+				value = ((SoftReference<?>) value).get();
+				if (value == null) {
+					segment.remove(name);
+				}
+			}
+			return (Diphone) value;
+		}
+	}
+
+	/** Puts a diphone into the cache.
+	 * @param name the name of the diphone
+	 * @param diphone the diphone */
+	void put(String name, Diphone diphone) {
+		Segment segment = segmentFor(name);
+		synchronized (segment) {
+			segment.put(name, soft ? new SoftReference<Diphone>(diphone) : diphone);
+		}
+	}
+
+	/** Returns the number of diphones in the cache. Softly referenced diphones that were reclaimed are not counted.
+	 * @return the number of diphones */
+	int size() {
+		int size = 0;
+		for (int i = 0; i < SEGMENTS; i++) {
+			synchronized (segments[i]) {
+				for (Object value : segments[i].values()) {
+					if (!(value instanceof SoftReference) || ((SoftReference<?>) value).get() != null) {
+						size++;
+					}
+				}
+			}
+		}
+		return size;
+	}
+
+	/** Returns the segment of a diphone.
+	 * @param name the name of the diphone
+	 * @return the segment */
+	private Segment segmentFor(String name) {
+		int h = name.hashCode();
+		h ^= (h >>> 16) ^ (h >>> 8);
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	/** A segment of the cache: a map in access order that drops its eldest entry when it grows beyond its maximum size.
+	 * Callers synchronize on the segment. */
+	private static class Segment extends LinkedHashMap<String, Object> {
+		private final static long serialVersionUID = 1L;
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, maxSize > 0);
+			this.maxSize = maxSize;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return maxSize > 0 && size() > maxSize;
+		}
+	}
+}
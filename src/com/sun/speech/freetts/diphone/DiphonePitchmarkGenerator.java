@@ -74,7 +74,10 @@ public class DiphonePitchmarkGenerator implements UtteranceProcessor {
 			}
 			lf0 = f0;
 		}
-		lpcResult = new LPCResult();
+		lpcResult = utterance.getVoice().getArena().take(LPCResult.class);
+		if (lpcResult == null) {
+			lpcResult = new LPCResult();
+		}
 		// resize the number of frames to the number of pitchmarks
 		lpcResult.resizeFrames(pitchMarks);
 
@@ -84,7 +87,7 @@ public class DiphonePitchmarkGenerator implements UtteranceProcessor {
 
 		// second pass puts the values in
 		timesList.resetIterator();
-		for (; pitchMarks < targetTimes.length; pitchMarks++) {
+		for (; pitchMarks < lpcResult.getNumberOfFrames(); pitchMarks++) {
 			targetTimes[pitchMarks] = timesList.nextInt();
 		}
 		utterance.setObject("target_lpcres", lpcResult);
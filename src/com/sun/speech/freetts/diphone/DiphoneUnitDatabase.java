@@ -20,8 +20,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
@@ -76,9 +74,18 @@ import com.sun.speech.freetts.util.Utilities;
  * <li>demand: database is loaded on demand
  * <li>hard: database is loaded on demand but cached
  * <li>soft: database is loaded on demand but cached with soft references
+ * <li>lru: database is loaded on demand and the most recently used diphones are cached
  * </ul>
  * This <code> cacheType </code> setting controls how the database is loaded. The default is to 'preload' the database.
- * This setting gives best runtime performance but with longer initial startup cost. */
+ * This setting gives best runtime performance but with longer initial startup cost. The number of diphones kept by the
+ * 'lru' cache is set with
+ * 
+ * <pre>
+ * com.sun.speech.freetts.diphone.UnitDatabase.cacheSize
+ * </pre>
+ * <p>
+ * A database can be shared by several voices and threads in all modes: the mapped database is only read through
+ * private views, and the diphones loaded on demand are cached in a {@link DiphoneCache}. */
 public class DiphoneUnitDatabase {
 	/** Logger instance. */
 	private static final Logger LOGGER = Logger.getLogger(DiphoneUnitDatabase.class.getName());
@@ -93,14 +100,17 @@ public class DiphoneUnitDatabase {
 	private Diphone defaultDiphone;
 	private Map diphoneMap = null;
 	private Map diphoneIndex;
+	private DiphoneCache cache = null;
 	private SampleInfo sampleInfo;
 
 	private boolean useNewIO = Utilities.getProperty("com.sun.speech.freetts.useNewIO", "true").equals("true");
-	// cache can be 'preload' 'none', 'soft' or 'hard'
+	// cache can be 'preload' 'demand', 'soft', 'hard' or 'lru'
 	private String cacheType = Utilities.getProperty("com.sun.speech.freetts.diphone.UnitDatabase.cacheType", "preload");
+	private int cacheSize = Utilities.getInteger("com.sun.speech.freetts.diphone.UnitDatabase.cacheSize", 512).intValue();
 	private boolean useIndexing = !cacheType.equals("preload");
 	private boolean useCache = !cacheType.equals("demand");
 	private boolean useSoftCache = cacheType.equals("soft");
+	private boolean useLRUCache = cacheType.equals("lru");
 
 	private final static int MAGIC = 0xFEEDFACE;
 	private final static int INDEX_MAGIC = 0xFACADE;
@@ -109,7 +119,7 @@ public class DiphoneUnitDatabase {
 
 	private String indexName = null;
 	private MappedByteBuffer mbb = null;
-	private int defaultIndex = -1;
+	private volatile int defaultIndex = -1;
 
 	/** Creates the DiphoneUnitDatabase from the given input stream.
 	 * @param url the location of the database
@@ -124,6 +134,9 @@ public class DiphoneUnitDatabase {
 		// if (!useIndexing || useCache) {
 		diphoneMap = new LinkedHashMap();
 		// }
+		if (useIndexing && useCache) {
+			cache = new DiphoneCache(useLRUCache ? cacheSize : 0, useSoftCache);
+		}
 		InputStream is = Utilities.getInputStream(url);
 
 		indexName = getIndexName(url.toString());
@@ -165,6 +178,7 @@ public class DiphoneUnitDatabase {
 		if (is == null) {
 			throw new Error("Can't load diphone db file.");
 		}
+		useIndexing = false; // a text database is always preloaded
 
 		reader = new BufferedReader(new InputStreamReader(is));
 		try {
@@ -276,9 +290,11 @@ public class DiphoneUnitDatabase {
 			if (diphone == null) {
 				int index = getIndex(unitName);
 				if (index != -1) {
-					mbb.position(index);
+					// a private view, so that concurrent reads don't move each other's position
+					ByteBuffer bb = mbb.duplicate();
+					bb.position(index);
 					try {
-						diphone = Diphone.loadBinary(mbb);
+						diphone = Diphone.loadBinary(bb);
 						if (diphone != null) {
 							// If diphone is an alias, must also get the original
 							if (diphone instanceof AliasDiphone) {
@@ -318,65 +334,31 @@ public class DiphoneUnitDatabase {
 		return diphone;
 	}
 
-	/** Gets the named diphone from the cache. If we are using soft caching, the reference may be a soft/weak reference so
-	 * check to see if the reference is still valid, if so return it; otherwise invalidate it. Note that we have not had
-	 * good success with weak caches so far. The goal is to reduce the minimum required memory footprint as far as
-	 * possible while not compromising performance. In small memory systems, the weak cache would likely be reclaimed,
-	 * giving us lower performance but with the ability to still be able to run. In reality, the soft caches did not help
-	 * much. They just did not work correctly. [[[ TODO: test weak/soft cache behavior with new versions of the runtime to
-	 * see if their behavior has improved ]]]
+	/** Gets the named diphone from the cache. With the 'soft' cache type the diphones are held through soft references
+	 * (they used to be weak references, which were cleared by almost every collection), so the cache may have lost a
+	 * diphone that was loaded before.
 	 * @param name the name of the diphone
 	 * @return the diphone or <code> null </code> if not in the cache */
 	private Diphone getFromCache(String name) {
-		if (diphoneMap == null) {
+		if (cache == null) {
 			return null;
 		}
-		Diphone diphone = null;
-
-		if (useSoftCache) {
-			Reference ref = (Reference) diphoneMap.get(name);
-			if (ref != null) {
-				diphone = (Diphone) ref.get();
-				if (diphone == null) {
-					diphoneMap.remove(name);
-				} else {
-				}
-			}
-		} else {
-			diphone = (Diphone) diphoneMap.get(name);
-		}
-		return diphone;
+		return cache.get(name);
 	}
 
 	/** Puts the diphone in the cache.
 	 * @param diphoneName the name of the diphone
 	 * @param diphone the diphone to put in the cache */
 	private void putIntoCache(String diphoneName, Diphone diphone) {
-		if (diphoneMap == null) {
-			return;
-		}
-		if (useSoftCache) {
-			diphoneMap.put(diphoneName, new WeakReference(diphone));
-		} else {
-			diphoneMap.put(diphoneName, diphone);
+		if (cache != null) {
+			cache.put(diphoneName, diphone);
 		}
 	}
 
-	/** Dumps the soft ref cache. */
-	private void dumpCacheSize() {
-		int empty = 0;
-		int full = 0;
-		System.out.println("Entries: " + diphoneMap.size());
-		for (Iterator i = diphoneMap.values().iterator(); i.hasNext();) {
-			Reference ref = (Reference) i.next();
-			if (ref.get() == null) {
-				empty++;
-			} else {
-				full++;
-			}
-		}
-		System.out.println("   empty: " + empty);
-		System.out.println("    full: " + full);
+	/** Returns the number of diphones in the cache.
+	 * @return the number of cached diphones, 0 if diphones are not loaded on demand or not cached */
+	int getCacheSize() {
+		return cache == null ? 0 : cache.size();
 	}
 
 	/** Returns the name of this DiphoneUnitDatabase. */
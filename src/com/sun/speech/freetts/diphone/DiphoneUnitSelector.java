@@ -19,12 +19,20 @@ import com.sun.speech.freetts.ProcessException;
 import com.sun.speech.freetts.Relation;
 import com.sun.speech.freetts.Utterance;
 import com.sun.speech.freetts.UtteranceProcessor;
+import com.sun.speech.freetts.VoiceDataRegistry;
 import com.sun.speech.freetts.relp.Sample;
 import com.sun.speech.freetts.relp.SampleInfo;
 
 /** Generates the Unit Relation of an Utterance from the Segment Relation. */
 public class DiphoneUnitSelector implements UtteranceProcessor {
 
+	/** Loads unit databases, which are shared by the voices that use them. */
+	private final static VoiceDataRegistry.Loader DATABASE_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new DiphoneUnitDatabase(url, url.getPath().endsWith(".bin"));
+		}
+	};
+
 	// the UnitDatabase to use
 	private DiphoneUnitDatabase diphoneDatabase;
 
@@ -39,8 +47,7 @@ public class DiphoneUnitSelector implements UtteranceProcessor {
 		if (url == null) {
 			throw new IOException("Can't load unit database");
 		}
-		boolean binary = url.getPath().endsWith(".bin");
-		diphoneDatabase = new DiphoneUnitDatabase(url, binary);
+		diphoneDatabase = (DiphoneUnitDatabase) VoiceDataRegistry.get("DiphoneUnitDatabase", url, DATABASE_LOADER);
 	}
 
 	/** Get the sample info for the underlying database.
@@ -12,12 +12,14 @@ package com.sun.speech.freetts.en;
 
 import com.sun.speech.freetts.UtteranceProcessor;
 import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceDataRegistry;
 import com.sun.speech.freetts.Relation;
 import com.sun.speech.freetts.Utterance;
 import com.sun.speech.freetts.ProcessException;
 import com.sun.speech.freetts.PathExtractorImpl;
 import com.sun.speech.freetts.PathExtractor;
 import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.FeatureSlots;
 import java.util.StringTokenizer;
 import java.util.NoSuchElementException;
 import java.util.List;
@@ -41,12 +43,22 @@ public class ContourGenerator implements UtteranceProcessor {
 			"R:SylStructure.parent.R:Token.parent.local_f0_shift", true);
 	private final static PathExtractor localF0Range = new PathExtractorImpl(
 			"R:SylStructure.parent.R:Token.parent.local_f0_range", true);
+	private final static int POS = FeatureSlots.getSlot("pos");
+	private final static int F0 = FeatureSlots.getSlot("f0");
+	private final static int END = FeatureSlots.getSlot("end");
+
+	private final static VoiceDataRegistry.Loader TERMS_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return loadTerms(url);
+		}
+	};
 
 	private final float modelMean;
 	private final float modelStddev;
-	private F0ModelTerm[] terms = { null };
+	private final F0ModelTerm[] terms;
 
-	/** Creates a ContourGenerator utterance processor.
+	/** Creates a ContourGenerator utterance processor. The model terms are shared with the other contour generators that
+	 * read the same URL.
 	 * @param url source of the data
 	 * @param modelMean the average frequency
 	 * @param modelStddev the std deviation of the frequency
@@ -54,7 +66,14 @@ public class ContourGenerator implements UtteranceProcessor {
 	public ContourGenerator(URL url, float modelMean, float modelStddev) throws IOException {
 		this.modelMean = modelMean;
 		this.modelStddev = modelStddev;
+		terms = (F0ModelTerm[]) VoiceDataRegistry.get("F0ModelTerm", url, TERMS_LOADER);
+	}
 
+	/** Reads the model terms.
+	 * @param url source of the data
+	 * @return the terms
+	 * @throws IOException if an error occurs while loading data */
+	private static F0ModelTerm[] loadTerms(URL url) throws IOException {
 		List termsList = new ArrayList();
 
 		String line;
@@ -66,8 +85,8 @@ public class ContourGenerator implements UtteranceProcessor {
 			}
 			line = reader.readLine();
 		}
-		terms = (F0ModelTerm[]) termsList.toArray(terms);
 		reader.close();
+		return (F0ModelTerm[]) termsList.toArray(new F0ModelTerm[termsList.size()]);
 	}
 
 	/** Generates the F0 contour for the utterance.
@@ -86,6 +105,9 @@ public class ContourGenerator implements UtteranceProcessor {
 		stddev = utterance.getVoice().getPitchRange();
 
 		Relation target = utterance.createRelation(Relation.TARGET);
+		// the points are added once the features of every syllable are found, as adding one modifies the utterance
+		// and drops the features it memoizes
+		List<float[]> points = new ArrayList<float[]>();
 		for (Item syllable = utterance.getRelation(Relation.SYLLABLE).getHead(); syllable != null; syllable = syllable
 				.getNext()) {
 
@@ -115,35 +137,40 @@ public class ContourGenerator implements UtteranceProcessor {
 				Float val = (Float) endPath.findFeature(syllable);
 				// assert val != null;
 				// don't mind null ptr exception
-				addTargetPoint(target, val.floatValue(), mapF0((interceptor.start + lend) / 2.0f, localMean, localStddev));
-				addTargetPoint(target, vowelMid(syllable), mapF0(interceptor.mid, localMean, localStddev));
+				points.add(new float[] { val.floatValue(),
+						mapF0((interceptor.start + lend) / 2.0f, localMean, localStddev) });
+				points.add(new float[] { vowelMid(syllable), mapF0(interceptor.mid, localMean, localStddev) });
 				lend = mapF0(interceptor.end, localMean, localStddev);
 				if (isPreBreak(syllable)) {
 					Float eval = (Float) lastDaughterEndPath.findFeature(syllable);
-					addTargetPoint(target, eval.floatValue(), mapF0(interceptor.end, localMean, localStddev));
+					points.add(new float[] { eval.floatValue(), mapF0(interceptor.end, localMean, localStddev) });
 				}
 			}
 		}
+		for (int i = 0; i < points.size(); i++) {
+			float[] point = points.get(i);
+			addTargetPoint(target, point[0], point[1]);
+		}
 
 		if (utterance.getRelation(Relation.SEGMENT).getHead() != null) {
 			Item first = target.getHead();
 			if (first == null) {
 				addTargetPoint(target, 0, mean);
-			} else if (first.getFeatures().getFloat("pos") > 0) {
+			} else if (first.getSlottedFeatures().getFloat(POS) > 0) {
 				Item newItem = first.prependItem(null);
-				newItem.getFeatures().setFloat("pos", 0.0f);
-				newItem.getFeatures().setFloat("f0", first.getFeatures().getFloat("f0"));
+				newItem.getSlottedFeatures().setFloat(POS, 0.0f);
+				newItem.getSlottedFeatures().setFloat(F0, first.getSlottedFeatures().getFloat(F0));
 			}
 			Item last = (Item) target.getTail();
 			Item lastSegment = utterance.getRelation(Relation.SEGMENT).getTail();
 			float segEnd = 0.0f;
 
 			if (lastSegment != null) {
-				segEnd = lastSegment.getFeatures().getFloat("end");
+				segEnd = lastSegment.getSlottedFeatures().getFloat(END);
 			}
 
-			if (last.getFeatures().getFloat("pos") < segEnd) {
-				addTargetPoint(target, segEnd, last.getFeatures().getFloat("f0"));
+			if (last.getSlottedFeatures().getFloat(POS) < segEnd) {
+				addTargetPoint(target, segEnd, last.getSlottedFeatures().getFloat(F0));
 			}
 		}
 	}
@@ -191,7 +218,7 @@ public class ContourGenerator implements UtteranceProcessor {
 			// TODO refactor phone feature stuff like this so that
 			// it can be understood.
 			if ("+".equals(voice.getPhoneFeature(segment.toString(), "vc"))) {
-				val = (segment.getFeatures().getFloat("end") + ((Float) vowelMidPath.findFeature(segment)).floatValue()) / 2.0f;
+				val = (segment.getSlottedFeatures().getFloat(END) + ((Float) vowelMidPath.findFeature(segment)).floatValue()) / 2.0f;
 				return val;
 			}
 		}
@@ -199,7 +226,7 @@ public class ContourGenerator implements UtteranceProcessor {
 		if (firstSeg == null) {
 			val = 0.0f;
 		} else {
-			val = (firstSeg.getFeatures().getFloat("end") + ((Float) vowelMidPath.findFeature(firstSeg)).floatValue()) / 2.0f;
+			val = (firstSeg.getSlottedFeatures().getFloat(END) + ((Float) vowelMidPath.findFeature(firstSeg)).floatValue()) / 2.0f;
 		}
 
 		return val;
@@ -211,13 +238,13 @@ public class ContourGenerator implements UtteranceProcessor {
 	 * @param f0 the frequency */
 	private void addTargetPoint(Relation target, float pos, float f0) {
 		Item item = target.appendItem();
-		item.getFeatures().setFloat("pos", pos);
+		item.getSlottedFeatures().setFloat(POS, pos);
 		if (f0 > 500.0) {
-			item.getFeatures().setFloat("f0", 500.0f);
+			item.getSlottedFeatures().setFloat(F0, 500.0f);
 		} else if (f0 < 50.0) {
-			item.getFeatures().setFloat("f0", 50.0f);
+			item.getSlottedFeatures().setFloat(F0, 50.0f);
 		} else {
-			item.getFeatures().setFloat("f0", f0);
+			item.getSlottedFeatures().setFloat(F0, f0);
 		}
 	}
 
@@ -245,7 +272,7 @@ public class ContourGenerator implements UtteranceProcessor {
 	/** Parses the line into an F0ModelTerm.
 	 * @param list resulting F0ModelTerm is added to this list
 	 * @param line the string to parse */
-	protected void parseAndAdd(List list, String line) {
+	protected static void parseAndAdd(List list, String line) {
 		try {
 			StringTokenizer tokenizer = new StringTokenizer(line, " ");
 			String feature = tokenizer.nextToken();
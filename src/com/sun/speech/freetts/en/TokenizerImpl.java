@@ -15,7 +15,11 @@ import com.sun.speech.freetts.Tokenizer;
 import java.io.Reader;
 import java.io.IOException;
 
-/** Implements the tokenizer interface. Breaks an input sequence of characters into a set of tokens. */
+/** Implements the tokenizer interface. Breaks an input sequence of characters into a set of tokens.
+ * <p>
+ * The class of a character (whitespace, single character, prepunctuation or postpunctuation) is looked up in a table
+ * for ASCII characters, and in the symbol strings for the others. The input is kept in a buffer, read in blocks from a
+ * reader, and the parts of a token are cut from the buffer once their ends are found. */
 public class TokenizerImpl implements Tokenizer {
 
 	/** A constant indicating that the end of the stream has been read. */
@@ -33,23 +37,35 @@ public class TokenizerImpl implements Tokenizer {
 	/** A string containing the default post-punctuation characters. */
 	public static final String DEFAULT_POSTPUNCTUATION_SYMBOLS = "\"'`.,:;!?(){}[]";
 
+	/** The classes of characters, as bits. */
+	private static final int WHITESPACE = 1;
+	private static final int SINGLE_CHAR = 2;
+	private static final int PREPUNCTUATION = 4;
+	private static final int POSTPUNCTUATION = 8;
+
+	/** The number of characters read from a reader at once. */
+	private static final int READ_SIZE = 4096;
+
 	/** The line number. */
 	private int lineNumber;
 
-	/** The input text (from the Utterance) to tokenize. */
-	private String inputText;
-
 	/** The file to read input text from, if using file mode. */
 	private Reader reader;
 
-	/** The token position - doesn't seem really necessary at this point. */
-	// private int tokenPosition = 0;
+	/** The characters of the input text, or the ones read from the file that were not made into tokens yet. */
+	private char[] buffer = new char[0];
 
-	/** The current character, whether its from the file or the input text. */
-	private int currentChar;
+	/** The position in the input of the first character of the buffer. */
+	private int base;
 
-	/** The current char position for the input text (not the file) this is called "file_pos" in flite */
-	private int currentPosition;
+	/** The index in the buffer of the current character. */
+	private int position;
+
+	/** The index in the buffer after the last character. */
+	private int limit;
+
+	/** The index in the buffer of the first character of the token being read, which is kept when the buffer is filled. */
+	private int mark;
 
 	/** The delimiting symbols of this tokenizer. */
 	private String whitespaceSymbols = DEFAULT_WHITESPACE_SYMBOLS;
@@ -57,6 +73,9 @@ public class TokenizerImpl implements Tokenizer {
 	private String prepunctuationSymbols = DEFAULT_PREPUNCTUATION_SYMBOLS;
 	private String postpunctuationSymbols = DEFAULT_POSTPUNCTUATION_SYMBOLS;
 
+	/** The classes of the ASCII characters. */
+	private final byte[] asciiClasses = new byte[128];
+
 	/** The error description. */
 	private String errorDescription;
 
@@ -64,22 +83,25 @@ public class TokenizerImpl implements Tokenizer {
 	private Token token;
 	private Token lastToken;
 
-	/** For timing. */
-	// private long duration = 0;
-
 	/** Constructs a Tokenizer. */
 	public TokenizerImpl() {
+		setCharClass(whitespaceSymbols, WHITESPACE);
+		setCharClass(singleCharSymbols, SINGLE_CHAR);
+		setCharClass(prepunctuationSymbols, PREPUNCTUATION);
+		setCharClass(postpunctuationSymbols, POSTPUNCTUATION);
 	}
 
 	/** Creates a tokenizer that will return tokens from the given string.
 	 * @param string the string to tokenize */
 	public TokenizerImpl(String string) {
+		this();
 		setInputText(string);
 	}
 
 	/** Creates a tokenizer that will return tokens from the given file.
 	 * @param file where to read the input from */
 	public TokenizerImpl(Reader file) {
+		this();
 		setInputReader(file);
 	}
 
@@ -87,42 +109,88 @@ public class TokenizerImpl implements Tokenizer {
 	 * @param symbols the whitespace symbols */
 	public void setWhitespaceSymbols(String symbols) {
 		whitespaceSymbols = symbols;
+		setCharClass(symbols, WHITESPACE);
 	}
 
 	/** Sets the single character symbols of this Tokenizer to the given symbols.
 	 * @param symbols the single character symbols */
 	public void setSingleCharSymbols(String symbols) {
 		singleCharSymbols = symbols;
+		setCharClass(symbols, SINGLE_CHAR);
 	}
 
 	/** Sets the prepunctuation symbols of this Tokenizer to the given symbols.
 	 * @param symbols the prepunctuation symbols */
 	public void setPrepunctuationSymbols(String symbols) {
 		prepunctuationSymbols = symbols;
+		setCharClass(symbols, PREPUNCTUATION);
 	}
 
 	/** Sets the postpunctuation symbols of this Tokenizer to the given symbols.
 	 * @param symbols the postpunctuation symbols */
 	public void setPostpunctuationSymbols(String symbols) {
 		postpunctuationSymbols = symbols;
+		setCharClass(symbols, POSTPUNCTUATION);
+	}
+
+	/** Sets the ASCII characters of a class in the table.
+	 * @param symbols the characters of the class
+	 * @param charClass the bit of the class */
+	private void setCharClass(String symbols, int charClass) {
+		for (int i = 0; i < asciiClasses.length; i++) {
+			asciiClasses[i] &= ~charClass;
+		}
+		for (int i = 0; i < symbols.length(); i++) {
+			char c = symbols.charAt(i);
+			if (c < asciiClasses.length) {
+				asciiClasses[c] |= charClass;
+			}
+		}
+	}
+
+	/** Returns the classes of a character.
+	 * @param c the character
+	 * @return the bits of the classes of the character */
+	private int getCharClass(int c) {
+		if (c < asciiClasses.length) {
+			return asciiClasses[c];
+		}
+		int charClass = 0;
+		if (whitespaceSymbols.indexOf(c) != -1) {
+			charClass |= WHITESPACE;
+		}
+		if (singleCharSymbols.indexOf(c) != -1) {
+			charClass |= SINGLE_CHAR;
+		}
+		if (prepunctuationSymbols.indexOf(c) != -1) {
+			charClass |= PREPUNCTUATION;
+		}
+		if (postpunctuationSymbols.indexOf(c) != -1) {
+			charClass |= POSTPUNCTUATION;
+		}
+		return charClass;
 	}
 
 	/** Sets the text to tokenize.
 	 * @param inputString the string to tokenize */
 	public void setInputText(String inputString) {
-		inputText = inputString;
-		currentPosition = 0;
-
-		if (inputText != null) {
-			getNextChar();
-		}
+		reader = null;
+		buffer = inputString == null ? new char[0] : inputString.toCharArray();
+		base = 0;
+		position = 0;
+		limit = buffer.length;
+		mark = 0;
 	}
 
 	/** Sets the input reader
 	 * @param reader the input source */
 	public void setInputReader(Reader reader) {
 		this.reader = reader;
-		getNextChar();
+		buffer = new char[READ_SIZE];
+		base = 0;
+		position = 0;
+		limit = 0;
+		mark = 0;
 	}
 
 	/** Returns the next token.
@@ -130,29 +198,44 @@ public class TokenizerImpl implements Tokenizer {
 	public Token getNextToken() {
 		lastToken = token;
 		token = new Token();
+		mark = position;
 
 		// Skip whitespace
-		token.setWhitespace(getTokenOfCharClass(whitespaceSymbols));
+		int whitespaceStart = base + position;
+		skipCharClass(WHITESPACE | SINGLE_CHAR, WHITESPACE);
 
 		// quoted strings currently ignored
 
 		// get prepunctuation
-		token.setPrepunctuation(getTokenOfCharClass(prepunctuationSymbols));
+		int prepunctuationStart = base + position;
+		skipCharClass(PREPUNCTUATION | SINGLE_CHAR, PREPUNCTUATION);
 
 		// get the symbol itself
-		if (singleCharSymbols.indexOf(currentChar) != -1) {
-			token.setWord(String.valueOf((char) currentChar));
+		int wordStart = base + position;
+		int c = getCurrentChar();
+		if (c != EOF && (getCharClass(c) & SINGLE_CHAR) != 0) {
 			getNextChar();
 		} else {
-			token.setWord(getTokenNotOfCharClass(whitespaceSymbols));
+			skipCharClass(WHITESPACE | SINGLE_CHAR, 0);
+		}
+		int wordEnd = base + position;
+
+		// Get postpunctuation, never the whole word
+		int postpunctuationStart = wordEnd;
+		while (postpunctuationStart - 1 > wordStart
+				&& (getCharClass(buffer[postpunctuationStart - 1 - base]) & POSTPUNCTUATION) != 0) {
+			postpunctuationStart--;
 		}
 
-		token.setPosition(currentPosition);
-		token.setLineNumber(lineNumber);
+		token.setWhitespace(getString(whitespaceStart, prepunctuationStart));
+		token.setPrepunctuation(getString(prepunctuationStart, wordStart));
+		token.setWord(getString(wordStart, postpunctuationStart));
+		token.setPostpunctuation(getString(postpunctuationStart, wordEnd));
 
-		// This'll have token *plus* postpunctuation
-		// Get postpunctuation
-		removeTokenPostpunctuation();
+		// the position and line are those after the character following the token
+		c = getCurrentChar();
+		token.setPosition(c == EOF ? base + position : base + position + 1);
+		token.setLineNumber(c == '\n' ? lineNumber + 1 : lineNumber);
 
 		return token;
 	}
@@ -160,109 +243,95 @@ public class TokenizerImpl implements Tokenizer {
 	/** Returns <code>true</code> if there are more tokens, <code>false</code> otherwise.
 	 * @return <code>true</code> if there are more tokens <code>false</code> otherwise */
 	public boolean hasMoreTokens() {
-		int nextChar = currentChar;
-		return (nextChar != EOF);
+		return getCurrentChar() != EOF;
 	}
 
-	/** Advances the currentPosition pointer by 1 (if not exceeding length of inputText, and returns the character pointed
-	 * by currentPosition.
-	 * @return the next character EOF if no more characters exist */
-	private int getNextChar() {
-		if (reader != null) {
-			try {
-				int readVal = reader.read();
-				if (readVal == -1) {
-					currentChar = EOF;
-				} else {
-					currentChar = (char) readVal;
-				}
-			} catch (IOException ioe) {
-				currentChar = EOF;
-				errorDescription = ioe.getMessage();
-			}
-		} else if (inputText != null) {
-			if (currentPosition < inputText.length()) {
-				currentChar = (int) inputText.charAt(currentPosition);
-			} else {
-				currentChar = EOF;
-			}
-		}
-		if (currentChar != EOF) {
-			currentPosition++;
-		}
-		if (currentChar == '\n') {
-			lineNumber++;
+	/** Returns the character at the current position, reading more of the file if the buffer has no more.
+	 * @return the current character, EOF if no more characters exist */
+	private int getCurrentChar() {
+		if (position == limit && !fill()) {
+			return EOF;
 		}
-		return currentChar;
+		return buffer[position];
 	}
 
-	/** Starting from the current position of the input text, returns the subsequent characters of type charClass, and not
-	 * of type singleCharSymbols.
-	 * @param charClass the type of characters to look for
-	 * @param buffer the place to append characters of type charClass
-	 * @return a string of characters starting from the current position of the input text, until it encounters a
-	 * character not in the string charClass */
-	private String getTokenOfCharClass(String charClass) {
-		return getTokenByCharClass(charClass, true);
+	/** Moves past the current character. */
+	private void getNextChar() {
+		if (buffer[position] == '\n') {
+			lineNumber++;
+		}
+		position++;
 	}
 
-	/** Starting from the current position of the input text/file, returns the subsequent characters, not of type
-	 * singleCharSymbols, and ended at characters of type endingCharClass. E.g., if the current string is "xxxxyyy",
-	 * endingCharClass is "yz", and singleCharClass "abc". Then this method will return to "xxxx".
-	 * @param endingCharClass the type of characters to look for
-	 * @return a string of characters from the current position until it encounters characters in endingCharClass */
-	private String getTokenNotOfCharClass(String endingCharClass) {
-		return getTokenByCharClass(endingCharClass, false);
+	/** Starting from the current position of the input text/file, moves past the subsequent characters whose classes,
+	 * among the given ones, are exactly the wanted ones. E.g., with the classes WHITESPACE | SINGLE_CHAR, WHITESPACE skips
+	 * whitespace that is not a single character symbol, and 0 skips the characters of a word.
+	 * @param charClasses the bits of the classes to look at
+	 * @param wanted the bits of the classes the characters must have among them */
+	private void skipCharClass(int charClasses, int wanted) {
+		do {
+			char[] chars = buffer;
+			int end = limit;
+			int i = position;
+			for (; i < end; i++) {
+				char c = chars[i];
+				int charClass = c < asciiClasses.length ? asciiClasses[c] : getCharClass(c);
+				if ((charClass & charClasses) != wanted) {
+					position = i;
+					return;
+				}
+				if (c == '\n') {
+					lineNumber++;
+				}
+			}
+			position = i;
+		} while (fill());
 	}
 
-	/** Provides a `compressed' method from getTokenOfCharClass() and getTokenNotOfCharClass(). If parameter
-	 * containThisCharClass is <code>true</code>, then a string from the current position to the last character in
-	 * charClass is returned. If containThisCharClass is <code>false</code>, then a string before the first occurrence of
-	 * a character in containThisCharClass is returned.
-	 * @param charClass the string of characters you want included or excluded in your return
-	 * @param containThisCharClass determines if you want characters in charClass in the returned string or not
-	 * @return a string of characters from the current position until it encounters characters in endingCharClass */
-	private String getTokenByCharClass(String charClass, boolean containThisCharClass) {
-		final StringBuilder buffer = new StringBuilder();
-
-		// if we want the returned string to contain chars in charClass, then
-		// containThisCharClass is TRUE and
-		// (charClass.indexOf(currentChar) != 1) == containThisCharClass)
-		// returns true; if we want it to stop at characters of charClass,
-		// then containThisCharClass is FALSE, and the condition returns
-		// false.
-		while ((charClass.indexOf(currentChar) != -1) == containThisCharClass
-				&& singleCharSymbols.indexOf(currentChar) == -1 && currentChar != EOF) {
-			buffer.append((char) currentChar);
-			getNextChar();
+	/** Reads more of the file into the buffer. The characters from the start of the current token on are moved to the
+	 * start of the buffer, which grows if they fill it.
+	 * @return <code>true</code> if characters were read; <code>false</code> at the end of the file */
+	private boolean fill() {
+		if (reader == null) {
+			return false;
 		}
-		return buffer.toString();
-	}
-
-	/** Removes the postpunctuation characters from the current token. Copies those postpunctuation characters to the class
-	 * variable 'postpunctuation'. */
-	private void removeTokenPostpunctuation() {
-		if (token == null) {
-			return;
+		int kept = limit - mark;
+		if (kept == buffer.length) {
+			char[] newBuffer = new char[buffer.length * 2];
+			System.arraycopy(buffer, mark, newBuffer, 0, kept);
+			buffer = newBuffer;
+		} else if (mark > 0) {
+			System.arraycopy(buffer, mark, buffer, 0, kept);
 		}
-		final String tokenWord = token.getWord();
-
-		int tokenLength = tokenWord.length();
-		int position = tokenLength - 1;
-
-		while (position > 0 && postpunctuationSymbols.indexOf((int) tokenWord.charAt(position)) != -1) {
-			position--;
+		base += mark;
+		position -= mark;
+		limit = kept;
+		mark = 0;
+		try {
+			int count;
+			do {
+				count = reader.read(buffer, limit, buffer.length - limit);
+			} while (count == 0);
+			if (count > 0) {
+				limit += count;
+				return true;
+			}
+		} catch (IOException ioe) {
+			errorDescription = ioe.getMessage();
 		}
+		reader = null;
+		return false;
+	}
 
-		if (tokenLength - 1 != position) {
-			// Copy postpunctuation from token
-			token.setPostpunctuation(tokenWord.substring(position + 1));
-
-			// truncate token at postpunctuation
-			token.setWord(tokenWord.substring(0, position + 1));
-		} else {
-			token.setPostpunctuation("");
+	/** Returns the characters between two positions of the input, which are in the buffer.
+	 * @param start the position of the first character
+	 * @param end the position after the last character
+	 * @return the characters */
+	private String getString(int start, int end) {
+		if (start == end) {
+			return "";
 		}
+		return new String(buffer, start - base, end - start);
 	}
 
 	/** Returns <code>true</code> if there were errors while reading tokens
@@ -85,6 +85,19 @@ public class CMUClusterUnitVoice extends CMUVoice implements ConcatenativeVoice
 		return new UnitConcatenator();
 	}
 
+	/** Ends a batch of utterances. In metrics mode this also shows the metrics of the unit selector. */
+	public void endBatch() {
+		super.endBatch();
+		if (isMetrics()) {
+			Object[] processors = getUtteranceProcessors().toArray();
+			for (int i = 0; i < processors.length; i++) {
+				if (processors[i] instanceof ClusterUnitSelector) {
+					((ClusterUnitSelector) processors[i]).showMetrics();
+				}
+			}
+		}
+	}
+
 	/** Converts this object to a string
 	 * @return a string representation of this object */
 	public String toString() {
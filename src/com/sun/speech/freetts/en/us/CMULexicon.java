@@ -57,6 +57,10 @@ public class CMULexicon extends LexiconImpl {
 		this(basename, true);
 	}
 
+	/** Creates the CMU Lexicon. A binary lexicon uses the lexicon store <code>basename_store.bin</code> when there is
+	 * one.
+	 * @param basename the basename for the lexicon
+	 * @param useBinaryIO if <code>true</code> the binary lexicon is loaded; otherwise the text lexicon */
 	public CMULexicon(String basename, boolean useBinaryIO) {
 		java.net.URLClassLoader classLoader = VoiceManager.getVoiceClassLoader();
 		String type = (useBinaryIO ? "bin" : "txt");
@@ -79,6 +83,13 @@ public class CMULexicon extends LexiconImpl {
 		}
 
 		setLexiconParameters(compiledURL, addendaURL, letterToSoundURL, useBinaryIO);
+		if (useBinaryIO) {
+			URL storeURL = classLoader.getResource("com/sun/speech/freetts/en/us/" + basename + "_store.bin");
+			if (storeURL == null) {
+				storeURL = CMULexicon.class.getResource(basename + "_store.bin");
+			}
+			setLexiconStore(storeURL);
+		}
 	}
 
 	/** Get the CMULexicon.
@@ -231,6 +242,10 @@ public class CMULexicon extends LexiconImpl {
 						lex.dumpBinary(destPath + "/" + baseName);
 						BulkTimer.LOAD.stop("dump_text");
 
+						BulkTimer.LOAD.start("dump_store");
+						lex.dumpStore(destPath + "/" + baseName + "_store.bin");
+						BulkTimer.LOAD.stop("dump_store");
+
 					} else if (args[i].equals("-compare")) {
 
 						BulkTimer.LOAD.start("load_text");
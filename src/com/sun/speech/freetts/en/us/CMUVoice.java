@@ -11,6 +11,7 @@
 package com.sun.speech.freetts.en.us;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
 import java.util.Locale;
 
@@ -27,7 +28,9 @@ import com.sun.speech.freetts.Segmenter;
 import com.sun.speech.freetts.Tokenizer;
 import com.sun.speech.freetts.UtteranceProcessor;
 import com.sun.speech.freetts.Voice;
-import com.sun.speech.freetts.cart.CARTImpl;
+import com.sun.speech.freetts.VoiceDataRegistry;
+import com.sun.speech.freetts.cart.CART;
+import com.sun.speech.freetts.cart.CompiledCART;
 import com.sun.speech.freetts.cart.Durator;
 import com.sun.speech.freetts.cart.Intonator;
 import com.sun.speech.freetts.cart.Phraser;
@@ -39,6 +42,37 @@ import com.sun.speech.freetts.util.BulkTimer;
 
 /** Provides generic support for a CMU Voice */
 public abstract class CMUVoice extends Voice {
+	private final static VoiceDataRegistry.Loader CART_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new CompiledCART(url);
+		}
+	};
+	private final static VoiceDataRegistry.Loader DURATIONS_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new PhoneDurationsImpl(url);
+		}
+	};
+	private final static VoiceDataRegistry.Loader PREFIX_FSM_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new PrefixFSM(url);
+		}
+	};
+	private final static VoiceDataRegistry.Loader SUFFIX_FSM_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new SuffixFSM(url);
+		}
+	};
+	private final static VoiceDataRegistry.Loader POS_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new PartOfSpeechImpl(url, "content");
+		}
+	};
+	private final static VoiceDataRegistry.Loader PHONE_SET_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return new PhoneSetImpl(url);
+		}
+	};
+
 	private PhoneSet phoneSet;
 
 	/** Creates a simple voice
@@ -83,17 +117,20 @@ public abstract class CMUVoice extends Voice {
 		List<UtteranceProcessor> processors = getUtteranceProcessors();
 
 		BulkTimer.LOAD.start("CartLoading");
-		CARTImpl numbersCart = new CARTImpl(getResource("nums_cart.txt"));
-		CARTImpl phrasingCart = new CARTImpl(getResource("phrasing_cart.txt"));
-		CARTImpl accentCart = new CARTImpl(getResource("int_accent_cart.txt"));
-		CARTImpl toneCart = new CARTImpl(getResource("int_tone_cart.txt"));
-		CARTImpl durzCart = new CARTImpl(getResource("durz_cart.txt"));
+		CART numbersCart = getCART("nums_cart.txt");
+		CART phrasingCart = getCART("phrasing_cart.txt");
+		CART accentCart = getCART("int_accent_cart.txt");
+		CART toneCart = getCART("int_tone_cart.txt");
+		CART durzCart = getCART("durz_cart.txt");
 		BulkTimer.LOAD.stop("CartLoading");
 
 		BulkTimer.LOAD.start("UtteranceProcessors");
-		PhoneDurations phoneDurations = new PhoneDurationsImpl(getResource("dur_stat.txt"));
-		PronounceableFSM prefixFSM = new PrefixFSM(getResource("prefix_fsm.txt"));
-		PronounceableFSM suffixFSM = new SuffixFSM(getResource("suffix_fsm.txt"));
+		PhoneDurations phoneDurations = (PhoneDurations) VoiceDataRegistry.get("PhoneDurationsImpl",
+				getResource("dur_stat.txt"), DURATIONS_LOADER);
+		PronounceableFSM prefixFSM = (PronounceableFSM) VoiceDataRegistry.get("PrefixFSM",
+				getResource("prefix_fsm.txt"), PREFIX_FSM_LOADER);
+		PronounceableFSM suffixFSM = (PronounceableFSM) VoiceDataRegistry.get("SuffixFSM",
+				getResource("suffix_fsm.txt"), SUFFIX_FSM_LOADER);
 
 		processors.add(new TokenToWords(numbersCart, prefixFSM, suffixFSM));
 		processors.add(new PartOfSpeechTagger());
@@ -104,6 +141,7 @@ public abstract class CMUVoice extends Voice {
 		processors.add(getPostLexicalAnalyzer());
 		processors.add(new Durator(durzCart, phoneDurations));
 		processors.add(new ContourGenerator(getResource("f0_lr_terms.txt"), 170.0f, 34.0f));
+		setFrontEndSize(processors.size());
 
 		processors.add(getUnitSelector());
 		processors.add(getPitchmarkGenerator());
@@ -111,6 +149,14 @@ public abstract class CMUVoice extends Voice {
 		BulkTimer.LOAD.stop("UtteranceProcessors");
 	}
 
+	/** Returns the CART in the given resource of this voice, shared with the other voices that use it.
+	 * @param resource the name of the resource
+	 * @return the CART
+	 * @throws IOException if the CART can't be loaded */
+	protected CART getCART(String resource) throws IOException {
+		return (CART) VoiceDataRegistry.get("CompiledCART", getResource(resource), CART_LOADER);
+	}
+
 	// [[[TODO: currently a CMUVoice only allows customization of
 	// the postlex, unit selector and wave synthesizer. This may
 	// grow as time goes on ]]]
@@ -149,9 +195,10 @@ public abstract class CMUVoice extends Voice {
 	 * @throws IOException if an I/O error occurs */
 	protected void setupFeatureProcessors() throws IOException {
 		BulkTimer.LOAD.start("FeatureProcessing");
-		PartOfSpeech pos = new PartOfSpeechImpl(getResource("part_of_speech.txt"), "content");
+		PartOfSpeech pos = (PartOfSpeech) VoiceDataRegistry.get("PartOfSpeechImpl content",
+				getResource("part_of_speech.txt"), POS_LOADER);
 
-		phoneSet = new PhoneSetImpl(getResource("phoneset.txt"));
+		phoneSet = (PhoneSet) VoiceDataRegistry.get("PhoneSetImpl", getResource("phoneset.txt"), PHONE_SET_LOADER);
 
 		addFeatureProcessor("word_break", new FeatureProcessors.WordBreak());
 		addFeatureProcessor("word_punc", new FeatureProcessors.WordPunc());
@@ -15,6 +15,7 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.sun.speech.freetts.FeatureProcessor;
+import com.sun.speech.freetts.FeatureSlots;
 import com.sun.speech.freetts.Item;
 import com.sun.speech.freetts.PartOfSpeech;
 import com.sun.speech.freetts.PathExtractor;
@@ -38,6 +39,10 @@ public class FeatureProcessors {
 	private final static PathExtractor SUB_PHRASE_PATH = new PathExtractorImpl("R:SylStructure.parent.R:Phrase.parent.p",
 			false);
 
+	private final static int NAME = FeatureSlots.getSlot("name");
+
+	private final static int END = FeatureSlots.getSlot("end");
+
 	private final static Pattern DOUBLE_PATTERN = Pattern.compile(USEnglish.RX_DOUBLE);
 
 	private final static Pattern DIGITS_PATTERN = Pattern.compile(USEnglish.RX_DIGITS);
@@ -219,7 +224,7 @@ public class FeatureProcessors {
 		 * @return the length of the string
 		 * @throws ProcessException if an exception occurred during the processing */
 		public String process(Item item) throws ProcessException {
-			String name = item.getFeatures().getString("name");
+			String name = item.getSlottedFeatures().getString(NAME);
 			return Integer.toString(rail(name.length()));
 		}
 	}
@@ -234,7 +239,7 @@ public class FeatureProcessors {
 		 * @return returns "1" if the given item is a number between 0 and 32 (exclusive) otherwise returns "0"
 		 * @throws ProcessException if an exception occurred during the processing */
 		public String process(Item item) throws ProcessException {
-			int v = Integer.parseInt(item.getFeatures().getString("name"));
+			int v = Integer.parseInt(item.getSlottedFeatures().getString(NAME));
 			if ((v > 0) && (v < 32)) {
 				return "1";
 			} else {
@@ -251,7 +256,7 @@ public class FeatureProcessors {
 		 * @return a guess at the part of speech
 		 * @throws ProcessException if an exception occurred during the processing */
 		public String process(Item item) throws ProcessException {
-			String name = item.getFeatures().getString("name");
+			String name = item.getSlottedFeatures().getString(NAME);
 			String dc = name.toLowerCase();
 			if (DIGITS_PATTERN.matcher(dc).matches()) {
 				return "numeric";
@@ -768,9 +773,9 @@ public class FeatureProcessors {
 			if (seg == null) {
 				return "0";
 			} else if (seg.getPrevious() == null) {
-				return seg.getFeatures().getObject("end").toString();
+				return seg.getSlottedFeatures().getObject(END).toString();
 			} else {
-				return Float.toString(seg.getFeatures().getFloat("end") - seg.getPrevious().getFeatures().getFloat("end"));
+				return Float.toString(seg.getSlottedFeatures().getFloat(END) - seg.getPrevious().getSlottedFeatures().getFloat(END));
 			}
 		}
 	}
@@ -0,0 +1,344 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.speech.freetts.util.BulkTimer;
+import com.sun.speech.freetts.util.Utilities;
+
+/** An immutable form of the letter to sound rules of {@link LetterToSoundImpl}. It finds exactly the same phones, but
+ * the state machine is a flat array of ints, the start state of each letter is found in an array indexed by the letter,
+ * and the context window is read straight from the padded word. Since nothing is shared between calls, one instance
+ * can be used by any number of threads at once.
+ * <p>
+ * Every state takes three ints in the state machine. For a decision state these are the decision, which is the index
+ * into the context window shifted left by 16 bits or'ed with the character to match, and the states to go to upon a
+ * match and upon no match. For a final state the first int is the complement of the index of its phones, and the other
+ * two are unused.
+ * <p>
+ * The binary format is:
+ *
+ * <pre>
+ * MAGIC
+ * VERSION
+ * (int) numPhoneLists, ((int) numPhones, (String) phone...)...
+ * (int) numLetters, (int) start state of each letter or -1
+ * (int) numStates, (int) state data, three per state
+ * </pre>
+ *
+ * A CompiledLetterToSound can be created from text rules or from the binary rules of LetterToSoundImpl; see
+ * {@link #main(String[])}. */
+public class CompiledLetterToSound implements LetterToSound {
+	private final static int MAGIC = 0xC0DE1275;
+	private final static int VERSION = 1;
+
+	/** The 'window size' of the LTS rules. */
+	private final static int WINDOW_SIZE = 4;
+
+	/** The ints per state in the state machine. */
+	private final static int STATE_SIZE = 3;
+
+	private final String[][] phoneLists;
+	private final int[] letterIndex;
+	private final int[] states;
+
+	/** Creates letter to sound rules by reading the text rules at the given URL.
+	 * @param url the location of the rules
+	 * @throws IOException if errors occur while reading the rules */
+	public CompiledLetterToSound(URL url) throws IOException {
+		this(new LetterToSoundImpl(url, false));
+	}
+
+	/** Creates letter to sound rules that find the same phones as the given ones.
+	 * @param lts the rules to compile */
+	public CompiledLetterToSound(LetterToSoundImpl lts) {
+		int numStates = lts.getNumStates();
+		List<String[]> lists = new ArrayList<String[]>();
+		Map<String, Integer> listIndex = new HashMap<String, Integer>();
+		states = new int[numStates * STATE_SIZE];
+		for (int i = 0; i < numStates; i++) {
+			LetterToSoundImpl.State state = lts.getState(i);
+			if (state instanceof LetterToSoundImpl.FinalState) {
+				String[] phones = ((LetterToSoundImpl.FinalState) state).phoneList;
+				if (phones == null) {
+					phones = new String[0];
+				}
+				String key = Arrays.asList(phones).toString();
+				Integer index = listIndex.get(key);
+				if (index == null) {
+					index = Integer.valueOf(lists.size());
+					listIndex.put(key, index);
+					lists.add(phones);
+				}
+				states[i * STATE_SIZE] = ~index.intValue();
+			} else {
+				LetterToSoundImpl.DecisionState decision = (LetterToSoundImpl.DecisionState) state;
+				if (decision.index < 0 || decision.index >= 2 * WINDOW_SIZE) {
+					throw new Error("Can't compile LTS state " + i + ": bad context index " + decision.index);
+				}
+				states[i * STATE_SIZE] = (decision.index << 16) | decision.c;
+				states[i * STATE_SIZE + 1] = decision.qtrue;
+				states[i * STATE_SIZE + 2] = decision.qfalse;
+			}
+		}
+
+		phoneLists = new String[lists.size()][];
+		for (int i = 0; i < phoneLists.length; i++) {
+			phoneLists[i] = internAll(lists.get(i));
+		}
+
+		int numLetters = 0;
+		for (Iterator i = lts.letterIndex.keySet().iterator(); i.hasNext();) {
+			numLetters = Math.max(numLetters, ((String) i.next()).charAt(0) + 1);
+		}
+		letterIndex = new int[numLetters];
+		Arrays.fill(letterIndex, -1);
+		for (Iterator i = lts.letterIndex.keySet().iterator(); i.hasNext();) {
+			String letter = (String) i.next();
+			letterIndex[letter.charAt(0)] = ((Integer) lts.letterIndex.get(letter)).intValue();
+		}
+	}
+
+	/** Creates letter to sound rules from the parts read from a binary file.
+	 * @param phoneLists the phones of the final states
+	 * @param letterIndex the start state of each letter
+	 * @param states the state machine */
+	private CompiledLetterToSound(String[][] phoneLists, int[] letterIndex, int[] states) {
+		this.phoneLists = phoneLists;
+		this.letterIndex = letterIndex;
+		this.states = states;
+	}
+
+	/** Calculates the phone list for a given word. If a phone list cannot be determined, <code>null</code> is returned.
+	 * This particular implementation ignores the part of speech.
+	 * @param word the word to find
+	 * @param partOfSpeech the part of speech.
+	 * @return the list of phones for word or <code>null</code> */
+	public String[] getPhones(String word, String partOfSpeech) {
+		int length = word.length();
+
+		// Make the padded word look like "000#word#000". The context window of the letter at pos is the WINDOW_SIZE
+		// letters before it, followed by the WINDOW_SIZE letters after it.
+		char[] padded = new char[length + 2 * WINDOW_SIZE];
+		for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+			padded[i] = '0';
+			padded[padded.length - i - 1] = '0';
+		}
+		padded[WINDOW_SIZE - 1] = '#';
+		padded[padded.length - WINDOW_SIZE] = '#';
+		word.getChars(0, length, padded, WINDOW_SIZE);
+
+		String[] phones = new String[2 * length];
+		int numPhones = 0;
+		for (int pos = 0; pos < length; pos++) {
+			char c = padded[pos + WINDOW_SIZE];
+			if (c >= letterIndex.length || letterIndex[c] < 0) {
+				continue;
+			}
+			int state = letterIndex[c] * STATE_SIZE;
+			int decision = states[state];
+			while (decision >= 0) {
+				int index = decision >>> 16;
+				if (index >= WINDOW_SIZE) {
+					index++;
+				}
+				if (padded[pos + index] == (char) decision) {
+					state = states[state + 1] * STATE_SIZE;
+				} else {
+					state = states[state + 2] * STATE_SIZE;
+				}
+				decision = states[state];
+			}
+			String[] finalPhones = phoneLists[~decision];
+			if (numPhones + finalPhones.length > phones.length) {
+				String[] grown = new String[phones.length * 2 + finalPhones.length];
+				System.arraycopy(phones, 0, grown, 0, numPhones);
+				phones = grown;
+			}
+			for (int i = 0; i < finalPhones.length; i++) {
+				phones[numPhones++] = finalPhones[i];
+			}
+		}
+		String[] result = new String[numPhones];
+		System.arraycopy(phones, 0, result, 0, numPhones);
+		return result;
+	}
+
+	/** Dumps these rules to a file.
+	 * @param path the path of the file
+	 * @throws IOException if an error occurs during output */
+	public void dumpBinary(String path) throws IOException {
+		DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		os.writeInt(MAGIC);
+		os.writeInt(VERSION);
+		os.writeInt(phoneLists.length);
+		for (int i = 0; i < phoneLists.length; i++) {
+			os.writeInt(phoneLists[i].length);
+			for (int j = 0; j < phoneLists[i].length; j++) {
+				Utilities.outString(os, phoneLists[i][j]);
+			}
+		}
+		os.writeInt(letterIndex.length);
+		for (int i = 0; i < letterIndex.length; i++) {
+			os.writeInt(letterIndex[i]);
+		}
+		os.writeInt(states.length / STATE_SIZE);
+		for (int i = 0; i < states.length; i++) {
+			os.writeInt(states[i]);
+		}
+		os.close();
+	}
+
+	/** Loads rules from a URL. Rules in files are memory mapped; other rules are read into a buffer first.
+	 * @param url the location of the rules
+	 * @return the rules
+	 * @throws IOException if an error occurs during input */
+	public static CompiledLetterToSound load(URL url) throws IOException {
+		InputStream is = Utilities.getInputStream(url);
+		try {
+			ByteBuffer bb;
+			if (is instanceof FileInputStream) {
+				FileChannel fc = ((FileInputStream) is).getChannel();
+				bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			} else {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = is.read(buffer)) != -1) {
+					bytes.write(buffer, 0, n);
+				}
+				bb = ByteBuffer.wrap(bytes.toByteArray());
+			}
+			return loadBinary(bb);
+		} finally {
+			is.close();
+		}
+	}
+
+	/** Loads rules from the input byte buffer.
+	 * @param bb the byte buffer
+	 * @return the rules
+	 * @throws IOException if an error occurs during input */
+	public static CompiledLetterToSound loadBinary(ByteBuffer bb) throws IOException {
+		BulkTimer.LOAD.start("LTS");
+		if (bb.getInt() != MAGIC) {
+			throw new Error("Bad LTS binary file format");
+		}
+		if (bb.getInt() != VERSION) {
+			throw new Error("Bad LTS binary file version");
+		}
+		String[][] phoneLists = new String[bb.getInt()][];
+		for (int i = 0; i < phoneLists.length; i++) {
+			phoneLists[i] = new String[bb.getInt()];
+			for (int j = 0; j < phoneLists[i].length; j++) {
+				phoneLists[i][j] = Utilities.getString(bb);
+			}
+			internAll(phoneLists[i]);
+		}
+		IntBuffer ib = bb.asIntBuffer();
+		int[] letterIndex = new int[ib.get()];
+		ib.get(letterIndex);
+		int[] states = new int[ib.get() * STATE_SIZE];
+		ib.get(states);
+		bb.position(bb.position() + 4 * ib.position());
+		BulkTimer.LOAD.stop("LTS");
+		return new CompiledLetterToSound(phoneLists, letterIndex, states);
+	}
+
+	/** Interns the phones, so that rules loaded from text and from binary files return the same strings.
+	 * @param phones the phones
+	 * @return the phones */
+	private static String[] internAll(String[] phones) {
+		for (int i = 0; i < phones.length; i++) {
+			phones[i] = phones[i].intern();
+		}
+		return phones;
+	}
+
+	/** Converts letter to sound rules to the binary format of CompiledLetterToSound.
+	 * <p>
+	 * <b> Usage </b>
+	 * <p>
+	 * <code> java com.sun.speech.freetts.lexicon.CompiledLetterToSound
+	 *  [options]</code>
+	 * <p>
+	 * <b> Options </b>
+	 * <p>
+	 * <ul>
+	 * <li> <code> -text path </code> reads rules in text form
+	 * <li> <code> -binary path </code> reads rules in the binary form written by LetterToSoundImpl
+	 * <li> <code> -dest path </code> writes the rules that were read last in the binary form of CompiledLetterToSound
+	 * <li> <code> -showtimes </code> shows timings for the loading and dumping operations
+	 * </ul> */
+	public static void main(String[] args) {
+		boolean showTimes = false;
+		CompiledLetterToSound lts = null;
+
+		try {
+			if (args.length > 0) {
+				BulkTimer timer = new BulkTimer();
+				timer.start();
+				for (int i = 0; i < args.length; i++) {
+					if (args[i].equals("-text")) {
+						timer.start("load_text");
+						lts = new CompiledLetterToSound(new URL("file:" + args[++i]));
+						timer.stop("load_text");
+					} else if (args[i].equals("-binary")) {
+						timer.start("load_binary");
+						lts = new CompiledLetterToSound(new LetterToSoundImpl(new URL("file:" + args[++i]), true));
+						timer.stop("load_binary");
+					} else if (args[i].equals("-dest")) {
+						if (lts == null) {
+							System.out.println("No LTS rules to write to " + args[++i]);
+							continue;
+						}
+						timer.start("dump_binary");
+						lts.dumpBinary(args[++i]);
+						timer.stop("dump_binary");
+					} else if (args[i].equals("-showtimes")) {
+						showTimes = true;
+					} else {
+						System.out.println("Unknown option " + args[i]);
+					}
+				}
+				timer.stop();
+				if (showTimes) {
+					timer.show("CompiledLetterToSound");
+				}
+			} else {
+				System.out.println("Options: ");
+				System.out.println("    -text path");
+				System.out.println("    -binary path");
+				System.out.println("    -dest path");
+				System.out.println("    -showtimes");
+			}
+		} catch (IOException ioe) {
+			System.err.println(ioe);
+		}
+	}
+}
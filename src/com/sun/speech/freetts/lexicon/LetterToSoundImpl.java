@@ -124,11 +124,6 @@ public class LetterToSoundImpl implements LetterToSound {
 	/** The 'window size' of the LTS rules. */
 	private final static int WINDOW_SIZE = 4;
 
-	/** An array of characters to hold a string for checking against a rule. This will be reused over and over again, so
-	 * the goal was just to have a single area instead of new'ing up a new one for every word. The name choice is to match
-	 * that in Flite's <code>cst_lts.c</code>. */
-	private char[] fval_buff = new char[WINDOW_SIZE * 2];
-
 	/** The indexes of the starting points for letters in the state machine. */
 	protected HashMap letterIndex;
 
@@ -320,6 +315,12 @@ public class LetterToSoundImpl implements LetterToSound {
 		return new ArrayList(set);
 	}
 
+	/** Returns the number of states in the state machine.
+	 * @return the number of states */
+	int getNumStates() {
+		return stateMachine == null ? 0 : stateMachine.length;
+	}
+
 	/** Gets the <code>State</code> at the given index. This may replace a <code>String</code> at the current spot with an
 	 * actual <code>State</code> instance.
 	 * @param i the index into the state machine
@@ -398,6 +399,11 @@ public class LetterToSoundImpl implements LetterToSound {
 		//
 		char[] full_buff = getFullBuff(word);
 
+		// An array of characters to hold a string for checking against a rule. The name choice is to match that in
+		// Flite's cst_lts.c. It is not shared between calls, so that two threads can find phones at once.
+		//
+		char[] fval_buff = new char[WINDOW_SIZE * 2];
+
 		// For each character in the word, create a WINDOW_SIZE
 		// context on each size of the character, and then ask the
 		// state machine what's next. It's magic. BTW, this goes
@@ -29,13 +29,13 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
+import com.sun.speech.freetts.VoiceDataRegistry;
 import com.sun.speech.freetts.util.BulkTimer;
 import com.sun.speech.freetts.util.Utilities;
 
@@ -69,6 +69,22 @@ import com.sun.speech.freetts.util.Utilities;
  * 
  * Where &lt;URLToUserAddenda> is a URL pointing to an ASCII file containing addenda entries.
  * <p>
+ * A lexicon can also be given a {@link LexiconStore}, which replaces the compiled lexicon and the system addenda. The
+ * store is memory mapped instead of being read into a map, so it loads much faster and is shared by all JVMs using it.
+ * The store is used unless it is disabled with the following system property:
+ * 
+ * <pre>
+ *   -Dcom.sun.speech.freetts.lexicon.useStore=false
+ * </pre>
+ * <p>
+ * The letter to sound rules are compiled into a {@link CompiledLetterToSound}, which is shared by all lexicons that use
+ * the same rules, as are the compiled lexicon and the store. To use the rules as they were read instead, set the
+ * following system property:
+ * 
+ * <pre>
+ *   -Dcom.sun.speech.freetts.lexicon.compileLTS=false
+ * </pre>
+ * <p>
  * [[[TODO: support multiple homographs with the same part of speech.]]] */
 abstract public class LexiconImpl implements Lexicon {
 	/** If true, the phone string is replaced with the phone array in the hashmap when the phone array is loaded. The side
@@ -94,6 +110,12 @@ abstract public class LexiconImpl implements Lexicon {
 	/** URL for the letter to sound rules. */
 	private URL letterToSoundURL;
 
+	/** URL for the lexicon store, or <code>null</code> if the compiled form is used. */
+	private URL storeURL;
+
+	/** The lexicon store, used in place of the compiled lexicon. */
+	private LexiconStore store;
+
 	/** The addenda. */
 	private Map addenda;
 
@@ -104,12 +126,14 @@ abstract public class LexiconImpl implements Lexicon {
 	private LetterToSound letterToSound = null;
 
 	/** Parts of Speech. */
-	private ArrayList partsOfSpeech = new ArrayList();
+	private List<String> partsOfSpeech = new ArrayList<String>();
 
-	/** A static directory of compiledURL URL objects and associated already-loaded compiled Map objects. This is used to
-	 * share the immutable compiled lexicons between lexicon instances. As the addenda can be changed using
-	 * <code>addAddendum()</code> and <code>removeAddendum</code>, each lexicon instance has its own addenda. */
-	private static Map loadedCompiledLexicons;
+	/** Loads lexicon stores. */
+	private final static VoiceDataRegistry.Loader STORE_LOADER = new VoiceDataRegistry.Loader() {
+		public Object load(URL url) throws IOException {
+			return LexiconStore.load(url);
+		}
+	};
 
 	/** Loaded State of the lexicon */
 	private boolean loaded = false;
@@ -126,6 +150,12 @@ abstract public class LexiconImpl implements Lexicon {
 	/** Use the new IO package? */
 	private boolean useNewIO = Utilities.getProperty("com.sun.speech.freetts.useNewIO", "true").equals("true");
 
+	/** Compile the letter to sound rules? */
+	private boolean compileLTS = Utilities.getProperty("com.sun.speech.freetts.lexicon.compileLTS", "true").equals("true");
+
+	/** Use the lexicon store, if there is one? */
+	private boolean useStore = Utilities.getProperty("com.sun.speech.freetts.lexicon.useStore", "true").equals("true");
+
 	/** Create a new LexiconImpl by reading from the given URLS.
 	 * @param compiledURL a URL pointing to the compiled lexicon
 	 * @param addendaURL a URL pointing to lexicon addenda
@@ -157,6 +187,12 @@ abstract public class LexiconImpl implements Lexicon {
 		this.binary = binary;
 	}
 
+	/** Sets the lexicon store to use in place of the compiled lexicon and the addenda.
+	 * @param storeURL a URL pointing to the lexicon store, or <code>null</code> to use the compiled form */
+	protected void setLexiconStore(URL storeURL) {
+		this.storeURL = storeURL;
+	}
+
 	/** Determines if this lexicon is loaded.
 	 * @return <code>true</code> if the lexicon is loaded */
 	public boolean isLoaded() {
@@ -168,38 +204,12 @@ abstract public class LexiconImpl implements Lexicon {
 	public void load() throws IOException {
 		BulkTimer.LOAD.start("Lexicon");
 		System.out.println("Loading lexicon: " + compiledURL);
-		if (compiledURL == null) {
-			throw new IOException("Can't load lexicon");
-		}
-
-		if (addendaURL == null) {
-			throw new IOException("Can't load lexicon addenda ");
-		}
-
-		if (loadedCompiledLexicons == null) {
-			loadedCompiledLexicons = new HashMap();
-		}
-		if (!loadedCompiledLexicons.containsKey(compiledURL)) {
-			InputStream compiledIS = Utilities.getInputStream(compiledURL);
-			if (compiledIS == null) {
-				throw new IOException("Can't load lexicon from " + compiledURL);
-			}
-			Map newCompiled = createLexicon(compiledIS, binary, 65000);
-			loadedCompiledLexicons.put(compiledURL, newCompiled);
-			compiledIS.close();
-		}
-		compiled = Collections.unmodifiableMap((Map) loadedCompiledLexicons.get(compiledURL));
-
-		InputStream addendaIS = Utilities.getInputStream(addendaURL);
-		if (addendaIS == null) {
-			throw new IOException("Can't load lexicon addenda from " + addendaURL);
+		if (storeURL != null && useStore) {
+			loadStore();
+		} else {
+			loadCompiled();
 		}
 
-		// [[[TODO: what is the best way to derive the estimated sizes?]]]
-		//
-		addenda = createLexicon(addendaIS, binary, 50);
-		addendaIS.close();
-
 		/* Load the user-defined addenda and override any existing entries in the system addenda. */
 		String userAddenda = Utilities.getProperty("com.sun.speech.freetts.lexicon.userAddenda", null);
 		if (userAddenda != null) {
@@ -222,7 +232,66 @@ abstract public class LexiconImpl implements Lexicon {
 
 		loaded = true;
 		BulkTimer.LOAD.stop("Lexicon");
-		letterToSound = new LetterToSoundImpl(letterToSoundURL, binary);
+		if (compileLTS) {
+			// only the compiled rules can be shared, as LetterToSoundImpl keeps state while it works
+			letterToSound = (LetterToSound) VoiceDataRegistry.get("CompiledLetterToSound " + binary, letterToSoundURL,
+					new VoiceDataRegistry.Loader() {
+						public Object load(URL url) throws IOException {
+							return new CompiledLetterToSound(new LetterToSoundImpl(url, binary));
+						}
+					});
+		} else {
+			letterToSound = new LetterToSoundImpl(letterToSoundURL, binary);
+		}
+	}
+
+	/** Loads the compiled lexicon and the addenda.
+	 * @throws IOException if errors occur during loading */
+	private void loadCompiled() throws IOException {
+		if (compiledURL == null) {
+			throw new IOException("Can't load lexicon");
+		}
+
+		if (addendaURL == null) {
+			throw new IOException("Can't load lexicon addenda ");
+		}
+
+		// the compiled lexicon is shared between lexicon instances. As the addenda can be changed using
+		// addAddendum() and removeAddendum(), each lexicon instance has its own addenda.
+		compiled = (Map) VoiceDataRegistry.get("LexiconImpl " + binary, compiledURL, new VoiceDataRegistry.Loader() {
+			public Object load(URL url) throws IOException {
+				InputStream compiledIS = Utilities.getInputStream(url);
+				if (compiledIS == null) {
+					throw new IOException("Can't load lexicon from " + url);
+				}
+				Map newCompiled = createLexicon(compiledIS, binary, 65000);
+				compiledIS.close();
+				return Collections.unmodifiableMap(newCompiled);
+			}
+		});
+
+		InputStream addendaIS = Utilities.getInputStream(addendaURL);
+		if (addendaIS == null) {
+			throw new IOException("Can't load lexicon addenda from " + addendaURL);
+		}
+
+		// [[[TODO: what is the best way to derive the estimated sizes?]]]
+		//
+		addenda = createLexicon(addendaIS, binary, 50);
+		addendaIS.close();
+	}
+
+	/** Loads the lexicon store in place of the compiled lexicon, and copies the addenda out of it.
+	 * @throws IOException if errors occur during loading */
+	private void loadStore() throws IOException {
+		store = (LexiconStore) VoiceDataRegistry.get("LexiconStore", storeURL, STORE_LOADER);
+		for (Iterator<String> i = store.getPartsOfSpeech().iterator(); i.hasNext();) {
+			String pos = i.next();
+			if (!partsOfSpeech.contains(pos)) {
+				partsOfSpeech.add(pos);
+			}
+		}
+		addenda = store.getAddenda();
 	}
 
 	/** Reads the given input stream as lexicon data and returns the results in a <code>Map</code>.
@@ -305,7 +374,14 @@ abstract public class LexiconImpl implements Lexicon {
 	public String[] getPhones(String word, String partOfSpeech, boolean useLTS) {
 		String[] phones = null;
 		phones = getPhones(addenda, word, partOfSpeech);
-		if (phones == null) {
+		if (phones == null && store != null) {
+			// the store returns a new array every time, which needs no copy
+			String[] storePhones = getPhones(store, word, partOfSpeech);
+			if (storePhones != null) {
+				return storePhones;
+			}
+		}
+		if (phones == null && compiled != null) {
 			phones = getPhones(compiled, word, partOfSpeech);
 		}
 		if (useLTS) {
@@ -333,8 +409,26 @@ abstract public class LexiconImpl implements Lexicon {
 		partOfSpeech = fixPartOfSpeech(partOfSpeech);
 		phones = getPhones(lexicon, word + partOfSpeech);
 		for (int i = 0; (i < partsOfSpeech.size()) && (phones == null); i++) {
-			if (!partOfSpeech.equals((String) partsOfSpeech.get(i))) {
-				phones = getPhones(lexicon, word + (String) partsOfSpeech.get(i));
+			if (!partOfSpeech.equals(partsOfSpeech.get(i))) {
+				phones = getPhones(lexicon, word + partsOfSpeech.get(i));
+			}
+		}
+		return phones;
+	}
+
+	/** Gets a phone list for a word from a lexicon store. If a phone list cannot be found, returns <code>null</code>. As
+	 * with the maps, the other parts of speech are tried when the word is not found with the given one.
+	 * @param lexiconStore the lexicon store
+	 * @param word the word to find
+	 * @param partOfSpeech the part of speech
+	 * @return the list of phones for word or <code>null</code> */
+	protected String[] getPhones(LexiconStore lexiconStore, String word, String partOfSpeech) {
+		String[] phones;
+		partOfSpeech = fixPartOfSpeech(partOfSpeech);
+		phones = lexiconStore.getPhones(word, partOfSpeech);
+		for (int i = 0; (i < partsOfSpeech.size()) && (phones == null); i++) {
+			if (!partOfSpeech.equals(partsOfSpeech.get(i))) {
+				phones = lexiconStore.getPhones(word, partsOfSpeech.get(i));
 			}
 		}
 		return phones;
@@ -599,10 +693,35 @@ abstract public class LexiconImpl implements Lexicon {
 		String compiledPath = path + "_compiled.bin";
 		String addendaPath = path + "_addenda.bin";
 
-		dumpBinaryLexicon(compiled, compiledPath);
+		dumpBinaryLexicon(getCompiled(), compiledPath);
 		dumpBinaryLexicon(addenda, addendaPath);
 	}
 
+	/** Dumps this lexicon as a {@link LexiconStore}, which holds both the compiled form and the addenda.
+	 * @param path the path of the store file */
+	public void dumpStore(String path) {
+		if (store != null) {
+			throw new Error("Can't dump a lexicon store that was loaded from a store");
+		}
+		try {
+			LexiconStore.dump(resolve(compiled), resolve(addenda), partsOfSpeech, path);
+		} catch (IOException ioe) {
+			throw new Error("Can't write lexicon store " + ioe.getMessage());
+		}
+	}
+
+	/** Returns a copy of a lexicon with every entry split into phones.
+	 * @param lexicon the lexicon
+	 * @return the map of word and part of speech to phones */
+	private Map<String, String[]> resolve(Map<?, ?> lexicon) {
+		Map<String, String[]> resolved = new LinkedHashMap<String, String[]>(lexicon.size() * 4 / 3 + 1);
+		for (Iterator<?> i = lexicon.keySet().iterator(); i.hasNext();) {
+			String key = (String) i.next();
+			resolved.put(key, getPhones(lexicon, key));
+		}
+		return resolved;
+	}
+
 	/** Returns a list of the unique phonemes in the lexicon.
 	 * @param lexicon the lexicon of interest
 	 * @return list the unique set of phonemes */
@@ -624,7 +743,13 @@ abstract public class LexiconImpl implements Lexicon {
 	 * @param other the other lexicon to compare to
 	 * @return true if lexicons are identical */
 	public boolean compare(LexiconImpl other) {
-		return compare(addenda, other.addenda) && compare(compiled, other.compiled);
+		return compare(addenda, other.addenda) && compare(getCompiled(), other.getCompiled());
+	}
+
+	/** Returns the compiled lexicon, read out of the lexicon store if the lexicon was loaded from one.
+	 * @return the map of word and part of speech to phones */
+	private Map<?, ?> getCompiled() {
+		return store != null ? store.getCompiled() : compiled;
 	}
 
 	/** Determines if the two lexicons are identical for debugging purposes.
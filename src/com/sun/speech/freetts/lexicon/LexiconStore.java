@@ -0,0 +1,414 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.lexicon;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.sun.speech.freetts.util.Utilities;
+
+/** A read-only lexicon that is used in place of the map of the compiled lexicon. The store is a single file that is
+ * memory mapped, so loading it only reads the phone table and the addenda, and several JVMs using the same store share
+ * its pages. The words of the compiled lexicon are found through a minimal perfect hash of word and part of speech; each
+ * entry holds the key (to reject unknown words) and the phones as indexes into the phone table.
+ * <p>
+ * The binary format is:
+ *
+ * <pre>
+ * MAGIC
+ * VERSION
+ * (int) numPhones, (String) phone...
+ * (int) numPartsOfSpeech, (String) partOfSpeech...
+ * (int) numAddenda, ((String) wordAndPos, (byte) numPhones, (byte) phone...)...
+ * (int) numEntries
+ * (int) numBuckets
+ * (int) displacement of each bucket
+ * (int) offset of the entry in each slot
+ * ((byte) keyLength, (byte) keyChar..., (byte) numPhones, (byte) phone...)...
+ * </pre>
+ *
+ * Strings are formatted as by {@link Utilities#outString}. Keys are limited to 255 Latin-1 characters, words to 255
+ * phones and the phone table to 256 phones. */
+public class LexiconStore {
+	/** Magic number for lexicon store files. */
+	private final static int MAGIC = 0xBABB1E5;
+
+	/** Current store file version. */
+	private final static int VERSION = 1;
+
+	/** The average number of keys in a bucket of the perfect hash. */
+	private final static int BUCKET_SIZE = 4;
+
+	private final ByteBuffer bb;
+	private final String[] phones;
+	private final List<String> partsOfSpeech;
+	private final Map<String, String[]> addenda;
+	private final int numEntries;
+	private final int numBuckets;
+	private final int bucketOffset;
+	private final int slotOffset;
+
+	/** Loads a store. Stores in files are memory mapped; other stores are read into a direct buffer.
+	 * @param url the location of the store
+	 * @return the store
+	 * @throws IOException if the store can't be read */
+	public static LexiconStore load(URL url) throws IOException {
+		InputStream is = Utilities.getInputStream(url);
+		try {
+			ByteBuffer bb;
+			if (is instanceof FileInputStream) {
+				FileChannel fc = ((FileInputStream) is).getChannel();
+				bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			} else {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = is.read(buffer)) != -1) {
+					bytes.write(buffer, 0, n);
+				}
+				bb = ByteBuffer.allocateDirect(bytes.size());
+				bb.put(bytes.toByteArray());
+				bb.flip();
+			}
+			return new LexiconStore(bb);
+		} finally {
+			is.close();
+		}
+	}
+
+	/** Creates a store on the given buffer. The buffer is only read with absolute gets after the header, so the store can
+	 * be shared between threads.
+	 * @param bb the buffer holding the store
+	 * @throws IOException if the buffer does not hold a store */
+	public LexiconStore(ByteBuffer bb) throws IOException {
+		this.bb = bb;
+		if (bb.getInt() != MAGIC) {
+			throw new Error("bad magic number in lexicon store");
+		}
+		if (bb.getInt() != VERSION) {
+			throw new Error("bad version number in lexicon store");
+		}
+
+		phones = new String[bb.getInt()];
+		for (int i = 0; i < phones.length; i++) {
+			phones[i] = Utilities.getString(bb).intern();
+		}
+
+		int size = bb.getInt();
+		partsOfSpeech = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			partsOfSpeech.add(Utilities.getString(bb));
+		}
+
+		size = bb.getInt();
+		addenda = new LinkedHashMap<String, String[]>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			String wordAndPos = Utilities.getString(bb);
+			String[] wordPhones = new String[bb.get() & 0xff];
+			for (int j = 0; j < wordPhones.length; j++) {
+				wordPhones[j] = phones[bb.get() & 0xff];
+			}
+			addenda.put(wordAndPos, wordPhones);
+		}
+
+		numEntries = bb.getInt();
+		numBuckets = bb.getInt();
+		bucketOffset = bb.position();
+		slotOffset = bucketOffset + 4 * numBuckets;
+	}
+
+	/** Gets the phones of a word of the compiled lexicon. The key is the word followed by the part of speech, but the two
+	 * are never concatenated.
+	 * @param word the word
+	 * @param partOfSpeech the part of speech
+	 * @return a new array of the phones, or <code>null</code> if the word is not in the store with this part of speech */
+	public String[] getPhones(String word, String partOfSpeech) {
+		if (numEntries == 0) {
+			return null;
+		}
+		long h = hash(word, partOfSpeech);
+		int displacement = bb.getInt(bucketOffset + 4 * bucket(h, numBuckets));
+		int entry = bb.getInt(slotOffset + 4 * slot(h, displacement, numEntries));
+
+		int length = word.length() + partOfSpeech.length();
+		if ((bb.get(entry++) & 0xff) != length) {
+			return null;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if ((char) (bb.get(entry++) & 0xff) != word.charAt(i)) {
+				return null;
+			}
+		}
+		for (int i = 0; i < partOfSpeech.length(); i++) {
+			if ((char) (bb.get(entry++) & 0xff) != partOfSpeech.charAt(i)) {
+				return null;
+			}
+		}
+		String[] wordPhones = new String[bb.get(entry++) & 0xff];
+		for (int i = 0; i < wordPhones.length; i++) {
+			wordPhones[i] = phones[bb.get(entry++) & 0xff];
+		}
+		return wordPhones;
+	}
+
+	/** Returns the parts of speech of the compiled lexicon and the addenda, in the order they were first used.
+	 * @return the parts of speech */
+	public List<String> getPartsOfSpeech() {
+		return Collections.unmodifiableList(partsOfSpeech);
+	}
+
+	/** Returns the addenda that were stored with the compiled lexicon.
+	 * @return a new map of word and part of speech to phones */
+	public Map<String, String[]> getAddenda() {
+		return new LinkedHashMap<String, String[]>(addenda);
+	}
+
+	/** Reads every word of the compiled lexicon out of the store. This is meant for comparing and converting lexicons,
+	 * not for lookups.
+	 * @return a new map of word and part of speech to phones, in slot order */
+	public Map<String, String[]> getCompiled() {
+		Map<String, String[]> compiled = new LinkedHashMap<String, String[]>(numEntries * 4 / 3 + 1);
+		StringBuffer key = new StringBuffer();
+		for (int slot = 0; slot < numEntries; slot++) {
+			int entry = bb.getInt(slotOffset + 4 * slot);
+			int length = bb.get(entry++) & 0xff;
+			key.setLength(0);
+			for (int i = 0; i < length; i++) {
+				key.append((char) (bb.get(entry++) & 0xff));
+			}
+			String[] wordPhones = new String[bb.get(entry++) & 0xff];
+			for (int i = 0; i < wordPhones.length; i++) {
+				wordPhones[i] = phones[bb.get(entry++) & 0xff];
+			}
+			compiled.put(key.toString(), wordPhones);
+		}
+		return compiled;
+	}
+
+	/** Returns the number of words in the compiled lexicon.
+	 * @return the number of entries */
+	public int size() {
+		return numEntries;
+	}
+
+	/** Writes a store.
+	 * @param compiled the compiled lexicon, a map of word and part of speech to phones
+	 * @param addenda the addenda, a map of word and part of speech to phones
+	 * @param partsOfSpeech the parts of speech, in the order they should be tried
+	 * @param path the path of the file to write
+	 * @throws IOException if the file can't be written */
+	public static void dump(Map<String, String[]> compiled, Map<String, String[]> addenda, List<String> partsOfSpeech,
+			String path) throws IOException {
+		TreeSet<String> phoneSet = new TreeSet<String>();
+		addPhones(phoneSet, compiled);
+		addPhones(phoneSet, addenda);
+		if (phoneSet.size() > 256) {
+			throw new Error("Too many phones for a lexicon store: " + phoneSet.size());
+		}
+		List<String> phoneList = new ArrayList<String>(phoneSet);
+
+		// Find the perfect hash, then lay out the entries in slot order.
+		String[] keys = compiled.keySet().toArray(new String[compiled.size()]);
+		int numBuckets = Math.max(1, keys.length / BUCKET_SIZE);
+		int[] displacements = new int[numBuckets];
+		int[] slotKeys = findPerfectHash(keys, displacements);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream entries = new DataOutputStream(bytes);
+		int[] offsets = new int[keys.length];
+		for (int slot = 0; slot < keys.length; slot++) {
+			offsets[slot] = entries.size();
+			String key = keys[slotKeys[slot]];
+			if (key.length() > 255) {
+				throw new Error("Word too long for a lexicon store: " + key);
+			}
+			entries.writeByte(key.length());
+			for (int i = 0; i < key.length(); i++) {
+				char c = key.charAt(i);
+				if (c > 255) {
+					throw new Error("Word can't be put into a lexicon store: " + key);
+				}
+				entries.writeByte(c);
+			}
+			writePhones(entries, compiled.get(key), phoneList);
+		}
+		entries.close();
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(phoneList.size());
+		for (int i = 0; i < phoneList.size(); i++) {
+			Utilities.outString(dos, phoneList.get(i));
+		}
+		dos.writeInt(partsOfSpeech.size());
+		for (int i = 0; i < partsOfSpeech.size(); i++) {
+			Utilities.outString(dos, partsOfSpeech.get(i));
+		}
+		dos.writeInt(addenda.size());
+		for (Iterator<String> i = addenda.keySet().iterator(); i.hasNext();) {
+			String key = i.next();
+			Utilities.outString(dos, key);
+			writePhones(dos, addenda.get(key), phoneList);
+		}
+		dos.writeInt(keys.length);
+		dos.writeInt(numBuckets);
+		for (int i = 0; i < numBuckets; i++) {
+			dos.writeInt(displacements[i]);
+		}
+		int base = dos.size() + 4 * keys.length;
+		for (int i = 0; i < keys.length; i++) {
+			dos.writeInt(base + offsets[i]);
+		}
+		bytes.writeTo(dos);
+		dos.close();
+	}
+
+	/** Finds a minimal perfect hash for the keys by hash and displace: the keys are hashed into buckets, and the buckets,
+	 * largest first, each search for a displacement that moves all of their keys into free slots.
+	 * @param keys the keys (word followed by part of speech)
+	 * @param displacements receives the displacement of each bucket
+	 * @return the index of the key in each slot */
+	private static int[] findPerfectHash(String[] keys, int[] displacements) {
+		final int numBuckets = displacements.length;
+		long[] hashes = new long[keys.length];
+		final int[] bucketSizes = new int[numBuckets];
+		for (int i = 0; i < keys.length; i++) {
+			hashes[i] = hash(keys[i], "");
+			bucketSizes[bucket(hashes[i], numBuckets)]++;
+		}
+
+		// the keys of each bucket, in one array
+		int[] bucketStart = new int[numBuckets + 1];
+		for (int b = 0; b < numBuckets; b++) {
+			bucketStart[b + 1] = bucketStart[b] + bucketSizes[b];
+		}
+		int[] bucketKeys = new int[keys.length];
+		int[] fill = bucketStart.clone();
+		for (int i = 0; i < keys.length; i++) {
+			bucketKeys[fill[bucket(hashes[i], numBuckets)]++] = i;
+		}
+
+		Integer[] order = new Integer[numBuckets];
+		for (int b = 0; b < numBuckets; b++) {
+			order[b] = Integer.valueOf(b);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return bucketSizes[b.intValue()] - bucketSizes[a.intValue()];
+			}
+		});
+
+		int[] slotKeys = new int[keys.length];
+		Arrays.fill(slotKeys, -1);
+		int[] slots = new int[BUCKET_SIZE * 16];
+		for (int k = 0; k < numBuckets; k++) {
+			int b = order[k].intValue();
+			int size = bucketSizes[b];
+			if (size == 0) {
+				break;
+			}
+			if (size > slots.length) {
+				slots = new int[size];
+			}
+			for (int d = 0;; d++) {
+				int placed = 0;
+				for (; placed < size; placed++) {
+					int slot = slot(hashes[bucketKeys[bucketStart[b] + placed]], d, keys.length);
+					if (slotKeys[slot] != -1) {
+						break;
+					}
+					// keys of the same bucket must not collide either
+					slotKeys[slot] = bucketKeys[bucketStart[b] + placed];
+					slots[placed] = slot;
+				}
+				if (placed == size) {
+					displacements[b] = d;
+					break;
+				}
+				for (int i = 0; i < placed; i++) {
+					slotKeys[slots[i]] = -1;
+				}
+			}
+		}
+		return slotKeys;
+	}
+
+	/** Hashes a word followed by a part of speech (64 bit FNV-1a).
+	 * @param word the word
+	 * @param partOfSpeech the part of speech
+	 * @return the hash */
+	private static long hash(String word, String partOfSpeech) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < word.length(); i++) {
+			h = (h ^ word.charAt(i)) * 0x100000001b3L;
+		}
+		for (int i = 0; i < partOfSpeech.length(); i++) {
+			h = (h ^ partOfSpeech.charAt(i)) * 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/** Returns the bucket of a hash.
+	 * @param h the hash
+	 * @param numBuckets the number of buckets
+	 * @return the bucket */
+	private static int bucket(long h, int numBuckets) {
+		return (int) ((h >>> 1) % numBuckets);
+	}
+
+	/** Returns the slot of a hash for a displacement.
+	 * @param h the hash
+	 * @param displacement the displacement of the bucket
+	 * @param numSlots the number of slots
+	 * @return the slot */
+	private static int slot(long h, int displacement, int numSlots) {
+		h += displacement * 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+		h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) ((h >>> 1) % numSlots);
+	}
+
+	private static void addPhones(TreeSet<String> phoneSet, Map<String, String[]> lexicon) {
+		for (Iterator<String[]> i = lexicon.values().iterator(); i.hasNext();) {
+			phoneSet.addAll(Arrays.asList(i.next()));
+		}
+	}
+
+	private static void writePhones(DataOutputStream dos, String[] wordPhones, List<String> phoneList)
+			throws IOException {
+		if (wordPhones.length > 255) {
+			throw new Error("Too many phones for a lexicon store");
+		}
+		dos.writeByte(wordPhones.length);
+		for (int i = 0; i < wordPhones.length; i++) {
+			dos.writeByte(Collections.binarySearch(phoneList, wordPhones[i]));
+		}
+	}
+}
@@ -16,6 +16,7 @@ import java.util.logging.Logger;
 
 import javax.sound.sampled.AudioFormat;
 
+import com.sun.speech.freetts.AudioCache;
 import com.sun.speech.freetts.ProcessException;
 import com.sun.speech.freetts.Utterance;
 import com.sun.speech.freetts.UtteranceProcessor;
@@ -23,7 +24,8 @@ import com.sun.speech.freetts.audio.AudioPlayer;
 
 /** Supports generating audio output from an utterance. This is an utterance processor. The primary method,
  * <code> procesUtterance </code> takes an utterance and hands it off to the LPCResult to be sent to the proper audio
- * player.
+ * player. Utterances found in the {@link AudioCache} of the voice are played from the cache instead, and the audio of
+ * the ones that were not found is added to it.
  * @see LPCResult */
 public class AudioOutput implements UtteranceProcessor {
 	/** Logger instance. */
@@ -37,18 +39,36 @@ public class AudioOutput implements UtteranceProcessor {
 	 * @see LPCResult
 	 * @throws ProcessException if an IOException is thrown during the processing of the utterance */
 	public void processUtterance(Utterance utterance) throws ProcessException {
-		LPCResult lpcResult = (LPCResult) utterance.getObject("target_lpcres");
-		SampleInfo sampleInfo = (SampleInfo) utterance.getObject(SampleInfo.UTT_NAME);
+		AudioCache.Audio cached = (AudioCache.Audio) utterance.getObject(AudioCache.UTT_AUDIO);
 		AudioPlayer audioPlayer = utterance.getVoice().getAudioPlayer();
 
-		audioPlayer.setAudioFormat(getAudioFormat(sampleInfo));
+		if (cached != null) {
+			audioPlayer.setAudioFormat(cached.getFormat());
+		} else {
+			SampleInfo sampleInfo = (SampleInfo) utterance.getObject(SampleInfo.UTT_NAME);
+			audioPlayer.setAudioFormat(getAudioFormat(sampleInfo));
+		}
 		audioPlayer.setVolume(utterance.getVoice().getVolume());
 
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.fine("=== " + utterance.getString("input_text"));
 		}
 		try {
-			if (!lpcResult.playWave(audioPlayer, utterance)) {
+			boolean ok;
+			if (cached != null) {
+				// the cached audio is at hand, so its first bytes are written right away
+				utterance.getVoice().firstAudioWritten();
+				ok = cached.play(audioPlayer, utterance.getSpeakable());
+			} else {
+				// the audio of an utterance the voice looked up in vain is added to the cache as it is written
+				AudioCache cache = utterance.getVoice().getAudioCache();
+				if (cache != null && utterance.getObject(AudioCache.UTT_KEY) != null) {
+					audioPlayer = cache.record(utterance.getString(AudioCache.UTT_KEY), audioPlayer);
+				}
+				LPCResult lpcResult = (LPCResult) utterance.getObject("target_lpcres");
+				ok = lpcResult.playWave(audioPlayer, utterance);
+			}
+			if (!ok) {
 				throw new ProcessException("Output Cancelled");
 			}
 		} catch (IOException e) {
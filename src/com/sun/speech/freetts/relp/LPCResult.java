@@ -17,11 +17,13 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 import javax.sound.sampled.AudioFormat;
 
 import com.sun.speech.freetts.FreeTTSSpeakable;
 import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.Voice;
 import com.sun.speech.freetts.audio.AudioPlayer;
 import com.sun.speech.freetts.util.Utilities;
 import com.sun.speech.freetts.util.WaveUtils;
@@ -29,7 +31,7 @@ import com.sun.speech.freetts.util.WaveUtils;
 /** Contains the result of linear predictive coding processing. */
 public class LPCResult {
 
-	private static final double POST_EMPHASIS = 0.0;
+	static final double POST_EMPHASIS = 0.0;
 
 	private int frameSize = 10;
 	private int numberOfFrames = 0;
@@ -40,6 +42,7 @@ public class LPCResult {
 
 	/** this is a normalized version of the residuals; to normalize it, add 128 to it */
 	private byte[] residuals = null;
+	private int numberOfSamples = 0;
 
 	private int numberOfChannels;
 	private int sampleRate;
@@ -48,6 +51,9 @@ public class LPCResult {
 	private float lpcMinimum;
 	private float lpcRange;
 
+	/** the units still to be concatenated as this result is played, or null if it is complete */
+	private UnitConcatenator.Concatenation concatenation = null;
+
 	private final static int MAX_SAMPLE_SIZE = Utilities.getInteger("com.sun.speech.freetts.LpcResult.maxSamples", 1024)
 			.intValue();
 
@@ -61,23 +67,51 @@ public class LPCResult {
 		residualToFloatMap[128] = (float) WaveUtils.ulawToShort((short) 255);
 	}
 
+	/** Maps a stored residual to the excitation value fed to the LPC filter.
+	 * @param residual the residual as stored in the residual array
+	 * @return the excitation value */
+	static float residualToFloat(byte residual) {
+		return residualToFloatMap[residual + 128];
+	}
+
 	public LPCResult() {
 		residualFold = 1;
 	}
 
-	/** Resets the number of frames in this LPCResult.
+	/** Resets the number of frames in this LPCResult. The arrays of a result that was {@link #reset} are reused if they
+	 * are large enough, so they may be longer than the number of frames.
 	 * @param numberOfFrames the number of frames in this LPC result */
 	public void resizeFrames(int numberOfFrames) {
-		times = new int[numberOfFrames];
-		frames = new short[numberOfFrames][];
-		sizes = new int[numberOfFrames];
+		if (times == null || times.length < numberOfFrames) {
+			times = new int[numberOfFrames];
+			frames = new short[numberOfFrames][];
+			sizes = new int[numberOfFrames];
+		}
 		this.numberOfFrames = numberOfFrames;
 	}
 
-	/** Resets the number of residuals, and initialize all of them to 255 (which is 0 for mulaw).
+	/** Resets the number of residuals, and initialize all of them to 255 (which is 0 for mulaw). The array of a result
+	 * that was {@link #reset} is reused if it is large enough.
 	 * @param numberOfSamples the number of samples in this LPC result */
 	public void resizeResiduals(int numberOfSamples) {
-		residuals = new byte[numberOfSamples];
+		if (residuals == null || residuals.length < numberOfSamples) {
+			residuals = new byte[numberOfSamples];
+		} else {
+			Arrays.fill(residuals, 0, numberOfSamples, (byte) 0);
+		}
+		this.numberOfSamples = numberOfSamples;
+	}
+
+	/** Empties this result so that it can be recycled for another utterance. Its arrays are kept for the next calls to
+	 * {@link #resizeFrames} and {@link #resizeResiduals}.
+	 * @see com.sun.speech.freetts.Voice#setRecycleUtterances */
+	public void reset() {
+		concatenation = null;
+		numberOfFrames = 0;
+		numberOfSamples = 0;
+		if (frames != null) {
+			Arrays.fill(frames, null);
+		}
 	}
 
 	/** A convenience method for setting the LPC values.
@@ -154,11 +188,7 @@ public class LPCResult {
 	/** Returns the number of samples in this LPC result
 	 * @return the number of samples */
 	public int getNumberOfSamples() {
-		if (residuals == null) {
-			return 0;
-		} else {
-			return residuals.length;
-		}
+		return numberOfSamples;
 	}
 
 	/** Returns the sample rate.
@@ -236,6 +266,32 @@ public class LPCResult {
 		}
 	}
 
+	/** Sets the concatenation that fills in the frames and residuals of this result as it is played.
+	 * @param concatenation the concatenation, or null if this result is complete */
+	void setConcatenation(UnitConcatenator.Concatenation concatenation) {
+		this.concatenation = concatenation;
+	}
+
+	/** Concatenates the units of this result until the given frame is concatenated, if it is concatenated as it is
+	 * played.
+	 * @param frame the index of the frame that is needed
+	 * @return the number of frames that are ready */
+	private int concatenate(int frame) {
+		if (concatenation == null) {
+			return numberOfFrames;
+		}
+		while (frame >= concatenation.getFrames() && concatenation.next()) {
+		}
+		return concatenation.getFrames();
+	}
+
+	/** Concatenates all of the units of this result, if it is concatenated as it is played. */
+	private void complete() {
+		if (concatenation != null) {
+			concatenation.finish();
+		}
+	}
+
 	/** Copies the information in the given unit to the array of residuals, starting at the given index, up until
 	 * targetSize chars.
 	 * @param source the unit that holds the information source
@@ -267,25 +323,11 @@ public class LPCResult {
 		}
 	}
 
-	/** Given a 16 bit value (represented as an int), extract the high eight bits and return them
-	 * @param val the 16 bit value
-	 * @return the high eight bits */
-	private final static byte hibyte(int val) {
-		return (byte) (val >>> 8);
-	}
-
-	/** Given a 16 bit value (represented as an int), extract the low eight bits and return them
-	 * @param val the 16 bit value
-	 * @return the low eight bits */
-	private final static byte lobyte(int val) {
-		return (byte) (val & 0x000000FF);
-	}
-
 	/** Synthesize a Wave from this LPCResult
 	 * @return the wave
 	 * @exception IOException if an error occurs while writing the audio data */
 	public boolean playWave(AudioPlayer player, Utterance utterance) throws IOException {
-		return playWaveSamples(player, utterance.getSpeakable(), getNumberOfSamples() * 2);
+		return playWaveSamples(player, utterance, getNumberOfSamples() * 2);
 	}
 
 	public byte[] getWaveSamples() {
@@ -294,130 +336,95 @@ public class LPCResult {
 
 	/** get the samples for this utterance
 	 * @param numberSamples the number of samples desirred
-	 * @param utterance the utterance [[[ TODO: well there is a bunch of duplicated code here .. these should be combined
-	 * into one routine. ]]] */
+	 * @param utterance the utterance */
 	private byte[] getWaveSamples(int numberSamples, Utterance utterance) {
-		int numberChannels = getNumberOfChannels();
-		int pmSizeSamples;
-		float pp = 0;
-
+		complete();
 		byte[] samples = new byte[numberSamples];
 		byte[] residuals = getResiduals();
 		int[] residualSizes = getResidualSizes();
-
-		FloatList outBuffer = FloatList.createList(numberChannels + 1);
-		FloatList lpcCoefficients = FloatList.createList(numberChannels);
-
-		double multiplier = (double) getLPCRange() / 65535.0;
-		int s = 0;
+		LPCFilter filter = new LPCFilter(getNumberOfChannels(), getLPCRange(), lpcMinimum);
 
 		// for each frame in the LPC result
-		for (int r = 0, i = 0; i < numberOfFrames; i++) {
-
-			// unpack the LPC coefficients
-			short[] frame = getFrame(i);
-
-			FloatList lpcCoeffs = lpcCoefficients;
-			for (int k = 0; k < numberChannels; k++) {
-				lpcCoeffs.value = (float) ((frame[k] + 32768.0) * multiplier) + lpcMinimum;
-				lpcCoeffs = lpcCoeffs.next;
-			}
-
-			pmSizeSamples = residualSizes[i];
-
+		for (int r = 0, s = 0, i = 0; i < numberOfFrames; i++) {
+			filter.setFrame(getFrame(i));
 			// resynthesis the signal, pmSizeSamples ~= 90
-			// what's in the loop is done for each residual
-			for (int j = 0; j < pmSizeSamples; j++, r++) {
-
-				FloatList backBuffer = outBuffer.prev;
-				float ob = residualToFloatMap[residuals[r] + 128];
-
-				lpcCoeffs = lpcCoefficients;
-				do {
-					ob += lpcCoeffs.value * backBuffer.value;
-					backBuffer = backBuffer.prev;
-					lpcCoeffs = lpcCoeffs.next;
-				} while (lpcCoeffs != lpcCoefficients);
+			filter.synthesize(residuals, r, residualSizes[i], samples, s);
+			r += residualSizes[i];
+			s += 2 * residualSizes[i];
+		}
+		return samples;
+	}
 
-				int sample = (int) (ob + (pp * POST_EMPHASIS));
-				samples[s++] = (byte) hibyte(sample);
-				samples[s++] = (byte) lobyte(sample);
+	/** Synthesizes the samples of this LPCResult as 16 bit values. This avoids packing the samples into big-endian bytes
+	 * for callers that process the audio further.
+	 * @param out the array receiving the samples; it must have room for <code>getNumberOfSamples()</code> values
+	 * starting at offset
+	 * @param offset the index in out of the first sample
+	 * @return the number of samples written */
+	public int synthesize(short[] out, int offset) {
+		complete();
+		byte[] residuals = getResiduals();
+		int[] residualSizes = getResidualSizes();
+		LPCFilter filter = new LPCFilter(getNumberOfChannels(), getLPCRange(), lpcMinimum);
+		int o = offset;
 
-				outBuffer.value = pp = ob;
-				outBuffer = outBuffer.next;
-			}
+		for (int r = 0, i = 0; i < numberOfFrames; i++) {
+			filter.setFrame(getFrame(i));
+			filter.synthesize(residuals, r, residualSizes[i], out, o);
+			r += residualSizes[i];
+			o += residualSizes[i];
 		}
-		return samples;
+		return o - offset;
 	}
 
-	/** Play the sample data on the given player
+	/** Play the sample data on the given player. If the units of this result are concatenated as it is played, each one
+	 * is concatenated when its first frame is reached, and the samples are written as soon as a buffer is full.
 	 * @param player where to send the audio
+	 * @param utterance the utterance of this result
 	 * @param numberSamples the number of samples
 	 * @exception IOException if an error occurs while writing the audio data */
-	private boolean playWaveSamples(AudioPlayer player, FreeTTSSpeakable speakable, int numberSamples) throws IOException {
+	private boolean playWaveSamples(AudioPlayer player, Utterance utterance, int numberSamples) throws IOException {
+		FreeTTSSpeakable speakable = utterance.getSpeakable();
+		Voice voice = utterance.getVoice();
 		boolean ok = true;
-		int numberChannels = getNumberOfChannels();
-		int pmSizeSamples;
-		float pp = 0;
-
-		byte[] samples = new byte[MAX_SAMPLE_SIZE];
+		byte[] samples = new byte[Math.max(2, MAX_SAMPLE_SIZE & ~1)];
 		byte[] residuals = getResiduals();
 		int[] residualSizes = getResidualSizes();
-
-		FloatList outBuffer = FloatList.createList(numberChannels + 1);
-		FloatList lpcCoefficients = FloatList.createList(numberChannels);
-
-		double multiplier = (double) getLPCRange() / 65535.0;
+		LPCFilter filter = new LPCFilter(getNumberOfChannels(), getLPCRange(), lpcMinimum);
 		int s = 0;
 
 		// for each frame in the LPC result
 		player.begin(numberSamples);
-		for (int r = 0, i = 0; (ok &= !speakable.isCompleted()) && i < numberOfFrames; i++) {
-
-			// unpack the LPC coefficients
-			short[] frame = getFrame(i);
-
-			FloatList lpcCoeffs = lpcCoefficients;
-			for (int k = 0; k < numberChannels; k++) {
-				lpcCoeffs.value = (float) ((frame[k] + 32768.0) * multiplier) + lpcMinimum;
-				lpcCoeffs = lpcCoeffs.next;
-			}
-
-			pmSizeSamples = residualSizes[i];
-
-			// resynthesis the signal, pmSizeSamples ~= 90
-			// what's in the loop is done for each residual
-			for (int j = 0; j < pmSizeSamples; j++, r++) {
-
-				FloatList backBuffer = outBuffer.prev;
-				float ob = residualToFloatMap[residuals[r] + 128];
-
-				lpcCoeffs = lpcCoefficients;
-				do {
-					ob += lpcCoeffs.value * backBuffer.value;
-					backBuffer = backBuffer.prev;
-					lpcCoeffs = lpcCoeffs.next;
-				} while (lpcCoeffs != lpcCoefficients);
-
-				int sample = (int) (ob + (pp * POST_EMPHASIS));
-				samples[s++] = hibyte(sample);
-				samples[s++] = lobyte(sample);
-
-				if (s >= MAX_SAMPLE_SIZE) {
+		for (int r = 0, i = 0; (ok &= !speakable.isCompleted()) && i < concatenate(i); i++) {
+			filter.setFrame(getFrame(i));
+
+			// resynthesis the signal, pmSizeSamples ~= 90, a full
+			// buffer is written out as soon as it fills up
+			for (int remaining = residualSizes[i]; remaining > 0;) {
+				int count = Math.min(remaining, (samples.length - s) / 2);
+				filter.synthesize(residuals, r, count, samples, s);
+				r += count;
+				s += 2 * count;
+				remaining -= count;
+
+				if (s >= samples.length) {
 					if ((ok &= !speakable.isCompleted()) && !player.write(samples)) {
 						ok = false;
 					}
+					if (voice != null) {
+						voice.firstAudioWritten();
+					}
 					s = 0;
 				}
-
-				outBuffer.value = pp = ob;
-				outBuffer = outBuffer.next;
 			}
 		}
 
 		// write out the very last samples
 		if ((ok &= !speakable.isCompleted()) && s > 0) {
 			ok = player.write(samples, 0, s);
+			if (voice != null) {
+				voice.firstAudioWritten();
+			}
 			s = 0;
 		}
 
@@ -437,6 +444,7 @@ public class LPCResult {
 	/** Dumps this LPCResult to the given stream.
 	 * @param writer the output stream */
 	public void dump(Writer writer) {
+		complete();
 		DecimalFormat numberFormat = new DecimalFormat();
 		numberFormat.setMaximumFractionDigits(6);
 		numberFormat.setMinimumFractionDigits(6);
@@ -559,54 +567,81 @@ public class LPCResult {
 	}
 }
 
-/** FloatList is used to maintain a circular buffer of float values. It is essentially an index-free array of floats that
- * can easily be iterated through forwards or backwards. Keeping values in an index free list like this eliminates index
- * bounds checking which can save us some time. */
-class FloatList {
-	float value;
-	FloatList next;
-	FloatList prev;
-
-	/** Creates a new node */
-	FloatList() {
-		value = 0.0F;
-		next = null;
-		prev = null;
-	}
-
-	/** Creates a circular list of nodes of the given size
-	 * @param size the number of nodes in the list
-	 * @return an entry in the list. */
-	static FloatList createList(int size) {
-		FloatList prev = null;
-		FloatList first = null;
-
-		for (int i = 0; i < size; i++) {
-			FloatList cur = new FloatList();
-			cur.prev = prev;
-			if (prev == null) {
-				first = cur;
-			} else {
-				prev.next = cur;
-			}
-			prev = cur;
+/** Runs the LPC synthesis filter over the residuals of an LPCResult, one frame (pitch period) at a time. The filter
+ * history is a flat float array that holds every output twice, <code>order</code> slots apart, so the most recent
+ * <code>order</code> outputs are always contiguous. The inner loop therefore needs neither a modulo nor a wrap test,
+ * and accumulates in the same order as the original circular list so the output is bit-identical. */
+class LPCFilter {
+	private final int order;
+	private final float[] coefficients;
+	private final float[] history;
+	private final double multiplier;
+	private final float lpcMinimum;
+	private int head = 0;
+
+	/** Creates a filter with an empty history.
+	 * @param order the number of LPC coefficients per frame
+	 * @param lpcRange the LPC range used to unpack the coefficients
+	 * @param lpcMinimum the LPC minimum used to unpack the coefficients */
+	LPCFilter(int order, float lpcRange, float lpcMinimum) {
+		this.order = order;
+		this.coefficients = new float[order];
+		this.history = new float[2 * order];
+		this.multiplier = (double) lpcRange / 65535.0;
+		this.lpcMinimum = lpcMinimum;
+	}
+
+	/** Unpacks the LPC coefficients of the given frame.
+	 * @param frame the packed coefficients */
+	void setFrame(short[] frame) {
+		for (int k = 0; k < order; k++) {
+			coefficients[k] = (float) ((frame[k] + 32768.0) * multiplier) + lpcMinimum;
 		}
-		first.prev = prev;
-		prev.next = first;
-
-		return first;
 	}
 
-	/** prints out the contents of this list
-	 * @param title the title of the dump
-	 * @param list the list to dump */
-	static void dump(String title, FloatList list) {
-		System.out.println(title);
+	/** Filters the next output sample.
+	 * @param residual the residual (excitation) for this sample
+	 * @return the sample */
+	private int next(byte residual) {
+		final float[] c = coefficients;
+		final float[] h = history;
+		int newest = head + order - 1;
+		float ob = LPCResult.residualToFloat(residual);
+		for (int k = 0, b = newest; k < c.length; k++, b--) {
+			ob += c[k] * h[b];
+		}
+		int sample = (int) (ob + (h[newest] * LPCResult.POST_EMPHASIS));
+		h[head] = ob;
+		h[head + order] = ob;
+		if (++head == order) {
+			head = 0;
+		}
+		return sample;
+	}
+
+	/** Synthesizes samples as big-endian 16 bit values.
+	 * @param residuals the residuals
+	 * @param r the index of the first residual
+	 * @param count the number of samples to synthesize
+	 * @param out where the samples are stored
+	 * @param s the index in out of the first byte */
+	void synthesize(byte[] residuals, int r, int count, byte[] out, int s) {
+		for (int end = r + count; r < end; r++) {
+			int sample = next(residuals[r]);
+			out[s++] = (byte) (sample >>> 8);
+			out[s++] = (byte) (sample & 0x000000FF);
+		}
+	}
 
-		FloatList cur = list;
-		do {
-			System.out.println("Item: " + cur.value);
-			cur = cur.next;
-		} while (cur != list);
+	/** Synthesizes samples as 16 bit values.
+	 * @param residuals the residuals
+	 * @param r the index of the first residual
+	 * @param count the number of samples to synthesize
+	 * @param out where the samples are stored
+	 * @param s the index in out of the first sample */
+	void synthesize(byte[] residuals, int r, int count, short[] out, int s) {
+		for (int end = r + count; r < end; r++) {
+			out[s++] = (short) next(residuals[r]);
+		}
 	}
 }
@@ -0,0 +1,121 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.relp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** A SampleSet that leaves the frame and residual data in the (usually memory mapped) buffer it was read from. Only the
+ * offset of each sample is kept on the heap; the samples returned by {@link #getSample(int)} are small views that read
+ * the buffer on demand. The buffer is only ever read with absolute gets, so a SampleSet can be shared between threads. */
+public class MappedSampleSet extends SampleSet {
+	private final ByteBuffer data;
+	private final int[] offsets;
+
+	/** Creates a SampleSet on the binary sample data at the current position of the given buffer. The position of the
+	 * buffer is moved past the sample data, in the same way <code>SampleSet(ByteBuffer)</code> does.
+	 * @param bb the buffer holding the samples
+	 * @throws IOException if an IO error occurs */
+	public MappedSampleSet(ByteBuffer bb) throws IOException {
+		super(new SampleInfo(bb));
+		int numSamples = bb.getInt();
+		offsets = new int[numSamples];
+		for (int i = 0; i < numSamples; i++) {
+			int position = bb.position();
+			offsets[i] = position;
+			position += 4 + 2 * bb.getInt(position);
+			position += 4 + bb.getInt(position);
+			bb.position(position);
+		}
+		data = bb;
+	}
+
+	/** return the sample associated with the index
+	 * @param index the index of the sample
+	 * @return a view of the sample */
+	public Sample getSample(int index) {
+		return new MappedSample(offsets[index]);
+	}
+
+	/** Returns the number of samples in this set
+	 * @return the number of samples */
+	public int getNumberOfSamples() {
+		return offsets.length;
+	}
+
+	/** Gets the size of the given frame
+	 * @param frame the frame of interest
+	 * @return the size of the frame */
+	public int getFrameSize(int frame) {
+		int offset = offsets[frame];
+		return data.getInt(offset + 4 + 2 * data.getInt(offset));
+	}
+
+	/** A view of a single sample in the buffer. The array accessors return copies; the indexed accessors read the buffer
+	 * directly. */
+	private class MappedSample extends Sample {
+		private final int offset;
+
+		/** Creates a view of the sample at the given offset
+		 * @param offset the offset of the sample in the buffer */
+		MappedSample(int offset) {
+			this.offset = offset;
+		}
+
+		/** Gets the frame data associated with this sample
+		 * @return a copy of the frame data */
+		public short[] getFrameData() {
+			short[] frameData = new short[data.getInt(offset)];
+			for (int i = 0, position = offset + 4; i < frameData.length; i++, position += 2) {
+				frameData[i] = data.getShort(position);
+			}
+			return frameData;
+		}
+
+		/** Gets the residual data associated with this sample
+		 * @return a copy of the residual data */
+		public byte[] getResidualData() {
+			int position = residualOffset();
+			byte[] residualData = new byte[data.getInt(position)];
+			position += 4;
+			for (int i = 0; i < residualData.length; i++) {
+				residualData[i] = data.get(position + i);
+			}
+			return residualData;
+		}
+
+		/** Returns the number of residuals in this Sample.
+		 * @return the number of residuals in this sample */
+		public int getResidualSize() {
+			return data.getInt(residualOffset());
+		}
+
+		/** Returns the normalized residual data.
+		 * @param which the index of the data of interest
+		 * @return the normalized data. */
+		public int getResidualData(int which) {
+			return ((int) data.get(residualOffset() + 4 + which)) + 128;
+		}
+
+		/** Returns the normalized frame data.
+		 * @param which the index of the data of interest
+		 * @return the normalized data. */
+		public int getFrameData(int which) {
+			return ((int) data.getShort(offset + 4 + 2 * which)) + 32768;
+		}
+
+		/** Returns the offset of the residual size of this sample.
+		 * @return the offset */
+		private int residualOffset() {
+			return offset + 4 + 2 * data.getInt(offset);
+		}
+	}
+}
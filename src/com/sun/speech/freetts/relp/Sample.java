@@ -42,6 +42,14 @@ public class Sample {
 		this.residualSize = residualSize;
 	}
 
+	/** Constructs a Sample whose data is not held in arrays. Subclasses using this constructor must override the data
+	 * accessors. */
+	protected Sample() {
+		this.frameData = null;
+		this.residualData = null;
+		this.residualSize = 0;
+	}
+
 	/** Reads a sample from the input reader.
 	 * @param reader the input reader to read the data from
 	 * @param numChannels the number of channels per frame */
@@ -140,6 +148,8 @@ public class Sample {
 	 * @param bb the ByteBuffer to write the data to.
 	 * @throws IOException if IO error occurs */
 	public void dumpBinary(ByteBuffer bb) throws IOException {
+		short[] frameData = getFrameData();
+		byte[] residualData = getResidualData();
 		bb.putInt(frameData.length);
 		for (int i = 0; i < frameData.length; i++) {
 			bb.putShort(frameData[i]);
@@ -152,6 +162,8 @@ public class Sample {
 	 * @param os the DataOutputStream to write the data to.
 	 * @throws IOException if IO error occurs */
 	public void dumpBinary(DataOutputStream os) throws IOException {
+		short[] frameData = getFrameData();
+		byte[] residualData = getResidualData();
 		os.writeInt(frameData.length);
 		for (int i = 0; i < frameData.length; i++) {
 			os.writeShort(frameData[i]);
@@ -210,23 +222,27 @@ public class Sample {
 	 * @param other the other sample to compare this one to
 	 * @return <code>true</code> if they compare; otherwise <code>false</code> */
 	public boolean compare(Sample other) {
+		short[] frameData = getFrameData();
+		short[] otherFrameData = other.getFrameData();
+		byte[] residualData = getResidualData();
+		byte[] otherResidualData = other.getResidualData();
 
-		if (frameData.length != other.getFrameData().length) {
+		if (frameData.length != otherFrameData.length) {
 			return false;
 		}
 
 		for (int i = 0; i < frameData.length; i++) {
-			if (frameData[i] != other.frameData[i]) {
+			if (frameData[i] != otherFrameData[i]) {
 				return false;
 			}
 		}
 
-		if (residualData.length != other.residualData.length) {
+		if (residualData.length != otherResidualData.length) {
 			return false;
 		}
 
 		for (int i = 0; i < residualData.length; i++) {
-			if (residualData[i] != other.residualData[i]) {
+			if (residualData[i] != otherResidualData[i]) {
 				return false;
 			}
 		}
@@ -74,17 +74,29 @@ public class SampleSet {
 		}
 	}
 
+	/** Creates a SampleSet whose samples are provided by a subclass.
+	 * @param sampleInfo the info on the samples */
+	protected SampleSet(SampleInfo sampleInfo) {
+		this.sampleInfo = sampleInfo;
+	}
+
 	/** Dumps this sample set to the given stream
 	 * @param os the output stream
 	 * @throws IOException if an error occurs. */
 	public void dumpBinary(DataOutputStream os) throws IOException {
 		sampleInfo.dumpBinary(os);
-		os.writeInt(samples.length);
-		for (int i = 0; i < samples.length; i++) {
-			samples[i].dumpBinary(os);
+		os.writeInt(getNumberOfSamples());
+		for (int i = 0; i < getNumberOfSamples(); i++) {
+			getSample(i).dumpBinary(os);
 		}
 	}
 
+	/** Returns the number of samples in this set
+	 * @return the number of samples */
+	public int getNumberOfSamples() {
+		return samples.length;
+	}
+
 	/** return the sample associated with the index
 	 * @param index the index of the sample
 	 * @return the sample. */
@@ -21,25 +21,36 @@ import com.sun.speech.freetts.util.Utilities;
 
 /** Concatenates the Units in the given Utterance to the target_lpc result. This class is an UtteranceProcessor. It
  * defines a method <code> processUtterance </code> that helps populate the target_lpcres relation.
+ * <p>
+ * If the system property <code>com.sun.speech.freetts.streamLPC</code> is <code>true</code>, the units are not
+ * concatenated here but as the LPCResult is played: each unit is concatenated when the audio output needs its frames,
+ * so the first audio of an utterance is written once its first units are concatenated rather than all of them. The
+ * audio is the same either way.
  * @see LPCResult */
 public class UnitConcatenator implements UtteranceProcessor {
 	static private final int ADD_RESIDUAL_PULSE = 1;
 	static private final int ADD_RESIDUAL_WINDOWED = 2;
 	static private final int ADD_RESIDUAL = 3;
 	public final static String PROP_OUTPUT_LPC = "com.sun.speech.freetts.outputLPC";
+	public final static String PROP_STREAM_LPC = "com.sun.speech.freetts.streamLPC";
 	private boolean outputLPC = Utilities.getBoolean(PROP_OUTPUT_LPC);
+	private boolean streamLPC = Utilities.getBoolean(PROP_STREAM_LPC);
+
+	/** Creates a unit concatenator that concatenates the units as the system properties say. */
+	public UnitConcatenator() {
+	}
+
+	/** Creates a unit concatenator.
+	 * @param streamLPC if <code>true</code>, the units are concatenated as the LPCResult is played */
+	public UnitConcatenator(boolean streamLPC) {
+		this.streamLPC = streamLPC;
+	}
 
 	/** Concatenate the Units in the given Utterance to the target_lpc result.
 	 * @param utterance the Utterance to do concatenation
 	 * @see LPCResult
 	 * @throws ProcessException if an error occurs while processing the utterance */
 	public void processUtterance(Utterance utterance) throws ProcessException {
-		float uIndex = 0, m;
-		int pmI = 0, targetResidualPosition = 0, targetStart = 0, targetEnd, residualSize, numberFrames;
-		Relation unitRelation = utterance.getRelation(Relation.UNIT);
-
-		SampleInfo sampleInfo;
-
 		int addResidualMethod = ADD_RESIDUAL;
 
 		String residualType = utterance.getString("residual_type");
@@ -51,7 +62,7 @@ public class UnitConcatenator implements UtteranceProcessor {
 			}
 		}
 
-		sampleInfo = (SampleInfo) utterance.getObject(SampleInfo.UTT_NAME);
+		SampleInfo sampleInfo = (SampleInfo) utterance.getObject(SampleInfo.UTT_NAME);
 		if (sampleInfo == null) {
 			throw new IllegalStateException("UnitConcatenator: SampleInfo does not exist");
 		}
@@ -60,26 +71,74 @@ public class UnitConcatenator implements UtteranceProcessor {
 		lpcResult.setValues(sampleInfo.getNumberOfChannels(), sampleInfo.getSampleRate(), sampleInfo.getResidualFold(),
 				sampleInfo.getCoeffMin(), sampleInfo.getCoeffRange());
 
-		// create the array of final residual sizes
-		int[] targetTimes = lpcResult.getTimes();
-		int[] residualSizes = lpcResult.getResidualSizes();
-
 		int samplesSize = 0;
 		if (lpcResult.getNumberOfFrames() > 0) {
-			samplesSize = targetTimes[lpcResult.getNumberOfFrames() - 1];
+			samplesSize = lpcResult.getTimes()[lpcResult.getNumberOfFrames() - 1];
 		}
 		lpcResult.resizeResiduals(samplesSize);
 
-		for (Item unitItem = unitRelation.getHead(); unitItem != null; unitItem = unitItem.getNext()) {
+		Concatenation concatenation = new Concatenation(lpcResult, utterance.getRelation(Relation.UNIT).getHead(),
+				addResidualMethod);
+		if (streamLPC && !outputLPC) {
+			lpcResult.setConcatenation(concatenation);
+		} else {
+			concatenation.finish();
+		}
+
+		if (outputLPC) {
+			lpcResult.dump();
+		}
+	}
+
+	/** Concatenates the units of an utterance one at a time. The frames of a unit and the residuals of their pitch
+	 * periods are copied to the LPCResult when the unit is concatenated. */
+	static class Concatenation {
+		private final LPCResult lpcResult;
+		private final int addResidualMethod;
+		private final int[] targetTimes;
+		private final int[] residualSizes;
+		private Item unitItem;
+		private int pmI = 0;
+		private int targetResidualPosition = 0;
+		private int targetStart = 0;
+
+		/** Creates the concatenation.
+		 * @param lpcResult the LPCResult, with its pitchmarks and room for its residuals
+		 * @param unitItem the first item of the unit relation
+		 * @param addResidualMethod how residuals are copied */
+		Concatenation(LPCResult lpcResult, Item unitItem, int addResidualMethod) {
+			this.lpcResult = lpcResult;
+			this.unitItem = unitItem;
+			this.addResidualMethod = addResidualMethod;
+			targetTimes = lpcResult.getTimes();
+			residualSizes = lpcResult.getResidualSizes();
+			if (unitItem == null) {
+				lpcResult.setNumberOfFrames(0);
+			}
+		}
+
+		/** Returns the number of frames of the units concatenated so far.
+		 * @return the number of frames */
+		synchronized int getFrames() {
+			return pmI;
+		}
+
+		/** Concatenates the next unit. Once the last one is concatenated, the number of frames of the LPCResult is the
+		 * number of frames concatenated.
+		 * @return <code>true</code> if a unit was concatenated, <code>false</code> if all of them were already */
+		synchronized boolean next() {
+			if (unitItem == null) {
+				return false;
+			}
 			FeatureSet featureSet = unitItem.getFeatures();
 
-			targetEnd = featureSet.getInt("target_end");
+			int targetEnd = featureSet.getInt("target_end");
 			Unit unit = (Unit) featureSet.getObject("unit");
 			int unitSize = unit.getSize();
 
-			uIndex = 0;
-			m = (float) unitSize / (float) (targetEnd - targetStart);
-			numberFrames = lpcResult.getNumberOfFrames();
+			float uIndex = 0;
+			float m = (float) unitSize / (float) (targetEnd - targetStart);
+			int numberFrames = lpcResult.getNumberOfFrames();
 
 			// for all the pitchmarks that are required
 			for (; (pmI < numberFrames) && (targetTimes[pmI] <= targetEnd); pmI++) {
@@ -90,7 +149,7 @@ public class UnitConcatenator implements UtteranceProcessor {
 				lpcResult.setFrame(pmI, sample.getFrameData());
 
 				// Get residual by copying
-				residualSize = lpcResult.getFrameShift(pmI);
+				int residualSize = lpcResult.getFrameShift(pmI);
 
 				residualSizes[pmI] = residualSize;
 				byte[] residualData = sample.getResidualData();
@@ -105,11 +164,18 @@ public class UnitConcatenator implements UtteranceProcessor {
 				uIndex += ((float) residualSize * m);
 			}
 			targetStart = targetEnd;
+
+			unitItem = unitItem.getNext();
+			if (unitItem == null) {
+				lpcResult.setNumberOfFrames(pmI);
+			}
+			return true;
 		}
-		lpcResult.setNumberOfFrames(pmI);
 
-		if (outputLPC) {
-			lpcResult.dump();
+		/** Concatenates the units that are left. */
+		synchronized void finish() {
+			while (next()) {
+			}
 		}
 	}
 
@@ -0,0 +1,185 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+import com.sun.speech.freetts.audio.AudioPlayer;
+
+/** An AudioPlayer that sends the samples of a voice down a stream as soon as they are written. Each write is sent as a
+ * chunk: the number of bytes as a decimal line, then the bytes. This is the framing of the Client/Server demo, so the
+ * demo client can play the stream. Once a write to the stream fails, or the player is cancelled, every write returns
+ * <code>false</code>, which makes the voice cancel the rest of the request. */
+public class StreamAudioPlayer implements AudioPlayer {
+	private final OutputStream out;
+	private AudioFormat audioFormat;
+	private float volume = 1.0f;
+	private volatile boolean cancelled = false;
+	private long bytesWritten = 0;
+	private long startTime;
+	private long firstByteTime = -1;
+
+	/** Creates a player that writes to the given stream.
+	 * @param out the stream, which should be buffered */
+	public StreamAudioPlayer(OutputStream out) {
+		this.out = out;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/** Sets the audio format of the samples that follow.
+	 * @param format the audio format */
+	public void setAudioFormat(AudioFormat format) {
+		this.audioFormat = format;
+	}
+
+	/** Retrieves the audio format for this player
+	 * @return the current audio format */
+	public AudioFormat getAudioFormat() {
+		return audioFormat;
+	}
+
+	/** Pauses all audio output on this player. Not implemented in this Player. */
+	public void pause() {
+	}
+
+	/** Resumes audio output on this player. Not implemented in this Player. */
+	public void resume() {
+	}
+
+	/** Prepares for another batch of output. */
+	public void reset() {
+	}
+
+	/** Flushes the stream.
+	 * @return <code>true</code> if the stream could be flushed */
+	public boolean drain() {
+		try {
+			out.flush();
+			return true;
+		} catch (IOException ioe) {
+			cancelled = true;
+			return false;
+		}
+	}
+
+	/** Starts the output of an utterance. Nothing is sent until the samples are written.
+	 * @param size the size of data in bytes to be output before <code>end</code> is called. */
+	public void begin(int size) {
+	}
+
+	/** Ends the output of an utterance.
+	 * @return <code>true</code> if the audio was output properly, <code>false</code> if the output was cancelled */
+	public boolean end() {
+		return !cancelled;
+	}
+
+	/** Cancels the output. All writes return false from now on. */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** Closes this AudioPlayer. The stream is left open; it belongs to the caller. */
+	public void close() {
+	}
+
+	/** Returns the current volume.
+	 * @return the current volume (between 0 and 1) */
+	public float getVolume() {
+		return volume;
+	}
+
+	/** Sets the current volume. The samples are sent as they are, so the volume is only kept.
+	 * @param volume the new volume (between 0 and 1) */
+	public void setVolume(float volume) {
+		this.volume = volume;
+	}
+
+	/** Returns the time since the last resetTime.
+	 * @return the time in milliseconds */
+	public long getTime() {
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/** Resets the audio clock. */
+	public void resetTime() {
+		startTime = System.currentTimeMillis();
+	}
+
+	/** Starts the first sample timer. */
+	public void startFirstSampleTimer() {
+		resetTime();
+		firstByteTime = -1;
+	}
+
+	/** Sends the given bytes as one chunk.
+	 * @param audioData audio data to send
+	 * @return <code>true</code> if the write completed successfully, <code>false</code> if the output was cancelled */
+	public boolean write(byte[] audioData) {
+		return write(audioData, 0, audioData.length);
+	}
+
+	/** Sends the given bytes as one chunk.
+	 * @param audioData audio data to send
+	 * @param offset the offset into the buffer
+	 * @param size the number of bytes to send
+	 * @return <code>true</code> if the write completed successfully, <code>false</code> if the output was cancelled */
+	public boolean write(byte[] audioData, int offset, int size) {
+		if (cancelled) {
+			return false;
+		}
+		if (size == 0) {
+			return true;
+		}
+		try {
+			writeLine(Integer.toString(size));
+			out.write(audioData, offset, size);
+			out.flush();
+		} catch (IOException ioe) {
+			cancelled = true;
+			return false;
+		}
+		if (firstByteTime == -1) {
+			firstByteTime = System.currentTimeMillis() - startTime;
+		}
+		bytesWritten += size;
+		return true;
+	}
+
+	/** Sends a line of text.
+	 * @param line the line, without the end of line character
+	 * @throws IOException if the stream fails */
+	void writeLine(String line) throws IOException {
+		for (int i = 0; i < line.length(); i++) {
+			out.write(line.charAt(i));
+		}
+		out.write('\n');
+	}
+
+	/** Returns the number of sample bytes sent so far.
+	 * @return the number of bytes */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/** Returns the time from the start of the first sample timer to the first byte sent.
+	 * @return the time in milliseconds, or -1 if nothing was sent */
+	public long getFirstByteTime() {
+		return firstByteTime;
+	}
+
+	/** Shows metrics for this audio player. */
+	public void showMetrics() {
+		System.out.println("  first byte: " + firstByteTime + " ms, " + bytesWritten + " bytes");
+	}
+}
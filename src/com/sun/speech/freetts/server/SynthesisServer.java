@@ -0,0 +1,246 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.util.Utilities;
+
+/** A text-to-speech server that synthesizes the requests of many clients at once. Every request leases a voice of its
+ * own from a {@link VoicePool}, so no two requests share a voice, and the samples are sent to the client as soon as the
+ * voice writes them.
+ * <p>
+ * The server speaks the protocol of the Client/Server demo. After it sends <code>READY</code>, the client sends
+ * <code>TTS</code>, a line with either a sample rate (8000 or 16000, for the configured 8k and 16k voices) or the name of
+ * a pooled voice, and a line of text. The server answers with chunks of samples, each a line with the number of bytes
+ * followed by the bytes, and then <code>-1</code>, or <code>-2</code> if the voice is unknown. <code>DONE</code> ends the
+ * connection.
+ * <p>
+ * The load is bounded twice. The server stops accepting connections while <code>maxConnections</code> are open, which
+ * leaves further clients in the listen backlog of the socket, and a request waits for a voice while all the voices of its
+ * name are busy, which stops reading from that client. */
+public class SynthesisServer implements Runnable {
+	/** The prefix of the system properties of the server. */
+	public final static String PROP_PREFIX = "com.sun.speech.freetts.server.";
+
+	private static final Logger LOGGER = Logger.getLogger(SynthesisServer.class.getName());
+
+	private final VoicePool pool;
+	private final ServerSocket serverSocket;
+	private final Semaphore connections;
+	private final ExecutorService executor;
+	private final String voice8kName;
+	private final String voice16kName;
+	private final boolean metrics;
+	private volatile boolean closed = false;
+
+	/** Creates a server listening on the given port. The voices of the 8k and 16k sample rates are named by the
+	 * <code>voice8k</code> and <code>voice16k</code> properties, and default to kevin and kevin16.
+	 * @param pool the voices
+	 * @param port the port, or 0 for any free port
+	 * @param maxConnections the number of connections served at once
+	 * @throws IOException if the port can't be opened */
+	public SynthesisServer(VoicePool pool, int port, int maxConnections) throws IOException {
+		this.pool = pool;
+		this.serverSocket = new ServerSocket(port);
+		this.connections = new Semaphore(maxConnections);
+		this.executor = Executors.newFixedThreadPool(maxConnections);
+		this.voice8kName = Utilities.getProperty(PROP_PREFIX + "voice8k", "kevin");
+		this.voice16kName = Utilities.getProperty(PROP_PREFIX + "voice16k", "kevin16");
+		this.metrics = Utilities.getProperty(PROP_PREFIX + "metrics", "false").equals("true");
+	}
+
+	/** Returns the port the server listens on.
+	 * @return the port */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/** Accepts connections until the server is closed. */
+	public void run() {
+		LOGGER.info("Waiting on " + serverSocket);
+		while (!closed) {
+			try {
+				connections.acquire();
+			} catch (InterruptedException ie) {
+				break;
+			}
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException ioe) {
+				connections.release();
+				if (!closed) {
+					LOGGER.severe("Could not accept socket " + ioe);
+				}
+				break;
+			}
+			executor.execute(new Connection(socket));
+		}
+	}
+
+	/** Closes the server. Requests in progress are finished; the voices of the pool are left allocated.
+	 * @throws IOException if the server socket can't be closed */
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Returns the name of the pooled voice for the voice line of a request.
+	 * @param line a sample rate or a voice name
+	 * @return the voice name, or null if there is no such voice */
+	private String getVoiceName(String line) {
+		String name = line;
+		if (line.equals("8000")) {
+			name = voice8kName;
+		} else if (line.equals("16000")) {
+			name = voice16kName;
+		}
+		return pool.hasVoice(name) ? name : null;
+	}
+
+	/** Serves the requests of one client. */
+	private class Connection implements Runnable {
+		private final Socket socket;
+		private InputStream in;
+		private StreamAudioPlayer player;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		public void run() {
+			try {
+				in = new BufferedInputStream(socket.getInputStream());
+				OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+				player = new StreamAudioPlayer(out);
+				sendLine("READY");
+
+				String command;
+				while ((command = readLine()) != null && command.equals("TTS")) {
+					if (!handleRequest()) {
+						break;
+					}
+				}
+			} catch (IOException ioe) {
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.fine("Connection failed " + ioe);
+				}
+			} catch (InterruptedException ie) {
+				LOGGER.fine("Connection interrupted");
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException ioe) {
+				}
+				connections.release();
+			}
+		}
+
+		/** Handles a single speech synthesis request.
+		 * @return <code>true</code> if the connection can take another request
+		 * @throws IOException if the connection fails
+		 * @throws InterruptedException if the thread is interrupted while waiting for a voice */
+		private boolean handleRequest() throws IOException, InterruptedException {
+			String voiceLine = readLine();
+			String text = readLine();
+			if (voiceLine == null || text == null) {
+				return false;
+			}
+			String name = getVoiceName(voiceLine);
+			if (name == null) {
+				sendLine("-2");
+				return false;
+			}
+
+			Voice voice = pool.lease(name);
+			boolean ok;
+			try {
+				voice.setAudioPlayer(player);
+				ok = voice.speak(text);
+			} finally {
+				pool.release(voice);
+			}
+			if (metrics) {
+				System.out.println("Time To Sending First Byte: " + player.getFirstByteTime() + " ms");
+			}
+			// a cancelled request means the client went away
+			if (!ok && !player.drain()) {
+				return false;
+			}
+			sendLine("-1");
+			return true;
+		}
+
+		/** Sends a line of text to the client.
+		 * @param line the line, without the end of line character
+		 * @throws IOException if the connection fails */
+		private void sendLine(String line) throws IOException {
+			player.writeLine(line);
+			if (!player.drain()) {
+				throw new IOException("Can't send to client");
+			}
+		}
+
+		/** Reads a line of text from the client.
+		 * @return the line without the end of line characters, or null at the end of the stream
+		 * @throws IOException if the connection fails */
+		private String readLine() throws IOException {
+			StringBuffer line = new StringBuffer();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c == -1) {
+					return line.length() == 0 ? null : line.toString();
+				}
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+	}
+
+	/** Starts a server. The port is set by the <code>port</code> property (default 5555), the voices by the
+	 * <code>voices</code> property (a comma separated list, default kevin,kevin16), the number of voices of each name by
+	 * <code>poolSize</code> (default 4) and the number of connections served at once by <code>maxConnections</code>
+	 * (default 64). All properties take the <code>com.sun.speech.freetts.server.</code> prefix.
+	 * @param args not used
+	 * @throws IOException if the port can't be opened */
+	public static void main(String[] args) throws IOException {
+		int port = Utilities.getInteger(PROP_PREFIX + "port", 5555).intValue();
+		String[] names = Utilities.getProperty(PROP_PREFIX + "voices", "kevin,kevin16").split(",");
+		int poolSize = Utilities.getInteger(PROP_PREFIX + "poolSize", 4).intValue();
+		int maxConnections = Utilities.getInteger(PROP_PREFIX + "maxConnections", 64).intValue();
+
+		VoicePool pool = new VoicePool(names, poolSize);
+		SynthesisServer server = new SynthesisServer(pool, port, maxConnections);
+		server.run();
+	}
+}
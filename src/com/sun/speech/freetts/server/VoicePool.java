@@ -0,0 +1,126 @@
+/**
+ * Portions Copyright 2001 Sun Microsystems, Inc.
+ * Portions Copyright 1999-2001 Language Technologies Institute,
+ * Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ */
+package com.sun.speech.freetts.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+
+/** Keeps allocated voices ready to be leased, a number of them per voice name. A voice is only ever used by the thread
+ * that leased it, so a request may set the audio player and other state of its voice without disturbing the requests
+ * on other threads. When all the voices of a name are leased, a lease waits for one to be released. */
+public class VoicePool {
+	private final Map<String, BlockingQueue<Voice>> idle = new LinkedHashMap<String, BlockingQueue<Voice>>();
+	private final List<Voice> voices = new ArrayList<Voice>();
+
+	/** Creates an empty pool. Voices are added with <code>add</code>. */
+	public VoicePool() {
+	}
+
+	/** Creates a pool with voices from the VoiceManager.
+	 * @param names the names of the voices
+	 * @param size the number of voices of each name
+	 * @throws IllegalArgumentException if the VoiceManager has no voice of one of the names */
+	public VoicePool(String[] names, int size) {
+		VoiceManager voiceManager = VoiceManager.getInstance();
+		for (int i = 0; i < names.length; i++) {
+			for (int j = 0; j < size; j++) {
+				Voice voice = voiceManager.getVoice(names[i]);
+				if (voice == null) {
+					throw new IllegalArgumentException("No voice named " + names[i]);
+				}
+				add(voice);
+			}
+		}
+	}
+
+	/** Adds a voice to the pool, allocating it if it is not allocated yet. The voice should not be used outside of the
+	 * pool afterwards.
+	 * @param voice the voice */
+	public void add(Voice voice) {
+		voice.setAudioPlayer(new NullAudioPlayer());
+		voice.allocate();
+		synchronized (idle) {
+			BlockingQueue<Voice> queue = idle.get(voice.getName());
+			if (queue == null) {
+				queue = new LinkedBlockingQueue<Voice>();
+				idle.put(voice.getName(), queue);
+			}
+			queue.add(voice);
+			voices.add(voice);
+		}
+	}
+
+	/** Determines if the pool has voices of the given name.
+	 * @param name the voice name
+	 * @return <code>true</code> if there are voices of the name */
+	public boolean hasVoice(String name) {
+		synchronized (idle) {
+			return idle.containsKey(name);
+		}
+	}
+
+	/** Returns the names of the voices in the pool.
+	 * @return the voice names, in the order they were added */
+	public String[] getVoiceNames() {
+		synchronized (idle) {
+			return idle.keySet().toArray(new String[idle.size()]);
+		}
+	}
+
+	/** Leases a voice, waiting until one of the given name is free. The voice must be given back with
+	 * <code>release</code>.
+	 * @param name the voice name
+	 * @return the voice
+	 * @throws IllegalArgumentException if the pool has no voices of the name
+	 * @throws InterruptedException if the thread is interrupted while waiting */
+	public Voice lease(String name) throws InterruptedException {
+		BlockingQueue<Voice> queue;
+		synchronized (idle) {
+			queue = idle.get(name);
+		}
+		if (queue == null) {
+			throw new IllegalArgumentException("No voice named " + name);
+		}
+		return queue.take();
+	}
+
+	/** Gives a leased voice back to the pool. Its audio player is replaced so that it no longer refers to the output of
+	 * the request.
+	 * @param voice the voice */
+	public void release(Voice voice) {
+		voice.setAudioPlayer(new NullAudioPlayer());
+		BlockingQueue<Voice> queue;
+		synchronized (idle) {
+			queue = idle.get(voice.getName());
+		}
+		queue.add(voice);
+	}
+
+	/** Deallocates all the voices of the pool, leased or not. */
+	public void deallocate() {
+		synchronized (idle) {
+			for (Iterator<Voice> i = voices.iterator(); i.hasNext();) {
+				i.next().deallocate();
+			}
+			voices.clear();
+			idle.clear();
+		}
+	}
+}
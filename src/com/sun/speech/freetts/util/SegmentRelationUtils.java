@@ -10,13 +10,15 @@
  */
 package com.sun.speech.freetts.util;
 
-import com.sun.speech.freetts.FeatureSet;
+import com.sun.speech.freetts.FeatureSlots;
 import com.sun.speech.freetts.Item;
 import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.SlottedFeatureSet;
 
 /** Provides a set of utilities for the SegmentRelation. A SegmentRelation is a Relation, but has features specific to
  * Segments. */
 public class SegmentRelationUtils {
+	private final static int END = FeatureSlots.getSlot("end");
 
 	/** Returns the Item in the Segment Relation that corresponds to the given time.
 	 * @param segmentRelation the segmentRelation of interest
@@ -44,8 +46,8 @@ public class SegmentRelationUtils {
 	 * @param segment the Segment Item
 	 * @return the <code>end</code> feature of the Segment */
 	public static float getSegmentEnd(Item segment) {
-		FeatureSet segmentFeatureSet = segment.getFeatures();
-		return segmentFeatureSet.getFloat("end");
+		SlottedFeatureSet segmentFeatureSet = segment.getSlottedFeatures();
+		return segmentFeatureSet.getFloat(END);
 	}
 
 	/** Starting from the front of the given Segment Relation, finds the Item that corresponds to the given time.
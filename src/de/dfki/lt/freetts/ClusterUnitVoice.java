@@ -127,6 +127,14 @@ public class ClusterUnitVoice extends Voice implements ConcatenativeVoice {
 		return new UnitConcatenator();
 	}
 
+	/** Ends a batch of utterances. In metrics mode this also shows the metrics of the unit selector. */
+	public void endBatch() {
+		super.endBatch();
+		if (isMetrics() && unitSelector != null) {
+			unitSelector.showMetrics();
+		}
+	}
+
 	protected void setupFeatureProcessors() throws IOException {
 		if (phonesetURL != null) {
 			phoneSet = new PhoneSetImpl(phonesetURL);
@@ -0,0 +1,155 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.en.us.FrontEndVoice;
+
+/** Checks that a voice that recycles its utterances builds the same ones as a voice that does not, and keeps reusing
+ * the same few objects however many utterances it speaks. */
+public class ArenaTest {
+	private final static int SENTENCES = 10000;
+	private final static int SENTENCES_PER_SPEAK = 500;
+
+	/** The object given last must be taken first, and no more than the capacity must be kept. */
+	@Test
+	public void testTakeGive() {
+		Arena arena = new Arena(2);
+		assertNull(arena.take(StringBuffer.class));
+		StringBuffer a = new StringBuffer();
+		StringBuffer b = new StringBuffer();
+		arena.give(a);
+		arena.give(b);
+		arena.give(new StringBuffer());
+		assertEquals(2, arena.getFree(StringBuffer.class));
+		assertNull(arena.take(StringBuilder.class));
+		assertSame(b, arena.take(StringBuffer.class));
+		assertSame(a, arena.take(StringBuffer.class));
+		assertNull(arena.take(StringBuffer.class));
+		assertEquals(5, arena.getTaken());
+		assertEquals(2, arena.getReused());
+	}
+
+	/** An utterance that adopted contents made on their own and then grew past them must still reset. */
+	@Test
+	public void testResetAdopted() {
+		Utterance utterance = new Utterance(null);
+		Relation relation = utterance.createRelation("test");
+		ItemContents contents = new ItemContents();
+		new Item(relation, contents);
+		for (int i = 0; i < 200; i++) {
+			relation.appendItem();
+		}
+		utterance.reset();
+		assertNull(relation.getHead());
+	}
+
+	/** Recycled utterances must come out of the front-end as new ones do. */
+	@Test
+	public void testSameUtterances() throws IOException {
+		String text = FrontEndVoice.readText("unittests/tests/data/alice2");
+		// the first text the front-end processes in a JVM may come out slightly different, so compare with a second
+		speak(text, false);
+		String expected = speak(text, false).getDump();
+		DumpingVoice voice = speak(text, true);
+		assertEquals(expected, voice.getDump());
+		assertTrue(voice.getArena().getReused() > 0);
+	}
+
+	/** Speaking many utterances must not make the voice hold on to more utterances and relations than its arena keeps,
+	 * nor leave more in the arena than its capacity. */
+	@Test
+	public void testLeak() {
+		DumpingVoice voice = new DumpingVoice(false);
+		voice.setRecycleUtterances(true);
+		voice.allocate();
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < SENTENCES; i++) {
+			text.append("This is sentence ").append(i % 100).append(". ");
+			if ((i + 1) % SENTENCES_PER_SPEAK == 0) {
+				assertTrue(voice.speak(text.toString()));
+				text.setLength(0);
+			}
+		}
+		voice.deallocate();
+
+		Arena arena = voice.getArena();
+		assertEquals(SENTENCES, voice.getCount());
+		assertTrue(arena.getFree(Utterance.class) <= 16);
+		assertTrue(voice.getDistinctUtterances() + " utterances", voice.getDistinctUtterances() <= 32);
+		assertTrue(voice.getDistinctRelations() + " relations", voice.getDistinctRelations() <= 32);
+		assertTrue(arena.getReused() >= SENTENCES - voice.getDistinctUtterances());
+	}
+
+	private static DumpingVoice speak(String text, boolean recycle) {
+		DumpingVoice voice = new DumpingVoice(true);
+		voice.setRecycleUtterances(recycle);
+		voice.allocate();
+		voice.speak(text);
+		voice.deallocate();
+		return voice;
+	}
+
+	/** A front-end voice whose audio output counts the distinct utterances and segment relations it is given, and dumps
+	 * the utterances before they are recycled. */
+	private static class DumpingVoice extends FrontEndVoice {
+		private final StringWriter out = new StringWriter();
+		private final PrintWriter pw = new PrintWriter(out);
+		private final Map<Object, Object> utterances = new IdentityHashMap<Object, Object>();
+		private final Map<Object, Object> relations = new IdentityHashMap<Object, Object>();
+		private final boolean dump;
+		private int count;
+
+		DumpingVoice(boolean dump) {
+			this.dump = dump;
+		}
+
+		String getDump() {
+			pw.flush();
+			return out.toString();
+		}
+
+		synchronized int getCount() {
+			return count;
+		}
+
+		synchronized int getDistinctUtterances() {
+			return utterances.size();
+		}
+
+		synchronized int getDistinctRelations() {
+			return relations.size();
+		}
+
+		protected URL getResource(String resource) {
+			// the data of the voice is next to the voice it extends
+			return FrontEndVoice.class.getResource(resource);
+		}
+
+		protected UtteranceProcessor getAudioOutput() throws IOException {
+			return new UtteranceProcessor() {
+				public void processUtterance(Utterance u) {
+					synchronized (DumpingVoice.this) {
+						count++;
+						utterances.put(u, u);
+						relations.put(u.getRelation(Relation.SEGMENT), u);
+						if (dump) {
+							u.dump(pw, 0, "utterance", true);
+						}
+					}
+				}
+			};
+		}
+	}
+}
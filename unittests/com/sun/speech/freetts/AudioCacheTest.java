@@ -0,0 +1,153 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.speech.freetts.relp.RandomLPCResult;
+import com.sun.speech.freetts.relp.RecordingAudioPlayer;
+import com.sun.speech.freetts.relp.SampleInfo;
+
+/** Checks that audio played from the cache is byte for byte the audio that is synthesized, from memory and from the
+ * directory, and that the cache stays within its sizes. */
+public class AudioCacheTest {
+	private final static String TEXT = "Welcome to the service. Press one for sales. Press two for support. "
+			+ "Please hold the line.";
+	private final static int UTTERANCES = 4;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("audiocache", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testMemory() throws IOException {
+		byte[] expected = speak(null, TEXT);
+
+		AudioCache cache = new AudioCache(1 << 20, null, 0);
+		LPCVoice voice = new LPCVoice(cache);
+		assertArrayEquals(expected, voice.speakText(TEXT));
+		assertEquals(UTTERANCES, voice.synthesized);
+		assertEquals(UTTERANCES, cache.getMisses());
+		assertTrue(voice.getFirstAudioTime() > 0);
+
+		assertArrayEquals(expected, voice.speakText(TEXT));
+		// blanks before and between the words don't matter; blanks after the text would make an empty last utterance
+		assertArrayEquals(expected, voice.speakText("  " + TEXT.replaceAll(" ", "   ")));
+		assertEquals(UTTERANCES, voice.synthesized);
+		assertEquals(2 * UTTERANCES, cache.getHits());
+		assertEquals(0, cache.getDiskHits());
+
+		// other settings are other audio
+		voice.setPitch(120);
+		voice.speakText(TEXT);
+		assertEquals(2 * UTTERANCES, voice.synthesized);
+		voice.deallocate();
+	}
+
+	@Test
+	public void testDirectory() throws IOException {
+		byte[] expected = speak(null, TEXT);
+
+		// nothing fits in memory, so all the audio goes to the directory
+		AudioCache cache = new AudioCache(0, directory, 1 << 20);
+		assertArrayEquals(expected, speak(cache, TEXT));
+		assertEquals(0, cache.getMemoryUsed());
+		assertEquals(UTTERANCES, directory.list().length);
+		assertArrayEquals(expected, speak(cache, TEXT));
+		assertEquals(UTTERANCES, cache.getDiskHits());
+
+		// the directory is read by a new cache
+		cache = new AudioCache(1 << 20, directory, 1 << 20);
+		LPCVoice voice = new LPCVoice(cache);
+		assertArrayEquals(expected, voice.speakText(TEXT));
+		assertEquals(0, voice.synthesized);
+		assertEquals(UTTERANCES, cache.getDiskHits());
+		assertTrue(cache.getMemoryUsed() > 0);
+		voice.deallocate();
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		AudioCache cache = new AudioCache(0, directory, 1 << 20);
+		speak(cache, TEXT);
+		long total = cache.getDiskUsed();
+
+		// room for about two utterances in each level
+		long budget = total / 2;
+		cache.clear();
+		assertEquals(0, directory.list().length);
+		cache = new AudioCache(budget, directory, budget);
+		LPCVoice voice = new LPCVoice(cache);
+		for (int i = 0; i < 3; i++) {
+			voice.speakText(TEXT);
+			assertTrue(cache.getMemoryUsed() <= budget);
+			assertTrue(cache.getDiskUsed() <= budget);
+		}
+		assertTrue(cache.getMemoryUsed() > 0);
+		assertTrue(cache.getDiskUsed() > 0);
+		// the utterances are spoken in a cycle, so the least recently used one is always gone from memory
+		assertTrue(cache.getMisses() > UTTERANCES);
+		long used = 0;
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			used += files[i].length();
+		}
+		assertEquals(cache.getDiskUsed(), used);
+		voice.deallocate();
+	}
+
+	private static byte[] speak(AudioCache cache, String text) throws IOException {
+		LPCVoice voice = new LPCVoice(cache);
+		byte[] audio = voice.speakText(text);
+		voice.deallocate();
+		return audio;
+	}
+
+	/** A voice whose LPC result is made of random frames seeded by the text of the utterance. */
+	private static class LPCVoice extends StubVoice {
+		private final RecordingAudioPlayer player = new RecordingAudioPlayer();
+		int synthesized = 0;
+
+		LPCVoice(AudioCache cache) {
+			super("lpc");
+			setAudioPlayer(player);
+			setAudioCache(cache);
+			getUtteranceProcessors().add(new UtteranceProcessor() {
+				public void processUtterance(Utterance u) {
+					synthesized++;
+					Random random = new Random(u.getString("input_text").trim().hashCode() + (int) getPitch());
+					u.setObject("target_lpcres", RandomLPCResult.create(random, 16, 16000, 40 + random.nextInt(40)));
+					u.setObject(SampleInfo.UTT_NAME, new SampleInfo(16000, 16, 1, -1.2f, 2.4f, 0.0f));
+				}
+			});
+			allocate();
+		}
+
+		byte[] speakText(String text) {
+			player.reset();
+			assertTrue(speak(text));
+			return player.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.en.us.FrontEndVoice;
+
+/** Checks that memoized features are those the feature processors give, and that a change to the utterance makes them
+ * be processed again. */
+public class FeatureMemoTest {
+
+	/** The front-end must build the same utterances with and without the memo, and find features in the memo. */
+	@Test
+	public void testSameUtterances() throws IOException {
+		String text = FrontEndVoice.readText("unittests/tests/data/alice2");
+		// the first text the front-end processes in a JVM may come out slightly different, so compare with a second
+		process(text, false);
+		String expected = dump(process(text, false));
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.setMemoizeFeatures(true);
+		voice.allocate();
+		List<Utterance> utterances = voice.process(text);
+		voice.deallocate();
+		assertEquals(expected, dump(utterances));
+		assertTrue(voice.getFeatureMemoHits() > voice.getFeatureMemoLookups() / 4);
+	}
+
+	/** A feature is processed once until the utterance is modified, whatever path leads to the item. */
+	@Test
+	public void testModifications() {
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.setMemoizeFeatures(true);
+		voice.allocate();
+		CountingProcessor processor = new CountingProcessor();
+		voice.addFeatureProcessor("test_count", processor);
+		Utterance utterance = voice.process("Hello world.").get(0);
+		assertNotNull(utterance.getFeatureMemo());
+		Item segment = utterance.getRelation(Relation.SEGMENT).getHead().getNext();
+
+		PathExtractor path = new PathExtractorImpl("test_count", true);
+		PathExtractor next = new PathExtractorImpl("n.test_count", true);
+		assertEquals("1", path.findFeature(segment.getNext()));
+		assertEquals("1", path.findFeature(segment.getNext()));
+		assertEquals("1", next.findFeature(segment));
+
+		segment.getFeatures().setString("test", "x");
+		assertEquals("2", next.findFeature(segment));
+		assertEquals("2", path.findFeature(segment.getNext()));
+
+		utterance.getRelation(Relation.TARGET).appendItem();
+		assertEquals("3", path.findFeature(segment.getNext()));
+
+		utterance.setString("test", "x");
+		assertEquals("4", path.findFeature(segment.getNext()));
+		assertEquals("5", path.findFeature(segment));
+		voice.deallocate();
+	}
+
+	/** Utterances of a voice that does not memoize features have no memo. */
+	@Test
+	public void testOff() {
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.allocate();
+		assertNull(voice.process("Hello world.").get(0).getFeatureMemo());
+		assertEquals(0, voice.getFeatureMemoLookups());
+		voice.deallocate();
+	}
+
+	private static List<Utterance> process(String text, boolean memoize) {
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.setMemoizeFeatures(memoize);
+		voice.allocate();
+		List<Utterance> utterances = voice.process(text);
+		voice.deallocate();
+		return utterances;
+	}
+
+	private static String dump(List<Utterance> utterances) {
+		StringWriter out = new StringWriter();
+		PrintWriter pw = new PrintWriter(out);
+		for (Utterance utterance : utterances) {
+			utterance.dump(pw, 0, "utterance", true);
+		}
+		pw.flush();
+		return out.toString();
+	}
+
+	/** A feature processor that counts how often it is run. */
+	private static class CountingProcessor implements FeatureProcessor {
+		private int count;
+
+		public String process(Item item) {
+			return Integer.toString(++count);
+		}
+	}
+}
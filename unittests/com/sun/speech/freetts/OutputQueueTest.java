@@ -0,0 +1,177 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/** Test case for the OutputQueue. */
+public class OutputQueueTest {
+	private final static int COUNT = 100000;
+
+	@Test
+	public void testOrder() {
+		OutputQueue queue = new OutputQueue(3);
+		Utterance[] utterances = newUtterances(3);
+		queue.post(utterances[0]);
+		queue.post(utterances, 1, 2);
+		Utterance[] batch = new Utterance[2];
+		assertEquals(2, queue.pend(batch));
+		assertSame(utterances[0], batch[0]);
+		assertSame(utterances[1], batch[1]);
+		assertSame(utterances[2], queue.pend());
+	}
+
+	/** A post to a full queue waits for a pend. */
+	@Test(timeout = 10000)
+	public void testFull() throws Exception {
+		final OutputQueue queue = new OutputQueue(2);
+		final Utterance[] utterances = newUtterances(5);
+		Thread producer = new Thread() {
+			public void run() {
+				queue.post(utterances, 0, 5);
+			}
+		};
+		producer.start();
+		for (int i = 0; i < 5; i++) {
+			assertSame(utterances[i], queue.pend());
+		}
+		producer.join();
+	}
+
+	/** Utterances posted before a close are still pended; after them every pend returns null. */
+	@Test(timeout = 10000)
+	public void testClose() throws Exception {
+		final OutputQueue queue = new OutputQueue();
+		Utterance utterance = new Utterance(null);
+		queue.post(utterance);
+		queue.close();
+		assertTrue(queue.isClosed());
+		assertSame(utterance, queue.pend());
+		assertNull(queue.pend());
+		assertNull(queue.pend());
+		try {
+			queue.post(utterance);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+
+		// a waiting consumer is woken by the close
+		final OutputQueue waiting = new OutputQueue();
+		final Utterance[] result = { utterance };
+		Thread consumer = new Thread() {
+			public void run() {
+				result[0] = waiting.pend();
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+		waiting.close();
+		consumer.join();
+		assertNull(result[0]);
+	}
+
+	@Test(timeout = 10000)
+	public void testInterrupt() throws Exception {
+		final OutputQueue queue = new OutputQueue();
+		final Utterance[] result = { new Utterance(null) };
+		Thread consumer = new Thread() {
+			public void run() {
+				result[0] = queue.pend();
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+		consumer.interrupt();
+		consumer.join();
+		assertNull(result[0]);
+	}
+
+	@Test
+	public void testRemoveAll() {
+		OutputQueue queue = new OutputQueue(4);
+		queue.post(newUtterances(4), 0, 4);
+		int removeCount = queue.getRemoveCount();
+		queue.removeAll();
+		assertEquals(removeCount + 1, queue.getRemoveCount());
+		Utterance utterance = new Utterance(null);
+		queue.post(utterance);
+		assertSame(utterance, queue.pend());
+	}
+
+	/** Every utterance of two producers reaches exactly one of four consumers, and each producer's utterances are taken
+	 * in the order they were posted. */
+	@Test(timeout = 60000)
+	public void testConsumers() throws Exception {
+		final OutputQueue queue = new OutputQueue(8);
+		final Utterance[] utterances = newUtterances(COUNT);
+		final AtomicIntegerArray seen = new AtomicIntegerArray(COUNT);
+		final AtomicInteger taken = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+
+		Thread[] consumers = new Thread[4];
+		for (int c = 0; c < consumers.length; c++) {
+			final boolean batched = c % 2 == 0;
+			consumers[c] = new Thread() {
+				public void run() {
+					Utterance[] batch = new Utterance[batched ? 3 : 1];
+					int[] last = { -1, -1 };
+					int count;
+					while ((count = queue.pend(batch)) > 0) {
+						for (int i = 0; i < count; i++) {
+							int n = batch[i].getInt("n");
+							seen.incrementAndGet(n);
+							if (n <= last[n % 2]) {
+								failures.incrementAndGet();
+							}
+							last[n % 2] = n;
+						}
+						taken.addAndGet(count);
+					}
+				}
+			};
+			consumers[c].start();
+		}
+
+		Thread[] producers = new Thread[2];
+		for (int p = 0; p < producers.length; p++) {
+			final int first = p;
+			producers[p] = new Thread() {
+				public void run() {
+					for (int i = first; i < COUNT; i += 2) {
+						queue.post(utterances[i]);
+					}
+				}
+			};
+			producers[p].start();
+		}
+		for (int p = 0; p < producers.length; p++) {
+			producers[p].join();
+		}
+		queue.close();
+		for (int c = 0; c < consumers.length; c++) {
+			consumers[c].join();
+		}
+
+		assertEquals(COUNT, taken.get());
+		for (int i = 0; i < COUNT; i++) {
+			assertEquals(1, seen.get(i));
+		}
+		assertEquals(0, failures.get());
+	}
+
+	private static Utterance[] newUtterances(int count) {
+		Utterance[] utterances = new Utterance[count];
+		for (int i = 0; i < count; i++) {
+			utterances[i] = new Utterance(null);
+			utterances[i].setInt("n", i);
+		}
+		return utterances;
+	}
+}
@@ -0,0 +1,199 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.speech.freetts.en.us.FrontEndVoice;
+
+/** Compares the compiled paths of PathExtractorImpl with the paths interpreted by Item, for every path of the bundled
+ * CARTs and of the front-end processors, on every item of the utterances that the front-end creates for a test text. */
+public class PathExtractorImplTest {
+	private final static String CART_DIR = "src/com/sun/speech/freetts/en/us/";
+	private final static String[] CARTS = { "nums_cart.txt", "phrasing_cart.txt", "int_accent_cart.txt",
+			"int_tone_cart.txt", "durz_cart.txt" };
+	private final static String[] RELATIONS = { Relation.TOKEN, Relation.WORD, Relation.PHRASE, Relation.SYLLABLE,
+			Relation.SYLLABLE_STRUCTURE, Relation.SEGMENT, Relation.TARGET };
+
+	// the paths of the processors that do not come from a CART
+	private final static String[] PATHS = { "R:SylStructure.daughter.R:Segment.p.end", "R:SylStructure.daughtern.end",
+			"R:SylStructure.daughter.R:Segment.p.name", "R:SylStructure.daughtern.R:Segment.n.name", "R:Segment.p.end",
+			"R:SylStructure.parent.R:Token.parent.local_f0_shift", "R:SylStructure.parent.R:Token.parent.local_f0_range",
+			"R:Token.parent.punc", "R:SylStructure.parent.parent.name", "p.ph_vc", "n.ph_vc",
+			"R:SylStructure.parent.parent.R:Token.parent.local_duration_stretch", "nn.name", "pp.name",
+			"R:SylStructure.daughter1.name" };
+
+	private final static String[] ITEM_PATHS = { "R:SylStructure.daughtern.daughtern.R:Segment",
+			"R:SylStructure.parent.R:Phrase.parent.daughter.R:SylStructure.daughter",
+			"R:SylStructure.parent.R:Phrase.parent.daughtern.R:SylStructure.daughter",
+			"R:SylStructure.parent.R:Phrase.parent.daughtern.R:SylStructure.daughtern",
+			"R:SylStructure.parent.R:Phrase.parent.p" };
+
+	private static List<Utterance> utterances;
+
+	@BeforeClass
+	public static void processText() throws IOException {
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.allocate();
+		utterances = voice.process(FrontEndVoice.readText("unittests/tests/data/alice2"));
+		voice.deallocate();
+		assertTrue(utterances.size() > 10);
+	}
+
+	/** Every feature path must give what Item finds by interpreting it. */
+	@Test
+	public void testFeaturePaths() throws IOException {
+		Set<String> paths = new TreeSet<String>();
+		for (int i = 0; i < CARTS.length; i++) {
+			paths.addAll(readPaths(CART_DIR + CARTS[i]));
+		}
+		for (int i = 0; i < PATHS.length; i++) {
+			paths.add(PATHS[i]);
+		}
+		assertTrue(paths.size() > 60);
+
+		int count = 0;
+		for (String path : paths) {
+			PathExtractor extractor = new PathExtractorImpl(path, true);
+			for (Utterance utterance : utterances) {
+				for (int r = 0; r < RELATIONS.length; r++) {
+					Relation relation = utterance.getRelation(RELATIONS[r]);
+					for (Item item = relation == null ? null : relation.getHead(); item != null; item = item.getNext()) {
+						assertEquals(path + " on " + item, findFeature(item, path), findFeature(extractor, item));
+						count++;
+					}
+				}
+			}
+		}
+		assertTrue(count > 100000);
+	}
+
+	/** Every item path must lead to the item Item finds by interpreting it. */
+	@Test
+	public void testItemPaths() {
+		for (int i = 0; i < ITEM_PATHS.length; i++) {
+			PathExtractor extractor = new PathExtractorImpl(ITEM_PATHS[i], false);
+			for (Utterance utterance : utterances) {
+				for (int r = 0; r < RELATIONS.length; r++) {
+					Relation relation = utterance.getRelation(RELATIONS[r]);
+					for (Item item = relation == null ? null : relation.getHead(); item != null; item = item.getNext()) {
+						assertSame(ITEM_PATHS[i] + " on " + item, item.findItem(ITEM_PATHS[i]), extractor.findItem(item));
+					}
+				}
+			}
+		}
+	}
+
+	/** A path shared by voices must use the feature processor of the voice of each item, and see processors that a
+	 * voice adds later. */
+	@Test
+	public void testVoices() {
+		FrontEndVoice[] voices = { new FrontEndVoice(), new FrontEndVoice() };
+		Item[] items = new Item[voices.length];
+		for (int i = 0; i < voices.length; i++) {
+			voices[i].allocate();
+			voices[i].addFeatureProcessor("test_feature", new ConstantProcessor("voice" + i));
+			items[i] = voices[i].process("Hello.").get(0).getRelation(Relation.SEGMENT).getHead();
+		}
+		PathExtractor extractor = new PathExtractorImpl("n.test_feature", true);
+		for (int k = 0; k < 10; k++) {
+			for (int i = 0; i < voices.length; i++) {
+				assertEquals("voice" + i, extractor.findFeature(items[i]));
+			}
+		}
+		voices[1].addFeatureProcessor("test_feature", new ConstantProcessor("again"));
+		assertEquals("voice0", extractor.findFeature(items[0]));
+		assertEquals("again", extractor.findFeature(items[1]));
+		for (int i = 0; i < voices.length; i++) {
+			voices[i].deallocate();
+		}
+	}
+
+	/** A path that was used by a voice must not keep the voice from being collected. */
+	@Test
+	public void testVoiceCollected() throws InterruptedException {
+		PathExtractor extractor = new PathExtractorImpl("test_feature", true);
+		WeakReference<Voice> voice = useVoice(extractor);
+		for (int i = 0; i < 50 && voice.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(voice.get());
+	}
+
+	/** Finds a feature of an item of a new voice with a path extractor.
+	 * @return the voice, weakly referenced */
+	private static WeakReference<Voice> useVoice(PathExtractor extractor) {
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.addFeatureProcessor("test_feature", new ConstantProcessor("voice"));
+		Item item = new Utterance(voice).createRelation(Relation.SEGMENT).appendItem();
+		assertEquals("voice", extractor.findFeature(item));
+		return new WeakReference<Voice>(voice);
+	}
+
+	/** Finds a feature with a path extractor and returns either the result or the class of the exception. */
+	private static Object findFeature(PathExtractor extractor, Item item) {
+		try {
+			return extractor.findFeature(item);
+		} catch (RuntimeException re) {
+			return re.getClass();
+		}
+	}
+
+	/** Finds a feature by interpreting a path and returns either the result or the class of the exception. */
+	private static Object findFeature(Item item, String path) {
+		try {
+			return item.findFeature(path);
+		} catch (RuntimeException re) {
+			return re.getClass();
+		}
+	}
+
+	/** Reads the feature paths of the nodes of a text CART.
+	 * @param path the path of the CART file
+	 * @return the feature paths */
+	private static List<String> readPaths(String path) throws IOException {
+		List<String> paths = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("NODE ")) {
+					StringTokenizer tokenizer = new StringTokenizer(line, " ");
+					tokenizer.nextToken();
+					paths.add(tokenizer.nextToken());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return paths;
+	}
+
+	/** A feature processor that always gives the same value. */
+	private static class ConstantProcessor implements FeatureProcessor {
+		private final String value;
+
+		ConstantProcessor(String value) {
+			this.value = value;
+		}
+
+		public String process(Item item) {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Checks the links between the items of relations, which relations keep by index, and the views that stand for the
+ * items and their contents. */
+public class RelationTest {
+
+	/** Appended and prepended items must be linked in order, at the top and among daughters. */
+	@Test
+	public void testLinks() {
+		Relation relation = new Utterance(null).createRelation("test");
+		Item b = relation.appendItem();
+		Item d = relation.appendItem();
+		Item c = b.appendItem(null);
+		Item a = b.prependItem(null);
+		assertOrder(relation.getHead(), new Item[] { a, b, c, d });
+		assertSame(a, relation.getHead());
+		assertSame(d, relation.getTail());
+		Item e = d.appendItem(null);
+		assertSame(e, relation.getTail());
+
+		Item d2 = b.createDaughter();
+		Item d1 = d2.prependItem(null);
+		Item d4 = b.createDaughter();
+		Item d3 = d2.appendItem(null);
+		Item d5 = d4.appendItem(null);
+		assertTrue(b.hasDaughters());
+		assertFalse(a.hasDaughters());
+		assertOrder(b.getDaughter(), new Item[] { d1, d2, d3, d4, d5 });
+		assertSame(d1, b.getDaughter());
+		assertSame(d5, b.getLastDaughter());
+		assertSame(d3, b.getNthDaughter(2));
+		assertNull(b.getNthDaughter(5));
+		assertSame(b, d1.getParent());
+		assertSame(b, d5.getParent());
+		assertNull(b.getParent());
+		assertSame(e, relation.getTail());
+	}
+
+	/** Items with the same contents must share features and find one another in every relation. */
+	@Test
+	public void testSharedContents() {
+		Utterance utterance = new Utterance(null);
+		Relation words = utterance.createRelation(Relation.WORD);
+		Relation structure = utterance.createRelation(Relation.SYLLABLE_STRUCTURE);
+		Item word = words.appendItem();
+		word.getFeatures().setString("name", "hello");
+		Item wordStructure = structure.appendItem(word);
+		Item syllable = wordStructure.createDaughter();
+
+		assertEquals("hello", wordStructure.getFeatures().getString("name"));
+		assertSame(word.getFeatures(), wordStructure.getFeatures());
+		assertSame(word.getSharedContents(), wordStructure.getSharedContents());
+		assertTrue(word.equalsShared(wordStructure));
+		assertFalse(word.equalsShared(syllable));
+		assertSame(wordStructure, word.getItemAs(Relation.SYLLABLE_STRUCTURE));
+		assertSame(word, wordStructure.getItemAs(Relation.WORD));
+		assertNull(syllable.getItemAs(Relation.WORD));
+		assertNull(word.getItemAs(Relation.SEGMENT));
+		assertSame(word, syllable.findItem("parent.R:Word"));
+		assertSame(wordStructure, syllable.findItem("R:SylStructure.parent"));
+	}
+
+	/** Contents made on their own, or of another utterance, must keep their features when items use them. */
+	@Test
+	public void testItemContents() {
+		ItemContents contents = new ItemContents();
+		contents.getFeatures().setString("name", "own");
+		Relation relation = new Utterance(null).createRelation("test");
+		Item item = new Item(relation, contents);
+		assertSame(contents, item.getSharedContents());
+		assertEquals("own", item.getFeatures().getString("name"));
+		assertSame(item, contents.getItemRelation("test"));
+
+		Relation other = new Utterance(null).createRelation("other");
+		Item copy = other.appendItem(item);
+		assertSame(item.getFeatures(), copy.getFeatures());
+		assertNull(copy.getItemAs("test"));
+	}
+
+	/** Items of one utterance appended with the same item of another utterance must share their contents. */
+	@Test
+	public void testForeignContents() {
+		Item source = new Utterance(null).createRelation(Relation.WORD).appendItem();
+		source.getFeatures().setString("name", "hello");
+		Utterance utterance = new Utterance(null);
+		Item word = utterance.createRelation(Relation.WORD).appendItem(source);
+		Item wordStructure = utterance.createRelation(Relation.SYLLABLE_STRUCTURE).appendItem(source);
+		assertTrue(word.equalsShared(wordStructure));
+		assertSame(wordStructure, word.getItemAs(Relation.SYLLABLE_STRUCTURE));
+		assertSame(word, wordStructure.getItemAs(Relation.WORD));
+		assertEquals("hello", wordStructure.getFeatures().getString("name"));
+	}
+
+	private static void assertOrder(Item first, Item[] items) {
+		Item item = first;
+		for (int i = 0; i < items.length; i++) {
+			assertSame(items[i], item);
+			assertSame(i == 0 ? null : items[i - 1], item.getPrevious());
+			item = item.getNext();
+		}
+		assertNull(item);
+	}
+}
@@ -0,0 +1,130 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/** Compares SlotFeatureSet with FeatureSetImpl, which keeps the features in a map. */
+public class SlotFeatureSetTest {
+	private final static int END = FeatureSlots.getSlot("end");
+
+	@Test
+	public void testSlots() {
+		int slot = FeatureSlots.getSlot("end");
+		assertEquals(END, slot);
+		assertEquals("end", FeatureSlots.getName(slot));
+		assertTrue(FeatureSlots.getSlot("a feature no one else uses") < FeatureSlots.size());
+	}
+
+	@Test
+	public void testValues() {
+		SlottedFeatureSet features = new SlotFeatureSet();
+		features.setString("name", "ax");
+		features.setInt("count", 3);
+		features.setFloat(END, 0.25f);
+		Object value = new Object();
+		features.setObject("value", value);
+
+		assertEquals("ax", features.getString("name"));
+		assertEquals(3, features.getInt("count"));
+		assertEquals(Integer.valueOf(3), features.getObject("count"));
+		assertEquals(0.25f, features.getFloat("end"), 0.0f);
+		assertEquals(0.25f, features.getFloat(END), 0.0f);
+		assertEquals(new Float(0.25f), features.getObject(END));
+		assertSame(value, features.getObject("value"));
+		assertNull(features.getObject("missing"));
+		assertFalse(features.isPresent("missing"));
+
+		// boxed values are kept unboxed, and a new value replaces the old box
+		features.setObject("count", Integer.valueOf(4));
+		assertEquals(4, features.getInt("count"));
+		features.setInt("count", 5);
+		assertEquals(Integer.valueOf(5), features.getObject("count"));
+	}
+
+	@Test
+	public void testErrors() {
+		FeatureSet features = new SlotFeatureSet();
+		features.setString("name", "ax");
+		features.setFloat("end", 0.25f);
+		try {
+			features.getInt("missing");
+			fail();
+		} catch (NullPointerException e) {
+		}
+		try {
+			features.getFloat("name");
+			fail();
+		} catch (ClassCastException e) {
+		}
+		try {
+			features.getInt("end");
+			fail();
+		} catch (ClassCastException e) {
+		}
+	}
+
+	/** Looking up a name no set has ever been given must find it absent without giving it a slot. */
+	@Test
+	public void testLookupUnknown() {
+		SlotFeatureSet features = new SlotFeatureSet();
+		int size = FeatureSlots.size();
+		assertFalse(features.isPresent("a name only looked up"));
+		assertNull(features.getObject("a name only looked up"));
+		assertNull(features.getString("a name only looked up"));
+		features.remove("a name only looked up");
+		assertEquals(-1, FeatureSlots.findSlot("a name only looked up"));
+		assertEquals(size, FeatureSlots.size());
+	}
+
+	/** Both sets must keep their features in the same order and dump them the same way. */
+	@Test
+	public void testDump() {
+		FeatureSetImpl expected = new FeatureSetImpl();
+		SlotFeatureSet actual = new SlotFeatureSet(1);
+		fill(expected);
+		fill(actual);
+		assertEquals(dump(expected, false), dump(actual, false));
+		assertEquals(dump(expected, true), dump(actual, true));
+
+		expected.remove("f0");
+		actual.remove(FeatureSlots.getSlot("f0"));
+		expected.remove("missing");
+		actual.remove("missing");
+		expected.setFloat("f0", 120.0f);
+		actual.setFloat("f0", 120.0f);
+		assertEquals(dump(expected, true), dump(actual, true));
+		assertFalse(actual.isPresent("f0") ^ expected.isPresent("f0"));
+	}
+
+	private static void fill(FeatureSet features) {
+		features.setString("name", "ax");
+		features.setFloat("end", 0.125f);
+		features.setFloat("f0", 110.0f);
+		features.setInt("count", 7);
+		features.setString("pos", "nn");
+		features.setObject("none", null);
+		// a new value keeps the place of the old one
+		features.setFloat("end", 0.25f);
+	}
+
+	private static String dump(FeatureSet features, boolean showName) {
+		StringWriter out = new StringWriter();
+		PrintWriter pw = new PrintWriter(out);
+		if (features instanceof FeatureSetImpl) {
+			((FeatureSetImpl) features).dump(pw, 0, "features", showName);
+		} else {
+			((SlotFeatureSet) features).dump(pw, 0, "features", showName);
+		}
+		pw.flush();
+		return out.toString();
+	}
+}
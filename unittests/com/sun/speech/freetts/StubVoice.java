@@ -0,0 +1,30 @@
+package com.sun.speech.freetts;
+
+import java.io.IOException;
+
+import com.sun.speech.freetts.en.TokenizerImpl;
+import com.sun.speech.freetts.lexicon.NoLexicon;
+import com.sun.speech.freetts.relp.AudioOutput;
+
+/** A voice without data of its own, which only splits its text into utterances. The tests add the utterance processors
+ * they need, or replace the audio output. */
+public class StubVoice extends Voice {
+
+	/** Creates a voice with a lexicon without words.
+	 * @param name the name of the voice */
+	public StubVoice(String name) {
+		setName(name);
+		setLexicon(new NoLexicon());
+	}
+
+	public Tokenizer getTokenizer() {
+		return new TokenizerImpl();
+	}
+
+	protected void loader() throws IOException {
+	}
+
+	protected UtteranceProcessor getAudioOutput() throws IOException {
+		return new AudioOutput();
+	}
+}
@@ -0,0 +1,86 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/** Checks that voice data is loaded once however many threads ask for it, and that a failed load is tried again. */
+public class VoiceDataRegistryTest {
+	@Test(timeout = 10000)
+	public void testConcurrentLoad() throws Exception {
+		final URL url = new URL("file:/voice/data/concurrent.txt");
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final VoiceDataRegistry.Loader loader = new VoiceDataRegistry.Loader() {
+			public Object load(URL url) throws IOException {
+				loads.incrementAndGet();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ie) {
+				}
+				return new Object();
+			}
+		};
+
+		final Object[] results = new Object[16];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						results[index] = VoiceDataRegistry.get("test", url, loader);
+					} catch (Exception e) {
+						results[index] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+
+		assertEquals(1, loads.get());
+		for (int i = 1; i < results.length; i++) {
+			assertSame(results[0], results[i]);
+		}
+		// the kind tells apart data read from the same URL
+		assertNotSame(results[0], VoiceDataRegistry.get("other test", url, loader));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testFailedLoad() throws Exception {
+		URL url = new URL("file:/voice/data/failing.txt");
+		final AtomicInteger loads = new AtomicInteger();
+		VoiceDataRegistry.Loader loader = new VoiceDataRegistry.Loader() {
+			public Object load(URL url) throws IOException {
+				if (loads.incrementAndGet() == 1) {
+					throw new IOException("no data");
+				}
+				return "data";
+			}
+		};
+
+		try {
+			VoiceDataRegistry.get("test", url, loader);
+			fail();
+		} catch (IOException ioe) {
+			assertEquals("no data", ioe.getMessage());
+		}
+		assertEquals("data", VoiceDataRegistry.get("test", url, loader));
+		assertEquals("data", VoiceDataRegistry.get("test", url, loader));
+		assertEquals(2, loads.get());
+	}
+}
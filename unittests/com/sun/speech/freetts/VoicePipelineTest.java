@@ -0,0 +1,115 @@
+package com.sun.speech.freetts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+
+/** Test case for the pipelined utterance processing in Voice. */
+public class VoicePipelineTest {
+	private final static String TEXT = "This is one. This is two. This is three. This is four. This is five. "
+			+ "This is six. This is seven. This is eight.";
+
+	/** The pipelined voice must hand utterances to the back-end in the same order as the sequential voice. */
+	@Test
+	public void testOrderIsKept() throws Exception {
+		RecordingVoice sequential = new RecordingVoice(0);
+		assertTrue(sequential.speak(TEXT));
+
+		RecordingVoice pipelined = new RecordingVoice(3);
+		assertTrue(pipelined.speak(TEXT));
+
+		assertEquals(8, sequential.output.size());
+		assertEquals(sequential.output, pipelined.output);
+		assertNotSame(pipelined.backEndThread, pipelined.frontEndThread);
+		pipelined.deallocate();
+	}
+
+	/** A depth below 1 must still let the front-end run one utterance ahead, not speak nothing. */
+	@Test
+	public void testZeroDepth() throws Exception {
+		System.setProperty(Voice.PROP_PIPELINE_DEPTH, "0");
+		RecordingVoice pipelined;
+		try {
+			pipelined = new RecordingVoice(3);
+		} finally {
+			System.clearProperty(Voice.PROP_PIPELINE_DEPTH);
+		}
+		assertTrue(pipelined.speak(TEXT));
+		assertEquals(8, pipelined.output.size());
+		pipelined.deallocate();
+	}
+
+	/** Emptying the output queue must drop the utterances that are still in the front-end. */
+	@Test
+	public void testRemoveAllCancels() throws Exception {
+		RecordingVoice pipelined = new RecordingVoice(3);
+		pipelined.removeAllAfter = 2;
+		assertFalse(pipelined.speak(TEXT));
+		assertTrue(pipelined.output.size() <= 2);
+		pipelined.deallocate();
+	}
+
+	/** A voice that records the order in which utterances reach the output queue. */
+	private static class RecordingVoice extends StubVoice {
+		final List<String> output = Collections.synchronizedList(new ArrayList<String>());
+		volatile Thread frontEndThread;
+		volatile Thread backEndThread;
+		int removeAllAfter = -1;
+		private int backEndCount = 0;
+
+		RecordingVoice(int split) {
+			super("recording");
+			setAudioPlayer(new NullAudioPlayer());
+			setPipelineSplit(split);
+			final OutputQueue queue = new OutputQueue();
+			setOutputQueue(queue);
+			for (int i = 0; i < 3; i++) {
+				final String stage = "stage" + i;
+				getUtteranceProcessors().add(new UtteranceProcessor() {
+					public void processUtterance(Utterance u) {
+						frontEndThread = Thread.currentThread();
+						String done = u.isPresent("stages") ? u.getString("stages") : "";
+						u.setString("stages", done + stage);
+						Thread.yield();
+					}
+				});
+			}
+			getUtteranceProcessors().add(new UtteranceProcessor() {
+				public void processUtterance(Utterance u) {
+					backEndThread = Thread.currentThread();
+					assertEquals("stage0stage1stage2", u.getString("stages"));
+					if (++backEndCount == removeAllAfter) {
+						queue.removeAll();
+					}
+				}
+			});
+			Thread consumer = new Thread() {
+				public void run() {
+					Utterance u;
+					while ((u = queue.pend()) != null) {
+						output.add(u.getString("input_text"));
+						if (u.isLast()) {
+							u.getSpeakable().completed();
+						}
+					}
+				}
+			};
+			consumer.setDaemon(true);
+			consumer.start();
+		}
+
+		protected UtteranceProcessor getAudioOutput() throws IOException {
+			return null;
+		}
+	}
+}
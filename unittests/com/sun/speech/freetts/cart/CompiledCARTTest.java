@@ -0,0 +1,115 @@
+package com.sun.speech.freetts.cart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.en.us.FrontEndVoice;
+
+/** Differential test of CompiledCART against CARTImpl. Every bundled CART is interpreted on the items of the utterances
+ * that the front-end creates for the recorded test texts. */
+public class CompiledCARTTest {
+	private final static String CART_DIR = "file:src/com/sun/speech/freetts/en/us/";
+	private final static String[] TEXTS = { "unittests/tests/data/alice2", "unittests/tests/data/TokenGame.txt",
+			"unittests/tests/data/numbers.test" };
+
+	private static List<Utterance> utterances = new ArrayList<Utterance>();
+
+	@BeforeClass
+	public static void processTexts() throws IOException {
+		FrontEndVoice voice = new FrontEndVoice();
+		voice.allocate();
+		for (int i = 0; i < TEXTS.length; i++) {
+			utterances.addAll(voice.process(FrontEndVoice.readText(TEXTS[i])));
+		}
+		voice.deallocate();
+		assertTrue(utterances.size() > 10);
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		compare("nums_cart.txt", Relation.TOKEN);
+	}
+
+	@Test
+	public void testPhrasing() throws IOException {
+		compare("phrasing_cart.txt", Relation.WORD);
+	}
+
+	@Test
+	public void testAccent() throws IOException {
+		compare("int_accent_cart.txt", Relation.SYLLABLE);
+	}
+
+	@Test
+	public void testTone() throws IOException {
+		compare("int_tone_cart.txt", Relation.SYLLABLE);
+	}
+
+	@Test
+	public void testDuration() throws IOException {
+		compare("durz_cart.txt", Relation.SEGMENT);
+	}
+
+	/** The compiled CART, and the compiled CART read back from both binary forms, must interpret every item of the
+	 * relation like the CARTImpl.
+	 * @param name the name of the CART
+	 * @param relation the relation the CART is applied to */
+	private void compare(String name, String relation) throws IOException {
+		CARTImpl expected = new CARTImpl(new URL(CART_DIR + name));
+		CompiledCART compiled = new CompiledCART(expected);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream os = new DataOutputStream(bytes);
+		compiled.dumpBinary(os);
+		os.close();
+		CART[] carts = { compiled, CompiledCART.loadBinary(ByteBuffer.wrap(bytes.toByteArray())),
+				CompiledCART.loadBinary(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) };
+
+		int count = 0;
+		for (Utterance utterance : utterances) {
+			Relation r = utterance.getRelation(relation);
+			for (Item item = r == null ? null : r.getHead(); item != null; item = item.getNext()) {
+				Object result = interpret(expected, item);
+				for (int i = 0; i < carts.length; i++) {
+					assertSame(name + " on " + item, result, interpret(carts[i], item));
+				}
+				count++;
+			}
+		}
+		assertTrue(count > 100);
+	}
+
+	/** Interprets an item and returns either the result or the class of the exception that was thrown. */
+	private static Object interpret(CART cart, Item item) {
+		try {
+			return cart.interpret(item);
+		} catch (RuntimeException re) {
+			return re.getClass();
+		}
+	}
+
+	private static void assertSame(String message, Object expected, Object actual) {
+		if (expected instanceof int[]) {
+			assertTrue(message, Arrays.equals((int[]) expected, (int[]) actual));
+		} else {
+			assertEquals(message, expected, actual);
+		}
+	}
+}
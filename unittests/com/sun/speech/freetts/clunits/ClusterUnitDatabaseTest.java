@@ -0,0 +1,180 @@
+package com.sun.speech.freetts.clunits;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.speech.freetts.relp.MappedSampleSet;
+import com.sun.speech.freetts.relp.Sample;
+import com.sun.speech.freetts.relp.SampleSet;
+
+/** Compares a cluster unit database loaded from text, from a copied binary and from a mapped binary. The database is a
+ * small random one written by the test. */
+public class ClusterUnitDatabaseTest {
+	private final static int UNITS = 40;
+	private final static int FRAMES = 400;
+
+	private File dir;
+	private ClusterUnitDatabase text;
+	private ClusterUnitDatabase copied;
+	private ClusterUnitDatabase mapped;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("clunits", "");
+		dir.delete();
+		dir.mkdir();
+		File txt = new File(dir, "clunits.txt");
+		RandomClusterUnitDatabase database = new RandomClusterUnitDatabase(new String[] { "a", "b" }, UNITS / 2,
+				FRAMES / UNITS);
+		database.setJoinWeights(new int[] { 32768, 32768, 16384, 8192, 49152, 4096 });
+		database.setPhones(7);
+		database.setResiduals(20, 100);
+		database.write(txt, new Random(42));
+		text = new ClusterUnitDatabase(txt.toURI().toURL(), false);
+		File bin = new File(dir, "clunits.bin");
+		text.dumpBinary(bin.getPath());
+		copied = new ClusterUnitDatabase(bin.toURI().toURL(), true, false);
+		mapped = new ClusterUnitDatabase(bin.toURI().toURL(), true, true);
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testMappedSamples() {
+		assertTrue(mapped.getSts() instanceof MappedSampleSet);
+		assertTrue(mapped.getMcep() instanceof MappedSampleSet);
+		assertSameSamples(text.getSts(), copied.getSts());
+		assertSameSamples(text.getSts(), mapped.getSts());
+		assertSameSamples(text.getMcep(), mapped.getMcep());
+	}
+
+	@Test
+	public void testMappedUnits() {
+		for (ClusterUnitDatabase db : new ClusterUnitDatabase[] { copied, mapped }) {
+			assertEquals(UNITS, db.getNumberOfUnits());
+			for (int i = 0; i < UNITS; i++) {
+				assertEquals(text.getStart(i), db.getStart(i));
+				assertEquals(text.getEnd(i), db.getEnd(i));
+				assertEquals(text.getPhone(i), db.getPhone(i));
+				assertEquals(text.getPrevUnit(i), db.getPrevUnit(i));
+				assertEquals(text.getNextUnit(i), db.getNextUnit(i));
+				assertEquals(text.getUnit(i).getName(), db.getUnit(i).getName());
+				assertEquals(text.isUnitTypeEqual(i, 0), db.isUnitTypeEqual(i, 0));
+			}
+			assertEquals(text.getUnitIndex("b", 3), db.getUnitIndex("b", 3));
+			assertArrayEquals(text.getJoinWeights(), db.getJoinWeights());
+		}
+	}
+
+	/** A mapped database must dump exactly the file it was loaded from. */
+	@Test
+	public void testDumpMapped() throws IOException {
+		File again = new File(dir, "again.bin");
+		mapped.dumpBinary(again.getPath());
+		assertArrayEquals(read(new File(dir, "clunits.bin")), read(again));
+	}
+
+	/** The id of a unit type must find its CART and its units in every form of the database. */
+	@Test
+	public void testUnitTypeIds() {
+		for (ClusterUnitDatabase db : new ClusterUnitDatabase[] { text, copied, mapped }) {
+			assertEquals(0, db.getUnitTypeIndex("a"));
+			assertEquals(1, db.getUnitTypeIndex("b"));
+			assertEquals(-1, db.getUnitTypeIndex("c"));
+			assertEquals("a_0", db.getTree(0, "a").interpret(null));
+			assertEquals("b_0", db.getTree(1, "b").interpret(null));
+			// an unknown type falls back on the first CART, and is reported by its name
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			PrintStream systemErr = System.err;
+			System.setErr(new PrintStream(err, true));
+			try {
+				assertEquals("a_0", db.getTree(-1, "c").interpret(null));
+			} finally {
+				System.setErr(systemErr);
+			}
+			assertEquals("ClusterUnitDatabase: can't find tree for c", err.toString().trim());
+			for (int i = 0; i < 20; i++) {
+				assertEquals(text.getUnitIndex("b", i), db.getUnitIndex(1, i));
+			}
+			assertEquals(db.getUnitType(25), db.getUnitTypeIndex("b"));
+		}
+	}
+
+	/** The decoded frames must give the distances computed from the samples. */
+	@Test
+	public void testFrameDistance() {
+		for (ClusterUnitDatabase db : new ClusterUnitDatabase[] { text, copied, mapped }) {
+			FrameDistance frameDistance = db.getFrameDistance();
+			assertEquals(6, frameDistance.getOrder());
+			for (int a = 0; a < FRAMES; a++) {
+				for (int b = 0; b < FRAMES; b++) {
+					int expected = 0;
+					Sample av = db.getMcep().getSample(a);
+					Sample bv = db.getMcep().getSample(b);
+					for (int i = 0; i < frameDistance.getOrder(); i++) {
+						expected += Math.abs(av.getFrameData(i) - bv.getFrameData(i)) * db.getJoinWeights()[i] / 65536;
+					}
+					assertEquals(expected, frameDistance.getFrameDistance(a, b));
+					expected += Math.abs(db.getSts().getFrameSize(a) - db.getSts().getFrameSize(b))
+							* db.getContinuityWeight();
+					assertEquals(expected, frameDistance.getJoinDistance(a, b));
+				}
+			}
+		}
+	}
+
+	private static void assertSameSamples(SampleSet expected, SampleSet actual) {
+		assertEquals(expected.getNumberOfSamples(), actual.getNumberOfSamples());
+		for (int i = 0; i < expected.getNumberOfSamples(); i++) {
+			Sample e = expected.getSample(i);
+			Sample a = actual.getSample(i);
+			assertArrayEquals(e.getFrameData(), a.getFrameData());
+			assertArrayEquals(e.getResidualData(), a.getResidualData());
+			assertEquals(e.getResidualSize(), a.getResidualSize());
+			assertEquals(expected.getFrameSize(i), actual.getFrameSize(i));
+			for (int k = 0; k < e.getFrameData().length; k++) {
+				assertEquals(e.getFrameData(k), a.getFrameData(k));
+			}
+			for (int k = 0; k < e.getResidualSize(); k++) {
+				assertEquals(e.getResidualData(k), a.getResidualData(k));
+			}
+			assertTrue(e.compare(a));
+		}
+		assertEquals(expected.getUnitSize(10, 50), actual.getUnitSize(10, 50));
+	}
+
+	private static byte[] read(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream is = new FileInputStream(file);
+		try {
+			int n = 0;
+			while (n < bytes.length) {
+				n += is.read(bytes, n, bytes.length - n);
+			}
+		} finally {
+			is.close();
+		}
+		return bytes;
+	}
+}
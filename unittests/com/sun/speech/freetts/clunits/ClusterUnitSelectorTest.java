@@ -0,0 +1,346 @@
+package com.sun.speech.freetts.clunits;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.en.us.FrontEndVoice;
+
+import de.dfki.lt.freetts.ClusterUnitNamer;
+
+/** Compares the units selected by the exact Viterbi search, with and without the join cost cache, and by the beam
+ * search. The database is a small random one written by the test. */
+public class ClusterUnitSelectorTest {
+	private final static int TYPES = 5;
+	private final static int INSTANCES = 30;
+	private final static int FRAMES_PER_UNIT = 8;
+	private final static int CLUSTER_SIZE = 20;
+	private final static int UTTERANCES = 20;
+	private final static int SEGMENTS = 25;
+
+	private final static ClusterUnitNamer NAMER = new ClusterUnitNamer() {
+		public void setUnitName(Item seg) {
+			// the test sets the clunit_name itself
+		}
+	};
+
+	private File file;
+	private ClusterUnitSelector selector;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("clunits", ".txt");
+		String[] types = new String[TYPES];
+		for (int t = 0; t < TYPES; t++) {
+			types[t] = "t" + t;
+		}
+		RandomClusterUnitDatabase database = new RandomClusterUnitDatabase(types, INSTANCES, FRAMES_PER_UNIT);
+		database.setShuffled(true);
+		database.setClusterSize(CLUSTER_SIZE);
+		database.write(file, new Random(7));
+		selector = new ClusterUnitSelector(file.toURI().toURL(), NAMER);
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/** The cache must not change the selection, and must be hit when the same texts are spoken again. */
+	@Test
+	public void testJoinCache() throws Exception {
+		selector.setJoinCacheSize(0);
+		List<String> expected = select();
+		assertEquals(0, selector.getJoinCacheHits());
+
+		selector.setJoinCacheSize(1 << 16);
+		assertEquals(expected, select());
+		long misses = selector.getJoinCacheMisses();
+		assertTrue(misses > 0);
+		long hits = selector.getJoinCacheHits();
+		assertEquals(expected, select());
+		// the second pass only misses where two pairs share a slot
+		assertTrue(selector.getJoinCacheHits() - hits > 4 * (selector.getJoinCacheMisses() - misses));
+
+		// a tiny cache keeps replacing its entries
+		selector.setJoinCacheSize(4);
+		assertEquals(expected, select());
+	}
+
+	/** A beam that is wider than the number of candidates must find the same path as the exact search. */
+	@Test
+	public void testWideBeam() throws Exception {
+		List<String> expected = select();
+		selector.setBeamWidth(10000);
+		assertEquals(expected, select());
+	}
+
+	/** Searches that take the points, candidates and paths of the ones before from the arena of the voice must select
+	 * the same units, with the exact search and with the beam. */
+	@Test
+	public void testArena() throws Exception {
+		FrontEndVoice voice = new FrontEndVoice();
+		List<String> expected = select();
+		assertEquals(expected, select(voice));
+		assertEquals(UTTERANCES - 1, voice.getArena().getReused());
+		assertEquals(expected, select(voice));
+
+		selector.setBeamWidth(4);
+		expected = select();
+		assertEquals(expected, select(voice));
+		assertEquals(3 * UTTERANCES - 1, voice.getArena().getReused());
+	}
+
+	/** A narrow beam over few candidates must still select a unit of the right type for every segment. */
+	@Test
+	public void testNarrowBeam() throws Exception {
+		selector.setBeamWidth(2);
+		selector.setCandidateLimit(3);
+		List<Utterance> utterances = createUtterances();
+		for (Utterance utterance : utterances) {
+			selector.processUtterance(utterance);
+			Item unit = utterance.getRelation(Relation.UNIT).getHead();
+			for (Item s = utterance.getRelation(Relation.SEGMENT).getHead(); s != null; s = s.getNext()) {
+				String name = s.getFeatures().getString("clunit_name");
+				assertTrue(((ClusterUnit) unit.getFeatures().getObject("unit")).getName().equals(name));
+				int entry = unit.getFeatures().getInt("unit_entry");
+				int type = Integer.parseInt(name.substring(1));
+				assertTrue(entry >= type * INSTANCES && entry < (type + 1) * INSTANCES);
+				unit = unit.getNext();
+			}
+		}
+		assertTrue(selector.getViterbiTime() > 0);
+		assertEquals(UTTERANCES * SEGMENTS * 0.1f, selector.getAudioTime(), 0.01f);
+	}
+
+	@Test
+	public void testQualityProperty() throws IOException {
+		assertEquals(0, selector.getBeamWidth());
+		assertEquals(0, selector.getCandidateLimit());
+		System.setProperty(ClusterUnitSelector.PROP_QUALITY, "fast");
+		System.setProperty(ClusterUnitSelector.PROP_CANDIDATE_LIMIT, "5");
+		try {
+			ClusterUnitSelector fast = new ClusterUnitSelector(file.toURI().toURL(), NAMER);
+			assertEquals(8, fast.getBeamWidth());
+			assertEquals(5, fast.getCandidateLimit());
+		} finally {
+			System.clearProperty(ClusterUnitSelector.PROP_QUALITY);
+			System.clearProperty(ClusterUnitSelector.PROP_CANDIDATE_LIMIT);
+		}
+	}
+
+	/** Scores the units selected with several join cost settings by the distance of the adjacent frames at their joins.
+	 * The search with optimal coupling 2 minimises exactly that score, so no other setting may do better. */
+	@Test
+	public void testWeights() throws Exception {
+		ClusterUnitDatabase db = new ClusterUnitDatabase(file.toURI().toURL(), false);
+		assertEquals(1, selector.getOptimalCoupling());
+		assertEquals(5, selector.getContinuityWeight());
+		assertArrayEquals(db.getJoinWeights(), selector.getJoinWeights());
+		int coupled = score(db, select());
+
+		selector.setOptimalCoupling(2);
+		assertEquals(0, selector.getJoinCacheHits());
+		List<String> adjacent = select();
+		int best = score(db, adjacent);
+		assertTrue(best <= coupled);
+
+		// scaling the join cost keeps the best path
+		selector.setContinuityWeight(50);
+		assertEquals(adjacent, select());
+		selector.setContinuityWeight(0);
+		assertTrue(score(db, select()) > best);
+		selector.setContinuityWeight(5);
+
+		selector.setF0Weight(0);
+		assertEquals(0, selector.getJoinWeights()[0]);
+		assertTrue(score(db, select()) >= best);
+		selector.setJoinWeights(new int[] { 65536 });
+		assertTrue(score(db, select()) >= best);
+
+		selector.setOptimalCoupling(0);
+		assertTrue(score(db, select()) > best);
+	}
+
+	/** The weights file next to the database sets the join cost, and the properties override it. */
+	@Test
+	public void testWeightsFile() throws Exception {
+		String path = file.getPath();
+		File weights = new File(path.substring(0, path.lastIndexOf('.')) + ClusterUnitSelector.WEIGHTS_SUFFIX);
+		PrintWriter out = new PrintWriter(new FileWriter(weights));
+		out.println("optimalCoupling = 2");
+		out.println("continuityWeight = 50");
+		out.println("joinWeights = 32768, 0, 0, 0");
+		out.close();
+		System.setProperty(ClusterUnitSelector.PROP_F0_WEIGHT, "16384");
+		try {
+			ClusterUnitSelector weighted = new ClusterUnitSelector(file.toURI().toURL(), NAMER);
+			assertEquals(2, weighted.getOptimalCoupling());
+			assertEquals(50, weighted.getContinuityWeight());
+			assertArrayEquals(new int[] { 16384, 0, 0, 0 }, weighted.getJoinWeights());
+
+			selector.setOptimalCoupling(2);
+			selector.setContinuityWeight(50);
+			selector.setJoinWeights(new int[] { 16384, 0, 0, 0 });
+			List<String> expected = select();
+			selector = weighted;
+			assertEquals(expected, select());
+		} finally {
+			System.clearProperty(ClusterUnitSelector.PROP_F0_WEIGHT);
+			weights.delete();
+		}
+	}
+
+	/** The coupling table generated with the binary database must give the couplings found by scanning the frames. */
+	@Test
+	public void testCouplingTable() throws Exception {
+		ClusterUnitDatabase db = new ClusterUnitDatabase(file.toURI().toURL(), false);
+		assertNull(db.getCouplingTable());
+		int pairs = db.computeCouplingTable(1 << 20);
+		assertTrue(pairs > 0);
+		CouplingTable table = db.getCouplingTable();
+		int found = 0;
+		Cost cost = new Cost();
+		for (int u0 = 0; u0 < db.getNumberOfUnits(); u0++) {
+			for (int u1p = 0; u1p < db.getNumberOfUnits(); u1p++) {
+				int entry = table.find(u0, u1p);
+				if (entry < 0) {
+					continue;
+				}
+				found++;
+				assertEquals(db.getPhone(u0), db.getPhone(u1p));
+				CouplingTable.scan(db, db.getFrameDistance(), u0, u1p, cost);
+				assertEquals(cost.u0Move, db.getStart(u0) + table.getU0Move(entry));
+				assertEquals(cost.u1Move, db.getStart(u1p) + table.getU1Move(entry));
+				assertEquals(cost.cost, table.getDistance(entry));
+			}
+		}
+		assertEquals(pairs, found);
+
+		String path = file.getPath();
+		File bin = new File(path.substring(0, path.lastIndexOf('.')) + ".bin");
+		try {
+			db.dumpBinary(bin.getPath());
+			selector.setJoinCacheSize(0);
+			List<String> expected = select();
+			ClusterUnitSelector scanning = selector;
+			selector = new ClusterUnitSelector(bin.toURI().toURL(), NAMER);
+			selector.setJoinCacheSize(0);
+			assertEquals(expected, select());
+
+			// other join weights scan the frames
+			int[] joinWeights = { 65536, 0, 0, 65536 };
+			scanning.setJoinWeights(joinWeights);
+			selector = scanning;
+			expected = select();
+			selector = new ClusterUnitSelector(bin.toURI().toURL(), NAMER);
+			selector.setJoinCacheSize(0);
+			selector.setJoinWeights(joinWeights);
+			assertEquals(expected, select());
+		} finally {
+			bin.delete();
+		}
+	}
+
+	@Test
+	public void testCacheSlots() {
+		JoinCostCache cache = new JoinCostCache(3);
+		assertEquals(4, cache.getSize());
+		Cost cost = new Cost();
+		cache.put(1, 2, cost);
+		assertSame(cost, cache.get(1, 2));
+		assertNull(cache.get(2, 1));
+		for (int i = 0; i < 16; i++) {
+			cache.put(i, i + 1, new Cost());
+		}
+		int found = 0;
+		for (int i = 0; i < 16; i++) {
+			if (cache.get(i, i + 1) != null) {
+				found++;
+			}
+		}
+		assertTrue(found <= 4);
+	}
+
+	/** Selects the units for freshly created utterances.
+	 * @return the entry, start and end of every selected unit */
+	private List<String> select() throws Exception {
+		return select(null);
+	}
+
+	/** Selects the units of the test utterances.
+	 * @param voice the voice of the utterances, or null
+	 * @return the entry, start and end of every unit */
+	private List<String> select(Voice voice) throws Exception {
+		List<String> units = new ArrayList<String>();
+		for (Utterance utterance : createUtterances(voice)) {
+			selector.processUtterance(utterance);
+			for (Item unit = utterance.getRelation(Relation.UNIT).getHead(); unit != null; unit = unit.getNext()) {
+				units.add(unit.getFeatures().getInt("unit_entry") + " " + unit.getFeatures().getInt("unit_start") + " "
+						+ unit.getFeatures().getInt("unit_end"));
+			}
+		}
+		return units;
+	}
+
+	/** Sums the distances of the adjacent frames at the joins of the selected units, the join cost with optimal coupling 2.
+	 * @param db the unit database
+	 * @param units the units selected for the utterances, as returned by {@link #select()}
+	 * @return the score, lower being smoother */
+	private static int score(ClusterUnitDatabase db, List<String> units) {
+		int score = 0;
+		int u0 = -1;
+		for (int i = 0; i < units.size(); i++) {
+			int u1 = Integer.parseInt(units.get(i).substring(0, units.get(i).indexOf(' ')));
+			// every utterance starts a new sequence
+			if (i % SEGMENTS != 0 && db.getPrevUnit(u1) != u0) {
+				int a = db.getNextUnit(u0) != ClusterUnitDatabase.CLUNIT_NONE ? db.getEnd(u0) : db.getEnd(u0) - 1;
+				score += db.getFrameDistance().getJoinDistance(a, db.getStart(u1));
+			}
+			u0 = u1;
+		}
+		return score;
+	}
+
+	/** Creates the same random utterances every time; each segment lasts 0.1 seconds. */
+	private static List<Utterance> createUtterances() {
+		return createUtterances(null);
+	}
+
+	/** Creates the same random utterances every time, for a voice.
+	 * @param voice the voice of the utterances, or null */
+	private static List<Utterance> createUtterances(Voice voice) {
+		Random random = new Random(11);
+		List<Utterance> utterances = new ArrayList<Utterance>();
+		for (int i = 0; i < UTTERANCES; i++) {
+			Utterance utterance = new Utterance(voice);
+			Relation segs = utterance.createRelation(Relation.SEGMENT);
+			for (int k = 0; k < SEGMENTS; k++) {
+				Item seg = segs.appendItem();
+				seg.getFeatures().setString("name", "s");
+				seg.getFeatures().setString("clunit_name", "t" + random.nextInt(TYPES));
+				seg.getFeatures().setFloat("end", (k + 1) * 0.1f);
+			}
+			utterances.add(utterance);
+		}
+		return utterances;
+	}
+}
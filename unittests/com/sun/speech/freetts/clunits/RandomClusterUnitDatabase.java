@@ -0,0 +1,149 @@
+package com.sun.speech.freetts.clunits;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import com.sun.speech.freetts.relp.RandomLPCResult;
+
+/** Writes small random cluster unit databases in the text form. Every unit type has the same number of units, the units
+ * of a type follow one another, and every unit takes the same number of frames. One more frame follows the last unit,
+ * as joins compare the frame after the end of a unit. */
+public class RandomClusterUnitDatabase {
+	private final String[] types;
+	private final int instances;
+	private final int framesPerUnit;
+	private int[] joinWeights = { 32768, 32768, 16384, 8192 };
+	private int phones = 3;
+	private int minResiduals = 5;
+	private int residualRange = 20;
+	private boolean shuffled = false;
+	private int clusterSize = 0;
+
+	/** Creates a database of the given unit types.
+	 * @param types the names of the unit types
+	 * @param instances the number of units of each type
+	 * @param framesPerUnit the number of frames of each unit */
+	public RandomClusterUnitDatabase(String[] types, int instances, int framesPerUnit) {
+		this.types = types;
+		this.instances = instances;
+		this.framesPerUnit = framesPerUnit;
+	}
+
+	/** Sets the join weights, one per channel of the MCEP samples.
+	 * @param joinWeights the join weights */
+	public void setJoinWeights(int[] joinWeights) {
+		this.joinWeights = joinWeights;
+	}
+
+	/** Sets the number of phones the units cycle through.
+	 * @param phones the number of phones */
+	public void setPhones(int phones) {
+		this.phones = phones;
+	}
+
+	/** Sets the number of residual samples of a frame of the STS samples.
+	 * @param minResiduals the least number of residual samples
+	 * @param residualRange the number of residual samples that may be added to the least */
+	public void setResiduals(int minResiduals, int residualRange) {
+		this.minResiduals = minResiduals;
+		this.residualRange = residualRange;
+	}
+
+	/** Sets whether the units were recorded in a random order, which links them, or in the order of their types.
+	 * @param shuffled true for a random order */
+	public void setShuffled(boolean shuffled) {
+		this.shuffled = shuffled;
+	}
+
+	/** Sets the number of units the CART of a type selects at random. With 0, the CART only names the first unit of its
+	 * type.
+	 * @param clusterSize the number of units of a cluster */
+	public void setClusterSize(int clusterSize) {
+		this.clusterSize = clusterSize;
+	}
+
+	/** Returns the number of units of the database.
+	 * @return the number of units */
+	public int getNumberOfUnits() {
+		return types.length * instances;
+	}
+
+	/** Returns the number of frames of the database.
+	 * @return the number of frames */
+	public int getNumberOfFrames() {
+		return getNumberOfUnits() * framesPerUnit + 1;
+	}
+
+	/** Writes the database.
+	 * @param file the file to write
+	 * @param random the source of the samples, the order of the units and the clusters
+	 * @throws IOException if the file can't be written */
+	public void write(File file, Random random) throws IOException {
+		int units = getNumberOfUnits();
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		out.println("*** random test database");
+		out.println("CONTINUITY_WEIGHT 5");
+		out.println("OPTIMAL_COUPLING 1");
+		out.println("EXTEND_SELECTIONS 2");
+		out.println("JOIN_METHOD 1");
+		out.print("JOIN_WEIGHTS " + joinWeights.length);
+		for (int i = 0; i < joinWeights.length; i++) {
+			out.print(" " + joinWeights[i]);
+		}
+		out.println();
+		writeSampleSet(out, "STS", 16, minResiduals, residualRange, random);
+		writeSampleSet(out, "MCEP", joinWeights.length, 0, 0, random);
+
+		int[] recorded = new int[units];
+		for (int i = 0; i < units; i++) {
+			recorded[i] = i;
+		}
+		if (shuffled) {
+			for (int i = units - 1; i > 0; i--) {
+				int k = random.nextInt(i + 1);
+				int t = recorded[i];
+				recorded[i] = recorded[k];
+				recorded[k] = t;
+			}
+		}
+		int[] prev = new int[units];
+		int[] next = new int[units];
+		for (int i = 0; i < units; i++) {
+			prev[recorded[i]] = i == 0 ? ClusterUnitDatabase.CLUNIT_NONE : recorded[i - 1];
+			next[recorded[i]] = i == units - 1 ? ClusterUnitDatabase.CLUNIT_NONE : recorded[i + 1];
+		}
+		for (int i = 0; i < units; i++) {
+			int start = i * framesPerUnit;
+			out.println("UNITS " + (i / instances) + " " + (i % phones) + " " + start + " " + (start + framesPerUnit) + " "
+					+ prev[i] + " " + next[i]);
+		}
+		for (int t = 0; t < types.length; t++) {
+			out.println("CART " + types[t] + " 1");
+			if (clusterSize == 0) {
+				out.println("LEAF String(" + types[t] + "_0)");
+			} else {
+				StringBuffer cluster = new StringBuffer();
+				for (int i = 0; i < clusterSize; i++) {
+					cluster.append(i == 0 ? "" : ",").append(random.nextInt(instances));
+				}
+				out.println("LEAF List(" + cluster + ")");
+			}
+		}
+		for (int t = 0; t < types.length; t++) {
+			out.println("UNIT_TYPE " + types[t] + " " + (t * instances) + " " + instances);
+		}
+		out.close();
+	}
+
+	private void writeSampleSet(PrintWriter out, String name, int channels, int minResiduals, int residualRange,
+			Random random) {
+		int frames = getNumberOfFrames();
+		out.println("STS " + name + " " + frames + " " + channels + " 16000 -1.5 3.0 0.0 1");
+		for (int i = 0; i < frames; i++) {
+			RandomLPCResult.writeFrame(out, random, channels, minResiduals, residualRange);
+		}
+	}
+}
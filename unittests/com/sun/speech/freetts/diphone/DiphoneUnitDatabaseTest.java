@@ -0,0 +1,191 @@
+package com.sun.speech.freetts.diphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.speech.freetts.relp.RandomLPCResult;
+
+/** Reads the diphones of a mapped database from several threads at once, with every cache type, and checks that they are
+ * byte-identical to the diphones of the preloaded text database. The database is a small random one written by the test. */
+public class DiphoneUnitDatabaseTest {
+	private final static String CACHE_TYPE = "com.sun.speech.freetts.diphone.UnitDatabase.cacheType";
+	private final static String CACHE_SIZE = "com.sun.speech.freetts.diphone.UnitDatabase.cacheSize";
+	private final static int DIPHONES = 200;
+	private final static int ALIASES = 20;
+	private final static int CHANNELS = 8;
+	private final static int THREADS = 8;
+	private final static int READS = 3000;
+
+	private static File dir;
+	private static File bin;
+	private static String[] names;
+	private static Map<String, byte[]> expected = new HashMap<String, byte[]>();
+
+	@BeforeClass
+	public static void writeDatabase() throws IOException {
+		dir = File.createTempFile("diphone", "");
+		dir.delete();
+		dir.mkdir();
+		File txt = new File(dir, "diphones.txt");
+		names = writeTextDatabase(txt, new Random(3));
+		DiphoneUnitDatabase text = new DiphoneUnitDatabase(txt.toURI().toURL(), false);
+		for (int i = 0; i < names.length; i++) {
+			expected.put(names[i], bytes(text.getUnit(names[i])));
+		}
+		bin = new File(dir, "diphones.bin");
+		text.dumpBinary(bin.getPath());
+		new DiphoneUnitDatabase(bin.toURI().toURL(), true).dumpBinaryIndex(new File(dir, "diphones.idx").getPath());
+	}
+
+	@AfterClass
+	public static void deleteDatabase() {
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testPreload() throws Exception {
+		stress(load("preload"));
+	}
+
+	@Test
+	public void testDemand() throws Exception {
+		DiphoneUnitDatabase db = load("demand");
+		stress(db);
+		assertEquals(0, db.getCacheSize());
+	}
+
+	@Test
+	public void testHard() throws Exception {
+		DiphoneUnitDatabase db = load("hard");
+		stress(db);
+		assertEquals(DIPHONES + ALIASES, db.getCacheSize());
+	}
+
+	@Test
+	public void testSoft() throws Exception {
+		stress(load("soft"));
+	}
+
+	@Test
+	public void testLRU() throws Exception {
+		System.setProperty(CACHE_SIZE, "32");
+		try {
+			DiphoneUnitDatabase db = load("lru");
+			stress(db);
+			assertTrue(db.getCacheSize() <= 32);
+		} finally {
+			System.clearProperty(CACHE_SIZE);
+		}
+	}
+
+	@Test
+	public void testCacheEviction() {
+		DiphoneCache cache = new DiphoneCache(16, false);
+		Diphone[] diphones = new Diphone[64];
+		for (int i = 0; i < diphones.length; i++) {
+			diphones[i] = new AliasDiphone("a" + i, "b");
+			cache.put("a" + i, diphones[i]);
+		}
+		assertTrue(cache.size() <= 16);
+		assertEquals(diphones[63], cache.get("a63"));
+
+		cache = new DiphoneCache(0, true);
+		cache.put("a0", diphones[0]);
+		assertEquals(diphones[0], cache.get("a0"));
+		assertNull(cache.get("a1"));
+	}
+
+	/** Loads the binary database with the given cache type. */
+	private static DiphoneUnitDatabase load(String cacheType) throws IOException {
+		System.setProperty(CACHE_TYPE, cacheType);
+		try {
+			return new DiphoneUnitDatabase(bin.toURI().toURL(), true);
+		} finally {
+			System.clearProperty(CACHE_TYPE);
+		}
+	}
+
+	/** Reads random diphones from several threads and compares them to the expected ones. */
+	private static void stress(final DiphoneUnitDatabase db) throws InterruptedException {
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < READS; i++) {
+							String name = names[random.nextInt(names.length)];
+							assertArrayEquals(name, expected.get(name), bytes(db.getUnit(name)));
+						}
+					} catch (Throwable e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < THREADS; t++) {
+			threads[t].join();
+		}
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+	}
+
+	/** Returns the binary form of a diphone. An alias is resolved to the samples of its original. */
+	private static byte[] bytes(Diphone diphone) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream os = new DataOutputStream(bytes);
+		new Diphone(diphone.getName(), diphone.getSamples(), diphone.getMidPoint()).dumpBinary(os);
+		os.close();
+		return bytes.toByteArray();
+	}
+
+	private static String[] writeTextDatabase(File file, Random random) throws IOException {
+		String[] names = new String[DIPHONES + ALIASES];
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		out.println("*** random test database");
+		out.println("NAME test");
+		out.println("SAMPLE_RATE 16000");
+		out.println("NUM_CHANNELS " + CHANNELS);
+		out.println("COEFF_MIN -1.5");
+		out.println("COEFF_RANGE 3.0");
+		for (int i = 0; i < DIPHONES; i++) {
+			names[i] = "d" + i + "-x";
+			int samples = 2 + random.nextInt(10);
+			out.println("DIPHONE " + names[i] + " 100 " + (100 + samples / 2) + " " + (100 + samples));
+			for (int s = 0; s < samples; s++) {
+				RandomLPCResult.writeFrame(out, random, CHANNELS, 10, 90);
+			}
+		}
+		for (int i = 0; i < ALIASES; i++) {
+			names[DIPHONES + i] = "a" + i + "-x";
+			out.println("ALIAS " + names[DIPHONES + i] + " " + names[random.nextInt(DIPHONES)]);
+		}
+		out.close();
+		return names;
+	}
+}
@@ -0,0 +1,111 @@
+package com.sun.speech.freetts.en;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.Token;
+
+/** Checks how the tokenizer splits text into whitespace, prepunctuation, word and postpunctuation, from a string and
+ * from a reader. */
+public class TokenizerImplTest {
+
+	/** The parts, positions and lines of the tokens must be those of the text. */
+	@Test
+	public void testParts() {
+		List<String> tokens = tokenize(new TokenizerImpl("  \"Hello,\" she said (twice)!\n\nOK..."));
+		assertEquals("[  |\"|Hello|,\"] 11 0", tokens.get(0));
+		assertEquals("[ ||she|] 15 0", tokens.get(1));
+		assertEquals("[ ||(|] 22 0", tokens.get(3));
+		assertEquals("[||twice|] 27 0", tokens.get(4));
+		assertEquals("[||)|] 28 0", tokens.get(5));
+		// postpunctuation is never the whole word, and the newline after it counts for its line
+		assertEquals("[||!|] 29 1", tokens.get(6));
+		assertEquals("[\n\n||OK|...] 35 2", tokens.get(7));
+		assertEquals(8, tokens.size());
+	}
+
+	/** A text read a few characters at a time, with a token longer than the buffer, must give the tokens of the same
+	 * text as a string. */
+	@Test
+	public void testReader() {
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < 2000; i++) {
+			text.append(i % 10 == 0 ? "\n(" : " ").append("word").append(i).append(i % 7 == 0 ? ".\" " : "");
+		}
+		for (int i = 0; i < 10000; i++) {
+			text.append('x');
+		}
+		text.append("!!");
+		List<String> expected = tokenize(new TokenizerImpl(text.toString()));
+		assertEquals(expected, tokenize(new TokenizerImpl(new ChunkReader(text.toString(), 3))));
+		assertEquals(expected, tokenize(new TokenizerImpl(new StringReader(text.toString()))));
+	}
+
+	/** Symbols outside ASCII must be classified like the others. */
+	@Test
+	public void testNonAscii() {
+		TokenizerImpl tokenizer = new TokenizerImpl();
+		tokenizer.setWhitespaceSymbols(" \u00a0");
+		tokenizer.setSingleCharSymbols("\u2014");
+		tokenizer.setPrepunctuationSymbols("\u00ab");
+		tokenizer.setPostpunctuationSymbols("\u00bb.");
+		tokenizer.setInputText("\u00a0\u00abcaf\u00e9\u00bb\u2014na\u00efve.");
+		List<String> tokens = tokenize(tokenizer);
+		assertEquals("[\u00a0|\u00ab|caf\u00e9|\u00bb] 8 0", tokens.get(0));
+		assertEquals("[||\u2014|] 9 0", tokens.get(1));
+		assertEquals("[||na\u00efve|.] 14 0", tokens.get(2));
+		assertEquals(3, tokens.size());
+	}
+
+	/** A break must follow a question mark, and not the period of an abbreviation. */
+	@Test
+	public void testBreak() {
+		TokenizerImpl tokenizer = new TokenizerImpl("Why? Mr. Smith came.");
+		tokenizer.getNextToken();
+		tokenizer.getNextToken();
+		assertTrue(tokenizer.isBreak());
+		tokenizer.getNextToken();
+		assertFalse(tokenizer.isBreak());
+		tokenizer.getNextToken();
+		assertFalse(tokenizer.hasErrors());
+		assertFalse(tokenizer.hasMoreTokens());
+	}
+
+	private static List<String> tokenize(TokenizerImpl tokenizer) {
+		List<String> tokens = new ArrayList<String>();
+		while (tokenizer.hasMoreTokens()) {
+			Token token = tokenizer.getNextToken();
+			tokens.add("[" + token.getWhitespace() + "|" + token.getPrepunctuation() + "|" + token.getWord() + "|"
+					+ token.getPostpunctuation() + "] " + token.getPosition() + " " + token.getLineNumber());
+		}
+		return tokens;
+	}
+
+	/** A reader that gives at most a few characters at a time. */
+	private static class ChunkReader extends Reader {
+		private final Reader reader;
+		private final int chunk;
+
+		ChunkReader(String text, int chunk) {
+			this.reader = new StringReader(text);
+			this.chunk = chunk;
+		}
+
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			return reader.read(buffer, offset, Math.min(length, chunk));
+		}
+
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.sun.speech.freetts.en.us;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.speech.freetts.FrontEndCache;
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.ProcessException;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.UtteranceProcessor;
+
+/** Checks that relations restored from the front-end cache are the relations the front-end makes, and that the
+ * front-end processors are skipped when they are found. */
+public class FrontEndCacheTest {
+	private final static String TEXT = "Your balance is $42.17. Press 1 to hear it again, or hang up.";
+
+	private final static String[] RELATIONS = { Relation.TOKEN, Relation.WORD, Relation.PHRASE, Relation.SYLLABLE,
+			Relation.SYLLABLE_STRUCTURE, Relation.SEGMENT, Relation.TARGET };
+
+	private FrontEndVoice voice;
+	private FrontEndCache cache;
+	private int tagged;
+
+	@Before
+	public void setUp() {
+		voice = new FrontEndVoice();
+		voice.allocate();
+		cache = new FrontEndCache(1 << 20);
+		voice.setFrontEndCache(cache);
+		// counts the utterances that go through the part of speech tagger
+		final UtteranceProcessor tagger = voice.getUtteranceProcessors().get(1);
+		voice.getUtteranceProcessors().set(1, new UtteranceProcessor() {
+			public void processUtterance(Utterance u) throws ProcessException {
+				tagged++;
+				tagger.processUtterance(u);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		voice.deallocate();
+	}
+
+	@Test
+	public void testRestore() {
+		assertEquals(9, voice.getFrontEndSize());
+		List<Utterance> expected = voice.process(TEXT);
+		int utterances = expected.size();
+		assertEquals(utterances, tagged);
+		assertEquals(utterances, cache.getMisses());
+		assertTrue(cache.getUsed() > 0);
+
+		List<Utterance> restored = voice.process(TEXT);
+		assertEquals(utterances, tagged);
+		assertEquals(utterances, cache.getHits());
+		assertEquals(utterances, restored.size());
+		for (int i = 0; i < utterances; i++) {
+			assertNotNull(restored.get(i).getObject(FrontEndCache.UTT_RESTORED));
+			assertEquals(dump(expected.get(i)), dump(restored.get(i)));
+		}
+
+		// the items of a restored utterance share their contents across relations as they do when processed
+		// the first segment is a pause, which is in no syllable
+		Item segment = restored.get(0).getRelation(Relation.SEGMENT).getHead().getNext();
+		Item inSyllable = segment.getItemAs(Relation.SYLLABLE_STRUCTURE);
+		assertNotNull(inSyllable);
+		assertTrue(segment.equalsShared(inSyllable));
+		assertNotNull(inSyllable.getParent().getItemAs(Relation.SYLLABLE));
+	}
+
+	@Test
+	public void testSettings() {
+		voice.process(TEXT);
+		int utterances = tagged;
+
+		voice.setPitch(voice.getPitch() + 20);
+		List<Utterance> higher = voice.process(TEXT);
+		assertEquals(2 * utterances, tagged);
+		assertNull(higher.get(0).getObject(FrontEndCache.UTT_RESTORED));
+
+		voice.setRate(voice.getRate() * 2);
+		voice.process(TEXT);
+		assertEquals(3 * utterances, tagged);
+		assertEquals(0, cache.getHits());
+
+		voice.process(TEXT);
+		assertEquals(3 * utterances, tagged);
+		assertEquals(utterances, cache.getHits());
+	}
+
+	@Test
+	public void testEviction() {
+		voice.process(TEXT);
+		long used = cache.getUsed();
+
+		// room for about half of the utterances
+		cache = new FrontEndCache(used / 2);
+		voice.setFrontEndCache(cache);
+		voice.process(TEXT);
+		assertTrue(cache.getUsed() <= used / 2);
+		assertTrue(cache.getUsed() > 0);
+	}
+
+	private static String dump(Utterance utterance) {
+		StringWriter out = new StringWriter();
+		PrintWriter pw = new PrintWriter(out);
+		for (int i = 0; i < RELATIONS.length; i++) {
+			Relation relation = utterance.getRelation(RELATIONS[i]);
+			assertNotNull(RELATIONS[i], relation);
+			relation.dump(pw, 0, RELATIONS[i]);
+		}
+		pw.flush();
+		return out.toString();
+	}
+}
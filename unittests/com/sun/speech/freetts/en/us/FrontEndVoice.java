@@ -0,0 +1,85 @@
+package com.sun.speech.freetts.en.us;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.sun.speech.freetts.Age;
+import com.sun.speech.freetts.Gender;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.UtteranceProcessor;
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+
+/** A CMU voice that only runs the front-end and collects the utterances instead of synthesizing them. It uses the text
+ * version of the cmudict04 lexicon, so it needs no voice data. */
+public class FrontEndVoice extends CMUVoice {
+	private final List<Utterance> utterances = Collections.synchronizedList(new ArrayList<Utterance>());
+
+	private final static UtteranceProcessor NO_OP = new UtteranceProcessor() {
+		public void processUtterance(Utterance u) {
+		}
+	};
+
+	public FrontEndVoice() {
+		super("frontend", Gender.DONT_CARE, Age.DONT_CARE, "front-end only test voice", Locale.US, "general", "cmu",
+				new CMULexicon("cmudict04", false));
+		setAudioPlayer(new NullAudioPlayer());
+	}
+
+	/** Returns the utterances spoken so far.
+	 * @return the utterances in the order they were spoken */
+	public List<Utterance> getUtterances() {
+		return utterances;
+	}
+
+	/** Speaks the given text and returns the utterances it was split into.
+	 * @param text the text
+	 * @return the utterances */
+	public List<Utterance> process(String text) {
+		utterances.clear();
+		speak(text);
+		return new ArrayList<Utterance>(utterances);
+	}
+
+	/** Reads a text file.
+	 * @param path the path of the file
+	 * @return the contents of the file
+	 * @throws IOException if the file can't be read */
+	public static String readText(String path) throws IOException {
+		StringBuffer text = new StringBuffer();
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				text.append(line).append('\n');
+			}
+		} finally {
+			reader.close();
+		}
+		return text.toString();
+	}
+
+	protected UtteranceProcessor getUnitSelector() throws IOException {
+		return NO_OP;
+	}
+
+	protected UtteranceProcessor getPitchmarkGenerator() throws IOException {
+		return NO_OP;
+	}
+
+	protected UtteranceProcessor getUnitConcatenator() throws IOException {
+		return NO_OP;
+	}
+
+	protected UtteranceProcessor getAudioOutput() throws IOException {
+		return new UtteranceProcessor() {
+			public void processUtterance(Utterance u) {
+				utterances.add(u);
+			}
+		};
+	}
+}
@@ -0,0 +1,117 @@
+package com.sun.speech.freetts.en.us;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.UtteranceProcessor;
+import com.sun.speech.freetts.VoiceDataRegistry;
+
+/** Allocates several voices of the same kind and checks that they share their immutable data, so that each voice after
+ * the first costs little heap. */
+public class VoiceDataSharingTest {
+	private final static int VOICES = 16;
+
+	// the indices of the processors in the CMUVoice chain
+	private final static int TOKEN_TO_WORDS = 0;
+	private final static int PHRASER = 2;
+	private final static int INTONATOR = 5;
+	private final static int DURATOR = 7;
+	private final static int CONTOUR_GENERATOR = 8;
+
+	@Test
+	public void testSharing() throws Exception {
+		// the first voice loads the data, even if the voices of other tests left it in the registry
+		VoiceDataRegistry.clear();
+		long base = usedMemory();
+		FrontEndVoice[] voices = new FrontEndVoice[VOICES];
+		voices[0] = new FrontEndVoice();
+		voices[0].allocate();
+		long first = usedMemory() - base;
+		for (int i = 1; i < VOICES; i++) {
+			voices[i] = new FrontEndVoice();
+			voices[i].allocate();
+		}
+		long all = usedMemory() - base;
+
+		try {
+			for (int i = 1; i < VOICES; i++) {
+				assertShared(voices[0], voices[i]);
+			}
+
+			// every voice after the first holds little more than its processors, its addenda and its output thread
+			long perVoice = (all - first) / (VOICES - 1);
+			assertTrue("first voice " + first + " bytes, each other voice " + perVoice + " bytes", perVoice < first / 4);
+
+			// voices give the same segments and durations with the shared data
+			String text = "Shared voice data, 42 times.";
+			List expected = voices[0].process(text);
+			List actual = voices[VOICES - 1].process(text);
+			assertArrayEquals(segments(expected), segments(actual));
+		} finally {
+			for (int i = 0; i < VOICES; i++) {
+				voices[i].deallocate();
+			}
+		}
+	}
+
+	private void assertShared(FrontEndVoice a, FrontEndVoice b) throws Exception {
+		assertSame(field(a.getLexicon(), "compiled"), field(b.getLexicon(), "compiled"));
+		assertSame(field(a.getLexicon(), "letterToSound"), field(b.getLexicon(), "letterToSound"));
+		assertSame(field(a, "phoneSet"), field(b, "phoneSet"));
+
+		List<UtteranceProcessor> pa = a.getUtteranceProcessors();
+		List<UtteranceProcessor> pb = b.getUtteranceProcessors();
+		assertSame(field(pa.get(TOKEN_TO_WORDS), "cart"), field(pb.get(TOKEN_TO_WORDS), "cart"));
+		assertSame(field(pa.get(TOKEN_TO_WORDS), "prefixFSM"), field(pb.get(TOKEN_TO_WORDS), "prefixFSM"));
+		assertSame(field(pa.get(PHRASER), "cart"), field(pb.get(PHRASER), "cart"));
+		assertSame(field(pa.get(INTONATOR), "accentCart"), field(pb.get(INTONATOR), "accentCart"));
+		assertSame(field(pa.get(DURATOR), "cart"), field(pb.get(DURATOR), "cart"));
+		assertSame(field(pa.get(DURATOR), "durations"), field(pb.get(DURATOR), "durations"));
+		assertSame(field(pa.get(CONTOUR_GENERATOR), "terms"), field(pb.get(CONTOUR_GENERATOR), "terms"));
+	}
+
+	private static String[] segments(List utterances) {
+		StringBuffer segments = new StringBuffer();
+		for (Object utterance : utterances) {
+			Relation relation = ((Utterance) utterance).getRelation(Relation.SEGMENT);
+			for (Item segment = relation.getHead(); segment != null; segment = segment.getNext()) {
+				segments.append(segment).append(' ').append(segment.getFeatures().getFloat("end")).append('|');
+			}
+		}
+		return segments.toString().split("\\|");
+	}
+
+	/** Reads a field that the processors keep to themselves.
+	 * @param object the object
+	 * @param name the name of the field, declared by the class of the object or a superclass
+	 * @return the value of the field */
+	private static Object field(Object object, String name) throws Exception {
+		for (Class c = object.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.get(object);
+			} catch (NoSuchFieldException nsfe) {
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
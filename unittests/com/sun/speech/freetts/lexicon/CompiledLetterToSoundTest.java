@@ -0,0 +1,142 @@
+package com.sun.speech.freetts.lexicon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Differential test of CompiledLetterToSound against LetterToSoundImpl over the words of the bundled lexicons. */
+public class CompiledLetterToSoundTest {
+	private final static String PATH = "/com/sun/speech/freetts/en/us/";
+	private final static String[] EXTRA_WORDS = { "", "a", "Hello", "it's", "x-ray", "r2d2", "\u00e9t\u00e9", "zzzzzz" };
+	private final static int THREADS = 4;
+
+	private static List<String> words;
+
+	@BeforeClass
+	public static void readWords() throws IOException {
+		LinkedHashSet<String> set = new LinkedHashSet<String>();
+		readWords(set, "cmudict04_compiled.txt");
+		readWords(set, "cmulex_compiled.txt");
+		for (int i = 0; i < EXTRA_WORDS.length; i++) {
+			set.add(EXTRA_WORDS[i]);
+		}
+		words = new ArrayList<String>(set);
+		assertTrue(words.size() > 100000);
+	}
+
+	@Test
+	public void testCmulex() throws IOException {
+		compare("cmulex_lts");
+	}
+
+	@Test
+	public void testCmudict04() throws IOException {
+		compare("cmudict04_lts");
+	}
+
+	@Test
+	public void testEmptyRules() throws IOException {
+		compare("cmutimelex_lts");
+	}
+
+	/** One instance must find the right phones for several threads at once. */
+	@Test
+	public void testThreads() throws Exception {
+		LetterToSoundImpl expected = new LetterToSoundImpl(resource("cmulex_lts.txt"), false);
+		final CompiledLetterToSound compiled = new CompiledLetterToSound(expected);
+		final List<String[]> phones = new ArrayList<String[]>();
+		for (String word : words) {
+			phones.add(expected.getPhones(word, null));
+		}
+
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = first; i < words.size(); i += THREADS) {
+							assertArrayEquals(words.get(i), phones.get(i), compiled.getPhones(words.get(i), null));
+						}
+					} catch (Throwable e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < THREADS; t++) {
+			threads[t].join();
+		}
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+	}
+
+	/** The compiled rules, and the compiled rules read back from a mapped file and from a heap buffer, must find the same
+	 * phones as the text rules for every word.
+	 * @param name the name of the rules */
+	private void compare(String name) throws IOException {
+		LetterToSoundImpl expected = new LetterToSoundImpl(resource(name + ".txt"), false);
+		CompiledLetterToSound compiled = new CompiledLetterToSound(expected);
+
+		File file = File.createTempFile(name, ".bin");
+		try {
+			compiled.dumpBinary(file.getPath());
+			CompiledLetterToSound mapped = CompiledLetterToSound.load(file.toURI().toURL());
+
+			FileChannel fc = new FileInputStream(file).getChannel();
+			ByteBuffer bb = ByteBuffer.allocate((int) fc.size());
+			fc.read(bb);
+			fc.close();
+			bb.flip();
+			CompiledLetterToSound heap = CompiledLetterToSound.loadBinary(bb);
+			assertEquals(0, bb.remaining());
+
+			for (String word : words) {
+				String[] phones = expected.getPhones(word, null);
+				assertArrayEquals(word, phones, compiled.getPhones(word, null));
+				assertArrayEquals(word, phones, mapped.getPhones(word, null));
+				assertArrayEquals(word, phones, heap.getPhones(word, "n"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static URL resource(String name) {
+		return CompiledLetterToSoundTest.class.getResource(PATH + name);
+	}
+
+	/** Reads the words of a text lexicon, without their parts of speech. */
+	private static void readWords(LinkedHashSet<String> set, String name) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(resource(name).openStream()));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.startsWith("***")) {
+				int tab = line.indexOf('\t');
+				String key = tab == -1 ? line : line.substring(0, tab);
+				set.add(key.substring(0, key.length() - 1));
+			}
+		}
+		reader.close();
+	}
+}
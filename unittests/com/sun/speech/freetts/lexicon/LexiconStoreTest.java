@@ -0,0 +1,148 @@
+package com.sun.speech.freetts.lexicon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.speech.freetts.en.us.CMULexicon;
+
+/** Dumps the text cmulex into a lexicon store and checks that a lexicon using the store finds the same phones as the
+ * text lexicon for every word of the compiled lexicon and the addenda. */
+public class LexiconStoreTest {
+	private final static String PATH = "/com/sun/speech/freetts/en/us/cmulex";
+
+	private static File file;
+	private static LexiconImpl text;
+	private static LexiconImpl stored;
+
+	@BeforeClass
+	public static void dumpStore() throws IOException {
+		text = createLexicon();
+		text.load();
+		file = File.createTempFile("cmulex", "_store.bin");
+		text.dumpStore(file.getPath());
+
+		stored = createLexicon();
+		stored.setLexiconStore(file.toURI().toURL());
+		stored.load();
+	}
+
+	@AfterClass
+	public static void deleteStore() {
+		file.delete();
+	}
+
+	@Test
+	public void testCompiled() throws IOException {
+		List<String> keys = readKeys("_compiled.txt");
+		LexiconStore store = LexiconStore.load(file.toURI().toURL());
+		assertEquals(keys.size(), store.size());
+		compare(keys);
+	}
+
+	@Test
+	public void testAddenda() throws IOException {
+		compare(readKeys("_addenda.txt"));
+	}
+
+	@Test
+	public void testPartOfSpeech() {
+		assertArrayEquals(text.getPhones("read", null), stored.getPhones("read", null));
+		assertArrayEquals(text.getPhones("read", "v"), stored.getPhones("read", "v"));
+		assertArrayEquals(text.getPhones("read", "xyz"), stored.getPhones("read", "xyz"));
+	}
+
+	@Test
+	public void testUnknownWord() {
+		assertNull(stored.getPhones("qqzzxv", null, false));
+		assertNull(stored.getPhones("", null, false));
+		// letter to sound rules still apply
+		assertArrayEquals(text.getPhones("qqzzxv", null), stored.getPhones("qqzzxv", null));
+	}
+
+	@Test
+	public void testAddendum() {
+		String[] phones = { "k", "ey1" };
+		stored.addAddendum("qqzzxv", null, phones);
+		try {
+			assertArrayEquals(phones, stored.getPhones("qqzzxv", null, false));
+			// the stored words can be overridden
+			stored.addAddendum("hello", null, phones);
+			assertArrayEquals(phones, stored.getPhones("hello", null, false));
+		} finally {
+			stored.removeAddendum("qqzzxv", null);
+			stored.removeAddendum("hello", null);
+		}
+		assertNull(stored.getPhones("qqzzxv", null, false));
+		assertArrayEquals(text.getPhones("hello", null), stored.getPhones("hello", null));
+	}
+
+	@Test
+	public void testSharedStore() throws IOException {
+		LexiconImpl other = createLexicon();
+		other.setLexiconStore(file.toURI().toURL());
+		other.load();
+		String[] phones = other.getPhones("hello", null);
+		phones[0] = "x";
+		assertArrayEquals(text.getPhones("hello", null), stored.getPhones("hello", null));
+	}
+
+	/** A lexicon loaded from the store must compare equal to the text lexicon it was dumped from, both ways. */
+	@Test
+	public void testCompare() throws IOException {
+		LexiconImpl other = createLexicon();
+		other.setLexiconStore(file.toURI().toURL());
+		other.load();
+		assertTrue(text.compare(other));
+		assertTrue(other.compare(text));
+	}
+
+	/** Compares the phones of every key, looked up with its own part of speech. */
+	private static void compare(List<String> keys) {
+		for (String key : keys) {
+			String word = key.substring(0, key.length() - 1);
+			String pos = key.substring(key.length() - 1);
+			String[] expected = text.getPhones(word, pos, false);
+			assertNotNull(key, expected);
+			assertArrayEquals(key, expected, stored.getPhones(word, pos, false));
+		}
+	}
+
+	private static LexiconImpl createLexicon() {
+		return new CMULexicon(resource("_compiled.txt"), resource("_addenda.txt"), resource("_lts.txt"), false);
+	}
+
+	private static URL resource(String suffix) {
+		return LexiconStoreTest.class.getResource(PATH + suffix);
+	}
+
+	/** Reads the word and part of speech of every entry of a text lexicon. A word that is repeated is read once. */
+	private static List<String> readKeys(String suffix) throws IOException {
+		LinkedHashSet<String> keys = new LinkedHashSet<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(resource(suffix).openStream()));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.startsWith("***")) {
+				int tab = line.indexOf('\t');
+				keys.add(tab == -1 ? line : line.substring(0, tab));
+			}
+		}
+		reader.close();
+		return new ArrayList<String>(keys);
+	}
+}
@@ -0,0 +1,31 @@
+package com.sun.speech.freetts.lexicon;
+
+import java.util.List;
+
+/** A lexicon without words, for test voices that need none. */
+public class NoLexicon implements Lexicon {
+	public String[] getPhones(String word, String partOfSpeech) {
+		return null;
+	}
+
+	public String[] getPhones(String word, String partOfSpeech, boolean useLTS) {
+		return null;
+	}
+
+	public void addAddendum(String word, String partOfSpeech, String[] phones) {
+	}
+
+	public void removeAddendum(String word, String partOfSpeech) {
+	}
+
+	public boolean isSyllableBoundary(List syllablePhones, String[] wordPhones, int currentWordPhone) {
+		return false;
+	}
+
+	public void load() {
+	}
+
+	public boolean isLoaded() {
+		return true;
+	}
+}
@@ -0,0 +1,152 @@
+package com.sun.speech.freetts.relp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.FreeTTSSpeakableImpl;
+import com.sun.speech.freetts.Utterance;
+
+/** Checks that the LPC synthesis kernel produces exactly the samples of the original circular list implementation. The
+ * LPC results dumped by flite are used for the 8k case, random frames of 16 and 24 channels stand in for the 16k voices
+ * whose databases are not part of the source tree. */
+public class LPCResultTest {
+	private final static String FLITE_DUMP = "unittests/tests/wave/flite1.1.lpcres.txt";
+
+	@Test
+	public void testFliteDumps() throws IOException {
+		List<LPCResult> results = readDump(FLITE_DUMP);
+		assertEquals(3, results.size());
+		for (LPCResult result : results) {
+			assertSameSamples(result);
+		}
+	}
+
+	@Test
+	public void testWideband() throws IOException {
+		Random random = new Random(1234);
+		assertSameSamples(RandomLPCResult.create(random, 16, 16000, 300));
+		assertSameSamples(RandomLPCResult.create(random, 24, 16000, 300));
+	}
+
+	/** The three output paths must all produce the samples of the reference implementation. */
+	private void assertSameSamples(LPCResult result) throws IOException {
+		byte[] expected = referenceSamples(result);
+		assertArrayEquals(expected, result.getWaveSamples());
+
+		// samples past the last pitch period are left silent
+		short[] out = new short[result.getNumberOfSamples() + 3];
+		int written = result.synthesize(out, 3);
+		assertTrue(written <= result.getNumberOfSamples());
+		for (int i = 0; i < result.getNumberOfSamples(); i++) {
+			assertEquals((short) ((expected[2 * i] << 8) | (expected[2 * i + 1] & 0xff)), out[i + 3]);
+		}
+
+		RecordingAudioPlayer player = new RecordingAudioPlayer();
+		Utterance utterance = new Utterance(null);
+		utterance.setSpeakable(new FreeTTSSpeakableImpl("test"));
+		assertTrue(result.playWave(player, utterance));
+		assertArrayEquals(Arrays.copyOf(expected, 2 * written), player.toByteArray());
+	}
+
+	/** The LPC resynthesis as it was done with a circular list of floats. */
+	private static byte[] referenceSamples(LPCResult result) {
+		int numberChannels = result.getNumberOfChannels();
+		byte[] samples = new byte[2 * result.getNumberOfSamples()];
+		byte[] residuals = result.getResiduals();
+		int[] residualSizes = result.getResidualSizes();
+		float[] outBuffer = new float[numberChannels + 1];
+		float[] lpcCoefficients = new float[numberChannels];
+		double multiplier = (double) result.getLPCRange() / 65535.0;
+		int out = 0;
+		float pp = 0;
+
+		for (int r = 0, s = 0, i = 0; i < result.getNumberOfFrames(); i++) {
+			short[] frame = result.getFrame(i);
+			for (int k = 0; k < numberChannels; k++) {
+				lpcCoefficients[k] = (float) ((frame[k] + 32768.0) * multiplier) + result.getLPCMin();
+			}
+			for (int j = 0; j < residualSizes[i]; j++, r++) {
+				float ob = LPCResult.residualToFloat(residuals[r]);
+				for (int k = 0; k < numberChannels; k++) {
+					ob += lpcCoefficients[k] * outBuffer[(out + numberChannels - k) % (numberChannels + 1)];
+				}
+				int sample = (int) (ob + (pp * LPCResult.POST_EMPHASIS));
+				samples[s++] = (byte) (sample >>> 8);
+				samples[s++] = (byte) (sample & 0x000000FF);
+				outBuffer[out] = pp = ob;
+				out = (out + 1) % (numberChannels + 1);
+			}
+		}
+		return samples;
+	}
+
+	/** Reads the LPC results written by <code>LPCResult.dump()</code>. */
+	private static List<LPCResult> readDump(String file) throws IOException {
+		List<LPCResult> results = new ArrayList<LPCResult>();
+		List<String> tokens = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				StringTokenizer st = new StringTokenizer(line);
+				while (st.hasMoreTokens()) {
+					tokens.add(st.nextToken());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		for (int t = 0; t < tokens.size(); t++) {
+			if (!tokens.get(t).equals("Num_of_Frames:")) {
+				continue;
+			}
+			int numberOfFrames = Integer.parseInt(tokens.get(++t));
+			int channels = Integer.parseInt(tokens.get(t += 2));
+			int numberOfSamples = Integer.parseInt(tokens.get(t += 2));
+			int sampleRate = Integer.parseInt(tokens.get(t += 2));
+			float lpcMin = Float.parseFloat(tokens.get(t += 2));
+			float lpcRange = Float.parseFloat(tokens.get(t += 2));
+			while (!tokens.get(t).equals("Frames:")) {
+				t++;
+			}
+
+			LPCResult result = new LPCResult();
+			result.setValues(channels, sampleRate, 1, lpcMin, lpcRange);
+			result.resizeFrames(numberOfFrames);
+			for (int i = 0; i < numberOfFrames; i++) {
+				short[] frame = new short[channels];
+				for (int k = 0; k < channels; k++) {
+					frame[k] = (short) (Integer.parseInt(tokens.get(++t)) - 32768);
+				}
+				result.setFrame(i, frame);
+			}
+			t++;
+			int[] sizes = new int[numberOfFrames];
+			for (int i = 0; i < numberOfFrames; i++) {
+				sizes[i] = Integer.parseInt(tokens.get(++t));
+			}
+			result.setResidualSizes(sizes);
+			t++;
+			result.resizeResiduals(numberOfSamples);
+			byte[] residuals = result.getResiduals();
+			for (int i = 0; i < numberOfSamples; i++) {
+				residuals[i] = (byte) (Integer.parseInt(tokens.get(++t)) - 128);
+			}
+			results.add(result);
+		}
+		return results;
+	}
+}
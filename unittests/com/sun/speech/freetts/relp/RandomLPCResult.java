@@ -0,0 +1,60 @@
+package com.sun.speech.freetts.relp;
+
+import java.io.PrintWriter;
+import java.util.Random;
+
+/** Makes LPC results of random frames and residuals, which stand in for the 16k voices whose databases are not part of
+ * the source tree, and writes random frames into the text form of the voice databases. */
+public class RandomLPCResult {
+
+	private RandomLPCResult() {
+	}
+
+	/** Creates an LPC result of random frames and residuals.
+	 * @param random the source of the frames and residuals
+	 * @param channels the number of channels of a frame
+	 * @param sampleRate the sample rate
+	 * @param numberOfFrames the number of frames
+	 * @return the LPC result */
+	public static LPCResult create(Random random, int channels, int sampleRate, int numberOfFrames) {
+		LPCResult result = new LPCResult();
+		result.setValues(channels, sampleRate, 1, -1.2f, 2.4f);
+		result.resizeFrames(numberOfFrames);
+		int[] sizes = new int[numberOfFrames];
+		int numberOfSamples = 0;
+		for (int i = 0; i < numberOfFrames; i++) {
+			short[] frame = new short[channels];
+			for (int k = 0; k < channels; k++) {
+				// coefficients in [-0.06, 0.06] keep the filter stable
+				frame[k] = (short) (random.nextInt(3300) - 1650);
+			}
+			result.setFrame(i, frame);
+			sizes[i] = 60 + random.nextInt(150);
+			numberOfSamples += sizes[i];
+		}
+		result.setResidualSizes(sizes);
+		result.resizeResiduals(numberOfSamples);
+		random.nextBytes(result.getResiduals());
+		return result;
+	}
+
+	/** Writes a random frame and its residual as the FRAME and RESIDUAL lines of a text database.
+	 * @param out where to write the lines
+	 * @param random the source of the frame and the residual
+	 * @param channels the number of channels of the frame
+	 * @param minResiduals the least number of residual samples
+	 * @param residualRange the number of residual samples that may be added to the least, or 0 for exactly the least */
+	public static void writeFrame(PrintWriter out, Random random, int channels, int minResiduals, int residualRange) {
+		out.print("FRAME");
+		for (int k = 0; k < channels; k++) {
+			out.print(" " + random.nextInt(65536));
+		}
+		out.println();
+		int residuals = residualRange > 0 ? minResiduals + random.nextInt(residualRange) : minResiduals;
+		out.print("RESIDUAL " + residuals);
+		for (int k = 0; k < residuals; k++) {
+			out.print(" " + random.nextInt(256));
+		}
+		out.println();
+	}
+}
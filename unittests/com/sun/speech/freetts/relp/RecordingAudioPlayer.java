@@ -0,0 +1,26 @@
+package com.sun.speech.freetts.relp;
+
+import java.io.ByteArrayOutputStream;
+
+import com.sun.speech.freetts.audio.NullAudioPlayer;
+
+/** An audio player that collects everything that is written to it, to compare the audio of the tests byte for byte. */
+public class RecordingAudioPlayer extends NullAudioPlayer {
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	public synchronized boolean write(byte[] audioData, int offset, int size) {
+		bytes.write(audioData, offset, size);
+		return super.write(audioData, offset, size);
+	}
+
+	/** Returns the audio written so far.
+	 * @return the bytes written */
+	public synchronized byte[] toByteArray() {
+		return bytes.toByteArray();
+	}
+
+	/** Forgets the audio written so far. */
+	public synchronized void reset() {
+		bytes.reset();
+	}
+}
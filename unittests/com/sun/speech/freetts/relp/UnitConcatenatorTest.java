@@ -0,0 +1,159 @@
+package com.sun.speech.freetts.relp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sun.speech.freetts.FreeTTSSpeakableImpl;
+import com.sun.speech.freetts.Item;
+import com.sun.speech.freetts.ProcessException;
+import com.sun.speech.freetts.Relation;
+import com.sun.speech.freetts.Unit;
+import com.sun.speech.freetts.Utterance;
+
+/** Checks that concatenating the units as the LPC result is played gives the same audio as concatenating them first,
+ * and that the first audio is written before the last unit is concatenated. */
+public class UnitConcatenatorTest {
+	private final static int CHANNELS = 16;
+	private final static int UNITS = 40;
+
+	@Test
+	public void testStreaming() throws ProcessException, IOException {
+		int[] concatenated = new int[1];
+		FirstWriteAudioPlayer whole = play(new UnitConcatenator(false), concatenated);
+		assertEquals(UNITS, whole.concatenatedAtFirstWrite);
+
+		FirstWriteAudioPlayer streamed = play(new UnitConcatenator(true), concatenated);
+		assertArrayEquals(whole.toByteArray(), streamed.toByteArray());
+		assertTrue(whole.toByteArray().length > 0);
+		assertTrue("first audio after " + streamed.concatenatedAtFirstWrite + " units",
+				streamed.concatenatedAtFirstWrite < UNITS / 4);
+		assertEquals(UNITS, concatenated[0]);
+	}
+
+	@Test
+	public void testWaveSamples() throws ProcessException {
+		// the samples of a streamed result that was not played are complete
+		assertArrayEquals(concatenate(new int[1], false).getWaveSamples(), concatenate(new int[1], true)
+				.getWaveSamples());
+	}
+
+	private FirstWriteAudioPlayer play(UnitConcatenator concatenator, int[] concatenated) throws ProcessException,
+			IOException {
+		concatenated[0] = 0;
+		Utterance utterance = new Utterance(null);
+		utterance.setSpeakable(new FreeTTSSpeakableImpl("test"));
+		LPCResult lpcResult = prepare(utterance, concatenated);
+		concatenator.processUtterance(utterance);
+		FirstWriteAudioPlayer player = new FirstWriteAudioPlayer(concatenated);
+		assertTrue(lpcResult.playWave(player, utterance));
+		return player;
+	}
+
+	private LPCResult concatenate(int[] concatenated, boolean streamLPC) throws ProcessException {
+		Utterance utterance = new Utterance(null);
+		LPCResult lpcResult = prepare(utterance, concatenated);
+		new UnitConcatenator(streamLPC).processUtterance(utterance);
+		return lpcResult;
+	}
+
+	/** Adds random units and their pitchmarks to an utterance, as the unit selector and the pitchmark generator do.
+	 * @param utterance the utterance
+	 * @param concatenated counts the units whose samples were asked for
+	 * @return the LPC result with the pitchmarks */
+	private static LPCResult prepare(Utterance utterance, int[] concatenated) {
+		Random random = new Random(42);
+		// the utterance has no voice to give the residual type
+		utterance.setString("residual_type", "plain");
+		utterance.setObject(SampleInfo.UTT_NAME, new SampleInfo(16000, CHANNELS, 1, -1.2f, 2.4f, 0.0f));
+		Relation units = utterance.createRelation(Relation.UNIT);
+		int[] pitchmarks = new int[UNITS * 8];
+		int frames = 0;
+		int time = 0;
+		for (int u = 0; u < UNITS; u++) {
+			RandomUnit unit = new RandomUnit(random, concatenated);
+			for (int i = 0; i < unit.samples.length; i++) {
+				time += unit.samples[i].getResidualData().length;
+				pitchmarks[frames++] = time;
+			}
+			Item item = units.appendItem();
+			item.getFeatures().setObject("unit", unit);
+			item.getFeatures().setInt("target_end", time);
+		}
+		LPCResult lpcResult = new LPCResult();
+		lpcResult.resizeFrames(frames);
+		System.arraycopy(pitchmarks, 0, lpcResult.getTimes(), 0, frames);
+		utterance.setObject("target_lpcres", lpcResult);
+		return lpcResult;
+	}
+
+	/** A unit of a few random pitch periods. */
+	private static class RandomUnit implements Unit {
+		final Sample[] samples;
+		private final int[] concatenated;
+		private boolean counted = false;
+
+		RandomUnit(Random random, int[] concatenated) {
+			this.concatenated = concatenated;
+			samples = new Sample[2 + random.nextInt(6)];
+			for (int i = 0; i < samples.length; i++) {
+				short[] frame = new short[CHANNELS];
+				for (int k = 0; k < CHANNELS; k++) {
+					frame[k] = (short) (random.nextInt(3300) - 1650);
+				}
+				byte[] residual = new byte[60 + random.nextInt(150)];
+				random.nextBytes(residual);
+				samples[i] = new Sample(frame, residual);
+			}
+		}
+
+		public String getName() {
+			return "random";
+		}
+
+		public int getSize() {
+			int size = 0;
+			for (int i = 0; i < samples.length; i++) {
+				size += samples[i].getResidualData().length;
+			}
+			return size;
+		}
+
+		public Sample getNearestSample(float index) {
+			if (!counted) {
+				counted = true;
+				concatenated[0]++;
+			}
+			int i = 0;
+			for (int time = 0; i < samples.length - 1 && time + samples[i].getResidualData().length <= index; i++) {
+				time += samples[i].getResidualData().length;
+			}
+			return samples[i];
+		}
+
+		public void dump() {
+		}
+	}
+
+	/** Notes how many units were concatenated at the first write. */
+	private static class FirstWriteAudioPlayer extends RecordingAudioPlayer {
+		private final int[] concatenated;
+		int concatenatedAtFirstWrite = -1;
+
+		FirstWriteAudioPlayer(int[] concatenated) {
+			this.concatenated = concatenated;
+		}
+
+		public boolean write(byte[] audioData, int offset, int size) {
+			if (concatenatedAtFirstWrite < 0) {
+				concatenatedAtFirstWrite = concatenated[0];
+			}
+			return super.write(audioData, offset, size);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package com.sun.speech.freetts.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.speech.freetts.ProcessException;
+import com.sun.speech.freetts.Utterance;
+import com.sun.speech.freetts.UtteranceProcessor;
+import com.sun.speech.freetts.StubVoice;
+import com.sun.speech.freetts.audio.AudioPlayer;
+
+/** Loopback load test of the SynthesisServer. */
+public class SynthesisServerTest {
+	private final static int CLIENTS = 32;
+	private final static int REQUESTS = 4;
+	private final static String[] VOICES = { "alpha", "beta" };
+
+	private VoicePool pool;
+	private SynthesisServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		pool = new VoicePool();
+		for (int i = 0; i < 4; i++) {
+			pool.add(new NoiseVoice("alpha"));
+		}
+		for (int i = 0; i < 2; i++) {
+			pool.add(new NoiseVoice("beta"));
+		}
+		server = new SynthesisServer(pool, 0, 16);
+		new Thread(server).start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+		pool.deallocate();
+	}
+
+	/** Every client of many at once must receive exactly the samples that a lone client receives for the same
+	 * request, although there are fewer voices and connections than clients. */
+	@Test(timeout = 120000)
+	public void testConcurrentClients() throws Exception {
+		final byte[][][] expected = new byte[CLIENTS][REQUESTS][];
+		for (int c = 0; c < CLIENTS; c++) {
+			TestClient client = new TestClient(server.getPort());
+			for (int r = 0; r < REQUESTS; r++) {
+				expected[c][r] = client.speak(getVoice(c, r), getText(c, r));
+				assertTrue(expected[c][r].length > 0);
+			}
+			client.close();
+		}
+		assertFalse(Arrays.equals(expected[0][0], expected[1][0]));
+
+		final byte[][][] actual = new byte[CLIENTS][REQUESTS][];
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[CLIENTS];
+		for (int c = 0; c < CLIENTS; c++) {
+			final int client = c;
+			threads[c] = new Thread() {
+				public void run() {
+					try {
+						TestClient testClient = new TestClient(server.getPort());
+						for (int r = 0; r < REQUESTS; r++) {
+							actual[client][r] = testClient.speak(getVoice(client, r), getText(client, r));
+						}
+						testClient.close();
+					} catch (IOException ioe) {
+						ioe.printStackTrace();
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads[c].start();
+		}
+		for (int c = 0; c < CLIENTS; c++) {
+			threads[c].join();
+		}
+		assertEquals(0, failures.get());
+		for (int c = 0; c < CLIENTS; c++) {
+			for (int r = 0; r < REQUESTS; r++) {
+				assertArrayEquals("client " + c + " request " + r, expected[c][r], actual[c][r]);
+			}
+		}
+	}
+
+	/** An unknown voice is refused with -2. */
+	@Test(timeout = 10000)
+	public void testUnknownVoice() throws Exception {
+		TestClient client = new TestClient(server.getPort());
+		assertEquals(null, client.speak("gamma", "Hello."));
+		client.close();
+	}
+
+	private static String getVoice(int client, int request) {
+		return VOICES[(client + request) % VOICES.length];
+	}
+
+	private static String getText(int client, int request) {
+		return "Client " + client + " asks for request " + request + ". It has two sentences.";
+	}
+
+	/** A client of the server's protocol. */
+	private static class TestClient {
+		private final Socket socket;
+		private final DataInputStream in;
+		private final OutputStream out;
+
+		TestClient(int port) throws IOException {
+			socket = new Socket("localhost", port);
+			in = new DataInputStream(socket.getInputStream());
+			out = socket.getOutputStream();
+			assertEquals("READY", readLine());
+		}
+
+		/** Sends a request and collects the samples.
+		 * @return the samples, or null if the request was refused */
+		byte[] speak(String voice, String text) throws IOException {
+			out.write(("TTS\n" + voice + "\n" + text + "\n").getBytes("US-ASCII"));
+			out.flush();
+			ByteArrayOutputStream samples = new ByteArrayOutputStream();
+			int size;
+			while ((size = Integer.parseInt(readLine())) > 0) {
+				byte[] chunk = new byte[size];
+				in.readFully(chunk);
+				samples.write(chunk);
+			}
+			return size == -2 ? null : samples.toByteArray();
+		}
+
+		void close() throws IOException {
+			out.write("DONE\n".getBytes("US-ASCII"));
+			out.flush();
+			socket.close();
+		}
+
+		private String readLine() throws IOException {
+			StringBuffer line = new StringBuffer();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c == -1) {
+					throw new IOException("connection closed");
+				}
+				line.append((char) c);
+			}
+			return line.toString();
+		}
+	}
+
+	/** A voice whose audio is noise seeded by the name of the voice and the text of the utterance, written in small
+	 * pieces so that the output of concurrent requests interleaves. */
+	private static class NoiseVoice extends StubVoice {
+		NoiseVoice(String name) {
+			super(name);
+		}
+
+		protected UtteranceProcessor getAudioOutput() throws IOException {
+			return new UtteranceProcessor() {
+				public void processUtterance(Utterance u) throws ProcessException {
+					String text = u.getString("input_text");
+					Random random = new Random((getName() + text).hashCode());
+					AudioPlayer player = u.getVoice().getAudioPlayer();
+					try {
+						player.begin(0);
+						for (int i = 0; i < text.length(); i++) {
+							byte[] samples = new byte[64 + random.nextInt(64)];
+							random.nextBytes(samples);
+							if (!player.write(samples)) {
+								throw new ProcessException("Output Cancelled");
+							}
+							Thread.yield();
+						}
+						player.end();
+					} catch (IOException ioe) {
+						throw new ProcessException(ioe.getMessage(), ioe);
+					}
+				}
+			};
+		}
+	}
+}